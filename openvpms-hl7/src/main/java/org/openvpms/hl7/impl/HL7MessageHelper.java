@@ -19,14 +19,19 @@ package org.openvpms.hl7.impl;
 import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.model.v25.datatype.CWE;
+import ca.uhn.hl7v2.model.v25.datatype.ERL;
 import ca.uhn.hl7v2.model.v25.datatype.MSG;
 import ca.uhn.hl7v2.model.v25.message.ACK;
+import ca.uhn.hl7v2.model.v25.message.RDE_O11;
 import ca.uhn.hl7v2.model.v25.segment.ERR;
 import ca.uhn.hl7v2.model.v25.segment.MSH;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * HL7 Message helper methods.
  *
@@ -39,6 +44,11 @@ public class HL7MessageHelper {
      */
     private static final Log log = LogFactory.getLog(HL7MessageHelper.class);
 
+    /**
+     * The segments of an RDE^O11 ORDER group that an error location may refer to.
+     */
+    private static final List<String> ORDER_SEGMENTS = Arrays.asList("ORC", "RXO", "RXE", "RXR", "RXC");
+
     /**
      * Returns a formatted name for a message.
      *
@@ -57,6 +67,20 @@ public class HL7MessageHelper {
      * @return the error message
      */
     public static String getErrorMessage(ACK ack) {
+        return getErrorMessage(ack, null);
+    }
+
+    /**
+     * Generates an error message from an acknowledgement.
+     * <p/>
+     * If the acknowledged message contains multiple orders, errors whose location (ERR-2) refers to an order
+     * segment are prefixed with the placer order number of the corresponding order.
+     *
+     * @param ack     the acknowledgement
+     * @param message the acknowledged message. May be {@code null}
+     * @return the error message
+     */
+    public static String getErrorMessage(ACK ack, Message message) {
         StringBuilder buffer = new StringBuilder();
         String text = ack.getMSA().getTextMessage().getValue(); // deprecated in HL7 2.4
         if (!StringUtils.isEmpty(text)) {
@@ -64,6 +88,10 @@ public class HL7MessageHelper {
         }
         try {
             for (ERR err : ack.getERRAll()) {
+                String placerOrderNumber = getPlacerOrderNumber(err, message);
+                if (placerOrderNumber != null) {
+                    append(buffer, "Order: ", placerOrderNumber);
+                }
                 String hl7ErrorCode = formatCWE(err.getHL7ErrorCode());
                 if (hl7ErrorCode != null) {
                     append(buffer, "HL7 Error Code: ", hl7ErrorCode);
@@ -107,6 +135,35 @@ public class HL7MessageHelper {
         return message.encode().replaceAll("\r", "\n");
     }
 
+    /**
+     * Returns the placer order number of the order that an error refers to, for messages containing multiple
+     * orders.
+     *
+     * @param err     the error segment
+     * @param message the acknowledged message. May be {@code null}
+     * @return the placer order number, or {@code null} if the error doesn't refer to a specific order
+     * @throws HL7Exception for any HL7 error
+     */
+    private static String getPlacerOrderNumber(ERR err, Message message) throws HL7Exception {
+        String result = null;
+        if (message instanceof RDE_O11 && ((RDE_O11) message).getORDERReps() > 1
+            && err.getErrorLocationReps() > 0) {
+            RDE_O11 rde = (RDE_O11) message;
+            ERL location = err.getErrorLocation(0);
+            String segment = location.getSegmentID().getValue();
+            String sequence = location.getSegmentSequence().getValue();
+            if (ORDER_SEGMENTS.contains(segment) && !StringUtils.isEmpty(sequence)
+                && StringUtils.isNumeric(sequence)) {
+                // segment sequences are 1-based, and each order contains a single instance of each order segment
+                int index = Integer.parseInt(sequence) - 1;
+                if (index >= 0 && index < rde.getORDERReps()) {
+                    result = rde.getORDER(index).getORC().getPlacerOrderNumber().getEntityIdentifier().getValue();
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Formats a Coded with Exceptions message field.
      *
@@ -0,0 +1,158 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes tasks on a fixed number of threads, such that tasks with the same key are executed in the order they
+ * were submitted.
+ * <p/>
+ * Each key is assigned to a single threaded executor by hash, so unrelated keys may share a thread.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class KeyedExecutor {
+
+    /**
+     * The executors.
+     */
+    private final ExecutorService[] executors;
+
+    /**
+     * Used to distribute tasks with no key.
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * The identifiers of tasks submitted via {@link #execute(Object, Object, Runnable)} that haven't completed.
+     */
+    private final Set<Object> outstanding = new HashSet<Object>();
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(KeyedExecutor.class);
+
+
+    /**
+     * Constructs a {@link KeyedExecutor}.
+     *
+     * @param threads the no. of threads
+     */
+    public KeyedExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Argument 'threads' must be > 0");
+        }
+        executors = new ExecutorService[threads];
+        for (int i = 0; i < threads; ++i) {
+            executors[i] = Executors.newSingleThreadExecutor();
+        }
+    }
+
+    /**
+     * Executes a task.
+     *
+     * @param key  the task key. Tasks with the same key are executed in order. If {@code null}, the task may be
+     *             executed on any thread
+     * @param task the task to execute
+     * @throws java.util.concurrent.RejectedExecutionException if the executor has been shut down
+     */
+    public void execute(Object key, Runnable task) {
+        int hash = (key != null) ? key.hashCode() : next.getAndIncrement();
+        executors[(hash & Integer.MAX_VALUE) % executors.length].execute(task);
+    }
+
+    /**
+     * Executes a task, unless a task with the same identifier is already queued or running.
+     *
+     * @param key  the task key. Tasks with the same key are executed in order. If {@code null}, the task may be
+     *             executed on any thread
+     * @param id   the task identifier
+     * @param task the task to execute
+     * @return {@code true} if the task was submitted, {@code false} if a task with the same identifier is
+     *         outstanding
+     * @throws java.util.concurrent.RejectedExecutionException if the executor has been shut down
+     */
+    public boolean execute(Object key, final Object id, final Runnable task) {
+        synchronized (outstanding) {
+            if (!outstanding.add(id)) {
+                return false;
+            }
+        }
+        Runnable wrapper = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    release(id);
+                }
+            }
+        };
+        try {
+            execute(key, wrapper);
+        } catch (RuntimeException exception) {
+            release(id);
+            throw exception;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a task identifier.
+     *
+     * @param id the task identifier
+     */
+    private void release(Object id) {
+        synchronized (outstanding) {
+            outstanding.remove(id);
+        }
+    }
+
+    /**
+     * Shuts down the executor, waiting for running tasks to terminate.
+     */
+    public void shutdown() {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+        try {
+            for (ExecutorService executor : executors) {
+                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                    if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                        log.error("Pool did not terminate");
+                    }
+                }
+            }
+        } catch (InterruptedException exception) {
+            for (ExecutorService executor : executors) {
+                executor.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+}
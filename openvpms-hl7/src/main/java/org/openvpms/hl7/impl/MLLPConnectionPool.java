@@ -0,0 +1,308 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.impl;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.app.Connection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
+import org.openvpms.hl7.io.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintains open connections to {@link MLLPSender}s, so that a connection doesn't need to be established for each
+ * message sent.
+ * <p/>
+ * Connections are keyed on sender reference. A connection is only reused if the sender's host, port and
+ * timeouts are unchanged, the connection is still open, and it hasn't been idle for longer than the maximum idle
+ * time. Otherwise, it is closed and a new connection established.
+ * <p/>
+ * A connection may be shared by several callers, as HAPI correlates responses with requests by message control ID.
+ * Each caller must return the connection via {@link #release} once it has finished with it, or discard it via
+ * {@link #discard} if it failed.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class MLLPConnectionPool {
+
+    /**
+     * The default maximum time a connection may be idle before it is closed, in seconds.
+     */
+    public static final int DEFAULT_MAX_IDLE = 60;
+
+    /**
+     * The message context.
+     */
+    private final HapiContext context;
+
+    /**
+     * The maximum idle time, in milliseconds.
+     */
+    private final long maxIdle;
+
+    /**
+     * The connections, keyed on sender reference.
+     */
+    private final Map<IMObjectReference, PooledConnection> connections
+            = new HashMap<IMObjectReference, PooledConnection>();
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(MLLPConnectionPool.class);
+
+
+    /**
+     * Constructs an {@link MLLPConnectionPool}.
+     *
+     * @param context the message context
+     */
+    public MLLPConnectionPool(HapiContext context) {
+        this(context, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Constructs an {@link MLLPConnectionPool}.
+     *
+     * @param context the message context
+     * @param maxIdle the maximum time a connection may be idle before it is closed, in seconds
+     */
+    public MLLPConnectionPool(HapiContext context, int maxIdle) {
+        this.context = context;
+        this.maxIdle = TimeUnit.SECONDS.toMillis(maxIdle);
+    }
+
+    /**
+     * Returns a connection to a sender, creating one if there is no reusable connection.
+     *
+     * @param sender  the sender
+     * @param latency if non-null, records the time taken to establish a new connection
+     * @return the connection
+     * @throws HL7Exception if the connection can not be established
+     */
+    public PooledConnection getConnection(MLLPSender sender, LatencyHistogram latency) throws HL7Exception {
+        PooledConnection result;
+        PooledConnection stale = null;
+        IMObjectReference reference = sender.getReference();
+        synchronized (connections) {
+            result = connections.get(reference);
+            if (result != null) {
+                if (result.isReusable(sender, maxIdle)) {
+                    result.acquire();
+                } else {
+                    connections.remove(reference);
+                    stale = result;
+                    result = null;
+                }
+            }
+        }
+        if (stale != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Discarding stale connection to " + sender);
+            }
+            stale.close();
+        }
+        if (result == null) {
+            long start = System.currentTimeMillis();
+            Connection connection = context.newClient(sender.getHost(), sender.getPort(), false);
+            if (latency != null) {
+                latency.add(System.currentTimeMillis() - start);
+            }
+            PooledConnection created = new PooledConnection(sender, connection);
+            synchronized (connections) {
+                result = connections.get(reference);
+                if (result != null && result.isReusable(sender, maxIdle)) {
+                    // another thread connected first
+                    result.acquire();
+                } else {
+                    result = created;
+                    result.acquire();
+                    connections.put(reference, result);
+                }
+            }
+            if (result != created && result.getConnection() != connection) {
+                created.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a connection to the pool, for reuse.
+     *
+     * @param connection the connection
+     */
+    public void release(PooledConnection connection) {
+        synchronized (connections) {
+            connection.release();
+        }
+    }
+
+    /**
+     * Discards a connection that has failed.
+     * <p/>
+     * This closes the connection, even if it is being used by other callers, as its state is unknown.
+     *
+     * @param connection the connection
+     */
+    public void discard(PooledConnection connection) {
+        synchronized (connections) {
+            connection.release();
+            IMObjectReference reference = connection.getSender().getReference();
+            if (connections.get(reference) == connection) {
+                connections.remove(reference);
+            }
+        }
+        connection.close();
+    }
+
+    /**
+     * Closes any connection to a sender.
+     * <p/>
+     * This should be invoked when a sender is updated or removed.
+     *
+     * @param sender the sender reference
+     */
+    public void close(IMObjectReference sender) {
+        PooledConnection connection;
+        synchronized (connections) {
+            connection = connections.remove(sender);
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Closes all connections.
+     */
+    public void close() {
+        List<PooledConnection> list;
+        synchronized (connections) {
+            list = new ArrayList<PooledConnection>(connections.values());
+            connections.clear();
+        }
+        for (PooledConnection connection : list) {
+            connection.close();
+        }
+    }
+
+    /**
+     * A connection managed by the pool.
+     */
+    static class PooledConnection {
+
+        /**
+         * The sender the connection was established for.
+         */
+        private final MLLPSender sender;
+
+        /**
+         * The connection.
+         */
+        private final Connection connection;
+
+        /**
+         * The time when the connection was last used.
+         */
+        private long lastUsed;
+
+        /**
+         * The no. of callers using the connection.
+         */
+        private int users;
+
+        /**
+         * Constructs a {@link PooledConnection}.
+         *
+         * @param sender     the sender
+         * @param connection the connection
+         */
+        public PooledConnection(MLLPSender sender, Connection connection) {
+            this.sender = sender;
+            this.connection = connection;
+            lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the sender the connection was established for.
+         *
+         * @return the sender
+         */
+        public MLLPSender getSender() {
+            return sender;
+        }
+
+        /**
+         * Returns the connection.
+         *
+         * @return the connection
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Registers a caller of the connection.
+         */
+        void acquire() {
+            ++users;
+        }
+
+        /**
+         * Deregisters a caller of the connection.
+         */
+        void release() {
+            if (users > 0) {
+                --users;
+            }
+            lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * Determines if the connection can be reused to send to a sender.
+         * <p/>
+         * The idle time only applies if the connection isn't in use.
+         *
+         * @param sender  the sender
+         * @param maxIdle the maximum idle time, in milliseconds
+         * @return {@code true} if the connection can be reused
+         */
+        public boolean isReusable(MLLPSender sender, long maxIdle) {
+            return this.sender.equals(sender) && connection.isOpen()
+                   && (users > 0 || System.currentTimeMillis() - lastUsed <= maxIdle);
+        }
+
+        /**
+         * Closes the connection.
+         */
+        public void close() {
+            try {
+                connection.close();
+            } catch (Throwable exception) {
+                log.warn("Failed to close connection to " + sender + ": " + exception.getMessage(), exception);
+            }
+        }
+    }
+}
@@ -37,6 +37,11 @@ class MLLPReceiver extends Connector {
      */
     private final int port;
 
+    /**
+     * If {@code true}, messages are stored and acknowledged on receipt, and processed asynchronously.
+     */
+    private final boolean storeAndAck;
+
     /**
      * Constructs a {@link MLLPReceiver}.
      *
@@ -67,9 +72,31 @@ class MLLPReceiver extends Connector {
     public MLLPReceiver(int port, String sendingApplication, String sendingFacility,
                         String receivingApplication, String receivingFacility, boolean includeMillis,
                         boolean includeTimeZone, IMObjectReference reference) {
+        this(port, sendingApplication, sendingFacility, receivingApplication, receivingFacility, includeMillis,
+             includeTimeZone, false, reference);
+    }
+
+    /**
+     * Constructs a {@link MLLPReceiver}.
+     *
+     * @param port                 the port to listen in
+     * @param sendingApplication   the sending application
+     * @param sendingFacility      the sending facility
+     * @param receivingApplication the receiving application
+     * @param receivingFacility    the receiving facility
+     * @param includeMillis        if {@code true} include milliseconds in time fields
+     * @param includeTimeZone      if {@code true} include the timezone in date/time fields
+     * @param storeAndAck          if {@code true}, store and acknowledge messages on receipt, and process them
+     *                             asynchronously
+     * @param reference            the connector reference
+     */
+    public MLLPReceiver(int port, String sendingApplication, String sendingFacility,
+                        String receivingApplication, String receivingFacility, boolean includeMillis,
+                        boolean includeTimeZone, boolean storeAndAck, IMObjectReference reference) {
         super(sendingApplication, sendingFacility, receivingApplication, receivingFacility, includeMillis,
               includeTimeZone, reference);
         this.port = port;
+        this.storeAndAck = storeAndAck;
     }
 
     /**
@@ -84,7 +111,9 @@ class MLLPReceiver extends Connector {
         return new MLLPReceiver(bean.getInt("port"), bean.getString("sendingApplication"),
                                 bean.getString("sendingFacility"), bean.getString("receivingApplication"),
                                 bean.getString("receivingFacility"), bean.getBoolean("includeMillis"),
-                                bean.getBoolean("includeTimeZone"), object.getObjectReference());
+                                bean.getBoolean("includeTimeZone"),
+                                bean.hasNode("storeAndAck") && bean.getBoolean("storeAndAck"),
+                                object.getObjectReference());
     }
 
     /**
@@ -96,6 +125,18 @@ class MLLPReceiver extends Connector {
         return port;
     }
 
+    /**
+     * Determines if messages are stored and acknowledged on receipt, and processed asynchronously.
+     * <p/>
+     * This means the sender doesn't wait on message processing, but processing errors can't be returned in the
+     * acknowledgment.
+     *
+     * @return {@code true} if messages are stored and acknowledged on receipt
+     */
+    public boolean isStoreAndAck() {
+        return storeAndAck;
+    }
+
     /**
      * Indicates whether some other object is "equal to" this one.
      *
@@ -106,7 +147,8 @@ class MLLPReceiver extends Connector {
     public boolean equals(Object obj) {
         boolean result = super.equals(obj) && obj instanceof MLLPReceiver;
         if (result) {
-            result = port == ((MLLPReceiver) obj).port;
+            MLLPReceiver other = (MLLPReceiver) obj;
+            result = port == other.port && storeAndAck == other.storeAndAck;
         }
         return result;
     }
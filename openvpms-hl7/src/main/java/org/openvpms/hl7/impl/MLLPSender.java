@@ -43,6 +43,11 @@ class MLLPSender extends Connector {
      */
     public static final int DEFAULT_RETRY_INTERVAL = 30;
 
+    /**
+     * Default no. of messages that may be awaiting acknowledgment at a time.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 1;
+
     /**
      * The host to connect to.
      */
@@ -68,6 +73,16 @@ class MLLPSender extends Connector {
      */
     private final boolean suspended;
 
+    /**
+     * The maximum no. of messages that may be awaiting acknowledgment at a time.
+     */
+    private final int windowSize;
+
+    /**
+     * Determines if the receiver accepts multiple orders in a single message.
+     */
+    private final boolean multipleOrders;
+
 
     /**
      * Constructs an {@link MLLPSender}.
@@ -105,6 +120,58 @@ class MLLPSender extends Connector {
     public MLLPSender(String host, int port, String sendingApplication, String sendingFacility,
                       String receivingApplication, String receivingFacility, int responseTimeout, int retryInterval,
                       boolean includeMillis, boolean includeTimeZone, boolean suspended, IMObjectReference reference) {
+        this(host, port, sendingApplication, sendingFacility, receivingApplication, receivingFacility,
+             responseTimeout, retryInterval, includeMillis, includeTimeZone, suspended, DEFAULT_WINDOW_SIZE,
+             reference);
+    }
+
+    /**
+     * Constructs a {@link MLLPSender}.
+     *
+     * @param host                 the host to connect to
+     * @param port                 the port to connect to
+     * @param sendingApplication   the sending application
+     * @param sendingFacility      the sending facility
+     * @param receivingApplication the receiving application
+     * @param receivingFacility    the receiving facility
+     * @param responseTimeout      the maximum time to wait for a response, in seconds
+     * @param retryInterval        the interval to wait before resending a message after failure, in seconds
+     * @param includeMillis        if {@code true} include milliseconds in time fields
+     * @param includeTimeZone      if {@code true} include the timezone in date/time fields
+     * @param suspended            if {@code true} indicates that messages should be queued but not sent
+     * @param windowSize           the maximum no. of messages that may be awaiting acknowledgment at a time
+     * @param reference            the connection reference
+     */
+    public MLLPSender(String host, int port, String sendingApplication, String sendingFacility,
+                      String receivingApplication, String receivingFacility, int responseTimeout, int retryInterval,
+                      boolean includeMillis, boolean includeTimeZone, boolean suspended, int windowSize,
+                      IMObjectReference reference) {
+        this(host, port, sendingApplication, sendingFacility, receivingApplication, receivingFacility,
+             responseTimeout, retryInterval, includeMillis, includeTimeZone, suspended, windowSize, false, reference);
+    }
+
+    /**
+     * Constructs a {@link MLLPSender}.
+     *
+     * @param host                 the host to connect to
+     * @param port                 the port to connect to
+     * @param sendingApplication   the sending application
+     * @param sendingFacility      the sending facility
+     * @param receivingApplication the receiving application
+     * @param receivingFacility    the receiving facility
+     * @param responseTimeout      the maximum time to wait for a response, in seconds
+     * @param retryInterval        the interval to wait before resending a message after failure, in seconds
+     * @param includeMillis        if {@code true} include milliseconds in time fields
+     * @param includeTimeZone      if {@code true} include the timezone in date/time fields
+     * @param suspended            if {@code true} indicates that messages should be queued but not sent
+     * @param windowSize           the maximum no. of messages that may be awaiting acknowledgment at a time
+     * @param multipleOrders       if {@code true}, the receiver accepts multiple orders in a single message
+     * @param reference            the connection reference
+     */
+    public MLLPSender(String host, int port, String sendingApplication, String sendingFacility,
+                      String receivingApplication, String receivingFacility, int responseTimeout, int retryInterval,
+                      boolean includeMillis, boolean includeTimeZone, boolean suspended, int windowSize,
+                      boolean multipleOrders, IMObjectReference reference) {
         super(sendingApplication, sendingFacility, receivingApplication, receivingFacility, includeMillis,
               includeTimeZone, reference);
         this.host = host;
@@ -112,6 +179,8 @@ class MLLPSender extends Connector {
         this.responseTimeout = responseTimeout;
         this.retryInterval = retryInterval;
         this.suspended = suspended;
+        this.windowSize = windowSize;
+        this.multipleOrders = multipleOrders;
     }
 
     /**
@@ -130,6 +199,9 @@ class MLLPSender extends Connector {
                               bean.getInt("retryInterval", DEFAULT_RETRY_INTERVAL),
                               bean.getBoolean("includeMillis"),
                               bean.getBoolean("includeTimeZone"), bean.getBoolean("suspended"),
+                              bean.hasNode("windowSize") ? bean.getInt("windowSize", DEFAULT_WINDOW_SIZE)
+                                                         : DEFAULT_WINDOW_SIZE,
+                              bean.hasNode("multipleOrders") && bean.getBoolean("multipleOrders"),
                               object.getObjectReference());
     }
 
@@ -180,6 +252,27 @@ class MLLPSender extends Connector {
         return retryInterval;
     }
 
+    /**
+     * Returns the maximum no. of messages that may be awaiting acknowledgment at a time.
+     * <p/>
+     * If greater than {@code 1}, messages are sent without waiting for the acknowledgment of prior messages,
+     * although messages for the same patient are still sent in order.
+     *
+     * @return the window size
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Determines if the receiver accepts multiple orders in a single message.
+     *
+     * @return {@code true} if the receiver accepts multiple orders in a single message
+     */
+    public boolean isMultipleOrders() {
+        return multipleOrders;
+    }
+
     /**
      * Indicates whether some other object is "equal to" this one.
      *
@@ -192,7 +285,8 @@ class MLLPSender extends Connector {
         if (result) {
             MLLPSender other = (MLLPSender) obj;
             result = port == other.port && ObjectUtils.equals(host, other.host)
-                     && responseTimeout == other.responseTimeout && retryInterval == other.retryInterval;
+                     && responseTimeout == other.responseTimeout && retryInterval == other.retryInterval
+                     && windowSize == other.windowSize && multipleOrders == other.multipleOrders;
         }
         return result;
     }
@@ -50,8 +50,14 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -92,6 +98,11 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
      */
     private final IDGenerator generator;
 
+    /**
+     * The connections to senders.
+     */
+    private final MLLPConnectionPool pool;
+
     /**
      * The queues, keyed on connector reference.
      */
@@ -114,6 +125,28 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
      */
     private final ExecutorService executor;
 
+    /**
+     * The service to send messages on, when queues are dispatched in parallel. May be {@code null}.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The service used to send messages that may be awaiting acknowledgment concurrently.
+     */
+    private final ExecutorService inFlight;
+
+    /**
+     * The service to process stored messages on, for receivers that acknowledge messages on receipt.
+     * May be {@code null}.
+     */
+    private final KeyedExecutor receivers;
+
+    /**
+     * The queues currently being processed by a worker. The value indicates if the queue should be re-examined
+     * by {@link #dispatch()} once the worker completes.
+     */
+    private final Map<MessageQueue, Boolean> active = new HashMap<MessageQueue, Boolean>();
+
     /**
      * Listener for connector updates.
      */
@@ -158,13 +191,54 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
      * @param rules          the practice rules
      */
     public MessageDispatcherImpl(MessageService messageService, ConnectorsImpl connectors, PracticeRules rules) {
+        this(messageService, connectors, rules, 1);
+    }
+
+    /**
+     * Constructs a {@link MessageDispatcherImpl}.
+     * <p/>
+     * If {@code workers > 1}, each queue is sent on its own worker thread, drawn from a pool of at most
+     * {@code workers} threads. This prevents a slow connector from delaying messages to other connectors.
+     * <br/>
+     * If {@code workers <= 1}, queues are processed in a round robin fashion on a single thread.
+     *
+     * @param messageService the message service
+     * @param connectors     the connectors
+     * @param rules          the practice rules
+     * @param workers        the maximum number of threads to send messages on
+     */
+    public MessageDispatcherImpl(MessageService messageService, ConnectorsImpl connectors, PracticeRules rules,
+                                 int workers) {
+        this(messageService, connectors, rules, workers, 0);
+    }
+
+    /**
+     * Constructs a {@link MessageDispatcherImpl}.
+     * <p/>
+     * If {@code receiverWorkers > 0}, receivers configured to store and acknowledge messages on receipt process
+     * them on a pool of {@code receiverWorkers} threads. Messages for the same patient are processed in order.
+     * <br/>
+     * If {@code receiverWorkers <= 0}, all messages are processed on receipt.
+     *
+     * @param messageService  the message service
+     * @param connectors      the connectors
+     * @param rules           the practice rules
+     * @param workers         the maximum number of threads to send messages on
+     * @param receiverWorkers the number of threads to process stored messages on
+     */
+    public MessageDispatcherImpl(MessageService messageService, ConnectorsImpl connectors, PracticeRules rules,
+                                 int workers, int receiverWorkers) {
         this.messageService = messageService;
         this.connectors = connectors;
         this.rules = rules;
         populator = new HeaderPopulator();
         messageContext = HapiContextFactory.create();
         generator = messageContext.getParserConfiguration().getIdGenerator();
+        pool = new MLLPConnectionPool(messageContext);
         executor = Executors.newSingleThreadExecutor();
+        this.workers = (workers > 1) ? Executors.newFixedThreadPool(workers) : null;
+        inFlight = Executors.newCachedThreadPool();
+        receivers = (receiverWorkers > 0) ? new KeyedExecutor(receiverWorkers) : null;
 
         user = getServiceUser();
 
@@ -225,6 +299,10 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
     @Override
     public void resubmit(DocumentAct message) {
         messageService.resubmit(message);
+        List<MessageQueue> queues = new ArrayList<MessageQueue>(queueMap.values());
+        for (MessageQueue queue : queues) {
+            queue.refresh();
+        }
         schedule();
     }
 
@@ -252,7 +330,8 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
                 }
             }
             log.info("Starting listener for " + connector);
-            MessageReceiver receiver = new MessageReceiver(application, connector, messageService, user);
+            MessageReceiver receiver = new MessageReceiver(application, connector, messageService, user, receivers,
+                                                           messageContext.getPipeParser());
             service.registerApplication(receiver);
             service.setExceptionHandler(receiver);
             service.startAndWait();
@@ -267,6 +346,7 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
             }
             if (added) {
                 receiverMap.put(connector.getReference(), receiver);
+                receiver.start();
             }
         }
     }
@@ -341,27 +421,25 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
         shutdown = true;
         connectors.removeListener(listener);
         executor.shutdown();  // Disable new tasks from being submitted
+        if (workers != null) {
+            workers.shutdown();
+        }
+        inFlight.shutdown();
         waiter.release();     // wake from sleep
-        try {
-            // Wait a while for existing tasks to terminate
-            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                executor.shutdownNow(); // Cancel currently executing tasks
-                // Wait a while for tasks to respond to being cancelled
-                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                    log.error("Pool did not terminate");
-                }
-            }
-        } catch (InterruptedException ie) {
-            // (Re-)Cancel if current thread also interrupted
-            executor.shutdownNow();
-            // Preserve interrupt status
-            Thread.currentThread().interrupt();
+        shutdown(executor);
+        if (workers != null) {
+            shutdown(workers);
         }
+        shutdown(inFlight);
         synchronized (services) {
             for (HL7Service service : services.values()) {
                 service.stop();
             }
         }
+        if (receivers != null) {
+            receivers.shutdown();
+        }
+        pool.close();
     }
 
     /**
@@ -446,23 +524,31 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
             log.debug(toString(message));
             start = System.currentTimeMillis();
         }
-        Connection connection = null;
+        MessageQueue queue = getMessageQueue(sender);
+        MLLPConnectionPool.PooledConnection pooled = pool.getConnection(sender, queue.getConnectLatency());
+        boolean failed = true;
         try {
-            connection = messageContext.newClient(sender.getHost(), sender.getPort(), false);
+            Connection connection = pooled.getConnection();
             int timeout = sender.getResponseTimeout();
             if (timeout <= 0) {
                 timeout = MLLPSender.DEFAULT_RESPONSE_TIMEOUT;
             }
             connection.getInitiator().setTimeout(timeout, TimeUnit.SECONDS);
+            long sent = System.currentTimeMillis();
             response = connection.getInitiator().sendAndReceive(message);
+            long received = System.currentTimeMillis();
+            queue.getAcknowledgmentLatency().add(received - sent);
+            failed = false;
             if (debug) {
-                long end = System.currentTimeMillis();
-                log.debug("response received in " + (end - start) + "ms");
+                log.debug("response received in " + (received - start) + "ms");
                 log.debug(toString(message));
             }
         } finally {
-            if (connection != null) {
-                connection.close();
+            if (failed) {
+                // don't reuse the connection, as its state is unknown
+                pool.discard(pooled);
+            } else {
+                pool.release(pooled);
             }
         }
         return response;
@@ -536,6 +622,17 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
      * Sends all queued messages.
      */
     private void dispatch() {
+        if (workers != null) {
+            dispatchParallel();
+        } else {
+            dispatchSerial();
+        }
+    }
+
+    /**
+     * Sends all queued messages on the dispatch thread, processing each queue in a round robin fashion.
+     */
+    private void dispatchSerial() {
         boolean processed;
         int waiting;
         long minWait;
@@ -554,7 +651,7 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
                 } else {
                     long wait = queue.getWaitUntil();
                     if (wait == -1 || wait <= System.currentTimeMillis()) {
-                        processed |= sendFirst(queue);
+                        processed |= sendNext(queue, queue.getConnector().getWindowSize());
                     } else {
                         ++waiting;
                         if (minWait == 0 || wait < minWait) {
@@ -581,6 +678,238 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
         log.debug("dispatch() - end");
     }
 
+    /**
+     * Hands each queue that is ready to send to a worker, so that queues are sent in parallel.
+     * <p/>
+     * A queue is only processed by one worker at a time, to preserve message order.
+     */
+    private void dispatchParallel() {
+        int waiting = 0;
+        long minWait = 0;
+        log.debug("dispatchParallel() - start");
+        List<MessageQueue> queues = new ArrayList<MessageQueue>(queueMap.values());
+        for (MessageQueue queue : queues) {
+            if (queue.isSuspended()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("dispatchParallel() - skipping suspended queue " + queue);
+                }
+            } else {
+                long wait = queue.getWaitUntil();
+                if (wait == -1 || wait <= System.currentTimeMillis()) {
+                    submit(queue);
+                } else {
+                    ++waiting;
+                    if (minWait == 0 || wait < minWait) {
+                        minWait = wait;
+                    }
+                }
+            }
+        }
+        if (waiting != 0 && !shutdown) {
+            long wait = minWait - System.currentTimeMillis();
+            if (wait > 0) {
+                log.debug("dispatchParallel() waiting for " + wait + "ms");
+                // wait until the minimum wait time has expired, or a message is queued
+                try {
+                    waiter.drainPermits();
+                    waiter.tryAcquire(wait, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ignore) {
+                    // do nothing
+                }
+            }
+            schedule();
+        }
+        log.debug("dispatchParallel() - end");
+    }
+
+    /**
+     * Submits a queue to a worker, unless one is already processing it.
+     * <p/>
+     * If a worker is already processing the queue, it is flagged so that it will be re-examined when the worker
+     * completes. This ensures that messages queued while a worker is finishing aren't left unsent.
+     *
+     * @param queue the queue
+     */
+    private void submit(final MessageQueue queue) {
+        final User user = getServiceUser();
+        synchronized (active) {
+            if (active.containsKey(queue)) {
+                active.put(queue, true);
+                return;
+            }
+            active.put(queue, false);
+        }
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        RunAs.run(user, new Runnable() {
+                            @Override
+                            public void run() {
+                                sendAll(queue);
+                            }
+                        });
+                    } catch (Throwable exception) {
+                        log.error(exception.getMessage(), exception);
+                    } finally {
+                        completed(queue);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            synchronized (active) {
+                active.remove(queue);
+            }
+            if (!shutdown) {
+                log.error("Failed to submit " + queue.getConnector() + " for sending", exception);
+            }
+        }
+    }
+
+    /**
+     * Sends the messages in a queue until it is empty, suspended, or is waiting to resend after an error.
+     *
+     * @param queue the queue
+     */
+    private void sendAll(MessageQueue queue) {
+        boolean processed = true;
+        while (processed && !shutdown && !queue.isSuspended()) {
+            long wait = queue.getWaitUntil();
+            processed = (wait == -1 || wait <= System.currentTimeMillis()) && sendNext(queue, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Invoked when a worker has finished processing a queue.
+     * <p/>
+     * This schedules {@link #dispatch()} if the queue was flagged while the worker was active, or if the
+     * queue needs to wait before resending, so that the wait is honoured.
+     *
+     * @param queue the queue
+     */
+    private void completed(MessageQueue queue) {
+        Boolean rescan;
+        synchronized (active) {
+            rescan = active.remove(queue);
+        }
+        if ((rescan != null && rescan) || queue.getWaitUntil() != -1) {
+            schedule();
+        }
+    }
+
+    /**
+     * Shuts down an executor service, waiting for running tasks to terminate.
+     *
+     * @param service the service
+     */
+    private void shutdown(ExecutorService service) {
+        try {
+            // Wait a while for existing tasks to terminate
+            if (!service.awaitTermination(60, TimeUnit.SECONDS)) {
+                service.shutdownNow(); // Cancel currently executing tasks
+                // Wait a while for tasks to respond to being cancelled
+                if (!service.awaitTermination(60, TimeUnit.SECONDS)) {
+                    log.error("Pool did not terminate");
+                }
+            }
+        } catch (InterruptedException ie) {
+            // (Re-)Cancel if current thread also interrupted
+            service.shutdownNow();
+            // Preserve interrupt status
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the next messages in a queue.
+     * <p/>
+     * If the queue's connector has a window size greater than {@code 1}, up to {@code max} messages are
+     * sent via {@link #sendWindow}, otherwise the first message is sent via {@link #sendFirst}.
+     *
+     * @param queue the queue
+     * @param max   the maximum no. of messages to send, if the connector supports a window
+     * @return {@code true} if there was a message
+     */
+    private boolean sendNext(MessageQueue queue, int max) {
+        return queue.getConnector().getWindowSize() > 1 ? sendWindow(queue, max) : sendFirst(queue);
+    }
+
+    /**
+     * Sends messages in a queue without waiting for each to be acknowledged before sending the next.
+     * <p/>
+     * Up to the connector's window size of messages may be awaiting acknowledgment at a time. Each response is
+     * matched to its message by message control ID.
+     * <p/>
+     * Sending stops when {@code max} messages have been sent, there are no more messages that can be sent, the queue
+     * is suspended, or a message fails. In each case, this waits for the messages in flight to be acknowledged
+     * before returning.
+     *
+     * @param queue the queue
+     * @param max   the maximum no. of messages to send
+     * @return {@code true} if there was a message
+     */
+    protected boolean sendWindow(MessageQueue queue, int max) {
+        final MLLPSender connector = queue.getConnector();
+        int window = connector.getWindowSize();
+        CompletionService<Message> completion = new ExecutorCompletionService<Message>(inFlight);
+        Map<Future<Message>, MessageQueue.Entry> futures = new HashMap<Future<Message>, MessageQueue.Entry>();
+        int sent = 0;
+        boolean stop = false;
+        boolean interrupted = false;
+        while (true) {
+            while (!stop && !shutdown && !queue.isSuspended() && futures.size() < window && sent < max) {
+                final MessageQueue.Entry entry = queue.nextInFlight();
+                if (entry == null) {
+                    break;
+                }
+                try {
+                    Future<Message> future = completion.submit(new Callable<Message>() {
+                        @Override
+                        public Message call() throws Exception {
+                            return send(entry.getMessage(), connector);
+                        }
+                    });
+                    futures.put(future, entry);
+                    ++sent;
+                } catch (RejectedExecutionException exception) {
+                    // shutting down
+                    queue.error(entry, exception);
+                    stop = true;
+                }
+            }
+            if (futures.isEmpty()) {
+                break;
+            }
+            Future<Message> future;
+            try {
+                future = completion.take();
+            } catch (InterruptedException exception) {
+                // stop sending, but wait for the messages in flight
+                interrupted = true;
+                stop = true;
+                continue;
+            }
+            MessageQueue.Entry entry = futures.remove(future);
+            try {
+                queue.sent(entry, future.get());
+                if (queue.getWaitUntil() != -1) {
+                    stop = true; // the message needs to be resent, so don't send any more
+                }
+            } catch (Throwable exception) {
+                Throwable cause = (exception instanceof ExecutionException) ? exception.getCause() : exception;
+                log.error("Failed to send message, act Id=" + entry.getAct().getId(), cause);
+                queue.setWaitUntil(System.currentTimeMillis() + getRetryInterval(connector) * 1000);
+                queue.error(entry, cause);
+                stop = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return sent != 0;
+    }
+
     /**
      * Sends the first message in a queue, if any are present.
      *
@@ -614,16 +943,26 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
             queue.sent(response);
         } catch (Throwable exception) {
             log.error("Failed to send message, act Id=" + act.getId(), exception);
-            int retryInterval = connector.getRetryInterval();
-            if (retryInterval <= 0) {
-                retryInterval = MLLPSender.DEFAULT_RETRY_INTERVAL;
-            }
             // failed to send the message, so don't queue for another retryInterval seconds
-            queue.setWaitUntil(System.currentTimeMillis() + retryInterval * 1000);
+            queue.setWaitUntil(System.currentTimeMillis() + getRetryInterval(connector) * 1000);
             queue.error(exception);
         }
     }
 
+    /**
+     * Returns the interval to wait before resending a message after failure.
+     *
+     * @param connector the connector
+     * @return the retry interval, in seconds
+     */
+    private int getRetryInterval(MLLPSender connector) {
+        int retryInterval = connector.getRetryInterval();
+        if (retryInterval <= 0) {
+            retryInterval = MLLPSender.DEFAULT_RETRY_INTERVAL;
+        }
+        return retryInterval;
+    }
+
     /**
      * Invoked when a connector is updated.
      *
@@ -667,6 +1006,7 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
             log.info("Updating " + connector);
             queue.setConnector((MLLPSender) connector);
             queue.setWaitUntil(-1);
+            pool.close(connector.getReference());
             schedule();
         }
     }
@@ -679,6 +1019,7 @@ public class MessageDispatcherImpl implements MessageDispatcher, DisposableBean,
     private void remove(Connector connector) {
         if (connector instanceof MLLPSender) {
             MessageQueue queue = queueMap.remove(connector.getReference());
+            pool.close(connector.getReference());
             if (queue != null) {
                 // Note that a call to queue() could re-add the queue, even if it is inactive.
                 log.info("Removed queue for " + connector);
@@ -23,20 +23,33 @@ import ca.uhn.hl7v2.model.Message;
 import ca.uhn.hl7v2.model.v25.message.ACK;
 import ca.uhn.hl7v2.model.v25.segment.MSA;
 import ca.uhn.hl7v2.model.v25.segment.MSH;
+import ca.uhn.hl7v2.util.Terser;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openvpms.component.business.domain.im.act.DocumentAct;
 import org.openvpms.component.business.domain.im.security.User;
+import org.openvpms.hl7.io.LatencyHistogram;
 import org.openvpms.hl7.io.MessageService;
 import org.openvpms.hl7.io.Statistics;
 import org.openvpms.hl7.util.HL7MessageStatuses;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
 
 /**
  * A queue of messages for a {@link MLLPSender}.
  * <p/>
- * TODO - cache counts, and pre-fetch messages to reduce database access.
+ * To reduce database access, pending messages are pre-fetched in batches, and the queued and error counts are
+ * cached. The counts are loaded from the database when first requested, and after {@link #refresh()}.
  *
  * @author Tim Anderson
  */
@@ -57,6 +70,26 @@ class MessageQueue implements Statistics {
      */
     private MLLPSender connector;
 
+    /**
+     * The pre-fetched pending messages, in the order they were queued.
+     */
+    private final LinkedList<Entry> pending = new LinkedList<Entry>();
+
+    /**
+     * The messages that have been sent but not yet acknowledged, when more than one message is sent at a time.
+     */
+    private final List<Entry> inFlight = new ArrayList<Entry>();
+
+    /**
+     * The no. of queued messages, or {@code -1} if it needs to be loaded.
+     */
+    private int queued = -1;
+
+    /**
+     * The no. of messages in error, or {@code -1} if it needs to be loaded.
+     */
+    private int errors = -1;
+
     /**
      * The current message act.
      */
@@ -92,6 +125,21 @@ class MessageQueue implements Statistics {
      */
     private boolean suspended;
 
+    /**
+     * The times taken to establish connections.
+     */
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+
+    /**
+     * The times taken to receive acknowledgments.
+     */
+    private final LatencyHistogram acknowledgmentLatency = new LatencyHistogram();
+
+    /**
+     * The no. of pending messages to pre-fetch.
+     */
+    static final int BATCH_SIZE = 100;
+
     /**
      * The logger.
      */
@@ -120,7 +168,19 @@ class MessageQueue implements Statistics {
      * @throws HL7Exception if the message cannot be encoded
      */
     public DocumentAct add(Message message, User user) throws HL7Exception {
-        return service.save(message, connector, user);
+        DocumentAct result = service.save(message, connector, user);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // only count the message once the transaction commits
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    adjust(1, 0);
+                }
+            });
+        } else {
+            adjust(1, 0);
+        }
+        return result;
     }
 
     /**
@@ -155,24 +215,12 @@ class MessageQueue implements Statistics {
         if (currentAct == null) {
             throw new IllegalStateException("No current message");
         }
-        long waitUntil = -1;
         DocumentAct result = currentAct;
-        if (response instanceof ACK) {
-            ACK ack = (ACK) response;
-            MSA msa = ack.getMSA();
-            String ackCode = msa.getAcknowledgmentCode().getValue();
-            if (AcknowledgmentCode.AA.toString().equals(ackCode)) {
-                processed();
-            } else if (AcknowledgmentCode.AE.toString().equals(ackCode)) {
-                handleError(ack, HL7MessageStatuses.PENDING);
-                waitUntil = System.currentTimeMillis() + 30 * 1000;
-            } else {
-                handleError(ack, HL7MessageStatuses.ERROR);
-            }
-        } else {
-            unsupportedResponse(response);
+        try {
+            process(result, currentMessage, response);
+        } finally {
+            completed();
         }
-        setWaitUntil(waitUntil);
         return result;
     }
 
@@ -183,6 +231,118 @@ class MessageQueue implements Statistics {
      */
     public synchronized void error(Throwable exception) {
         completed(new Date(), exception.getMessage());
+        completed();
+    }
+
+    /**
+     * Retrieves the next message to send, when more than one message may be awaiting acknowledgment.
+     * <p/>
+     * The returned message is flagged as in flight until it is passed to {@link #sent(Entry, Message)} or
+     * {@link #error(Entry, Throwable)}.
+     * <p/>
+     * To preserve the order of messages for a patient, messages for a patient that already has a message
+     * in flight are skipped.
+     *
+     * @return the next message, or {@code null} if there are no messages that may be sent
+     */
+    public synchronized Entry nextInFlight() {
+        if (currentAct != null) {
+            // a message was retained for resending by peekFirst(). Return it to the pending messages
+            pending.addFirst(new Entry(currentAct, currentMessage));
+            currentAct = null;
+            currentMessage = null;
+        }
+        if (pending.isEmpty() && inFlight.isEmpty()) {
+            // only fetch when nothing is in flight, as in flight messages remain pending until acknowledged
+            fetch();
+        }
+        Set<String> patients = new HashSet<String>();
+        for (Entry entry : inFlight) {
+            if (entry.getPatient() != null) {
+                patients.add(entry.getPatient());
+            }
+        }
+        Iterator<Entry> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!decode(entry)) {
+                iterator.remove();
+            } else if (entry.getPatient() == null || !patients.contains(entry.getPatient())) {
+                iterator.remove();
+                inFlight.add(entry);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Invoked when a message returned by {@link #nextInFlight()} is acknowledged.
+     * <p/>
+     * The acknowledgment must refer to the message via its message control ID (MSA-2). If it doesn't, the
+     * message is treated as not having been sent, and will be resent.
+     *
+     * @param entry    the message
+     * @param response the response
+     * @return the act corresponding to the sent message
+     */
+    public synchronized DocumentAct sent(Entry entry, Message response) {
+        inFlight.remove(entry);
+        DocumentAct act = entry.getAct();
+        String expected = entry.getMessageControlID();
+        String actual = getAcknowledgedControlID(response);
+        if (actual != null && expected != null && !actual.equals(expected)) {
+            log.error("Received acknowledgment for message " + actual + " from " + connector + ", expected "
+                      + expected);
+            completed(new Date(), "Acknowledgment received for message " + actual + " but expected " + expected);
+            requeue(entry);
+        } else {
+            try {
+                process(act, entry.getMessage(), response);
+            } finally {
+                if (HL7MessageStatuses.PENDING.equals(act.getStatus())) {
+                    requeue(entry);
+                }
+            }
+        }
+        return act;
+    }
+
+    /**
+     * Invoked when an exception occurs sending a message returned by {@link #nextInFlight()}.
+     * <p/>
+     * The message will be resent.
+     *
+     * @param entry     the message
+     * @param exception the exception
+     */
+    public synchronized void error(Entry entry, Throwable exception) {
+        if (inFlight.remove(entry)) {
+            requeue(entry);
+        }
+        completed(new Date(), exception.getMessage());
+    }
+
+    /**
+     * Returns the no. of messages awaiting acknowledgment.
+     *
+     * @return the no. of messages in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Discards the cached counts and pre-fetched messages, so that they are reloaded from the database.
+     * <p/>
+     * This should be invoked when messages are updated outside of the queue, e.g. when they are resubmitted.
+     */
+    public synchronized void refresh() {
+        queued = -1;
+        errors = -1;
+        if (inFlight.isEmpty()) {
+            pending.clear();
+        }
     }
 
     /**
@@ -245,8 +405,11 @@ class MessageQueue implements Statistics {
      *
      * @return the number of messages
      */
-    public int getQueued() {
-        return countMessages(HL7MessageStatuses.PENDING);
+    public synchronized int getQueued() {
+        if (queued == -1) {
+            queued = countMessages(HL7MessageStatuses.PENDING);
+        }
+        return queued;
     }
 
     /**
@@ -257,8 +420,11 @@ class MessageQueue implements Statistics {
      * @return the number of messages
      */
     @Override
-    public int getErrors() {
-        return countMessages(HL7MessageStatuses.ERROR);
+    public synchronized int getErrors() {
+        if (errors == -1) {
+            errors = countMessages(HL7MessageStatuses.ERROR);
+        }
+        return errors;
     }
 
     /**
@@ -295,13 +461,66 @@ class MessageQueue implements Statistics {
         return lastErrorMessage;
     }
 
+    /**
+     * Returns the distribution of times taken to establish connections.
+     *
+     * @return the connection latencies
+     */
+    @Override
+    public LatencyHistogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    /**
+     * Returns the distribution of times taken between sending a message and receiving its acknowledgment.
+     *
+     * @return the acknowledgment latencies
+     */
+    @Override
+    public LatencyHistogram getAcknowledgmentLatency() {
+        return acknowledgmentLatency;
+    }
+
+    /**
+     * Processes the response to a message.
+     *
+     * @param act      the message act
+     * @param message  the message
+     * @param response the response
+     */
+    private void process(DocumentAct act, Message message, Message response) {
+        long waitUntil = -1;
+        if (response instanceof ACK) {
+            ACK ack = (ACK) response;
+            MSA msa = ack.getMSA();
+            String ackCode = msa.getAcknowledgmentCode().getValue();
+            if (AcknowledgmentCode.AA.toString().equals(ackCode)) {
+                processed(act);
+            } else if (AcknowledgmentCode.AE.toString().equals(ackCode)) {
+                handleError(act, message, ack, HL7MessageStatuses.PENDING);
+                waitUntil = System.currentTimeMillis() + 30 * 1000;
+            } else {
+                handleError(act, message, ack, HL7MessageStatuses.ERROR);
+            }
+        } else {
+            unsupportedResponse(act, response);
+        }
+        if (waitUntil != -1 || inFlight.isEmpty()) {
+            // don't clear a wait set by another in flight message
+            setWaitUntil(waitUntil);
+        }
+    }
+
     /**
      * Invoked when a message is successfully processed.
+     *
+     * @param act the message act
      */
-    private void processed() {
+    private void processed(DocumentAct act) {
         lastSent = new Date();
         try {
-            service.accepted(currentAct, lastSent);
+            service.accepted(act, lastSent);
+            adjust(-1, 0);
         } finally {
             completed(null, null);
         }
@@ -310,20 +529,23 @@ class MessageQueue implements Statistics {
     /**
      * Invoked when an ack indicates an error.
      *
-     * @param ack    the message acknowledgment
-     * @param status the new act status
-     */
-    private void handleError(ACK ack, String status) {
-        String error = HL7MessageHelper.getErrorMessage(ack);
-        error(status, error);
+     * @param act     the message act
+     * @param message the message
+     * @param ack     the message acknowledgment
+     * @param status  the new act status
+     */
+    private void handleError(DocumentAct act, Message message, ACK ack, String status) {
+        String error = HL7MessageHelper.getErrorMessage(ack, message);
+        error(act, status, error);
     }
 
     /**
      * Invoked when an unsupported response is received.
      *
+     * @param act      the message act
      * @param response the response
      */
-    private void unsupportedResponse(Message response) {
+    private void unsupportedResponse(DocumentAct act, Message response) {
         StringBuilder error = new StringBuilder();
         error.append("Unsupported response: ");
         try {
@@ -340,54 +562,129 @@ class MessageQueue implements Statistics {
             log.error("Failed to format message", exception);
             error.append("unknown");
         }
-        error(HL7MessageStatuses.ERROR, error.toString());
+        error(act, HL7MessageStatuses.ERROR, error.toString());
     }
 
     /**
-     * Invoked after sending/attempting to send a message.
+     * Invoked after sending/attempting to send a message, to record any error.
      *
      * @param errorDate the error date/time, or {@code null} if there was no error
      * @param error     the error message, or {@code null} if there was no error
      */
     private void completed(Date errorDate, String error) {
-        currentMessage = null;
-        currentAct = null;
         lastError = errorDate;
         lastErrorMessage = error;
     }
 
+    /**
+     * Invoked after sending/attempting to send the current message.
+     * <p/>
+     * If the current message is still pending, it remains at the head of the queue, to be resent.
+     */
+    private void completed() {
+        if (currentAct == null || !HL7MessageStatuses.PENDING.equals(currentAct.getStatus())) {
+            currentMessage = null;
+            currentAct = null;
+        }
+    }
+
     /**
      * Retrieves the next message.
+     * <p/>
+     * If there are no pre-fetched messages, the next batch is retrieved. As the pre-fetched messages are
+     * all processed before the next batch is retrieved, this always starts with the oldest pending message.
      */
     private void getNext() {
-        DocumentAct act;
-        while ((act = service.next(connector)) != null) {
-            Message message = decode(act);
-            if (message != null) {
-                currentAct = act;
-                currentMessage = message;
+        while (currentMessage == null) {
+            if (pending.isEmpty()) {
+                if (!inFlight.isEmpty()) {
+                    break;
+                }
+                fetch();
+                if (pending.isEmpty()) {
+                    break;
+                }
+            }
+            Entry entry = pending.removeFirst();
+            if (decode(entry)) {
+                currentAct = entry.getAct();
+                currentMessage = entry.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Fetches the next batch of pending messages.
+     */
+    private void fetch() {
+        for (DocumentAct act : service.next(connector, BATCH_SIZE)) {
+            pending.add(new Entry(act, null));
+        }
+    }
+
+    /**
+     * Returns a message to the pending messages so that it will be resent, preserving the queue order.
+     *
+     * @param entry the message
+     */
+    private void requeue(Entry entry) {
+        ListIterator<Entry> iterator = pending.listIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getAct().getId() > entry.getAct().getId()) {
+                iterator.previous();
                 break;
             }
         }
+        iterator.add(entry);
     }
 
     /**
-     * Decodes an HL7 message from an act.
+     * Returns the message control ID that a response acknowledges.
+     *
+     * @param response the response
+     * @return the message control ID, or {@code null} if the response isn't an acknowledgment
+     */
+    private String getAcknowledgedControlID(Message response) {
+        return (response instanceof ACK) ? ((ACK) response).getMSA().getMessageControlID().getValue() : null;
+    }
+
+    /**
+     * Adjusts the cached counts.
      * <p/>
-     * If the message cannot be decoded, the act status will be set to ERROR.
+     * Counts that haven't been loaded are left unchanged.
      *
-     * @param act the <em>act.HL7Message</em> act
-     * @return the message, or {@code null} if the message cannot be decoded
+     * @param queued the amount to adjust the queued count by
+     * @param errors the amount to adjust the error count by
      */
-    private Message decode(DocumentAct act) {
-        Message result = null;
-        try {
-            result = service.get(act, context.getGenericParser());
-        } catch (HL7Exception exception) {
-            log.error(exception.getMessage(), exception);
-            service.error(act, HL7MessageStatuses.ERROR, new Date(), exception.getMessage());
+    private synchronized void adjust(int queued, int errors) {
+        if (this.queued != -1) {
+            this.queued = Math.max(0, this.queued + queued);
+        }
+        if (this.errors != -1) {
+            this.errors = Math.max(0, this.errors + errors);
         }
-        return result;
+    }
+
+    /**
+     * Decodes the HL7 message for a pending message, if it hasn't already been decoded.
+     * <p/>
+     * If the message cannot be decoded, the act status will be set to ERROR.
+     *
+     * @param entry the pending message
+     * @return {@code true} if the message was decoded, otherwise {@code false}
+     */
+    private boolean decode(Entry entry) {
+        if (entry.getMessage() == null) {
+            DocumentAct act = entry.getAct();
+            try {
+                entry.setMessage(service.get(act, context.getGenericParser()));
+            } catch (HL7Exception exception) {
+                log.error(exception.getMessage(), exception);
+                service.error(act, HL7MessageStatuses.ERROR, new Date(), exception.getMessage());
+                adjust(-1, 1);
+            }
+        }
+        return entry.getMessage() != null;
     }
 
     /**
@@ -401,19 +698,112 @@ class MessageQueue implements Statistics {
     }
 
     /**
-     * Updates the current act with a status and error message.
+     * Updates an act with a status and error message.
      *
+     * @param act    the message act
      * @param status the act status
      * @param error  the error message
      */
-    private void error(String status, String error) {
+    private void error(DocumentAct act, String status, String error) {
         Date now = new Date();
         try {
             log.error("Error received from " + connector + ":" + error);
-            service.error(currentAct, status, now, error);
+            service.error(act, status, now, error);
+            if (HL7MessageStatuses.ERROR.equals(status)) {
+                adjust(-1, 1);
+            }
         } finally {
             completed(now, error);
         }
     }
 
+    /**
+     * A pending message.
+     */
+    static class Entry {
+
+        /**
+         * The message act.
+         */
+        private final DocumentAct act;
+
+        /**
+         * The decoded message, or {@code null} if it hasn't been decoded.
+         */
+        private Message message;
+
+        /**
+         * The patient identifier, from PID-2, or {@code null} if the message has no patient.
+         */
+        private String patient;
+
+        /**
+         * Constructs an {@link Entry}.
+         *
+         * @param act     the message act
+         * @param message the decoded message. May be {@code null}
+         */
+        public Entry(DocumentAct act, Message message) {
+            this.act = act;
+            setMessage(message);
+        }
+
+        /**
+         * Returns the message act.
+         *
+         * @return the act
+         */
+        public DocumentAct getAct() {
+            return act;
+        }
+
+        /**
+         * Returns the decoded message.
+         *
+         * @return the message, or {@code null} if it hasn't been decoded
+         */
+        public Message getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns the identifier of the patient that the message refers to.
+         *
+         * @return the patient identifier, or {@code null} if the message has no patient
+         */
+        public String getPatient() {
+            return patient;
+        }
+
+        /**
+         * Returns the message control ID (MSH-10).
+         *
+         * @return the message control ID. May be {@code null}
+         */
+        public String getMessageControlID() {
+            try {
+                return (message != null) ? ((MSH) message.get("MSH")).getMessageControlID().getValue() : null;
+            } catch (HL7Exception exception) {
+                return null;
+            }
+        }
+
+        /**
+         * Sets the decoded message.
+         *
+         * @param message the message. May be {@code null}
+         */
+        void setMessage(Message message) {
+            this.message = message;
+            patient = null;
+            if (message != null) {
+                try {
+                    patient = StringUtils.trimToNull(new Terser(message).get("/.PID-2-1"));
+                } catch (HL7Exception ignore) {
+                    // no PID segment
+                }
+            }
+        }
+    }
+
 }
@@ -23,28 +23,40 @@ import ca.uhn.hl7v2.model.v25.datatype.DTM;
 import ca.uhn.hl7v2.model.v25.message.ACK;
 import ca.uhn.hl7v2.model.v25.segment.MSA;
 import ca.uhn.hl7v2.model.v25.segment.MSH;
+import ca.uhn.hl7v2.parser.Parser;
 import ca.uhn.hl7v2.protocol.ReceivingApplication;
 import ca.uhn.hl7v2.protocol.ReceivingApplicationException;
 import ca.uhn.hl7v2.protocol.ReceivingApplicationExceptionHandler;
 import ca.uhn.hl7v2.protocol.Transportable;
+import ca.uhn.hl7v2.util.Terser;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openvpms.component.business.domain.im.act.DocumentAct;
 import org.openvpms.component.business.domain.im.security.User;
 import org.openvpms.component.business.service.security.RunAs;
 import org.openvpms.hl7.io.Connector;
+import org.openvpms.hl7.io.LatencyHistogram;
 import org.openvpms.hl7.io.MessageService;
 import org.openvpms.hl7.io.Statistics;
 import org.openvpms.hl7.util.HL7MessageStatuses;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Listener for HL7 messages.
  * <p/>
+ * If the connector is configured to {@link MLLPReceiver#isStoreAndAck() store and acknowledge} messages, and
+ * workers are supplied, messages are saved and acknowledged on receipt, and processed asynchronously. Messages for
+ * the same patient are processed in the order they were received. Messages that fail due to an exception are
+ * retried up to {@link #MAX_ATTEMPTS} times.
+ * <p/>
  * TODO: timezones and milliseconds are included in messages if the receiver throws an exception or a nak is
  * generated by ApplicationRouterImpl.
  *
@@ -77,6 +89,26 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
      */
     private final MessageConfig config;
 
+    /**
+     * The workers to process stored messages on, or {@code null} if messages are processed on receipt.
+     */
+    private final KeyedExecutor workers;
+
+    /**
+     * The parser, used to decode stored messages.
+     */
+    private final Parser parser;
+
+    /**
+     * The no. of stored messages waiting to be processed.
+     */
+    private int queued;
+
+    /**
+     * The no. of messages in error, or {@code -1} if they haven't been counted.
+     */
+    private int errors = -1;
+
     /**
      * The timestamp of the last received message.
      */
@@ -102,6 +134,21 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
      */
     private static String META_DATA_KEY = MessageReceiver.class.getName() + ".act";
 
+    /**
+     * The maximum no. of attempts to process a stored message.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The delay between attempts to process a stored message, in milliseconds.
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /**
+     * The no. of stored messages to load at a time when the receiver is started.
+     */
+    private static final int PAGE_SIZE = 100;
+
 
     /**
      * Constructs an {@link MessageReceiver}.
@@ -112,6 +159,21 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
      * @param user      the user responsible for messages received the connector
      */
     public MessageReceiver(ReceivingApplication receiver, Connector connector, MessageService service, User user) {
+        this(receiver, connector, service, user, null, null);
+    }
+
+    /**
+     * Constructs an {@link MessageReceiver}.
+     *
+     * @param receiver  the receiver to delegate to
+     * @param connector the connector
+     * @param service   the message service
+     * @param user      the user responsible for messages received the connector
+     * @param workers   the workers to process stored messages on. If {@code null}, messages are processed on receipt
+     * @param parser    the parser to decode stored messages. May be {@code null} if {@code workers} is {@code null}
+     */
+    public MessageReceiver(ReceivingApplication receiver, Connector connector, MessageService service, User user,
+                           KeyedExecutor workers, Parser parser) {
         this.connector = connector;
         config = new MessageConfig();
         config.setIncludeMillis(connector.isIncludeMillis());
@@ -119,6 +181,61 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
         this.receiver = receiver;
         this.service = service;
         this.user = user;
+        boolean storeAndAck = connector instanceof MLLPReceiver && ((MLLPReceiver) connector).isStoreAndAck();
+        this.workers = storeAndAck ? workers : null;
+        this.parser = parser;
+        if (storeAndAck && workers == null) {
+            log.warn("No workers available to process stored messages for " + connector
+                     + ". Messages will be processed on receipt");
+        }
+    }
+
+    /**
+     * Determines if messages are stored and acknowledged on receipt, and processed asynchronously.
+     *
+     * @return {@code true} if messages are stored and acknowledged on receipt
+     */
+    public boolean isStoreAndAck() {
+        return workers != null;
+    }
+
+    /**
+     * Starts the receiver.
+     * <p/>
+     * If messages are stored and acknowledged on receipt, this queues any stored messages that weren't processed
+     * before the receiver was last stopped. Messages are loaded a page at a time.
+     * <p/>
+     * Messages still queued by a previous receiver for the same connector (i.e. when the connector is updated) are
+     * not queued again.
+     */
+    public void start() {
+        if (workers != null) {
+            RunAs.run(user, new Runnable() {
+                @Override
+                public void run() {
+                    int count = 0;
+                    long after = -1;
+                    List<DocumentAct> pending = service.next(connector, after, PAGE_SIZE);
+                    while (!pending.isEmpty()) {
+                        for (DocumentAct act : pending) {
+                            try {
+                                Message message = service.get(act, parser);
+                                if (queue(act, message)) {
+                                    ++count;
+                                }
+                            } catch (Throwable exception) {
+                                error(act, exception);
+                            }
+                            after = act.getId();
+                        }
+                        pending = service.next(connector, after, PAGE_SIZE);
+                    }
+                    if (count != 0) {
+                        log.info("Queued " + count + " unprocessed messages for " + connector);
+                    }
+                }
+            });
+        }
     }
 
     /**
@@ -158,7 +275,7 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
         Callable<Message> callable = new Callable<Message>() {
             @Override
             public Message call() throws Exception {
-                return process(message, metaData);
+                return (workers != null) ? store(message, metaData) : process(message, metaData);
             }
         };
         try {
@@ -213,21 +330,25 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
     /**
      * Returns the number of messages in the queue.
      *
-     * @return {@code 0} - the receiver doesn't support queuing
+     * @return the number of stored messages waiting to be processed. Always {@code 0} unless messages are
+     *         stored and acknowledged on receipt
      */
     @Override
-    public int getQueued() {
-        return 0;
+    public synchronized int getQueued() {
+        return queued;
     }
 
     /**
      * Returns the number of messages in the error queue.
      *
-     * @return {@code 0} - the receiver doesn't support queuing
+     * @return the number of messages that couldn't be processed
      */
     @Override
-    public int getErrors() {
-        return 0;
+    public synchronized int getErrors() {
+        if (errors == -1) {
+            errors = service.getMessages(connector, HL7MessageStatuses.ERROR);
+        }
+        return errors;
     }
 
     /**
@@ -260,6 +381,26 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
         return lastErrorMessage;
     }
 
+    /**
+     * Returns the distribution of times taken to establish connections.
+     *
+     * @return {@code null} - only applies to sending connectors
+     */
+    @Override
+    public LatencyHistogram getConnectLatency() {
+        return null;
+    }
+
+    /**
+     * Returns the distribution of times taken between sending a message and receiving its acknowledgment.
+     *
+     * @return {@code null} - only applies to sending connectors
+     */
+    @Override
+    public LatencyHistogram getAcknowledgmentLatency() {
+        return null;
+    }
+
     /**
      * Returns the connector used to send messages via this queue.
      *
@@ -286,17 +427,7 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
         Message response;
         try {
             response = receiver.processMessage(message, metaData);
-            if (!config.isIncludeMillis() || !config.isIncludeTimeZone()) {
-                // correct the date/time format
-                try {
-                    MSH msh = (MSH) response.get("MSH");
-                    DTM time = msh.getDateTimeOfMessage().getTime();
-                    Calendar calendar = time.getValueAsCalendar();
-                    PopulateHelper.populateDTM(time, calendar, config);
-                } catch (HL7Exception ignore) {
-                    // do nothing
-                }
-            }
+            formatTimestamp(response);
             if (isAccepted(response)) {
                 service.accepted(act, new Date());
                 processed();
@@ -316,6 +447,143 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
         return response;
     }
 
+    /**
+     * Saves a message, queues it for processing, and acknowledges it.
+     *
+     * @param message  an inbound HL7 message
+     * @param metaData message metadata
+     * @return an acknowledgment
+     * @throws Exception if the message cannot be saved or acknowledged
+     */
+    private Message store(Message message, Map<String, Object> metaData) throws Exception {
+        DocumentAct act = service.save(message, connector, user);
+        metaData.put(META_DATA_KEY, act);
+        Message response = message.generateACK();
+        formatTimestamp(response);
+        queue(act, message);
+        return response;
+    }
+
+    /**
+     * Queues a stored message for processing.
+     * <p/>
+     * Messages are keyed on patient identifier, so that messages for the same patient are processed in order.
+     * A message that is already queued or being processed is not queued again.
+     *
+     * @param act     the persistent message
+     * @param message the message
+     * @return {@code true} if the message was queued, {@code false} if it was already queued
+     */
+    private boolean queue(final DocumentAct act, final Message message) {
+        boolean result = false;
+        synchronized (this) {
+            ++queued;
+        }
+        try {
+            result = workers.execute(getPatientId(message), act.getObjectReference(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        RunAs.run(user, new Runnable() {
+                            @Override
+                            public void run() {
+                                processStored(act, message);
+                            }
+                        });
+                    } catch (Throwable exception) {
+                        log.error(exception.getMessage(), exception);
+                    } finally {
+                        synchronized (MessageReceiver.this) {
+                            --queued;
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // shutting down. The message will be processed when the receiver is next started
+        }
+        if (!result) {
+            synchronized (this) {
+                --queued;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Processes a stored message.
+     * <p/>
+     * If processing fails with an exception, it is retried up to {@link #MAX_ATTEMPTS} times. A message that is
+     * rejected by the receiving application is not retried.
+     *
+     * @param act     the persistent message
+     * @param message the message
+     */
+    private void processStored(DocumentAct act, Message message) {
+        Throwable cause = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; ++attempt) {
+            try {
+                Map<String, Object> metaData = new HashMap<String, Object>();
+                metaData.put(META_DATA_KEY, act);
+                Message response = receiver.processMessage(message, metaData);
+                if (isAccepted(response)) {
+                    service.accepted(act, new Date());
+                    processed();
+                } else {
+                    error(act, getError(response));
+                }
+                return;
+            } catch (Throwable exception) {
+                cause = exception;
+                if (attempt < MAX_ATTEMPTS) {
+                    log.warn("Failed to process message " + act.getId() + ", attempt " + attempt + " of "
+                             + MAX_ATTEMPTS + ": " + exception.getMessage());
+                    try {
+                        Thread.sleep(RETRY_DELAY * attempt);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        error(act, cause);
+    }
+
+    /**
+     * Returns the patient identifier of a message.
+     *
+     * @param message the message
+     * @return the patient identifier (PID-2), or {@code null} if the message doesn't have one
+     */
+    private String getPatientId(Message message) {
+        String result = null;
+        try {
+            result = StringUtils.trimToNull(new Terser(message).get("/.PID-2-1"));
+        } catch (HL7Exception ignore) {
+            // no PID segment
+        }
+        return result;
+    }
+
+    /**
+     * Corrects the date/time format of a response, if the connector excludes milliseconds or the timezone.
+     *
+     * @param response the response
+     */
+    private void formatTimestamp(Message response) {
+        if (!config.isIncludeMillis() || !config.isIncludeTimeZone()) {
+            try {
+                MSH msh = (MSH) response.get("MSH");
+                DTM time = msh.getDateTimeOfMessage().getTime();
+                Calendar calendar = time.getValueAsCalendar();
+                PopulateHelper.populateDTM(time, calendar, config);
+            } catch (HL7Exception ignore) {
+                // do nothing
+            }
+        }
+    }
+
     /**
      * Invoked when a received message cannot be processed due to an exception.
      *
@@ -337,6 +605,11 @@ class MessageReceiver implements ReceivingApplication, ReceivingApplicationExcep
     private void error(DocumentAct act, String message) {
         Date timestamp = new Date();
         service.error(act, HL7MessageStatuses.ERROR, timestamp, message);
+        synchronized (this) {
+            if (errors != -1) {
+                ++errors;
+            }
+        }
         error(message, timestamp);
     }
 
@@ -41,6 +41,7 @@ import org.openvpms.hl7.io.MessageService;
 import org.openvpms.hl7.util.HL7Archetypes;
 import org.openvpms.hl7.util.HL7MessageStatuses;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -177,11 +178,46 @@ public class MessageServiceImpl implements MessageService {
      */
     @Override
     public DocumentAct next(Connector connector) {
+        List<DocumentAct> acts = next(connector, 1);
+        return !acts.isEmpty() ? acts.get(0) : null;
+    }
+
+    /**
+     * Returns the next messages for a connector, in the order they were queued.
+     *
+     * @param connector the connector
+     * @param count     the maximum no. of messages to return
+     * @return the next messages. May be empty
+     */
+    @Override
+    public List<DocumentAct> next(Connector connector, int count) {
+        return next(connector, -1, count);
+    }
+
+    /**
+     * Returns the next messages for a connector that were queued after the specified message, in the order they
+     * were queued.
+     *
+     * @param connector the connector
+     * @param after     the identifier of the last message returned by a previous call, or {@code -1} to start from
+     *                  the first message
+     * @param count     the maximum no. of messages to return
+     * @return the next messages. May be empty
+     */
+    @Override
+    public List<DocumentAct> next(Connector connector, long after, int count) {
         ArchetypeQuery query = createQuery(connector, HL7MessageStatuses.PENDING);
+        if (after != -1) {
+            query.add(Constraints.gt("id", after));
+        }
         query.add(Constraints.sort("id"));
-        query.setMaxResults(1);
+        query.setMaxResults(count);
+        List<DocumentAct> result = new ArrayList<DocumentAct>();
         IMObjectQueryIterator<DocumentAct> iterator = new IMObjectQueryIterator<DocumentAct>(service, query);
-        return (iterator.hasNext()) ? iterator.next() : null;
+        while (iterator.hasNext() && result.size() < count) {
+            result.add(iterator.next());
+        }
+        return result;
     }
 
     /**
@@ -26,10 +26,12 @@ import org.openvpms.hl7.io.Connector;
 import org.openvpms.hl7.io.MessageDispatcher;
 import org.openvpms.hl7.patient.PatientContext;
 import org.openvpms.hl7.pharmacy.Pharmacies;
+import org.openvpms.hl7.pharmacy.PharmacyOrder;
 import org.openvpms.hl7.pharmacy.PharmacyOrderService;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Default implementation of the {@link PharmacyOrderService}.
@@ -160,6 +162,60 @@ public class PharmacyOrderServiceImpl implements PharmacyOrderService {
         }
     }
 
+    /**
+     * Places several orders for the same patient and visit with a pharmacy.
+     * <p/>
+     * If the pharmacy's connector is configured to accept multiple orders per message, the orders are sent in a
+     * single message, otherwise each order is sent in its own message.
+     *
+     * @param orders   the orders, in the order they should be processed
+     * @param pharmacy the pharmacy. An <em>entity.HL7ServicePharmacy</em>
+     * @param user     the user that generated the orders
+     * @return {@code true} if the orders were placed
+     */
+    @Override
+    public boolean order(List<PharmacyOrder> orders, Entity pharmacy, User user) {
+        boolean result = false;
+        Connector connector = getConnector(pharmacy);
+        if (connector != null && !orders.isEmpty()) {
+            MessageConfig config = MessageConfigFactory.create(connector);
+            if (orders.size() > 1 && connector instanceof MLLPSender && ((MLLPSender) connector).isMultipleOrders()) {
+                dispatcher.queue(factory.createOrders(orders, config), connector, config, user);
+            } else {
+                for (PharmacyOrder order : orders) {
+                    dispatcher.queue(createMessage(order, config), connector, config, user);
+                }
+            }
+            result = true;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a message for a single order.
+     *
+     * @param order  the order
+     * @param config the message population configuration
+     * @return a new message
+     */
+    private Message createMessage(PharmacyOrder order, MessageConfig config) {
+        PatientContext context = order.getContext();
+        Product product = order.getProduct();
+        BigDecimal quantity = order.getQuantity();
+        long placerOrderNumber = order.getPlacerOrderNumber();
+        Date date = order.getDate();
+        switch (order.getType()) {
+            case CREATE:
+                return factory.createOrder(context, product, quantity, placerOrderNumber, date, config);
+            case UPDATE:
+                return factory.updateOrder(context, product, quantity, placerOrderNumber, date, config);
+            case CANCEL:
+                return factory.cancelOrder(context, product, quantity, placerOrderNumber, config, date);
+            default:
+                return factory.discontinueOrder(context, product, quantity, placerOrderNumber, config, date);
+        }
+    }
+
     /**
      * Returns a connection for a pharmacy.
      *
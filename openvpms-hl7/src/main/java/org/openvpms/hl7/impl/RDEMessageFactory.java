@@ -16,8 +16,10 @@
 
 package org.openvpms.hl7.impl;
 
+import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v25.group.RDE_O11_ORDER;
 import ca.uhn.hl7v2.model.v25.message.RDE_O11;
 import ca.uhn.hl7v2.model.v25.segment.ORC;
 import ca.uhn.hl7v2.model.v25.segment.RXO;
@@ -26,9 +28,11 @@ import org.openvpms.component.business.service.archetype.IArchetypeService;
 import org.openvpms.component.business.service.archetype.helper.IMObjectBean;
 import org.openvpms.component.business.service.lookup.ILookupService;
 import org.openvpms.hl7.patient.PatientContext;
+import org.openvpms.hl7.pharmacy.PharmacyOrder;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.List;
 
 import static org.openvpms.hl7.impl.PopulateHelper.populateDTM;
 
@@ -125,6 +129,39 @@ public class RDEMessageFactory extends AbstractMessageFactory {
         return createOrder(context, "DC", product, quantity, placerOrderNumber, date, config);
     }
 
+    /**
+     * Creates a message containing several orders for the same patient and visit.
+     * <p/>
+     * The patient and visit details are populated from the context of the first order. Each order is added as a
+     * separate ORDER group, in the order supplied.
+     *
+     * @param orders the orders
+     * @param config the message population configuration
+     * @return a new message
+     */
+    public Message createOrders(List<PharmacyOrder> orders, MessageConfig config) {
+        if (orders.isEmpty()) {
+            throw new IllegalArgumentException("Argument 'orders' must contain at least one order");
+        }
+        RDE_O11 rde;
+        try {
+            PatientContext context = orders.get(0).getContext();
+            rde = new RDE_O11(getModelClassFactory());
+            init(rde, "RDE", "O11");
+            populate(rde.getPATIENT().getPID(), context, config);
+            populate(rde.getPATIENT().getPATIENT_VISIT().getPV1(), context, config);
+            for (int i = 0; i < orders.size(); ++i) {
+                PharmacyOrder order = orders.get(i);
+                populate(rde.getORDER(i), order.getContext(), getOrderControl(order.getType()), order.getProduct(),
+                         order.getQuantity(), order.getPlacerOrderNumber(), order.getDate(), config);
+            }
+            populateAllergies(rde.getPATIENT(), context);
+        } catch (Throwable exception) {
+            throw new IllegalStateException(exception);
+        }
+        return rde;
+    }
+
     /**
      * Creates an order message.
      *
@@ -145,31 +182,7 @@ public class RDEMessageFactory extends AbstractMessageFactory {
             init(rde, "RDE", "O11");
             populate(rde.getPATIENT().getPID(), context, config);
             populate(rde.getPATIENT().getPATIENT_VISIT().getPV1(), context, config);
-            ORC orc = rde.getORDER().getORC();
-            orc.getOrderControl().setValue(orderControl);
-            orc.getPlacerOrderNumber().getEntityIdentifier().setValue(Long.toString(placerOrderNumber));
-            populateDTM(orc.getDateTimeOfTransaction().getTime(), date, config);
-            if (context.getClinicianId() != -1) {
-                PopulateHelper.populateClinician(orc.getEnteredBy(0), context);
-            }
-            RXO rxo = rde.getORDER().getORDER_DETAIL().getRXO();
-            PopulateHelper.populateProduct(rxo.getRequestedGiveCode(), product);
-            IMObjectBean bean = new IMObjectBean(product, getArchetypeService());
-            String dispensingCode = bean.getString(DISPENSING_UNITS);
-            if (dispensingCode != null) {
-                String dispensingName = getLookupService().getName(product, DISPENSING_UNITS);
-                PopulateHelper.populateCE(rxo.getRequestedGiveUnits(), dispensingCode, dispensingName);
-            }
-            String sellingCode = bean.getString(SELLING_UNITS);
-            String dispensingInstructions = bean.getString("dispInstructions");
-            if (dispensingInstructions != null) {
-                rxo.getProviderSAdministrationInstructions(0).getText().setValue(dispensingInstructions);
-            }
-            rxo.getRequestedDispenseAmount().setValue(quantity.toString());
-            if (sellingCode != null) {
-                String sellingName = getLookupService().getName(product, SELLING_UNITS);
-                PopulateHelper.populateCE(rxo.getRequestedDispenseUnits(), sellingCode, sellingName);
-            }
+            populate(rde.getORDER(), context, orderControl, product, quantity, placerOrderNumber, date, config);
             populateAllergies(rde.getPATIENT(), context);
         } catch (Throwable exception) {
             throw new IllegalStateException(exception);
@@ -177,5 +190,66 @@ public class RDEMessageFactory extends AbstractMessageFactory {
         return rde;
     }
 
+    /**
+     * Populates an order group.
+     *
+     * @param group             the order group
+     * @param context           the patient context
+     * @param orderControl      the type of order
+     * @param product           the product to order
+     * @param quantity          the quantity to order
+     * @param placerOrderNumber the order identifier
+     * @param date              the order date
+     * @param config            the message population configuration
+     * @throws HL7Exception for any HL7 error
+     */
+    private void populate(RDE_O11_ORDER group, PatientContext context, String orderControl, Product product,
+                          BigDecimal quantity, long placerOrderNumber, Date date, MessageConfig config)
+            throws HL7Exception {
+        ORC orc = group.getORC();
+        orc.getOrderControl().setValue(orderControl);
+        orc.getPlacerOrderNumber().getEntityIdentifier().setValue(Long.toString(placerOrderNumber));
+        populateDTM(orc.getDateTimeOfTransaction().getTime(), date, config);
+        if (context.getClinicianId() != -1) {
+            PopulateHelper.populateClinician(orc.getEnteredBy(0), context);
+        }
+        RXO rxo = group.getORDER_DETAIL().getRXO();
+        PopulateHelper.populateProduct(rxo.getRequestedGiveCode(), product);
+        IMObjectBean bean = new IMObjectBean(product, getArchetypeService());
+        String dispensingCode = bean.getString(DISPENSING_UNITS);
+        if (dispensingCode != null) {
+            String dispensingName = getLookupService().getName(product, DISPENSING_UNITS);
+            PopulateHelper.populateCE(rxo.getRequestedGiveUnits(), dispensingCode, dispensingName);
+        }
+        String sellingCode = bean.getString(SELLING_UNITS);
+        String dispensingInstructions = bean.getString("dispInstructions");
+        if (dispensingInstructions != null) {
+            rxo.getProviderSAdministrationInstructions(0).getText().setValue(dispensingInstructions);
+        }
+        rxo.getRequestedDispenseAmount().setValue(quantity.toString());
+        if (sellingCode != null) {
+            String sellingName = getLookupService().getName(product, SELLING_UNITS);
+            PopulateHelper.populateCE(rxo.getRequestedDispenseUnits(), sellingCode, sellingName);
+        }
+    }
+
+    /**
+     * Returns the order control code for an order type.
+     *
+     * @param type the order type
+     * @return the order control code
+     */
+    private String getOrderControl(PharmacyOrder.Type type) {
+        switch (type) {
+            case CREATE:
+                return "NW";
+            case UPDATE:
+                return "RP";
+            case CANCEL:
+                return "CA";
+            default:
+                return "DC";
+        }
+    }
 
 }
@@ -0,0 +1,161 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of latencies, in milliseconds, in a fixed set of buckets.
+ * <p/>
+ * This is thread safe.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class LatencyHistogram {
+
+    /**
+     * The upper bounds of each bucket, in milliseconds. The last bucket holds all latencies greater than the last
+     * bound.
+     */
+    private static final long[] BOUNDS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    /**
+     * The counts for each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+
+    /**
+     * The total no. of latencies recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of the latencies recorded.
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * The maximum latency recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Records a latency.
+     *
+     * @param millis the latency, in milliseconds
+     */
+    public void add(long millis) {
+        if (millis < 0) {
+            millis = 0;
+        }
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            ++bucket;
+        }
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(millis);
+        long current;
+        while ((current = max.get()) < millis && !max.compareAndSet(current, millis)) {
+            // retry
+        }
+    }
+
+    /**
+     * Returns the upper bounds of each bucket, in milliseconds.
+     * <p/>
+     * There is one more bucket than bounds; the last bucket holds latencies greater than the last bound.
+     *
+     * @return the bucket upper bounds
+     */
+    public long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Returns the no. of latencies in each bucket.
+     *
+     * @return the bucket counts
+     */
+    public long[] getCounts() {
+        long[] result = new long[counts.length()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the total no. of latencies recorded.
+     *
+     * @return the no. of latencies
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return the mean latency, in milliseconds, or {@code 0} if none have been recorded
+     */
+    public long getMean() {
+        long n = count.get();
+        return (n != 0) ? total.get() / n : 0;
+    }
+
+    /**
+     * Returns the maximum latency.
+     *
+     * @return the maximum latency, in milliseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an approximation of the latency at the specified percentile.
+     * <p/>
+     * This is the upper bound of the bucket that the percentile falls in, or the maximum latency, if it falls
+     * in the last bucket.
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the latency, in milliseconds
+     */
+    public long getPercentile(double percentile) {
+        long[] values = getCounts();
+        long n = 0;
+        for (long value : values) {
+            n += value;
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * percentile / 100);
+        long sum = 0;
+        for (int i = 0; i < BOUNDS.length; ++i) {
+            sum += values[i];
+            if (sum >= target) {
+                return BOUNDS[i];
+            }
+        }
+        return getMax();
+    }
+
+}
@@ -25,6 +25,7 @@ import org.openvpms.component.business.service.archetype.ArchetypeServiceExcepti
 import org.openvpms.hl7.util.HL7MessageStatuses;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * HL7 message service.
@@ -84,6 +85,31 @@ public interface MessageService {
      */
     DocumentAct next(Connector connector);
 
+    /**
+     * Returns the next messages for a connector, in the order they were queued.
+     *
+     * @param connector the connector
+     * @param count     the maximum no. of messages to return
+     * @return the next messages. May be empty
+     * @throws ArchetypeServiceException for any archetype service error
+     */
+    List<DocumentAct> next(Connector connector, int count);
+
+    /**
+     * Returns the next messages for a connector that were queued after the specified message, in the order they
+     * were queued.
+     * <p/>
+     * This can be used to page through the queued messages.
+     *
+     * @param connector the connector
+     * @param after     the identifier of the last message returned by a previous call, or {@code -1} to start from
+     *                  the first message
+     * @param count     the maximum no. of messages to return
+     * @return the next messages. May be empty
+     * @throws ArchetypeServiceException for any archetype service error
+     */
+    List<DocumentAct> next(Connector connector, long after, int count);
+
     /**
      * Returns a count of messages for the specified connector and status.
      *
@@ -68,6 +68,24 @@ public interface Statistics {
      */
     String getErrorMessage();
 
+    /**
+     * Returns the distribution of times taken to establish connections.
+     * <p/>
+     * Only applies to sending connectors.
+     *
+     * @return the connection latencies, or {@code null} if they aren't recorded
+     */
+    LatencyHistogram getConnectLatency();
+
+    /**
+     * Returns the distribution of times taken between sending a message and receiving its acknowledgment.
+     * <p/>
+     * Only applies to sending connectors.
+     *
+     * @return the acknowledgment latencies, or {@code null} if they aren't recorded
+     */
+    LatencyHistogram getAcknowledgmentLatency();
+
     /**
      * Returns the connector that these statistics apply to.
      *
@@ -119,6 +119,11 @@ public class PatientContext {
      */
     private final ILookupService lookups;
 
+    /**
+     * The snapshot of the patient and customer information, or {@code null} if it is retrieved on demand.
+     */
+    private final PatientSnapshot snapshot;
+
     /**
      * Constructs an {@link PatientContext}.
      *
@@ -135,6 +140,28 @@ public class PatientContext {
     public PatientContext(Party patient, Party customer, Act visit, Party location, User clinician,
                           PatientRules patientRules, CustomerRules customerRules, IArchetypeService service,
                           ILookupService lookups) {
+        this(patient, customer, visit, location, clinician, patientRules, customerRules, service, lookups, null);
+    }
+
+    /**
+     * Constructs an {@link PatientContext}.
+     *
+     * @param patient       the patient
+     * @param customer      the customer. May be {@code null}
+     * @param visit         the visit
+     * @param location      the practice location
+     * @param clinician     the clinician. May be {@code null}
+     * @param patientRules  the patient rules
+     * @param customerRules the customer rules
+     * @param service       the archetype service
+     * @param lookups       the lookup service
+     * @param snapshot      the snapshot of the patient and customer information. If {@code null}, the information
+     *                      will be retrieved on demand
+     */
+    PatientContext(Party patient, Party customer, Act visit, Party location, User clinician,
+                   PatientRules patientRules, CustomerRules customerRules, IArchetypeService service,
+                   ILookupService lookups, PatientSnapshot snapshot) {
+        this.snapshot = snapshot;
         this.patient = patient;
         this.customer = customer;
         this.visit = visit;
@@ -263,6 +290,9 @@ public class PatientContext {
      * @return the patient date of birth. May be {@code null}
      */
     public Date getDateOfBirth() {
+        if (snapshot != null) {
+            return snapshot.getDateOfBirth();
+        }
         return patientRules.getDateOfBirth(patient);
     }
 
@@ -272,6 +302,9 @@ public class PatientContext {
      * @return the patient weight, or {@code null} if unknown
      */
     public BigDecimal getPatientWeight() {
+        if (snapshot != null) {
+            return snapshot.getWeight();
+        }
         getWeightAct();
         return (weight != null) ? patientRules.getWeight(weight) : null;
     }
@@ -282,6 +315,9 @@ public class PatientContext {
      * @return the date, or {@code null} if the patient has no weight record
      */
     public Date getWeighDate() {
+        if (snapshot != null) {
+            return snapshot.getWeighDate();
+        }
         getWeightAct();
         return weight != null ? weight.getActivityStartTime() : null;
     }
@@ -292,6 +328,9 @@ public class PatientContext {
      * @return the customer home phone. May be {@code null}
      */
     public String getHomePhone() {
+        if (snapshot != null) {
+            return snapshot.getHomePhone();
+        }
         return (customer != null) ? customerRules.getHomeTelephone(customer) : null;
     }
 
@@ -301,6 +340,9 @@ public class PatientContext {
      * @return the customer work phone. May be {@code null}
      */
     public String getWorkPhone() {
+        if (snapshot != null) {
+            return snapshot.getWorkPhone();
+        }
         return (customer != null) ? customerRules.getWorkTelephone(customer) : null;
     }
 
@@ -319,6 +361,9 @@ public class PatientContext {
      * @return the patient species name
      */
     public String getSpeciesName() {
+        if (snapshot != null) {
+            return snapshot.getSpeciesName();
+        }
         return lookups.getName(patient, "species");
     }
 
@@ -337,6 +382,9 @@ public class PatientContext {
      * @return the patient breed name. May be {@code null}
      */
     public String getBreedName() {
+        if (snapshot != null) {
+            return snapshot.getBreedName();
+        }
         return lookups.getName(patient, "breed");
     }
 
@@ -400,6 +448,9 @@ public class PatientContext {
      * @return the customer address. May be {@code null}
      */
     public Contact getAddress() {
+        if (snapshot != null) {
+            return snapshot.getAddress();
+        }
         return (customer != null) ? customerRules.getContact(customer, ContactArchetypes.LOCATION, "HOME") : null;
     }
 
@@ -409,6 +460,9 @@ public class PatientContext {
      * @return the patient allergies
      */
     public List<Act> getAllergies() {
+        if (snapshot != null) {
+            return snapshot.getAllergies();
+        }
         if (allergies == null) {
             allergies = new ArrayList<Act>();
             ArchetypeQuery query = new ArchetypeQuery(PatientArchetypes.ALERT);
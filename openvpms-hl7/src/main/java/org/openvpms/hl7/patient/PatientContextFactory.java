@@ -19,11 +19,17 @@ package org.openvpms.hl7.patient;
 import org.openvpms.archetype.rules.party.CustomerRules;
 import org.openvpms.archetype.rules.patient.PatientRules;
 import org.openvpms.component.business.domain.im.act.Act;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
 import org.openvpms.component.business.domain.im.party.Party;
 import org.openvpms.component.business.domain.im.security.User;
 import org.openvpms.component.business.service.archetype.IArchetypeService;
 import org.openvpms.component.business.service.lookup.ILookupService;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Factory for {@link PatientContext} instances.
  *
@@ -78,7 +84,95 @@ public class PatientContextFactory {
      * @return a new {@link PatientContext}
      */
     public PatientContext createContext(Party patient, Party customer, Act visit, Party location, User clinician) {
+        return createContext(patient, customer, visit, location, clinician, null);
+    }
+
+    /**
+     * Returns a factory that populates the patient and customer information of each patient once, and shares it
+     * between all of the contexts it creates for that patient.
+     * <p/>
+     * This avoids repeatedly querying allergies, weight and contacts when several messages are sent for the same
+     * patient in a single operation, such as a charge save. As the information isn't refreshed, the returned factory
+     * should be discarded once the operation completes.
+     *
+     * @return a new factory
+     */
+    public PatientContextFactory snapshot() {
+        return new SnapshotFactory(patientRules, customerRules, service, lookups);
+    }
+
+    /**
+     * Creates a new context.
+     *
+     * @param patient   the patient
+     * @param customer  the customer
+     * @param visit     the patient visit (an <em>act.patientClinicalEvent</em>
+     * @param location  the practice location
+     * @param clinician the clinician
+     * @param snapshot  the patient and customer information. May be {@code null}
+     * @return a new {@link PatientContext}
+     */
+    PatientContext createContext(Party patient, Party customer, Act visit, Party location, User clinician,
+                                 PatientSnapshot snapshot) {
         return new PatientContext(patient, customer, visit, location, clinician, patientRules, customerRules, service,
-                                  lookups);
+                                  lookups, snapshot);
+    }
+
+    /**
+     * A factory that shares a {@link PatientSnapshot} between contexts for the same patient and customer.
+     */
+    private static class SnapshotFactory extends PatientContextFactory {
+
+        /**
+         * The snapshots, keyed on patient and customer reference.
+         */
+        private final Map<List<IMObjectReference>, PatientSnapshot> snapshots
+                = new HashMap<List<IMObjectReference>, PatientSnapshot>();
+
+        /**
+         * Constructs a {@link SnapshotFactory}.
+         *
+         * @param patientRules  the patient rules
+         * @param customerRules the customer rules
+         * @param service       the archetype service
+         * @param lookups       the lookup service
+         */
+        public SnapshotFactory(PatientRules patientRules, CustomerRules customerRules, IArchetypeService service,
+                               ILookupService lookups) {
+            super(patientRules, customerRules, service, lookups);
+        }
+
+        /**
+         * Creates a new context.
+         *
+         * @param patient   the patient
+         * @param customer  the customer
+         * @param visit     the patient visit (an <em>act.patientClinicalEvent</em>
+         * @param location  the practice location
+         * @param clinician the clinician
+         * @return a new {@link PatientContext}
+         */
+        @Override
+        public synchronized PatientContext createContext(Party patient, Party customer, Act visit, Party location,
+                                                         User clinician) {
+            List<IMObjectReference> key = Arrays.asList(patient.getObjectReference(),
+                                                        customer != null ? customer.getObjectReference() : null);
+            PatientSnapshot snapshot = snapshots.get(key);
+            if (snapshot == null) {
+                snapshot = new PatientSnapshot(createContext(patient, customer, visit, location, clinician, null));
+                snapshots.put(key, snapshot);
+            }
+            return createContext(patient, customer, visit, location, clinician, snapshot);
+        }
+
+        /**
+         * Returns a factory that shares patient and customer information between the contexts it creates.
+         *
+         * @return this factory
+         */
+        @Override
+        public PatientContextFactory snapshot() {
+            return this;
+        }
     }
 }
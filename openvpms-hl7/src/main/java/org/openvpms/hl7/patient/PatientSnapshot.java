@@ -0,0 +1,181 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.patient;
+
+import org.openvpms.component.business.domain.im.act.Act;
+import org.openvpms.component.business.domain.im.party.Contact;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the patient and customer information of a {@link PatientContext} that requires queries
+ * to retrieve.
+ * <p/>
+ * This allows the information to be shared by the contexts for each message sent for a patient in a single
+ * operation, such as a charge save.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class PatientSnapshot {
+
+    /**
+     * The patient date of birth.
+     */
+    private final Date dateOfBirth;
+
+    /**
+     * The patient weight.
+     */
+    private final BigDecimal weight;
+
+    /**
+     * The date when the patient was weighed.
+     */
+    private final Date weighDate;
+
+    /**
+     * The customer home phone.
+     */
+    private final String homePhone;
+
+    /**
+     * The customer work phone.
+     */
+    private final String workPhone;
+
+    /**
+     * The customer address.
+     */
+    private final Contact address;
+
+    /**
+     * The patient species name.
+     */
+    private final String speciesName;
+
+    /**
+     * The patient breed name.
+     */
+    private final String breedName;
+
+    /**
+     * The patient allergies.
+     */
+    private final List<Act> allergies;
+
+    /**
+     * Constructs a {@link PatientSnapshot}.
+     *
+     * @param context the context to populate the snapshot from
+     */
+    public PatientSnapshot(PatientContext context) {
+        dateOfBirth = context.getDateOfBirth();
+        weight = context.getPatientWeight();
+        weighDate = context.getWeighDate();
+        homePhone = context.getHomePhone();
+        workPhone = context.getWorkPhone();
+        address = context.getAddress();
+        speciesName = context.getSpeciesName();
+        breedName = context.getBreedName();
+        allergies = Collections.unmodifiableList(new ArrayList<Act>(context.getAllergies()));
+    }
+
+    /**
+     * Returns the patient date of birth.
+     *
+     * @return the patient date of birth. May be {@code null}
+     */
+    public Date getDateOfBirth() {
+        return dateOfBirth;
+    }
+
+    /**
+     * Returns the patient weight.
+     *
+     * @return the patient weight, or {@code null} if unknown
+     */
+    public BigDecimal getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the date when the patient was weighed.
+     *
+     * @return the date, or {@code null} if the patient has no weight record
+     */
+    public Date getWeighDate() {
+        return weighDate;
+    }
+
+    /**
+     * Returns the customer home phone.
+     *
+     * @return the customer home phone. May be {@code null}
+     */
+    public String getHomePhone() {
+        return homePhone;
+    }
+
+    /**
+     * Returns the customer work phone.
+     *
+     * @return the customer work phone. May be {@code null}
+     */
+    public String getWorkPhone() {
+        return workPhone;
+    }
+
+    /**
+     * Returns the customer address.
+     *
+     * @return the customer address. May be {@code null}
+     */
+    public Contact getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the patient species name.
+     *
+     * @return the patient species name
+     */
+    public String getSpeciesName() {
+        return speciesName;
+    }
+
+    /**
+     * Returns the patient breed name.
+     *
+     * @return the patient breed name. May be {@code null}
+     */
+    public String getBreedName() {
+        return breedName;
+    }
+
+    /**
+     * Returns the patient allergies.
+     *
+     * @return the patient allergies
+     */
+    public List<Act> getAllergies() {
+        return allergies;
+    }
+}
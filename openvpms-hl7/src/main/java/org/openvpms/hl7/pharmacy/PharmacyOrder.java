@@ -0,0 +1,142 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.pharmacy;
+
+import org.openvpms.component.business.domain.im.product.Product;
+import org.openvpms.hl7.patient.PatientContext;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * An order to be placed via {@link PharmacyOrderService#order}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class PharmacyOrder {
+
+    /**
+     * The order type.
+     */
+    public enum Type {
+        CREATE, UPDATE, CANCEL, DISCONTINUE
+    }
+
+    /**
+     * The order type.
+     */
+    private final Type type;
+
+    /**
+     * The patient context.
+     */
+    private final PatientContext context;
+
+    /**
+     * The product to order.
+     */
+    private final Product product;
+
+    /**
+     * The quantity to order.
+     */
+    private final BigDecimal quantity;
+
+    /**
+     * The placer order number.
+     */
+    private final long placerOrderNumber;
+
+    /**
+     * The order date.
+     */
+    private final Date date;
+
+    /**
+     * Constructs a {@link PharmacyOrder}.
+     *
+     * @param type              the order type
+     * @param context           the patient context
+     * @param product           the product to order
+     * @param quantity          the quantity to order
+     * @param placerOrderNumber the placer order number, to uniquely identify the order
+     * @param date              the order date
+     */
+    public PharmacyOrder(Type type, PatientContext context, Product product, BigDecimal quantity,
+                         long placerOrderNumber, Date date) {
+        this.type = type;
+        this.context = context;
+        this.product = product;
+        this.quantity = quantity;
+        this.placerOrderNumber = placerOrderNumber;
+        this.date = date;
+    }
+
+    /**
+     * Returns the order type.
+     *
+     * @return the order type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the patient context.
+     *
+     * @return the patient context
+     */
+    public PatientContext getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the product to order.
+     *
+     * @return the product
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Returns the quantity to order.
+     *
+     * @return the quantity
+     */
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns the placer order number.
+     *
+     * @return the placer order number
+     */
+    public long getPlacerOrderNumber() {
+        return placerOrderNumber;
+    }
+
+    /**
+     * Returns the order date.
+     *
+     * @return the order date
+     */
+    public Date getDate() {
+        return date;
+    }
+}
@@ -23,6 +23,7 @@ import org.openvpms.hl7.patient.PatientContext;
 
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Pharmacy Order service.
@@ -87,4 +88,17 @@ public interface PharmacyOrderService {
      */
     void discontinueOrder(PatientContext context, Product product, BigDecimal quantity, long placerOrderNumber,
                           Date date, Entity pharmacy, User user);
-}
\ No newline at end of file
+
+    /**
+     * Places several orders for the same patient and visit with a pharmacy.
+     * <p/>
+     * If the pharmacy's connector is configured to accept multiple orders per message, the orders are sent in a
+     * single message, otherwise each order is sent in its own message.
+     *
+     * @param orders   the orders, in the order they should be processed
+     * @param pharmacy the pharmacy. An <em>entity.HL7ServicePharmacy</em>
+     * @param user     the user that generated the orders
+     * @return {@code true} if the orders were placed
+     */
+    boolean order(List<PharmacyOrder> orders, Entity pharmacy, User user);
+}
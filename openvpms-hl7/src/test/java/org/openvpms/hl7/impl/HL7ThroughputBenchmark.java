@@ -0,0 +1,460 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.impl;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v25.message.RDS_O13;
+import ca.uhn.hl7v2.protocol.ReceivingApplication;
+import ca.uhn.hl7v2.protocol.ReceivingApplicationException;
+import ca.uhn.hl7v2.util.Terser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openvpms.archetype.rules.patient.PatientRules;
+import org.openvpms.archetype.rules.practice.PracticeRules;
+import org.openvpms.archetype.rules.user.UserRules;
+import org.openvpms.archetype.test.TestHelper;
+import org.openvpms.component.business.domain.im.act.Act;
+import org.openvpms.component.business.domain.im.common.Entity;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
+import org.openvpms.component.business.domain.im.party.Party;
+import org.openvpms.component.business.domain.im.product.Product;
+import org.openvpms.component.business.domain.im.security.User;
+import org.openvpms.component.business.service.archetype.helper.IMObjectBean;
+import org.openvpms.component.business.service.security.RunAs;
+import org.openvpms.hl7.io.Connector;
+import org.openvpms.hl7.io.MessageService;
+import org.openvpms.hl7.io.Statistics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the throughput of the HL7 dispatch and receive paths.
+ * <p/>
+ * Outbound messages are queued via {@link MessageDispatcherImpl#queue} and sent over MLLP to an {@link MLLPStub}.
+ * Inbound messages are passed to a {@link MessageReceiver}, both synchronously and in store-and-acknowledge mode,
+ * and processed by an {@link RDSProcessor}, which creates and saves the pharmacy orders.
+ * Each run reports messages/sec, the p50 and p99 end-to-end latencies, and the JDBC statements executed per message.
+ * <p/>
+ * These require a database, so aren't suited to JMH, and are named so that they aren't run as part of the normal
+ * build. Run them with:
+ * <pre>
+ * mvn test -Dtest=HL7ThroughputBenchmark
+ * </pre>
+ * The load may be varied with the following system properties:
+ * <ul>
+ * <li>hl7.benchmark.messages - the no. of messages per run. Defaults to 500</li>
+ * <li>hl7.benchmark.ackLatency - the stub acknowledgment latency, in milliseconds. Defaults to 0</li>
+ * <li>hl7.benchmark.errorRate - the proportion of messages the stub acknowledges with AE. Defaults to 0</li>
+ * <li>hl7.benchmark.rejectRate - the proportion of messages the stub acknowledges with AR. Defaults to 0</li>
+ * <li>hl7.benchmark.dropRate - the proportion of messages the stub drops the connection for. Defaults to 0</li>
+ * </ul>
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class HL7ThroughputBenchmark extends AbstractRDSTest {
+
+    /**
+     * The MLLP stub to send messages to.
+     */
+    private MLLPStub stub;
+
+    /**
+     * The dispatcher.
+     */
+    private MessageDispatcherImpl dispatcher;
+
+    /**
+     * The sender.
+     */
+    private MLLPSender sender;
+
+    /**
+     * The receiver.
+     */
+    private MLLPReceiver receiver;
+
+    /**
+     * The message service.
+     */
+    private MessageService messageService;
+
+    /**
+     * The message context.
+     */
+    private HapiContext messageContext;
+
+    /**
+     * The user responsible for messages.
+     */
+    private User user;
+
+    /**
+     * The product to order and dispense.
+     */
+    private Product product;
+
+    /**
+     * The no. of messages per run.
+     */
+    private int count;
+
+    /**
+     * The Hibernate statistics, used to count JDBC statements.
+     */
+    private org.hibernate.stat.Statistics statistics;
+
+    /**
+     * The no. of threads to send and receive messages on.
+     */
+    private static final int WORKERS = 4;
+
+    /**
+     * The no. of messages that may be awaiting acknowledgment from the stub.
+     */
+    private static final int WINDOW_SIZE = 8;
+
+    /**
+     * The no. of distinct patients that inbound messages refer to.
+     */
+    private static final int PATIENTS = 20;
+
+    /**
+     * The maximum time to wait for a run to complete, in seconds.
+     */
+    private static final int TIMEOUT = 300;
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(HL7ThroughputBenchmark.class);
+
+
+    /**
+     * Sets up the benchmark.
+     */
+    @Before
+    @Override
+    public void setUp() {
+        super.setUp();
+        count = Integer.getInteger("hl7.benchmark.messages", 500);
+        messageContext = HapiContextFactory.create();
+        user = TestHelper.createUser();
+        product = createProduct();
+
+        stub = new MLLPStub(messageContext);
+        stub.setAckLatency(Long.getLong("hl7.benchmark.ackLatency", 0));
+        stub.setErrorRate(getRate("hl7.benchmark.errorRate"));
+        stub.setRejectRate(getRate("hl7.benchmark.rejectRate"));
+        stub.setDropRate(getRate("hl7.benchmark.dropRate"));
+        try {
+            stub.start();
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+        sender = createSender(stub.getPort());
+        receiver = HL7TestHelper.createReceiver(-1);
+
+        ConnectorsImpl connectors = new ConnectorsImpl(getArchetypeService()) {
+            @Override
+            public List<Connector> getConnectors() {
+                return Arrays.<Connector>asList(sender);
+            }
+
+            @Override
+            public Connector getConnector(IMObjectReference reference) {
+                return sender;
+            }
+
+            @Override
+            protected void load() {
+                // do nothing - don't want to pick up existing connectors
+            }
+        };
+        PracticeRules rules = new PracticeRules(getArchetypeService(), null) {
+            @Override
+            public User getServiceUser(Party practice) {
+                return user;
+            }
+        };
+        messageService = new MessageServiceImpl(getArchetypeService());
+        dispatcher = new MessageDispatcherImpl(messageService, connectors, rules, WORKERS);
+        dispatcher.afterPropertiesSet();
+
+        statistics = applicationContext.getBean(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    /**
+     * Cleans up after the benchmark.
+     *
+     * @throws Exception for any error
+     */
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.destroy();
+        stub.stop();
+        statistics.setStatisticsEnabled(false);
+        HL7TestHelper.disable(sender);
+        HL7TestHelper.disable(receiver);
+    }
+
+    /**
+     * Measures the throughput of pharmacy orders (RDE^O11) sent via the dispatcher.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDispatchRDE() throws Exception {
+        RDEMessageFactory factory = new RDEMessageFactory(messageContext, getArchetypeService(), getLookupService());
+        MessageConfig config = new MessageConfig();
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < count; ++i) {
+            messages.add(factory.createOrder(getContext(), product, BigDecimal.ONE, i + 1, new Date(), config));
+        }
+        dispatch("dispatch RDE^O11", messages, config);
+    }
+
+    /**
+     * Measures the throughput of patient admissions (ADT^A01) sent via the dispatcher.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDispatchADT() throws Exception {
+        ADTMessageFactory factory = new ADTMessageFactory(messageContext, getArchetypeService(), getLookupService());
+        MessageConfig config = new MessageConfig();
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < count; ++i) {
+            messages.add(factory.createAdmit(getContext(), config));
+        }
+        dispatch("dispatch ADT^A01", messages, config);
+    }
+
+    /**
+     * Measures the throughput of pharmacy dispenses (RDS^O13) processed on receipt.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testReceiveRDS() throws Exception {
+        receive("receive RDS^O13", receiver, null);
+    }
+
+    /**
+     * Measures the throughput of pharmacy dispenses (RDS^O13) stored, acknowledged, and processed asynchronously.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testReceiveRDSStoreAndAck() throws Exception {
+        MLLPReceiver storeAndAck = new MLLPReceiver(receiver.getPort(), receiver.getSendingApplication(),
+                                                    receiver.getSendingFacility(), receiver.getReceivingApplication(),
+                                                    receiver.getReceivingFacility(), receiver.isIncludeMillis(),
+                                                    receiver.isIncludeTimeZone(), true, receiver.getReference());
+        KeyedExecutor workers = new KeyedExecutor(WORKERS);
+        try {
+            receive("receive RDS^O13 (store and ack)", storeAndAck, workers);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Queues messages via the dispatcher, and waits for them to be sent.
+     * <p/>
+     * The latency of each message is measured from when it is queued, to when the stub last acknowledges it.
+     *
+     * @param name     the name of the run
+     * @param messages the messages to queue
+     * @param config   the message population configuration
+     * @throws Exception for any error
+     */
+    private void dispatch(String name, List<Message> messages, MessageConfig config) throws Exception {
+        ThroughputReport report = new ThroughputReport(name);
+        Map<String, Long> queued = new HashMap<String, Long>();
+        statistics.clear();
+        long start = System.currentTimeMillis();
+        for (Message message : messages) {
+            long now = System.currentTimeMillis();
+            dispatcher.queue(message, sender, config, user);
+            queued.put(new Terser(message).get("/MSH-10"), now);
+        }
+        Statistics queue = dispatcher.getStatistics(sender.getReference());
+        long timeout = start + TIMEOUT * 1000;
+        while (queue.getQueued() != 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals("Timed out waiting for messages to be sent", 0, queue.getQueued());
+
+        for (Map.Entry<String, Long> entry : stub.getAcknowledged().entrySet()) {
+            Long time = queued.get(entry.getKey());
+            if (time != null) {
+                report.addLatency(entry.getValue() - time);
+            }
+        }
+        report.completed(messages.size(), elapsed, statistics.getPrepareStatementCount());
+        log.info(report + ", stub: received=" + stub.getReceived() + ", AA=" + stub.getAccepted()
+                           + ", AE=" + stub.getErrors() + ", AR=" + stub.getRejected()
+                           + ", dropped=" + stub.getDropped());
+    }
+
+    /**
+     * Passes messages to a {@link MessageReceiver}, and waits for them to be processed.
+     * <p/>
+     * Each message is processed by an {@link RDSProcessor} and the resulting acts saved, as per
+     * {@link PharmacyDispenseServiceImpl}. The latency of each message is measured from when it is passed to the
+     * receiver, to when the order has been saved.
+     *
+     * @param name      the name of the run
+     * @param connector the receiver connector
+     * @param workers   the workers to process stored messages on. May be {@code null}
+     * @throws Exception for any error
+     */
+    private void receive(String name, MLLPReceiver connector, KeyedExecutor workers) throws Exception {
+        final ThroughputReport report = new ThroughputReport(name);
+        final Map<String, Long> received = new ConcurrentHashMap<String, Long>();
+        final CountDownLatch processed = new CountDownLatch(count);
+        final RDSProcessor processor = new RDSProcessor(getArchetypeService(),
+                                                        new PatientRules(null, getArchetypeService(),
+                                                                         getLookupService()),
+                                                        new UserRules(getArchetypeService()));
+        final IMObjectReference location = getContext().getLocation().getObjectReference();
+        ReceivingApplication application = new ReceivingApplication() {
+            @Override
+            public Message processMessage(final Message message, Map<String, Object> metaData)
+                    throws ReceivingApplicationException, HL7Exception {
+                try {
+                    return RunAs.run(user, new Callable<Message>() {
+                        @Override
+                        public Message call() throws Exception {
+                            List<Act> acts = processor.process((RDS_O13) message, location);
+                            getArchetypeService().save(acts);
+                            Message response = message.generateACK();
+                            Long time = received.get(new Terser(message).get("/MSH-10"));
+                            if (time != null) {
+                                report.addLatency(System.currentTimeMillis() - time);
+                            }
+                            return response;
+                        }
+                    });
+                } catch (HL7Exception exception) {
+                    throw exception;
+                } catch (Exception exception) {
+                    throw new ReceivingApplicationException(exception);
+                } finally {
+                    processed.countDown();
+                }
+            }
+
+            @Override
+            public boolean canProcess(Message message) {
+                return true;
+            }
+        };
+        MessageReceiver messageReceiver = new MessageReceiver(application, connector, messageService, user, workers,
+                                                              messageContext.getPipeParser());
+        List<Message> messages = createRDS(count);
+        statistics.clear();
+        long start = System.currentTimeMillis();
+        for (Message message : messages) {
+            received.put(new Terser(message).get("/MSH-10"), System.currentTimeMillis());
+            messageReceiver.processMessage(message, new HashMap<String, Object>());
+        }
+        assertTrue("Timed out waiting for messages to be processed", processed.await(TIMEOUT, TimeUnit.SECONDS));
+        long elapsed = System.currentTimeMillis() - start;
+        report.completed(messages.size(), elapsed, statistics.getPrepareStatementCount());
+        log.info(report);
+    }
+
+    /**
+     * Creates RDS^O13 messages, spread over {@link #PATIENTS} patients.
+     * <p/>
+     * The patient identifier is set in PID-2, as this is what both {@link RDSProcessor} and the message store use.
+     *
+     * @param count the no. of messages to create
+     * @return the messages
+     * @throws Exception for any error
+     */
+    private List<Message> createRDS(int count) throws Exception {
+        String encoded = createRDS(product).encode();
+        Party customer = getContext().getCustomer();
+        List<Party> patients = new ArrayList<Party>();
+        for (int i = 0; i < PATIENTS; ++i) {
+            patients.add(TestHelper.createPatient(customer));
+        }
+        List<Message> result = new ArrayList<Message>();
+        for (int i = 0; i < count; ++i) {
+            Message message = messageContext.getPipeParser().parse(encoded);
+            Terser terser = new Terser(message);
+            terser.set("/MSH-10", Integer.toString(i + 1));
+            terser.set("/.PID-2-1", Long.toString(patients.get(i % PATIENTS).getId()));
+            result.add(message);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a sender that retries promptly, so that simulated failures don't stall a run.
+     *
+     * @param port the port to send to
+     * @return a new sender
+     */
+    private MLLPSender createSender(int port) {
+        MLLPSender connector = HL7TestHelper.createSender(port);
+        Entity entity = (Entity) getArchetypeService().get(connector.getReference());
+        IMObjectBean bean = new IMObjectBean(entity);
+        bean.setValue("responseTimeout", 5);
+        bean.setValue("retryInterval", 1);
+        if (bean.hasNode("windowSize")) {
+            bean.setValue("windowSize", WINDOW_SIZE);
+        }
+        bean.save();
+        return MLLPSender.create(entity, getArchetypeService());
+    }
+
+    /**
+     * Returns a rate from a system property.
+     *
+     * @param name the property name
+     * @return the rate, or {@code 0} if the property isn't set
+     */
+    private double getRate(String name) {
+        String value = System.getProperty(name);
+        return (value != null) ? Double.parseDouble(value) : 0;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.impl;
+
+import ca.uhn.hl7v2.AcknowledgmentCode;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.util.Terser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for an MLLP receiving system, used to load test the {@link MessageDispatcherImpl}.
+ * <p/>
+ * The stub acknowledges each message it receives after a configurable latency. A proportion of messages may be
+ * acknowledged with an error (AE) or rejection (AR), or have their connection dropped without a response.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class MLLPStub {
+
+    /**
+     * The message context.
+     */
+    private final HapiContext context;
+
+    /**
+     * The open connections.
+     */
+    private final List<Socket> connections = Collections.synchronizedList(new ArrayList<Socket>());
+
+    /**
+     * The time each message was acknowledged, keyed on message control ID.
+     */
+    private final Map<String, Long> acknowledged = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * The no. of messages received.
+     */
+    private final AtomicInteger received = new AtomicInteger();
+
+    /**
+     * The no. of messages acknowledged with AA.
+     */
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    /**
+     * The no. of messages acknowledged with AE.
+     */
+    private final AtomicInteger errors = new AtomicInteger();
+
+    /**
+     * The no. of messages acknowledged with AR.
+     */
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    /**
+     * The no. of connections dropped.
+     */
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    /**
+     * Used to determine the response to each message.
+     */
+    private final Random random = new Random();
+
+    /**
+     * The server socket.
+     */
+    private ServerSocket server;
+
+    /**
+     * The executor to accept and service connections on.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The delay before responding to a message, in milliseconds.
+     */
+    private volatile long ackLatency;
+
+    /**
+     * The proportion of messages to acknowledge with AE.
+     */
+    private volatile double errorRate;
+
+    /**
+     * The proportion of messages to acknowledge with AR.
+     */
+    private volatile double rejectRate;
+
+    /**
+     * The proportion of messages to drop the connection for, without responding.
+     */
+    private volatile double dropRate;
+
+    /**
+     * MLLP start of block character.
+     */
+    private static final int START_BLOCK = 0x0b;
+
+    /**
+     * MLLP end of block character.
+     */
+    private static final int END_BLOCK = 0x1c;
+
+    /**
+     * MLLP end of data character.
+     */
+    private static final int CARRIAGE_RETURN = 0x0d;
+
+    /**
+     * The message character set.
+     */
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(MLLPStub.class);
+
+
+    /**
+     * Constructs an {@link MLLPStub}.
+     *
+     * @param context the message context
+     */
+    public MLLPStub(HapiContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sets the delay before responding to a message.
+     *
+     * @param ackLatency the delay, in milliseconds
+     */
+    public void setAckLatency(long ackLatency) {
+        this.ackLatency = ackLatency;
+    }
+
+    /**
+     * Sets the proportion of messages to acknowledge with AE.
+     *
+     * @param errorRate the proportion, from {@code 0.0} to {@code 1.0}
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets the proportion of messages to acknowledge with AR.
+     *
+     * @param rejectRate the proportion, from {@code 0.0} to {@code 1.0}
+     */
+    public void setRejectRate(double rejectRate) {
+        this.rejectRate = rejectRate;
+    }
+
+    /**
+     * Sets the proportion of messages to drop the connection for, without responding.
+     *
+     * @param dropRate the proportion, from {@code 0.0} to {@code 1.0}
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = dropRate;
+    }
+
+    /**
+     * Starts the stub on an ephemeral port.
+     *
+     * @throws IOException if the server socket cannot be created
+     */
+    public void start() throws IOException {
+        server = new ServerSocket(0);
+        executor = Executors.newCachedThreadPool();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    /**
+     * Stops the stub, closing all connections.
+     */
+    public void stop() {
+        close(server);
+        synchronized (connections) {
+            for (Socket socket : connections) {
+                close(socket);
+            }
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the port the stub is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Returns the time each message was last acknowledged.
+     *
+     * @return the acknowledgment times, in milliseconds, keyed on message control ID
+     */
+    public Map<String, Long> getAcknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * Returns the no. of messages received.
+     *
+     * @return the no. of messages received
+     */
+    public int getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Returns the no. of messages acknowledged with AA.
+     *
+     * @return the no. of messages accepted
+     */
+    public int getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * Returns the no. of messages acknowledged with AE.
+     *
+     * @return the no. of errors
+     */
+    public int getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Returns the no. of messages acknowledged with AR.
+     *
+     * @return the no. of rejections
+     */
+    public int getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the no. of connections dropped.
+     *
+     * @return the no. of dropped connections
+     */
+    public int getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Accepts connections until the stub is stopped.
+     */
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                connections.add(socket);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException exception) {
+                // server closed
+            }
+        }
+    }
+
+    /**
+     * Services a connection.
+     *
+     * @param socket the connection
+     */
+    private void serve(Socket socket) {
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            String message;
+            while ((message = read(input)) != null) {
+                received.incrementAndGet();
+                String response = process(message);
+                if (response == null) {
+                    dropped.incrementAndGet();
+                    break;
+                }
+                output.write(START_BLOCK);
+                output.write(response.getBytes(CHARSET));
+                output.write(END_BLOCK);
+                output.write(CARRIAGE_RETURN);
+                output.flush();
+            }
+        } catch (SocketException ignore) {
+            // connection closed
+        } catch (Exception exception) {
+            log.error("Failed to process message: " + exception.getMessage(), exception);
+        } finally {
+            connections.remove(socket);
+            close(socket);
+        }
+    }
+
+    /**
+     * Reads an MLLP framed message.
+     *
+     * @param input the stream to read from
+     * @return the message, or {@code null} if the stream is closed
+     * @throws IOException for any I/O error
+     */
+    private String read(InputStream input) throws IOException {
+        int ch;
+        while ((ch = input.read()) != START_BLOCK) {
+            if (ch == -1) {
+                return null;
+            }
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        while ((ch = input.read()) != END_BLOCK) {
+            if (ch == -1) {
+                return null;
+            }
+            buffer.write(ch);
+        }
+        input.read(); // trailing carriage return
+        return new String(buffer.toByteArray(), CHARSET);
+    }
+
+    /**
+     * Processes a message.
+     *
+     * @param text the encoded message
+     * @return the encoded response, or {@code null} if the connection should be dropped
+     * @throws Exception for any error
+     */
+    private String process(String text) throws Exception {
+        if (ackLatency > 0) {
+            Thread.sleep(ackLatency);
+        }
+        Message message = context.getPipeParser().parse(text);
+        double value = random.nextDouble();
+        if (value < dropRate) {
+            return null;
+        }
+        Message response;
+        value -= dropRate;
+        if (value < errorRate) {
+            response = message.generateACK(AcknowledgmentCode.AE, new HL7Exception("Simulated error"));
+            errors.incrementAndGet();
+        } else if (value - errorRate < rejectRate) {
+            response = message.generateACK(AcknowledgmentCode.AR, new HL7Exception("Simulated rejection"));
+            rejected.incrementAndGet();
+        } else {
+            response = message.generateACK();
+            accepted.incrementAndGet();
+        }
+        acknowledged.put(new Terser(message).get("/MSH-10"), System.currentTimeMillis());
+        return response.encode();
+    }
+
+    /**
+     * Closes a socket, ignoring any error.
+     *
+     * @param socket the socket. May be {@code null}
+     */
+    private void close(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+                // do nothing
+            }
+        }
+    }
+
+    /**
+     * Closes a server socket, ignoring any error.
+     *
+     * @param socket the socket. May be {@code null}
+     */
+    private void close(ServerSocket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+                // do nothing
+            }
+        }
+    }
+}
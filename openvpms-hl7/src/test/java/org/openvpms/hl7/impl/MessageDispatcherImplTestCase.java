@@ -20,6 +20,8 @@ import ca.uhn.hl7v2.AcknowledgmentCode;
 import ca.uhn.hl7v2.ErrorCode;
 import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.llp.LLPException;
+import ca.uhn.hl7v2.model.Message;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,9 +37,13 @@ import org.openvpms.hl7.io.MessageService;
 import org.openvpms.hl7.io.Statistics;
 import org.openvpms.hl7.util.HL7MessageStatuses;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -77,6 +83,21 @@ public class MessageDispatcherImplTestCase extends ArchetypeServiceTest {
      */
     private MessageConfig config = new MessageConfig();
 
+    /**
+     * The message service.
+     */
+    private MessageService messageService;
+
+    /**
+     * The connectors.
+     */
+    private ConnectorsImpl connectors;
+
+    /**
+     * The practice rules.
+     */
+    private PracticeRules rules;
+
     /**
      * Sets up the test case.
      */
@@ -85,7 +106,7 @@ public class MessageDispatcherImplTestCase extends ArchetypeServiceTest {
         sender = HL7TestHelper.createSender(-1); // dummy port
         context = HapiContextFactory.create();
         user = TestHelper.createUser();
-        ConnectorsImpl connectors = new ConnectorsImpl(getArchetypeService()) {
+        connectors = new ConnectorsImpl(getArchetypeService()) {
 
             @Override
             public List<Connector> getConnectors() {
@@ -103,14 +124,14 @@ public class MessageDispatcherImplTestCase extends ArchetypeServiceTest {
             }
         };
 
-        PracticeRules rules = new PracticeRules(getArchetypeService(), null) {
+        rules = new PracticeRules(getArchetypeService(), null) {
             @Override
             public User getServiceUser(Party practice) {
                 return user;
             }
         };
 
-        MessageService messageService = new MessageServiceImpl(getArchetypeService());
+        messageService = new MessageServiceImpl(getArchetypeService());
         dispatcher = new TestMessageDispatcher(messageService, connectors, rules);
         dispatcher.afterPropertiesSet();
     }
@@ -304,6 +325,117 @@ public class MessageDispatcherImplTestCase extends ArchetypeServiceTest {
         checkErrors(1, sender);
     }
 
+    /**
+     * Verifies that when queues are dispatched in parallel, a slow connector doesn't delay sends to other connectors.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testParallelSend() throws Exception {
+        final int count = 5;
+        final MLLPSender slow = HL7TestHelper.createSender(-2); // dummy port
+        final Semaphore release = new Semaphore(0);
+
+        dispatcher.destroy();
+        dispatcher = new TestMessageDispatcher(messageService, connectors, rules, 2) {
+            @Override
+            protected Message send(Message message, MLLPSender sender)
+                    throws HL7Exception, LLPException, IOException {
+                if (sender.getReference().equals(slow.getReference())) {
+                    try {
+                        release.tryAcquire(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException exception) {
+                        throw new IOException(exception);
+                    }
+                }
+                return super.send(message, sender);
+            }
+        };
+        dispatcher.afterPropertiesSet();
+
+        try {
+            DocumentAct blocked = dispatcher.queue(HL7TestHelper.createOrder(context), slow, config, user);
+            List<DocumentAct> queued = new ArrayList<DocumentAct>();
+            for (int i = 0; i < count; i++) {
+                queued.add(dispatcher.queue(HL7TestHelper.createOrder(context), sender, config, user));
+            }
+
+            // the messages to the other sender should be sent while the slow sender is blocked
+            assertTrue(dispatcher.waitForMessages(count));
+            for (DocumentAct act : queued) {
+                checkStatus(act, HL7MessageStatuses.ACCEPTED);
+            }
+            checkStatus(blocked, HL7MessageStatuses.PENDING);
+
+            // now let the slow sender complete
+            release.release();
+            assertTrue(dispatcher.waitForMessage());
+            checkStatus(blocked, HL7MessageStatuses.ACCEPTED);
+        } finally {
+            release.release();
+            HL7TestHelper.disable(slow);
+        }
+    }
+
+    /**
+     * Verifies that when a sender has a window size greater than one, multiple messages are sent without waiting
+     * for acknowledgments.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testWindow() throws Exception {
+        final int count = 10;
+        final int window = 4;
+        sender = new MLLPSender(sender.getHost(), sender.getPort(), sender.getSendingApplication(),
+                                sender.getSendingFacility(), sender.getReceivingApplication(),
+                                sender.getReceivingFacility(), sender.getResponseTimeout(),
+                                sender.getRetryInterval(), sender.isIncludeMillis(), sender.isIncludeTimeZone(),
+                                false, window, sender.getReference());
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final Semaphore sent = new Semaphore(0);
+
+        dispatcher.destroy();
+        dispatcher = new TestMessageDispatcher(messageService, connectors, rules) {
+            @Override
+            protected Message send(Message message, MLLPSender sender)
+                    throws HL7Exception, LLPException, IOException {
+                int current = active.incrementAndGet();
+                synchronized (maxActive) {
+                    maxActive.set(Math.max(maxActive.get(), current));
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException exception) {
+                    throw new IOException(exception);
+                } finally {
+                    active.decrementAndGet();
+                    sent.release();
+                }
+                return super.send(message, sender);
+            }
+        };
+        dispatcher.afterPropertiesSet();
+
+        List<DocumentAct> queued = new ArrayList<DocumentAct>();
+        for (int i = 0; i < count; i++) {
+            queued.add(dispatcher.queue(HL7TestHelper.createOrder(context), sender, config, user));
+        }
+        assertTrue(sent.tryAcquire(count, 30, TimeUnit.SECONDS));
+        assertTrue(maxActive.get() > 1);
+        assertTrue(maxActive.get() <= window);
+
+        // wait for the last acknowledgments to be processed
+        for (DocumentAct act : queued) {
+            for (int i = 0; i < 50 && !HL7MessageStatuses.ACCEPTED.equals(get(act).getStatus()); ++i) {
+                Thread.sleep(100);
+            }
+            checkStatus(act, HL7MessageStatuses.ACCEPTED);
+        }
+        checkQueued(0, sender);
+    }
+
     /**
      * Verifies the expected number of messages are queued to a connector.
      *
@@ -25,6 +25,7 @@ import ca.uhn.hl7v2.model.v25.message.RDE_O11;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.openvpms.archetype.test.ArchetypeServiceTest;
 import org.openvpms.archetype.test.TestHelper;
 import org.openvpms.component.business.domain.im.act.DocumentAct;
@@ -138,6 +139,96 @@ public class MessageQueueTestCase extends ArchetypeServiceTest {
         }
     }
 
+    /**
+     * Verifies that pending messages are pre-fetched in batches, and that counts are only queried once.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPrefetch() throws Exception {
+        final int count = 10;
+        MessageService spy = Mockito.spy(service);
+        MessageQueue queue = new MessageQueue(sender, spy, context);
+        assertEquals(0, queue.getQueued());
+        assertEquals(0, queue.getErrors());
+
+        for (int i = 0; i < count; ++i) {
+            queue.add(createMessage(), user);
+        }
+        assertEquals(count, queue.getQueued());
+
+        for (int i = 0; i < count; ++i) {
+            Message message = queue.peekFirst();
+            assertNotNull(message);
+            queue.sent(message.generateACK());
+        }
+        assertNull(queue.peekFirst());
+        assertEquals(0, queue.getQueued());
+        assertEquals(0, queue.getErrors());
+
+        // one query to fetch the 10 messages, and one to determine there are no more
+        Mockito.verify(spy, Mockito.times(2)).next(sender, MessageQueue.BATCH_SIZE);
+        Mockito.verify(spy, Mockito.never()).next(sender);
+        Mockito.verify(spy, Mockito.times(1)).getMessages(sender, HL7MessageStatuses.PENDING);
+        Mockito.verify(spy, Mockito.times(1)).getMessages(sender, HL7MessageStatuses.ERROR);
+
+        // verify the counts are reloaded after a refresh
+        queue.refresh();
+        assertEquals(0, queue.getQueued());
+        Mockito.verify(spy, Mockito.times(2)).getMessages(sender, HL7MessageStatuses.PENDING);
+    }
+
+    /**
+     * Tests sending more than one message at a time via {@link MessageQueue#nextInFlight()}.
+     * <p/>
+     * Verifies that messages for the same patient aren't in flight at the same time, and that acknowledgments must
+     * refer to the message they acknowledge.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testInFlight() throws Exception {
+        MessageQueue queue = new MessageQueue(sender, service, context);
+        RDE_O11 message1 = createMessage("1", "1");
+        RDE_O11 message2 = createMessage("2", "1");
+        RDE_O11 message3 = createMessage("3", "2");
+        DocumentAct act1 = queue.add(message1, user);
+        DocumentAct act2 = queue.add(message2, user);
+        DocumentAct act3 = queue.add(message3, user);
+
+        // message2 is for the same patient as message1, so can't be sent until message1 is acknowledged
+        MessageQueue.Entry entry1 = queue.nextInFlight();
+        MessageQueue.Entry entry3 = queue.nextInFlight();
+        assertEquals(act1, entry1.getAct());
+        assertEquals(act3, entry3.getAct());
+        assertNull(queue.nextInFlight());
+        assertEquals(2, queue.getInFlight());
+
+        // acknowledgments may arrive out of order
+        assertEquals(HL7MessageStatuses.ACCEPTED, queue.sent(entry3, message3.generateACK()).getStatus());
+        assertNull(queue.nextInFlight());
+        assertEquals(HL7MessageStatuses.ACCEPTED, queue.sent(entry1, message1.generateACK()).getStatus());
+
+        // now message2 can be sent. Simulate a failure, and verify it is resent
+        MessageQueue.Entry entry2 = queue.nextInFlight();
+        assertEquals(act2, entry2.getAct());
+        queue.error(entry2, new IOException("Some error"));
+        assertEquals("Some error", queue.getErrorMessage());
+
+        // verify an acknowledgment for a different message leaves the message pending
+        entry2 = queue.nextInFlight();
+        assertEquals(act2, entry2.getAct());
+        assertEquals(HL7MessageStatuses.PENDING, queue.sent(entry2, message1.generateACK()).getStatus());
+
+        entry2 = queue.nextInFlight();
+        assertEquals(act2, entry2.getAct());
+        assertEquals(HL7MessageStatuses.ACCEPTED, queue.sent(entry2, message2.generateACK()).getStatus());
+        assertNull(queue.getErrorMessage());
+        assertNull(queue.nextInFlight());
+        assertEquals(0, queue.getInFlight());
+        assertEquals(0, queue.getQueued());
+    }
+
     /**
      * Verifies that an application reject (AR) sets the <em>act.HL7Message</em> status to ERROR.
      *
@@ -275,6 +366,22 @@ public class MessageQueueTestCase extends ArchetypeServiceTest {
         assertNull(queue.peekFirst());
     }
 
+    /**
+     * Helper to create an RDE_O11 message for a patient.
+     *
+     * @param messageControlID the message control ID
+     * @param patientId        the patient identifier
+     * @return the new message
+     * @throws HL7Exception for any HL7 error
+     * @throws IOException  for any I/O error
+     */
+    private RDE_O11 createMessage(String messageControlID, String patientId) throws HL7Exception, IOException {
+        RDE_O11 message = createMessage();
+        message.getMSH().getMessageControlID().setValue(messageControlID);
+        message.getPATIENT().getPID().getPatientID().getIDNumber().setValue(patientId);
+        return message;
+    }
+
     /**
      * Helper to create an RDE_O11 message.
      *
@@ -34,11 +34,17 @@ import org.openvpms.hl7.util.HL7MessageStatuses;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -176,4 +182,202 @@ public class MessageReceiverTestCase extends AbstractRDSTest {
         IMObjectBean bean = new IMObjectBean(act);
         assertEquals("Simulated ReceivingApplication Exception", bean.getString("error"));
     }
+
+    /**
+     * Verifies that when the connector is configured to store and acknowledge messages, the message is acknowledged
+     * before it is processed, and its status is updated to {@link HL7MessageStatuses#ACCEPTED} when it is
+     * successfully processed.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testStoreAndAck() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch processed = new CountDownLatch(1);
+        ReceivingApplication application = new ReceivingApplication() {
+            @Override
+            public Message processMessage(Message theMessage, Map<String, Object> theMetadata)
+                    throws ReceivingApplicationException, HL7Exception {
+                try {
+                    received.await();
+                    return theMessage.generateACK();
+                } catch (Exception exception) {
+                    throw new ReceivingApplicationException(exception);
+                } finally {
+                    processed.countDown();
+                }
+            }
+
+            @Override
+            public boolean canProcess(Message theMessage) {
+                return true;
+            }
+        };
+        MLLPReceiver storeAndAck = new MLLPReceiver(connector.getPort(), connector.getSendingApplication(),
+                                                    connector.getSendingFacility(),
+                                                    connector.getReceivingApplication(),
+                                                    connector.getReceivingFacility(), connector.isIncludeMillis(),
+                                                    connector.isIncludeTimeZone(), true, connector.getReference());
+        KeyedExecutor workers = new KeyedExecutor(2);
+        try {
+            MessageReceiver receiver = new MessageReceiver(application, storeAndAck, service, user, workers,
+                                                           HapiContextFactory.create().getPipeParser());
+            assertTrue(receiver.isStoreAndAck());
+            Message message = createRDS(createProduct());
+            Message response = receiver.processMessage(message, new HashMap<String, Object>());
+            assertTrue(response instanceof ACK);
+
+            // the message has been acknowledged, but not processed
+            assertEquals(1, acts.size());
+            assertEquals(HL7MessageStatuses.PENDING, get(acts.get(0)).getStatus());
+            assertEquals(1, receiver.getQueued());
+
+            received.countDown();
+            assertTrue(processed.await(10, TimeUnit.SECONDS));
+            workers.shutdown();
+            assertEquals(0, receiver.getQueued());
+            assertEquals(HL7MessageStatuses.ACCEPTED, get(acts.get(0)).getStatus());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Verifies that stored messages for the same patient are processed in the order they were received, and never
+     * concurrently, even when there are multiple workers.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testStoreAndAckProcessesPatientMessagesInOrder() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch processed = new CountDownLatch(2);
+        final List<Message> messages = Collections.synchronizedList(new ArrayList<Message>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        ReceivingApplication application = new ReceivingApplication() {
+            @Override
+            public Message processMessage(Message theMessage, Map<String, Object> theMetadata)
+                    throws ReceivingApplicationException, HL7Exception {
+                try {
+                    if (running.incrementAndGet() > 1) {
+                        overlapped.set(true);
+                    }
+                    messages.add(theMessage);
+                    if (messages.size() == 1) {
+                        // hold up the first message, to give the second an opportunity to run
+                        release.await(10, TimeUnit.SECONDS);
+                    }
+                    return theMessage.generateACK();
+                } catch (Exception exception) {
+                    throw new ReceivingApplicationException(exception);
+                } finally {
+                    running.decrementAndGet();
+                    processed.countDown();
+                }
+            }
+
+            @Override
+            public boolean canProcess(Message theMessage) {
+                return true;
+            }
+        };
+        KeyedExecutor workers = new KeyedExecutor(4);
+        try {
+            MessageReceiver receiver = new MessageReceiver(application, createStoreAndAck(), service, user, workers,
+                                                           HapiContextFactory.create().getPipeParser());
+            Message message1 = createRDS(createProduct());
+            Message message2 = createRDS(createProduct());
+            receiver.processMessage(message1, new HashMap<String, Object>());
+            receiver.processMessage(message2, new HashMap<String, Object>());
+            Thread.sleep(500);
+            release.countDown();
+            assertTrue(processed.await(10, TimeUnit.SECONDS));
+
+            assertFalse(overlapped.get());
+            assertEquals(2, messages.size());
+            assertTrue(messages.get(0) == message1);
+            assertTrue(messages.get(1) == message2);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Verifies that when a receiver is restarted, messages still queued by the previous receiver aren't queued
+     * again.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRestartDoesNotRequeueOutstandingMessages() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        ReceivingApplication application = new ReceivingApplication() {
+            @Override
+            public Message processMessage(Message theMessage, Map<String, Object> theMetadata)
+                    throws ReceivingApplicationException, HL7Exception {
+                try {
+                    count.incrementAndGet();
+                    release.await(10, TimeUnit.SECONDS);
+                    return theMessage.generateACK();
+                } catch (Exception exception) {
+                    throw new ReceivingApplicationException(exception);
+                }
+            }
+
+            @Override
+            public boolean canProcess(Message theMessage) {
+                return true;
+            }
+        };
+        MLLPReceiver storeAndAck = createStoreAndAck();
+        KeyedExecutor workers = new KeyedExecutor(2);
+        try {
+            MessageReceiver receiver1 = new MessageReceiver(application, storeAndAck, service, user, workers,
+                                                            HapiContextFactory.create().getPipeParser());
+            receiver1.processMessage(createRDS(createProduct()), new HashMap<String, Object>());
+            assertEquals(1, receiver1.getQueued());
+
+            // simulate a connector update. The message is still PENDING, but is already queued
+            MessageReceiver receiver2 = new MessageReceiver(application, storeAndAck, service, user, workers,
+                                                            HapiContextFactory.create().getPipeParser());
+            receiver2.start();
+            assertEquals(0, receiver2.getQueued());
+
+            release.countDown();
+            workers.shutdown();
+            assertEquals(1, count.get());
+            assertEquals(HL7MessageStatuses.ACCEPTED, get(acts.get(0)).getStatus());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Verifies that a connector that stores and acknowledges messages processes them on receipt if no workers
+     * are available.
+     */
+    @Test
+    public void testStoreAndAckWithoutWorkers() {
+        MLLPReceiver storeAndAck = new MLLPReceiver(connector.getPort(), connector.getSendingApplication(),
+                                                    connector.getSendingFacility(),
+                                                    connector.getReceivingApplication(),
+                                                    connector.getReceivingFacility(), connector.isIncludeMillis(),
+                                                    connector.isIncludeTimeZone(), true, connector.getReference());
+        MessageReceiver receiver = new MessageReceiver(null, storeAndAck, service, user);
+        assertFalse(receiver.isStoreAndAck());
+    }
+
+    /**
+     * Creates a receiver connector that stores and acknowledges messages on receipt.
+     *
+     * @return a new connector
+     */
+    private MLLPReceiver createStoreAndAck() {
+        return new MLLPReceiver(connector.getPort(), connector.getSendingApplication(),
+                                connector.getSendingFacility(), connector.getReceivingApplication(),
+                                connector.getReceivingFacility(), connector.isIncludeMillis(),
+                                connector.isIncludeTimeZone(), true, connector.getReference());
+    }
 }
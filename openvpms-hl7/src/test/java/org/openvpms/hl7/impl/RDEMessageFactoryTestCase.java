@@ -16,9 +16,13 @@
 
 package org.openvpms.hl7.impl;
 
+import ca.uhn.hl7v2.AcknowledgmentCode;
+import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v25.message.ACK;
 import ca.uhn.hl7v2.model.v25.segment.MSH;
+import ca.uhn.hl7v2.util.Terser;
 import ca.uhn.hl7v2.util.idgenerator.IDGenerator;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,12 +31,15 @@ import org.openvpms.archetype.test.TestHelper;
 import org.openvpms.component.business.domain.im.product.Product;
 import org.openvpms.component.business.service.archetype.helper.IMObjectBean;
 import org.openvpms.hl7.patient.PatientContext;
+import org.openvpms.hl7.pharmacy.PharmacyOrder;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.openvpms.hl7.impl.PopulateHelper.populateDTM;
 
 /**
@@ -105,6 +112,47 @@ public class RDEMessageFactoryTestCase extends AbstractMessageTest {
         assertEquals(expected, encode);
     }
 
+    /**
+     * Tests the {@link RDEMessageFactory#createOrders(java.util.List, MessageConfig)} method.
+     * <p/>
+     * This verifies that each order is added as a separate ORDER group, and that acknowledgment errors that refer
+     * to an order segment are reported against the corresponding placer order number.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCreateOrders() throws Exception {
+        String expected = "MSH|^~\\&|||||20140825090000.105||RDE^O11^RDE_O11|1200022|P|2.5\r" +
+                          "PID|1|1001|||Bar^Fido||20140701000000|M|||123 Broadwater Avenue^^Cape Woolamai^VIC^3058||(03) 12345678|(03) 98765432|||||||||||||||||||||CANINE^Canine^OpenVPMS|KELPIE^Kelpie^OpenVPMS\r" +
+                          "PV1|1|U|^^^Main Clinic||||||||||||||2001^Blogs^Joe||3001|||||||||||||||||||||||||20140825085500\r" +
+                          "AL1|1|MA|^Penicillin|U|Respiratory distress\r" +
+                          "AL1|2|MA|^Pollen|U|Produces hives\r" +
+                          "ORC|NW|10231|||||||20140825090200|2001^Blogs^Joe\r" +
+                          "RXO|4001^Valium 2mg^OpenVPMS|||TAB^Tablets^OpenVPMS|||^Give 1 tablet once daily||||2|BOX^Box^OpenVPMS\r" +
+                          "ORC|CA|10232|||||||20140825090200|2001^Blogs^Joe\r" +
+                          "RXO|4001^Valium 2mg^OpenVPMS|||TAB^Tablets^OpenVPMS|||^Give 1 tablet once daily||||3|BOX^Box^OpenVPMS\r";
+
+        Date date = getDatetime("2014-08-25 09:02:00").getTime();
+        MessageConfig config = new MessageConfig();
+        config.setIncludeTimeZone(false);
+        PharmacyOrder order1 = new PharmacyOrder(PharmacyOrder.Type.CREATE, getContext(), product,
+                                                 BigDecimal.valueOf(2), 10231, date);
+        PharmacyOrder order2 = new PharmacyOrder(PharmacyOrder.Type.CANCEL, getContext(), product,
+                                                 BigDecimal.valueOf(3), 10232, date);
+        Message orders = messageFactory.createOrders(Arrays.asList(order1, order2), config);
+        MSH msh = (MSH) orders.get("MSH");
+        populateDTM(msh.getDateTimeOfMessage().getTime(), getDatetime("2014-08-25 09:00:00.105"), config);
+        assertEquals(expected, orders.encode());
+
+        // simulate an error against the second RXO segment
+        ACK ack = (ACK) orders.generateACK(AcknowledgmentCode.AE, new HL7Exception("Unknown product"));
+        Terser terser = new Terser(ack);
+        terser.set("/ERR-2-1", "RXO");
+        terser.set("/ERR-2-2", "2");
+        String error = HL7MessageHelper.getErrorMessage(ack, orders);
+        assertTrue(error, error.startsWith("Order: 10232"));
+    }
+
     /**
      * Tests the {@link RDEMessageFactory#updateOrder(PatientContext, Product, BigDecimal, long, Date, MessageConfig)} method.
      *
@@ -31,6 +31,7 @@ import org.openvpms.hl7.io.MessageService;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Semaphore;
@@ -46,12 +47,12 @@ public class TestMessageDispatcher extends MessageDispatcherImpl {
     /**
      * The queued messages.
      */
-    private List<Message> messages = new ArrayList<Message>();
+    private List<Message> messages = Collections.synchronizedList(new ArrayList<Message>());
 
     /**
      * The processed messages.
      */
-    private List<DocumentAct> acts = new ArrayList<DocumentAct>();
+    private List<DocumentAct> acts = Collections.synchronizedList(new ArrayList<DocumentAct>());
 
     /**
      * Optional timestamp to assign to messages.
@@ -114,6 +115,19 @@ public class TestMessageDispatcher extends MessageDispatcherImpl {
         super(service, connectors, rules);
     }
 
+    /**
+     * Constructs a {@link TestMessageDispatcher}.
+     *
+     * @param service    the message service
+     * @param connectors the connectors
+     * @param rules      the practice rules
+     * @param workers    the maximum number of threads to send messages on
+     */
+    public TestMessageDispatcher(MessageService service, ConnectorsImpl connectors, PracticeRules rules,
+                                 int workers) {
+        super(service, connectors, rules, workers);
+    }
+
     /**
      * Waits at most 30 seconds for a send attempt.
      *
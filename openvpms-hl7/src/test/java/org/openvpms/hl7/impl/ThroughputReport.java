@@ -0,0 +1,135 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the results of a {@link HL7ThroughputBenchmark} run.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ThroughputReport {
+
+    /**
+     * The name of the run.
+     */
+    private final String name;
+
+    /**
+     * The end-to-end latencies of each message, in milliseconds.
+     */
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+
+    /**
+     * The no. of messages.
+     */
+    private int messages;
+
+    /**
+     * The elapsed time of the run, in milliseconds.
+     */
+    private long elapsed;
+
+    /**
+     * The no. of JDBC statements executed during the run.
+     */
+    private long statements;
+
+
+    /**
+     * Constructs a {@link ThroughputReport}.
+     *
+     * @param name the name of the run
+     */
+    public ThroughputReport(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the end-to-end latency of a message.
+     *
+     * @param millis the latency, in milliseconds
+     */
+    public void addLatency(long millis) {
+        latencies.add(millis);
+    }
+
+    /**
+     * Completes the run.
+     *
+     * @param messages   the no. of messages
+     * @param elapsed    the elapsed time, in milliseconds
+     * @param statements the no. of JDBC statements executed
+     */
+    public void completed(int messages, long elapsed, long statements) {
+        this.messages = messages;
+        this.elapsed = elapsed;
+        this.statements = statements;
+    }
+
+    /**
+     * Returns the throughput.
+     *
+     * @return the no. of messages per second
+     */
+    public double getMessagesPerSecond() {
+        return (elapsed > 0) ? messages * 1000.0 / elapsed : 0;
+    }
+
+    /**
+     * Returns the latency at a percentile.
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 100}
+     * @return the latency at the percentile, in milliseconds, or {@code -1} if no latencies were recorded
+     */
+    public long getLatency(double percentile) {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<Long>(latencies);
+        }
+        if (sorted.isEmpty()) {
+            return -1;
+        }
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    /**
+     * Returns the average no. of JDBC statements executed per message.
+     *
+     * @return the statements per message
+     */
+    public double getStatementsPerMessage() {
+        return (messages > 0) ? (double) statements / messages : 0;
+    }
+
+    /**
+     * Returns a string representation of the report.
+     *
+     * @return the report
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d messages in %dms, %.1f msgs/sec, p50=%dms, p99=%dms, %.1f statements/msg",
+                             name, messages, elapsed, getMessagesPerSecond(), getLatency(50), getLatency(99),
+                             getStatementsPerMessage());
+    }
+}
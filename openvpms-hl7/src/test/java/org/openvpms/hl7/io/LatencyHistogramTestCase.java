@@ -0,0 +1,69 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.io;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the {@link LatencyHistogram}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class LatencyHistogramTestCase {
+
+    /**
+     * Verifies that latencies are assigned to the correct buckets.
+     */
+    @Test
+    public void testAdd() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(50));
+
+        histogram.add(5);
+        histogram.add(10);
+        histogram.add(11);
+        histogram.add(60000);
+
+        long[] counts = histogram.getCounts();
+        assertEquals(histogram.getBounds().length + 1, counts.length);
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(4, histogram.getCount());
+        assertEquals(60000, histogram.getMax());
+        assertEquals((5 + 10 + 11 + 60000) / 4, histogram.getMean());
+    }
+
+    /**
+     * Tests the {@link LatencyHistogram#getPercentile(double)} method.
+     */
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; ++i) {
+            histogram.add(20);
+        }
+        histogram.add(40000);
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(50, histogram.getPercentile(99));
+        assertEquals(40000, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.hl7.patient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openvpms.archetype.rules.math.WeightUnits;
+import org.openvpms.archetype.rules.party.CustomerRules;
+import org.openvpms.archetype.rules.patient.PatientArchetypes;
+import org.openvpms.archetype.rules.patient.PatientRules;
+import org.openvpms.archetype.rules.patient.PatientTestHelper;
+import org.openvpms.archetype.test.ArchetypeServiceTest;
+import org.openvpms.archetype.test.TestHelper;
+import org.openvpms.component.business.domain.im.act.Act;
+import org.openvpms.component.business.domain.im.party.Party;
+import org.openvpms.component.business.domain.im.security.User;
+import org.openvpms.component.business.service.archetype.helper.ActBean;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link PatientContextFactory}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class PatientContextFactoryTestCase extends ArchetypeServiceTest {
+
+    /**
+     * The factory.
+     */
+    private PatientContextFactory factory;
+
+    /**
+     * The customer.
+     */
+    private Party customer;
+
+    /**
+     * The patient.
+     */
+    private Party patient;
+
+    /**
+     * The patient visit.
+     */
+    private Act visit;
+
+    /**
+     * The practice location.
+     */
+    private Party location;
+
+    /**
+     * Sets up the test case.
+     */
+    @Before
+    public void setUp() {
+        PatientRules patientRules = new PatientRules(null, getArchetypeService(), getLookupService());
+        CustomerRules customerRules = new CustomerRules(getArchetypeService(), getLookupService());
+        factory = new PatientContextFactory(patientRules, customerRules, getArchetypeService(), getLookupService());
+        customer = TestHelper.createCustomer();
+        patient = TestHelper.createPatient(customer);
+        visit = PatientTestHelper.createEvent(patient, null);
+        save(visit);
+        location = TestHelper.createLocation();
+        save(PatientTestHelper.createWeight(patient, new Date(), BigDecimal.TEN, WeightUnits.KILOGRAMS));
+        createAllergy(patient, "Penicillin");
+    }
+
+    /**
+     * Verifies that contexts created by a snapshot factory share the patient information of the first context
+     * created for the patient, and return the same information as contexts created on demand.
+     */
+    @Test
+    public void testSnapshot() {
+        User clinician1 = TestHelper.createClinician(true);
+        User clinician2 = TestHelper.createClinician(true);
+        PatientContext expected = factory.createContext(patient, customer, visit, location, clinician1);
+
+        PatientContextFactory snapshot = factory.snapshot();
+        PatientContext context1 = snapshot.createContext(patient, customer, visit, location, clinician1);
+        PatientContext context2 = snapshot.createContext(patient, customer, visit, location, clinician2);
+
+        assertEquals(1, context1.getAllergies().size());
+        assertSame(context1.getAllergies(), context2.getAllergies());
+        assertEquals(expected.getAllergies(), context1.getAllergies());
+        checkEquals(expected.getPatientWeight(), context1.getPatientWeight());
+        assertEquals(expected.getWeighDate(), context2.getWeighDate());
+        assertEquals(expected.getAddress(), context2.getAddress());
+        assertEquals(expected.getHomePhone(), context2.getHomePhone());
+        assertEquals(expected.getDateOfBirth(), context2.getDateOfBirth());
+
+        // the clinician isn't part of the snapshot
+        assertEquals(clinician1, context1.getClinician());
+        assertEquals(clinician2, context2.getClinician());
+
+        // changes made after the snapshot is taken aren't visible to it
+        createAllergy(patient, "Pollen");
+        assertEquals(1, snapshot.createContext(patient, customer, visit, location, clinician1).getAllergies().size());
+        assertEquals(2, factory.createContext(patient, customer, visit, location, clinician1).getAllergies().size());
+
+        // a new snapshot factory doesn't share information with the first
+        PatientContext context3 = factory.snapshot().createContext(patient, customer, visit, location, clinician1);
+        assertNotSame(context1.getAllergies(), context3.getAllergies());
+        assertEquals(2, context3.getAllergies().size());
+    }
+
+    /**
+     * Verifies that snapshot allergies can't be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotAllergiesAreImmutable() {
+        PatientContext context = factory.snapshot().createContext(patient, customer, visit, location, null);
+        assertTrue(context.getAllergies().size() > 0);
+        context.getAllergies().clear();
+    }
+
+    /**
+     * Helper to create an allergy record for a patient.
+     *
+     * @param patient the patient
+     * @param reason  the reason
+     */
+    private void createAllergy(Party patient, String reason) {
+        Act alert = (Act) create(PatientArchetypes.ALERT);
+        ActBean bean = new ActBean(alert);
+        bean.setValue("alertType", TestHelper.getLookup("lookup.patientAlertType", "ALLERGY").getCode());
+        bean.addNodeParticipation("patient", patient);
+        bean.setValue("reason", reason);
+        bean.save();
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.openvpms.macro.impl;
 
+import org.apache.commons.jxpath.CompiledExpression;
+import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.JXPathException;
 import org.apache.commons.lang.StringUtils;
 import org.openvpms.component.business.domain.im.lookup.Lookup;
 import org.openvpms.component.business.service.archetype.IArchetypeService;
@@ -24,6 +27,9 @@ import org.openvpms.macro.MacroException;
 
 /**
  * A {@code Macro} that evaluates an JXPath expression.
+ * <p/>
+ * The expression is compiled when the macro is constructed. The compiled expression is immutable, and may be
+ * evaluated concurrently against different contexts.
  *
  * @author Tim Anderson
  */
@@ -34,6 +40,11 @@ public abstract class AbstractExpressionMacro extends Macro {
      */
     private final String expression;
 
+    /**
+     * The compiled expression.
+     */
+    private final CompiledExpression compiled;
+
 
     /**
      * Constructs an {@link AbstractExpressionMacro}.
@@ -58,6 +69,11 @@ public abstract class AbstractExpressionMacro extends Macro {
         if (StringUtils.isEmpty(expression)) {
             throw new MacroException("Expression must be supplied for macro=" + getCode());
         }
+        try {
+            compiled = JXPathContext.compile(expression);
+        } catch (JXPathException exception) {
+            throw new MacroException("Invalid expression='" + expression + "' for macro=" + getCode(), exception);
+        }
     }
 
     /**
@@ -68,4 +84,13 @@ public abstract class AbstractExpressionMacro extends Macro {
     public String getExpression() {
         return expression;
     }
+
+    /**
+     * Returns the compiled expression.
+     *
+     * @return the compiled expression
+     */
+    public CompiledExpression getCompiledExpression() {
+        return compiled;
+    }
 }
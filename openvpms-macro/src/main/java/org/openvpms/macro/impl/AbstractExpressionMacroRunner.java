@@ -52,7 +52,7 @@ public abstract class AbstractExpressionMacroRunner extends MacroRunner {
         Object result;
         try {
             jxPathContext.getVariables().declareVariable("number", number);
-            result = jxPathContext.getValue(macro.getExpression());
+            result = macro.getCompiledExpression().getValue(jxPathContext);
         } catch (MacroException exception) {
             throw exception;
         } catch (Throwable exception) {
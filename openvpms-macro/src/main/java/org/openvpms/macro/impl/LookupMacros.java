@@ -18,6 +18,8 @@ package org.openvpms.macro.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openvpms.archetype.rules.doc.DocumentArchetypes;
+import org.openvpms.component.business.domain.im.act.DocumentAct;
 import org.openvpms.component.business.domain.im.common.IMObject;
 import org.openvpms.component.business.domain.im.lookup.Lookup;
 import org.openvpms.component.business.service.archetype.AbstractArchetypeServiceListener;
@@ -39,7 +41,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 
 /**
@@ -47,15 +48,21 @@ import java.util.StringTokenizer;
  * <em>lookup.macroReport</em> lookups.
  * <p/>
  * These are monitored for updates to ensure that the macros reflect those in the database.
+ * <p/>
+ * The macros are held in an immutable {@link MacroTable} which is replaced whenever a macro is added or removed.
+ * This allows macros to be looked up without locking, as macros are run far more often than they are updated.
+ * <p/>
+ * Document templates are also monitored, so that reports cached for report macros are discarded when a template
+ * changes.
  *
  * @author Tim Anderson
  */
 public class LookupMacros implements Macros, DisposableBean {
 
     /**
-     * The macros, keyed on code
+     * The macros.
      */
-    private final Map<String, Macro> macros = Collections.synchronizedMap(new HashMap<String, Macro>());
+    private volatile MacroTable table = new MacroTable(Collections.<String, Macro>emptyMap());
 
     /**
      * The archetype service.
@@ -72,6 +79,11 @@ public class LookupMacros implements Macros, DisposableBean {
      */
     private final IArchetypeServiceListener listener;
 
+    /**
+     * The listener to monitor document template updates.
+     */
+    private final IArchetypeServiceListener templateListener;
+
     /**
      * The per-thread variables. These are required so that variables may be supplied to nested macros when they
      * are invoked via macro:eval().
@@ -95,9 +107,11 @@ public class LookupMacros implements Macros, DisposableBean {
         this.service = service;
         this.factory = new MacroFactory(service, factory);
 
+        Map<String, Macro> macros = new HashMap<String, Macro>();
         for (String shortName : MacroArchetypes.LOOKUP_MACROS) {
-            addMacros(shortName, lookups);
+            addMacros(shortName, lookups, macros);
         }
+        table = new MacroTable(macros);
         listener = new AbstractArchetypeServiceListener() {
             public void saved(IMObject object) {
                 onSaved((Lookup) object);
@@ -110,6 +124,16 @@ public class LookupMacros implements Macros, DisposableBean {
         for (String shortName : MacroArchetypes.LOOKUP_MACROS) {
             service.addListener(shortName, listener);
         }
+        templateListener = new AbstractArchetypeServiceListener() {
+            public void saved(IMObject object) {
+                LookupMacros.this.factory.removeReports((DocumentAct) object);
+            }
+
+            public void removed(IMObject object) {
+                LookupMacros.this.factory.removeReports((DocumentAct) object);
+            }
+        };
+        service.addListener(DocumentArchetypes.DOCUMENT_TEMPLATE_ACT, templateListener);
     }
 
     /**
@@ -119,7 +143,7 @@ public class LookupMacros implements Macros, DisposableBean {
      * @return {@code true} if the macro exists
      */
     public boolean exists(String macro) {
-        return macros.containsKey(macro);
+        return table.get(macro) != null;
     }
 
     /**
@@ -149,12 +173,13 @@ public class LookupMacros implements Macros, DisposableBean {
      */
     public String run(String macro, Object object, Variables variables) {
         String result = null;
+        MacroTable table = this.table;
         Token token = Token.parse(macro);
-        Macro m = macros.get(token.getToken());
+        Macro m = table.get(token.getToken());
         if (m != null) {
             ScopedVariables scoped = pushVariables(variables);
             try {
-                MacroContext context = new MacroContext(macros, factory, object, scoped);
+                MacroContext context = new MacroContext(table.getMacros(), factory, object, scoped);
                 result = context.run(m, token.getNumericPrefix());
             } catch (MacroException exception) {
                 throw exception;
@@ -197,36 +222,48 @@ public class LookupMacros implements Macros, DisposableBean {
      * @return the text will macros substituted for their values
      */
     public String runAll(String text, Object object, Variables variables, Position position) {
-        StringBuilder result = new StringBuilder();
+        MacroTable table = this.table;
+        StringBuilder result = new StringBuilder(text.length());
         ScopedVariables scoped = pushVariables(variables);
         int oldPos = position != null ? position.getOldPosition() : -1;
         int index = 0;   // index into the text
+        int length = text.length();
+        int start = 0;   // start of the current token
         try {
-            MacroContext context = new MacroContext(macros, factory, object, scoped);
-
-            StringTokenizer tokens = new StringTokenizer(text, " \t\n\r", true);
-            while (tokens.hasMoreTokens()) {
-                Token token = Token.parse(tokens.nextToken());
-                Macro macro = macros.get(token.getToken());
-                int tokenLength = token.getText().length();
-                String value;
+            MacroContext context = new MacroContext(table.getMacros(), factory, object, scoped);
+
+            // walk the text once, splitting it into words and single whitespace characters. Only words that match
+            // a macro code are materialised; all other text is copied directly to the result
+            while (start < length) {
+                int end = start + 1;
                 boolean expanded = false;
-                if (macro != null) {
-                    try {
-                        value = context.run(macro, token.getNumericPrefix());
-                        expanded = true;
-                    } catch (Throwable exception) {
-                        log.warn(exception, exception);
-                        value = token.getText();
+                if (!isWhitespace(text.charAt(start))) {
+                    while (end < length && !isWhitespace(text.charAt(end))) {
+                        ++end;
+                    }
+                    int prefix = start;
+                    while (prefix < end && Token.isNumeric(text.charAt(prefix))) {
+                        ++prefix;
+                    }
+                    Macro macro = table.find(text, prefix, end);
+                    if (macro != null) {
+                        String numericPrefix = (prefix != start) ? text.substring(start, prefix) : null;
+                        try {
+                            String value = context.run(macro, numericPrefix);
+                            if (value != null) {
+                                result.append(value);
+                            }
+                            expanded = true;
+                        } catch (Throwable exception) {
+                            log.warn(exception, exception);
+                        }
                     }
-                } else {
-                    value = token.getText();
                 }
-                if (value != null) {
-                    result.append(value);
+                if (!expanded) {
+                    result.append(text, start, end);
                 }
                 if (oldPos != -1 && index <= oldPos) {
-                    index += tokenLength;
+                    index += end - start;
                     if (index >= oldPos) {
                         int newPos;
                         if (expanded) {
@@ -245,6 +282,7 @@ public class LookupMacros implements Macros, DisposableBean {
                         oldPos = -1;
                     }
                 }
+                start = end;
             }
         } finally {
             popVariables(variables, scoped);
@@ -260,6 +298,17 @@ public class LookupMacros implements Macros, DisposableBean {
         for (String shortName : MacroArchetypes.LOOKUP_MACROS) {
             service.removeListener(shortName, listener);
         }
+        service.removeListener(DocumentArchetypes.DOCUMENT_TEMPLATE_ACT, templateListener);
+    }
+
+    /**
+     * Determines if a character delimits macros.
+     *
+     * @param ch the character
+     * @return {@code true} if {@code ch} is a space, tab, newline or carriage return
+     */
+    private static boolean isWhitespace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r';
     }
 
     /**
@@ -267,12 +316,16 @@ public class LookupMacros implements Macros, DisposableBean {
      *
      * @param shortName the archetype short name
      * @param service   the lookup service
+     * @param macros    the macros to add to
      */
-    private void addMacros(String shortName, ILookupService service) {
-        Collection<Lookup> macros = service.getLookups(shortName);
-        for (Lookup lookup : macros) {
+    private void addMacros(String shortName, ILookupService service, Map<String, Macro> macros) {
+        Collection<Lookup> lookups = service.getLookups(shortName);
+        for (Lookup lookup : lookups) {
             if (lookup.isActive()) {
-                add(lookup);
+                Macro macro = create(lookup);
+                if (macro != null) {
+                    macros.put(lookup.getCode(), macro);
+                }
             }
         }
     }
@@ -295,11 +348,12 @@ public class LookupMacros implements Macros, DisposableBean {
      *
      * @param lookup the macro definition
      */
-    private void add(Lookup lookup) {
-        try {
-            macros.put(lookup.getCode(), factory.create(lookup));
-        } catch (Throwable exception) {
-            log.error(exception.getMessage(), exception);
+    private synchronized void add(Lookup lookup) {
+        Macro macro = create(lookup);
+        if (macro != null) {
+            Map<String, Macro> macros = new HashMap<String, Macro>(table.getMacros());
+            macros.put(lookup.getCode(), macro);
+            table = new MacroTable(macros);
         }
     }
 
@@ -308,8 +362,27 @@ public class LookupMacros implements Macros, DisposableBean {
      *
      * @param lookup the macro definition
      */
-    private void delete(Lookup lookup) {
-        macros.remove(lookup.getCode());
+    private synchronized void delete(Lookup lookup) {
+        if (table.get(lookup.getCode()) != null) {
+            Map<String, Macro> macros = new HashMap<String, Macro>(table.getMacros());
+            macros.remove(lookup.getCode());
+            table = new MacroTable(macros);
+        }
+    }
+
+    /**
+     * Creates a macro from its definition.
+     *
+     * @param lookup the macro definition
+     * @return the macro, or {@code null} if it cannot be created
+     */
+    private Macro create(Lookup lookup) {
+        try {
+            return factory.create(lookup);
+        } catch (Throwable exception) {
+            log.error(exception.getMessage(), exception);
+        }
+        return null;
     }
 
     private ScopedVariables pushVariables(Variables variables) {
@@ -422,11 +495,126 @@ public class LookupMacros implements Macros, DisposableBean {
          * @param ch the character
          * @return {@code true} if {@code ch} is one of '0'..'9','.' or '/'
          */
-        private static boolean isNumeric(char ch) {
+        public static boolean isNumeric(char ch) {
             return Character.isDigit(ch) || ch == '.' || ch == '/';
         }
     }
 
+    /**
+     * An immutable snapshot of the macros.
+     * <p/>
+     * In addition to the macros keyed on code, this maintains a trie of the macro codes, so that macros can be
+     * located within text without creating substrings.
+     */
+    private static class MacroTable {
+
+        /**
+         * The macros, keyed on code.
+         */
+        private final Map<String, Macro> macros;
+
+        /**
+         * The root of the trie.
+         */
+        private final Node root = new Node();
+
+        /**
+         * Constructs a {@link MacroTable}.
+         *
+         * @param macros the macros, keyed on code
+         */
+        public MacroTable(Map<String, Macro> macros) {
+            this.macros = Collections.unmodifiableMap(macros);
+            for (Map.Entry<String, Macro> entry : macros.entrySet()) {
+                String code = entry.getKey();
+                Node node = root;
+                for (int i = 0; i < code.length(); ++i) {
+                    node = node.add(code.charAt(i));
+                }
+                node.macro = entry.getValue();
+            }
+        }
+
+        /**
+         * Returns the macros.
+         *
+         * @return the macros, keyed on code
+         */
+        public Map<String, Macro> getMacros() {
+            return macros;
+        }
+
+        /**
+         * Returns a macro given its code.
+         *
+         * @param code the macro code
+         * @return the corresponding macro, or {@code null} if none is found
+         */
+        public Macro get(String code) {
+            return macros.get(code);
+        }
+
+        /**
+         * Finds the macro whose code matches a range of text.
+         *
+         * @param text  the text
+         * @param start the start of the range, inclusive
+         * @param end   the end of the range, exclusive
+         * @return the corresponding macro, or {@code null} if none is found
+         */
+        public Macro find(String text, int start, int end) {
+            Node node = root;
+            for (int i = start; i < end && node != null; ++i) {
+                node = node.get(text.charAt(i));
+            }
+            return node != null ? node.macro : null;
+        }
+    }
+
+    /**
+     * A node in the macro code trie.
+     */
+    private static class Node {
+
+        /**
+         * The child nodes, keyed on character.
+         */
+        private Map<Character, Node> children;
+
+        /**
+         * The macro whose code terminates at this node. May be {@code null}
+         */
+        private Macro macro;
+
+        /**
+         * Returns the child node for a character.
+         *
+         * @param ch the character
+         * @return the child node, or {@code null} if none exists
+         */
+        public Node get(char ch) {
+            return children != null ? children.get(ch) : null;
+        }
+
+        /**
+         * Returns the child node for a character, creating it if it doesn't exist.
+         *
+         * @param ch the character
+         * @return the child node
+         */
+        public Node add(char ch) {
+            if (children == null) {
+                children = new HashMap<Character, Node>();
+            }
+            Node node = children.get(ch);
+            if (node == null) {
+                node = new Node();
+                children.put(ch, node);
+            }
+            return node;
+        }
+    }
+
     private static class ScopedVariables implements Variables {
 
         private final List<Variables> stack = new ArrayList<Variables>();
@@ -22,6 +22,7 @@ import org.openvpms.macro.MacroException;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -63,6 +64,13 @@ class MacroContext {
      */
     private Deque<String> running = new ArrayDeque<String>();
 
+    /**
+     * The runners used to run top-level macros, keyed on macro class. These are reused, as they are expensive to
+     * create.
+     */
+    private final Map<Class<? extends Macro>, MacroRunner> runners
+            = new HashMap<Class<? extends Macro>, MacroRunner>();
+
 
     /**
      * Constructs a {@code MacroContext}.
@@ -132,9 +140,20 @@ class MacroContext {
             throw new MacroException(
                     "Macro " + code + " called recursively from " + StringUtils.join(running.descendingIterator(), " => "));
         }
+        boolean nested = !running.isEmpty();
         running.push(code);
         try {
-            MacroRunner runner = getRunner(macro);
+            MacroRunner runner;
+            if (nested) {
+                // nested macros need their own runner, as the runner's state is in use by the calling macro
+                runner = getRunner(macro);
+            } else {
+                runner = runners.get(macro.getClass());
+                if (runner == null) {
+                    runner = getRunner(macro);
+                    runners.put(macro.getClass(), runner);
+                }
+            }
             result = runner.run(macro, number);
         } finally {
             running.pop();
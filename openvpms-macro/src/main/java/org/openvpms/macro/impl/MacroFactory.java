@@ -16,6 +16,7 @@
 
 package org.openvpms.macro.impl;
 
+import org.openvpms.component.business.domain.im.act.DocumentAct;
 import org.openvpms.component.business.domain.im.lookup.Lookup;
 import org.openvpms.component.business.service.archetype.IArchetypeService;
 import org.openvpms.component.business.service.archetype.helper.TypeHelper;
@@ -36,9 +37,9 @@ class MacroFactory {
     private final IArchetypeService service;
 
     /**
-     * The report factory.
+     * The report cache, shared by all report macro runners.
      */
-    private final ReportFactory factory;
+    private final ReportCache reports;
 
     /**
      * Constructs a {@link MacroFactory}.
@@ -48,7 +49,7 @@ class MacroFactory {
      */
     public MacroFactory(IArchetypeService service, ReportFactory factory) {
         this.service = service;
-        this.factory = factory;
+        this.reports = new ReportCache(factory);
     }
 
     /**
@@ -80,8 +81,19 @@ class MacroFactory {
         if (macro instanceof ExpressionMacro) {
             return new ExpressionMacroRunner(context);
         } else if (macro instanceof ReportMacro) {
-            return new ReportMacroRunner(context, factory);
+            return new ReportMacroRunner(context, reports);
         }
         throw new IllegalArgumentException("Unsupported macro type: " + macro.getClass().getName());
     }
+
+    /**
+     * Discards any reports cached from a template act.
+     * <p/>
+     * This should be invoked when a report template act is saved or removed.
+     *
+     * @param act the <em>act.documentTemplate</em>
+     */
+    public void removeReports(DocumentAct act) {
+        reports.remove(act);
+    }
 }
@@ -0,0 +1,186 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.macro.impl;
+
+import org.openvpms.component.business.domain.im.act.DocumentAct;
+import org.openvpms.component.business.domain.im.common.IMObject;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
+import org.openvpms.component.business.domain.im.document.Document;
+import org.openvpms.macro.MacroException;
+import org.openvpms.report.IMReport;
+import org.openvpms.report.ReportFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches reports used by report macros, to avoid reloading and recompiling the report template each time a macro is
+ * run.
+ * <p/>
+ * Reports are keyed on the macro's <em>entity.documentTemplate</em>, and record the <em>act.documentTemplate</em>
+ * whose document they were created from. A cached report is returned without accessing the database;
+ * it is up to the caller to invoke {@link #remove(DocumentAct)} when a template act changes.
+ * <p/>
+ * The no. of cached reports is bounded; the least recently used are evicted when the limit is reached.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class ReportCache {
+
+    /**
+     * The default maximum no. of cached reports.
+     */
+    public static final int DEFAULT_MAX_REPORTS = 50;
+
+    /**
+     * The report factory.
+     */
+    private final ReportFactory factory;
+
+    /**
+     * The reports, keyed on template reference, in least recently used order.
+     */
+    private final Map<IMObjectReference, Entry> reports;
+
+    /**
+     * Incremented each time reports are removed, so that reports created concurrently with a removal aren't cached.
+     */
+    private long generation;
+
+    /**
+     * Constructs a {@link ReportCache}.
+     *
+     * @param factory the report factory
+     */
+    public ReportCache(ReportFactory factory) {
+        this(factory, DEFAULT_MAX_REPORTS);
+    }
+
+    /**
+     * Constructs a {@link ReportCache}.
+     *
+     * @param factory    the report factory
+     * @param maxReports the maximum no. of reports to cache
+     */
+    public ReportCache(ReportFactory factory, final int maxReports) {
+        this.factory = factory;
+        reports = new LinkedHashMap<IMObjectReference, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IMObjectReference, Entry> eldest) {
+                return size() > maxReports;
+            }
+        };
+    }
+
+    /**
+     * Returns the report for a macro, creating it if it isn't cached.
+     *
+     * @param macro the report macro
+     * @return the report
+     * @throws MacroException if the macro has no document template
+     */
+    public IMReport<IMObject> getReport(ReportMacro macro) {
+        IMObjectReference template = macro.getTemplate();
+        long current;
+        synchronized (reports) {
+            Entry entry = (template != null) ? reports.get(template) : null;
+            if (entry != null) {
+                return entry.report;
+            }
+            current = generation;
+        }
+        DocumentAct act = macro.getDocumentAct();
+        Document document = (act != null) ? macro.getDocument(act) : null;
+        if (document == null) {
+            throw new MacroException("No document template for macro=" + macro.getCode());
+        }
+        Entry entry = new Entry(act, factory.createIMObjectReport(document));
+        synchronized (reports) {
+            if (current == generation) {
+                reports.put(template, entry);
+            }
+        }
+        return entry.report;
+    }
+
+    /**
+     * Removes any report created from a template act.
+     *
+     * @param act the <em>act.documentTemplate</em>
+     */
+    public void remove(DocumentAct act) {
+        IMObjectReference reference = act.getObjectReference();
+        synchronized (reports) {
+            ++generation;
+            Iterator<Entry> iterator = reports.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().act.equals(reference)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached reports.
+     */
+    public void clear() {
+        synchronized (reports) {
+            ++generation;
+            reports.clear();
+        }
+    }
+
+    /**
+     * Returns the no. of cached reports.
+     *
+     * @return the no. of cached reports
+     */
+    public int size() {
+        synchronized (reports) {
+            return reports.size();
+        }
+    }
+
+    /**
+     * Cached report.
+     */
+    private static class Entry {
+
+        /**
+         * The template act the report was created from.
+         */
+        private final IMObjectReference act;
+
+        /**
+         * The report.
+         */
+        private final IMReport<IMObject> report;
+
+        /**
+         * Constructs an {@link Entry}.
+         *
+         * @param act    the template act
+         * @param report the report
+         */
+        public Entry(DocumentAct act, IMReport<IMObject> report) {
+            this.act = act.getObjectReference();
+            this.report = report;
+        }
+    }
+}
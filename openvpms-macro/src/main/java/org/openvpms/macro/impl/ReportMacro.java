@@ -17,6 +17,8 @@
 package org.openvpms.macro.impl;
 
 import org.openvpms.archetype.rules.doc.DocumentTemplate;
+import org.openvpms.archetype.rules.doc.TemplateHelper;
+import org.openvpms.component.business.domain.im.act.DocumentAct;
 import org.openvpms.component.business.domain.im.common.Entity;
 import org.openvpms.component.business.domain.im.common.IMObjectReference;
 import org.openvpms.component.business.domain.im.document.Document;
@@ -37,6 +39,16 @@ public class ReportMacro extends AbstractExpressionMacro {
      */
     private final DocumentTemplate template;
 
+    /**
+     * The report document template reference. May be {@code null}
+     */
+    private final IMObjectReference reference;
+
+    /**
+     * The archetype service.
+     */
+    private final IArchetypeService service;
+
     /**
      * Constructs a {@link ReportMacro}.
      *
@@ -57,7 +69,8 @@ public class ReportMacro extends AbstractExpressionMacro {
      */
     protected ReportMacro(IMObjectBean bean, IArchetypeService service) {
         super(bean);
-        IMObjectReference reference = bean.getReference("report");
+        this.service = service;
+        reference = bean.getReference("report");
         Entity entity = null;
         if (reference != null) {
             entity = (Entity) service.get(reference);
@@ -74,4 +87,37 @@ public class ReportMacro extends AbstractExpressionMacro {
         return template != null ? template.getDocument() : null;
     }
 
+    /**
+     * Returns the report document template reference.
+     *
+     * @return the <em>entity.documentTemplate</em> reference. May be {@code null}
+     */
+    public IMObjectReference getTemplate() {
+        return reference;
+    }
+
+    /**
+     * Returns the act that holds the report document.
+     *
+     * @return the <em>act.documentTemplate</em>, or {@code null} if it cannot be found
+     */
+    public DocumentAct getDocumentAct() {
+        if (reference == null) {
+            return null;
+        }
+        Entity entity = (Entity) service.get(reference);
+        return (entity != null) ? new TemplateHelper(service).getDocumentAct(entity) : null;
+    }
+
+    /**
+     * Returns the report document held by a template act.
+     *
+     * @param act the <em>act.documentTemplate</em>
+     * @return the report document, or {@code null} if it cannot be found
+     */
+    public Document getDocument(DocumentAct act) {
+        IMObjectReference document = act.getDocument();
+        return (document != null) ? (Document) service.get(document) : null;
+    }
+
 }
@@ -18,7 +18,6 @@ package org.openvpms.macro.impl;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.openvpms.component.business.domain.im.common.IMObject;
-import org.openvpms.component.business.domain.im.document.Document;
 import org.openvpms.component.business.service.archetype.ArchetypeServiceException;
 import org.openvpms.macro.MacroException;
 import org.openvpms.report.DocFormats;
@@ -30,27 +29,44 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 
 /**
  * Runs report macros.
  * <p/>
- * This generates a report and exports it as text.
+ * This generates a report and exports it as text. Reports are obtained from a {@link ReportCache}, so that templates
+ * aren't reloaded and recompiled each time a macro is run.
  *
  * @author Tim Anderson
  */
 public class ReportMacroRunner extends AbstractExpressionMacroRunner {
 
     /**
-     * The report factory.
+     * The report cache.
      */
-    private final ReportFactory factory;
+    private final ReportCache reports;
 
     /**
      * The default character encoding.
      */
     private static final String ENCODING = "UTF-8";
 
+    /**
+     * Matches whitespace up to each newline.
+     */
+    private static final Pattern TRAILING_WHITESPACE = Pattern.compile("[\\s&&[^\\n]]+\n");
+
+    /**
+     * Matches empty lines at the start of the text.
+     */
+    private static final Pattern LEADING_LINES = Pattern.compile("^\\n+");
+
+    /**
+     * Matches empty lines at the end of the text.
+     */
+    private static final Pattern TRAILING_LINES = Pattern.compile("\\n+$");
+
     /**
      * Constructs a {@link ReportMacroRunner}.
      *
@@ -58,8 +74,18 @@ public class ReportMacroRunner extends AbstractExpressionMacroRunner {
      * @param factory the report factory
      */
     public ReportMacroRunner(MacroContext context, ReportFactory factory) {
+        this(context, new ReportCache(factory));
+    }
+
+    /**
+     * Constructs a {@link ReportMacroRunner}.
+     *
+     * @param context the macro context
+     * @param reports the report cache
+     */
+    public ReportMacroRunner(MacroContext context, ReportCache reports) {
         super(context);
-        this.factory = factory;
+        this.reports = reports;
     }
 
     /**
@@ -76,9 +102,8 @@ public class ReportMacroRunner extends AbstractExpressionMacroRunner {
         String result;
         Object object = evaluate(reportMacro, number);
         if (object instanceof IMObject) {
-            Document document = getTemplate(reportMacro);
             Map<String, Object> parameters = new HashMap<String, Object>();
-            IMReport<IMObject> report = factory.createIMObjectReport(document);
+            IMReport<IMObject> report = getReport(reportMacro);
             ByteArrayOutputStream output = new ByteArrayOutputStream();
             List<IMObject> objects = Arrays.asList((IMObject) object);
             report.generate(objects, parameters, null, DocFormats.TEXT_TYPE, output);
@@ -88,9 +113,9 @@ public class ReportMacroRunner extends AbstractExpressionMacroRunner {
                 throw new MacroException("Failed to encode report output", exception);
             }
             // strip leading and trailing whitespace
-            result = result.replaceAll("[\\s&&[^\\n]]+\n", "\n"); // strip whitespace up to each newline
-            result = result.replaceAll("^\\n+", "");              // strip empty lines at the start
-            result = result.replaceAll("\\n+$", "");              // strip empty lines at the end
+            result = TRAILING_WHITESPACE.matcher(result).replaceAll("\n"); // strip whitespace up to each newline
+            result = LEADING_LINES.matcher(result).replaceAll("");         // strip empty lines at the start
+            result = TRAILING_LINES.matcher(result).replaceAll("");        // strip empty lines at the end
         } else {
             throw new MacroException("Expression='" + reportMacro.getExpression()
                                      + "' did not return an object for macro=" + reportMacro.getCode());
@@ -99,23 +124,18 @@ public class ReportMacroRunner extends AbstractExpressionMacroRunner {
     }
 
     /**
-     * Returns the report document template associated with the macro.
+     * Returns the report associated with the macro.
      *
      * @param macro the macro
-     * @return the report document template
+     * @return the report
      * @throws MacroException for any macro error
      */
-    private Document getTemplate(ReportMacro macro) {
-        Document document;
+    private IMReport<IMObject> getReport(ReportMacro macro) {
         try {
-            document = macro.getDocument();
+            return reports.getReport(macro);
         } catch (ArchetypeServiceException exception) {
             throw new MacroException("Failed to retrieve document template for macro=" + macro.getCode(), exception);
         }
-        if (document == null) {
-            throw new MacroException("No document template for macro=" + macro.getCode());
-        }
-        return document;
     }
 
 }
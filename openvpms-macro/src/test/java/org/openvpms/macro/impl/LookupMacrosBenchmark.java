@@ -0,0 +1,164 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.macro.impl;
+
+import org.openvpms.archetype.function.factory.ArchetypeFunctionsFactory;
+import org.openvpms.archetype.rules.doc.DocumentHandlers;
+import org.openvpms.component.business.domain.im.lookup.Lookup;
+import org.openvpms.component.business.service.archetype.IArchetypeService;
+import org.openvpms.component.business.service.lookup.ILookupService;
+import org.openvpms.macro.MapVariables;
+import org.openvpms.report.ReportFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link LookupMacros#runAll} expansion of a clinical note containing 50 tokens, 10 of which are macros.
+ * <p/>
+ * This uses the same database as the test cases. It is not run as part of the build; run it via {@link #main}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LookupMacrosBenchmark {
+
+    /**
+     * The application context.
+     */
+    private ClassPathXmlApplicationContext context;
+
+    /**
+     * The archetype service.
+     */
+    private IArchetypeService service;
+
+    /**
+     * The macros created by the benchmark, removed on tear down.
+     */
+    private final List<Lookup> lookups = new ArrayList<Lookup>();
+
+    /**
+     * The macros.
+     */
+    private LookupMacros macros;
+
+    /**
+     * The note to expand.
+     */
+    private String note;
+
+    /**
+     * Variables to supply to the macros.
+     */
+    private MapVariables variables;
+
+    /**
+     * Sets up the benchmark.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new ClassPathXmlApplicationContext("applicationContext.xml");
+        service = context.getBean("archetypeService", IArchetypeService.class);
+        ILookupService lookupService = context.getBean("lookupService", ILookupService.class);
+        ArchetypeFunctionsFactory functions = context.getBean(ArchetypeFunctionsFactory.class);
+
+        lookups.add(MacroTestHelper.createMacro("@bmgive", "'Give'"));
+        lookups.add(MacroTestHelper.createMacro("@bmtab", "concat($number, ' tablet(s)')"));
+        lookups.add(MacroTestHelper.createMacro("@bmbid", "'twice a day'"));
+        lookups.add(MacroTestHelper.createMacro("@bmfood", "concat('with', ' ', 'food')"));
+        lookups.add(MacroTestHelper.createMacro("@bmdays", "concat('for ', $number, ' days')"));
+        lookups.add(MacroTestHelper.createMacro("@bmpatient", "$patientName"));
+        lookups.add(MacroTestHelper.createMacro("@bmrecheck", "concat('Recheck in ', $number, ' weeks')"));
+        lookups.add(MacroTestHelper.createMacro("@bmnested",
+                                                "concat(macro:eval('@bmgive'), ' ', macro:eval('@bmbid'))"));
+
+        ReportFactory factory = new ReportFactory(service, lookupService, new DocumentHandlers(), functions);
+        macros = new LookupMacros(lookupService, service, factory);
+
+        variables = new MapVariables();
+        variables.add("patientName", "Fido");
+
+        StringBuilder text = new StringBuilder();
+        text.append("@bmpatient presented with mild lameness of the left hind leg after exercise. ");
+        text.append("Owner reports reduced appetite and lethargy over the weekend. ");
+        text.append("@bmgive 1@bmtab @bmbid @bmfood 5@bmdays . ");
+        text.append("Monitor the wound and keep the dressing dry. @bmnested . ");
+        text.append("Discussed diet and exercise. @bmgive 2@bmtab @bmfood . 2@bmrecheck");
+        note = text.toString();
+    }
+
+    /**
+     * Tears down the benchmark, removing the macros it created.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        try {
+            macros.destroy();
+            for (Lookup lookup : lookups) {
+                service.remove(lookup);
+            }
+            lookups.clear();
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Expands the macros in the note.
+     *
+     * @return the expanded note
+     */
+    @Benchmark
+    public String runAll() {
+        return macros.runAll(note, null, variables, null);
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the command line arguments
+     * @throws RunnerException if the benchmark fails to run
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(LookupMacrosBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -258,6 +258,17 @@ public class LookupMacrosTestCase extends ArchetypeServiceTest {
         assertEquals("A input number: 1/2.0/3 B", text5);
     }
 
+    /**
+     * Verifies that {@link Macros#runAll} only expands words that match a macro code exactly, and that whitespace is
+     * preserved.
+     */
+    @Test
+    public void testRunAllPartialMatch() {
+        assertEquals("macro macro12 xmacro1 @macro", macros.runAll("macro macro12 xmacro1 @macro", customer));
+        assertEquals("a\t" + MACRO1_TEXT + "\r\n\n  b", macros.runAll("a\tmacro1\r\n\n  b", customer));
+        assertEquals("", macros.runAll("", customer));
+    }
+
     /**
      * Verifies that declared variable can be access by macros in {@link Macros#runAll}.
      */
@@ -28,6 +28,7 @@ import org.openvpms.archetype.test.ArchetypeServiceTest;
 import org.openvpms.archetype.test.TestHelper;
 import org.openvpms.component.business.domain.im.act.DocumentAct;
 import org.openvpms.component.business.domain.im.common.Entity;
+import org.openvpms.component.business.domain.im.common.IMObject;
 import org.openvpms.component.business.domain.im.document.Document;
 import org.openvpms.component.business.domain.im.lookup.Lookup;
 import org.openvpms.component.business.domain.im.party.Party;
@@ -35,6 +36,7 @@ import org.openvpms.component.business.service.archetype.IArchetypeService;
 import org.openvpms.component.business.service.archetype.helper.ActBean;
 import org.openvpms.component.business.service.archetype.helper.IMObjectBean;
 import org.openvpms.component.business.service.archetype.helper.IMObjectVariables;
+import org.openvpms.report.IMReport;
 import org.openvpms.report.ReportFactory;
 import org.openvpms.report.jasper.JRXMLDocumentHandler;
 import org.openvpms.report.openoffice.OOBootstrapConnectionPool;
@@ -44,6 +46,8 @@ import org.openvpms.report.openoffice.OpenOfficeHelper;
 import java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 /**
  * Tests the {@link ReportMacroRunnerTestCase}.
@@ -112,6 +116,50 @@ public class ReportMacroRunnerTestCase extends ArchetypeServiceTest {
         assertEquals("Foo Bar", text);
     }
 
+    /**
+     * Verifies that {@link ReportCache} returns the same report until the template act is removed from it.
+     */
+    @Test
+    public void testReportCache() {
+        Entity report = createReport(JASPER_REPORT);
+        ReportMacro macro = createMacro(report);
+        DocumentAct act = macro.getDocumentAct();
+        ReportCache cache = new ReportCache(createFactory());
+
+        IMReport<IMObject> report1 = cache.getReport(macro);
+        assertSame(report1, cache.getReport(macro));
+
+        // removing the act should cause the report to be recreated
+        cache.remove(act);
+        IMReport<IMObject> report2 = cache.getReport(macro);
+        assertNotSame(report1, report2);
+        assertSame(report2, cache.getReport(macro));
+
+        cache.clear();
+        assertNotSame(report2, cache.getReport(macro));
+    }
+
+    /**
+     * Verifies that the least recently used reports are evicted when the {@link ReportCache} is full.
+     */
+    @Test
+    public void testReportCacheEviction() {
+        ReportMacro macro1 = createMacro(createReport(JASPER_REPORT));
+        ReportMacro macro2 = createMacro(createReport(JASPER_REPORT));
+        ReportMacro macro3 = createMacro(createReport(JASPER_REPORT));
+        ReportCache cache = new ReportCache(createFactory(), 2);
+
+        IMReport<IMObject> report1 = cache.getReport(macro1);
+        IMReport<IMObject> report2 = cache.getReport(macro2);
+        assertSame(report1, cache.getReport(macro1));
+
+        cache.getReport(macro3); // evicts macro2
+        assertEquals(2, cache.size());
+        assertSame(report1, cache.getReport(macro1));
+        assertNotSame(report2, cache.getReport(macro2));
+        assertEquals(2, cache.size());
+    }
+
     /**
      * Verifies that a Word document can be used as a report macro.
      */
@@ -158,11 +206,8 @@ public class ReportMacroRunnerTestCase extends ArchetypeServiceTest {
      * @return the result of the macro
      */
     private String runMacro(Entity report) {
-        // create a report macro lookup that references the report
-        Lookup lookup = (Lookup) create(MacroArchetypes.REPORT_MACRO);
-        IMObjectBean macroBean = new IMObjectBean(lookup);
-        macroBean.setValue("report", report.getObjectReference());
-        macroBean.setValue("expression", "$customer");
+        // create a report macro that references the report
+        ReportMacro macro = createMacro(report);
 
         // create a customer
         IArchetypeService service = getArchetypeService();
@@ -171,14 +216,35 @@ public class ReportMacroRunnerTestCase extends ArchetypeServiceTest {
         variables.add("customer", customer);
 
         // run the report macro against the customer
-        ReportMacro macro = new ReportMacro(lookup, service);
         MacroContext context = new MacroContext(Collections.<String, Macro>emptyMap(), null, null, variables);
-        ArchetypeFunctionsFactory functions = applicationContext.getBean(ArchetypeFunctionsFactory.class);
-        ReportFactory factory = new ReportFactory(service, getLookupService(), handlers, functions);
-        ReportMacroRunner runner = new ReportMacroRunner(context, factory);
+        ReportMacroRunner runner = new ReportMacroRunner(context, createFactory());
         return runner.run(macro, "");
     }
 
+    /**
+     * Creates a report macro that references a report, evaluating {@code $customer}.
+     *
+     * @param report the entity.documentTemplate representing the report
+     * @return a new macro
+     */
+    private ReportMacro createMacro(Entity report) {
+        Lookup lookup = (Lookup) create(MacroArchetypes.REPORT_MACRO);
+        IMObjectBean macroBean = new IMObjectBean(lookup);
+        macroBean.setValue("report", report.getObjectReference());
+        macroBean.setValue("expression", "$customer");
+        return new ReportMacro(lookup, getArchetypeService());
+    }
+
+    /**
+     * Creates a report factory.
+     *
+     * @return a new report factory
+     */
+    private ReportFactory createFactory() {
+        ArchetypeFunctionsFactory functions = applicationContext.getBean(ArchetypeFunctionsFactory.class);
+        return new ReportFactory(getArchetypeService(), getLookupService(), handlers, functions);
+    }
+
     /**
      * Helper to create an <em>entity.documentTemplate</em>, <em>act.documentTemplate</em> and <em>document.other</em>
      * for the supplied report.
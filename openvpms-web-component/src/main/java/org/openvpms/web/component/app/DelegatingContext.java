@@ -15,7 +15,6 @@
  */
 package org.openvpms.web.component.app;
 
-import org.apache.commons.beanutils.MethodUtils;
 import org.openvpms.component.business.domain.im.act.Act;
 import org.openvpms.component.business.domain.im.common.Entity;
 import org.openvpms.component.business.domain.im.common.IMObject;
@@ -53,6 +52,186 @@ public abstract class DelegatingContext implements Context {
      */
     private final Context fallback;
 
+    /**
+     * {@link Context#getCurrent()} getter.
+     */
+    private static final Getter<IMObject> CURRENT = new Getter<IMObject>() {
+        public IMObject get(Context context) {
+            return context.getCurrent();
+        }
+    };
+
+    /**
+     * {@link Context#getUser()} getter.
+     */
+    private static final Getter<User> USER = new Getter<User>() {
+        public User get(Context context) {
+            return context.getUser();
+        }
+    };
+
+    /**
+     * {@link Context#getPractice()} getter.
+     */
+    private static final Getter<Party> PRACTICE = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getPractice();
+        }
+    };
+
+    /**
+     * {@link Context#getLocation()} getter.
+     */
+    private static final Getter<Party> LOCATION = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getLocation();
+        }
+    };
+
+    /**
+     * {@link Context#getStockLocation()} getter.
+     */
+    private static final Getter<Party> STOCK_LOCATION = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getStockLocation();
+        }
+    };
+
+    /**
+     * {@link Context#getCustomer()} getter.
+     */
+    private static final Getter<Party> CUSTOMER = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getCustomer();
+        }
+    };
+
+    /**
+     * {@link Context#getPatient()} getter.
+     */
+    private static final Getter<Party> PATIENT = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getPatient();
+        }
+    };
+
+    /**
+     * {@link Context#getSupplier()} getter.
+     */
+    private static final Getter<Party> SUPPLIER = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getSupplier();
+        }
+    };
+
+    /**
+     * {@link Context#getProduct()} getter.
+     */
+    private static final Getter<Product> PRODUCT = new Getter<Product>() {
+        public Product get(Context context) {
+            return context.getProduct();
+        }
+    };
+
+    /**
+     * {@link Context#getDeposit()} getter.
+     */
+    private static final Getter<Party> DEPOSIT = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getDeposit();
+        }
+    };
+
+    /**
+     * {@link Context#getTill()} getter.
+     */
+    private static final Getter<Party> TILL = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getTill();
+        }
+    };
+
+    /**
+     * {@link Context#getClinician()} getter.
+     */
+    private static final Getter<User> CLINICIAN = new Getter<User>() {
+        public User get(Context context) {
+            return context.getClinician();
+        }
+    };
+
+    /**
+     * {@link Context#getScheduleView()} getter.
+     */
+    private static final Getter<Entity> SCHEDULE_VIEW = new Getter<Entity>() {
+        public Entity get(Context context) {
+            return context.getScheduleView();
+        }
+    };
+
+    /**
+     * {@link Context#getSchedule()} getter.
+     */
+    private static final Getter<Party> SCHEDULE = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getSchedule();
+        }
+    };
+
+    /**
+     * {@link Context#getScheduleDate()} getter.
+     */
+    private static final Getter<Date> SCHEDULE_DATE = new Getter<Date>() {
+        public Date get(Context context) {
+            return context.getScheduleDate();
+        }
+    };
+
+    /**
+     * {@link Context#getAppointment()} getter.
+     */
+    private static final Getter<Act> APPOINTMENT = new Getter<Act>() {
+        public Act get(Context context) {
+            return context.getAppointment();
+        }
+    };
+
+    /**
+     * {@link Context#getWorkListView()} getter.
+     */
+    private static final Getter<Entity> WORK_LIST_VIEW = new Getter<Entity>() {
+        public Entity get(Context context) {
+            return context.getWorkListView();
+        }
+    };
+
+    /**
+     * {@link Context#getWorkList()} getter.
+     */
+    private static final Getter<Party> WORK_LIST = new Getter<Party>() {
+        public Party get(Context context) {
+            return context.getWorkList();
+        }
+    };
+
+    /**
+     * {@link Context#getWorkListDate()} getter.
+     */
+    private static final Getter<Date> WORK_LIST_DATE = new Getter<Date>() {
+        public Date get(Context context) {
+            return context.getWorkListDate();
+        }
+    };
+
+    /**
+     * {@link Context#getTask()} getter.
+     */
+    private static final Getter<Act> TASK = new Getter<Act>() {
+        public Act get(Context context) {
+            return context.getTask();
+        }
+    };
+
 
     /**
      * Constructs a {@code DelegatingContext}.
@@ -89,7 +268,7 @@ public abstract class DelegatingContext implements Context {
      * @return the object being viewed/edited, or {@code null} if there is no current object
      */
     public IMObject getCurrent() {
-        return get("getCurrent");
+        return get(CURRENT);
     }
 
     /**
@@ -107,7 +286,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current user
      */
     public User getUser() {
-        return get("getUser");
+        return get(USER);
     }
 
     /**
@@ -125,7 +304,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current practice
      */
     public Party getPractice() {
-        return get("getPractice");
+        return get(PRACTICE);
     }
 
     /**
@@ -143,7 +322,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current location
      */
     public Party getLocation() {
-        return get("getLocation");
+        return get(LOCATION);
     }
 
     /**
@@ -161,7 +340,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current stock location, or {@code null} if there is no current location
      */
     public Party getStockLocation() {
-        return get("getStockLocation");
+        return get(STOCK_LOCATION);
     }
 
     /**
@@ -179,7 +358,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current customer, or {@code null} if there is no current customer
      */
     public Party getCustomer() {
-        return get("getCustomer");
+        return get(CUSTOMER);
     }
 
     /**
@@ -197,7 +376,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current patient, or {@code null} if there is no current patient
      */
     public Party getPatient() {
-        return get("getPatient");
+        return get(PATIENT);
     }
 
     /**
@@ -215,7 +394,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current supplier, or {@code null} if there is no current supplier
      */
     public Party getSupplier() {
-        return get("getSupplier");
+        return get(SUPPLIER);
     }
 
     /**
@@ -233,7 +412,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current product, or {@code null} if there is no current product
      */
     public Product getProduct() {
-        return get("getProduct");
+        return get(PRODUCT);
     }
 
     /**
@@ -251,7 +430,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current deposit, or {@code null} if there is no current deposit
      */
     public Party getDeposit() {
-        return get("getDeposit");
+        return get(DEPOSIT);
     }
 
     /**
@@ -269,7 +448,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current till, or {@code null} if there is no current till
      */
     public Party getTill() {
-        return get("getTill");
+        return get(TILL);
     }
 
     /**
@@ -287,7 +466,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current clinician, or {@code null} if there is no current clinician
      */
     public User getClinician() {
-        return get("getClinician");
+        return get(CLINICIAN);
     }
 
     /**
@@ -305,7 +484,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current schedule view. May be {@code null}
      */
     public Entity getScheduleView() {
-        return get("getScheduleView");
+        return get(SCHEDULE_VIEW);
     }
 
     /**
@@ -323,7 +502,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current schedule
      */
     public Party getSchedule() {
-        return get("getSchedule");
+        return get(SCHEDULE);
     }
 
     /**
@@ -341,7 +520,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current schedule date
      */
     public Date getScheduleDate() {
-        return get("getScheduleDate");
+        return get(SCHEDULE_DATE);
     }
 
     /**
@@ -361,7 +540,7 @@ public abstract class DelegatingContext implements Context {
      */
     @Override
     public Act getAppointment() {
-        return get("getAppointment");
+        return get(APPOINTMENT);
     }
 
     /**
@@ -379,7 +558,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current work list view. May be {@code null}
      */
     public Entity getWorkListView() {
-        return get("getWorkListtView");
+        return get(WORK_LIST_VIEW);
     }
 
     /**
@@ -397,7 +576,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current work list
      */
     public Party getWorkList() {
-        return get("getWorkList");
+        return get(WORK_LIST);
     }
 
     /**
@@ -415,7 +594,7 @@ public abstract class DelegatingContext implements Context {
      * @return the current work list date
      */
     public Date getWorkListDate() {
-        return get("getWorkListDate");
+        return get(WORK_LIST_DATE);
     }
 
     /**
@@ -435,7 +614,7 @@ public abstract class DelegatingContext implements Context {
      */
     @Override
     public Act getTask() {
-        return get("getTask");
+        return get(TASK);
     }
 
     /**
@@ -538,27 +717,34 @@ public abstract class DelegatingContext implements Context {
     }
 
     /**
-     * Helper to invoke a get method and return the result.
+     * Helper to invoke a getter and return the result.
      * <p/>
-     * This first invokes the method on the context. If that returns {@code null} and the parent context
-     * is non-null and not the same context, invokes it on the parent.
-     *
-     * @param methodName the name of the method to invoke
-     * @return the method return value. May be {@code null}
-     * @throws RuntimeException if the method cannot be invoked
-     */
-    @SuppressWarnings("unchecked")
-    protected <T> T get(String methodName) {
-        Object result;
-        try {
-            result = MethodUtils.invokeMethod(context, methodName, null);
-            if (result == null && fallback != null && fallback != context) {
-                result = MethodUtils.invokeMethod(fallback, methodName, null);
-            }
-        } catch (Exception exception) {
-            throw new RuntimeException("Failed to invoke " + methodName, exception);
+     * This first invokes the getter on the context. If that returns {@code null} and the fallback context
+     * is non-null and not the same context, invokes it on the fallback.
+     *
+     * @param getter the getter to invoke
+     * @return the getter return value. May be {@code null}
+     */
+    protected <T> T get(Getter<T> getter) {
+        T result = getter.get(context);
+        if (result == null && fallback != null && fallback != context) {
+            result = getter.get(fallback);
         }
-        return (T) result;
+        return result;
+    }
+
+    /**
+     * Returns a value from a context.
+     */
+    protected interface Getter<T> {
+
+        /**
+         * Returns the value from the context.
+         *
+         * @param context the context
+         * @return the value. May be {@code null}
+         */
+        T get(Context context);
     }
 
 }
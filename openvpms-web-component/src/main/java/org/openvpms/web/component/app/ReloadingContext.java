@@ -63,19 +63,17 @@ public class ReloadingContext extends DelegatingContext {
     }
 
     /**
-     * Helper to invoke a get method and return the result.
+     * Helper to invoke a getter and return the result.
      * <p/>
-     * This first invokes the method on the context. If that returns {@code null} and the parent context
-     * is non-null and not the same context, invokes it on the parent.
+     * If the result is an {@link IMObject}, it will be reloaded.
      *
-     * @param methodName the name of the method to invoke
-     * @return the method return value. May be {@code null}
-     * @throws RuntimeException if the method cannot be invoked
+     * @param getter the getter to invoke
+     * @return the getter return value. May be {@code null}
      */
     @Override
     @SuppressWarnings("unchecked")
-    protected <T> T get(String methodName) {
-        T result = super.get(methodName);
+    protected <T> T get(Getter<T> getter) {
+        T result = super.get(getter);
         if (result instanceof IMObject) {
             if (reloadAlways) {
                 result = (T) IMObjectHelper.reload((IMObject) result);
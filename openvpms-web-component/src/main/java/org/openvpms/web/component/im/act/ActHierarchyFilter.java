@@ -20,13 +20,19 @@ import org.apache.commons.collections.Predicate;
 import org.apache.commons.collections.functors.NotPredicate;
 import org.openvpms.component.business.domain.im.act.Act;
 import org.openvpms.component.business.domain.im.act.ActRelationship;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
 import org.openvpms.component.business.service.archetype.functor.IsA;
 import org.openvpms.component.business.service.archetype.functor.RelationshipRef;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -47,6 +53,11 @@ public class ActHierarchyFilter<T extends Act> extends ActFilter<T> {
      */
     private boolean sortAscending = true;
 
+    /**
+     * Acts loaded by {@link #prefetch}, keyed on reference. May be {@code null}
+     */
+    private Map<IMObjectReference, Act> prefetched;
+
 
     /**
      * Constructs an {@code ActHierarchyFilter}.
@@ -116,6 +127,73 @@ public class ActHierarchyFilter<T extends Act> extends ActFilter<T> {
         sortAscending = ascending;
     }
 
+    /**
+     * Loads the descendants of a set of acts, one level of the hierarchy at a time.
+     * <p/>
+     * Each level is loaded with a single query, so that the hierarchies of all of the acts can subsequently be
+     * filtered without querying each parent act individually. Acts returned by {@link #getRelatedReferences} are
+     * loaded in the same query as the children of each level. The loaded acts replace any previously loaded.
+     *
+     * @param acts     the root acts
+     * @param maxDepth the maximum depth to load to, where the root acts are at depth 1, or {@code -1} to have
+     *                 unlimited depth
+     */
+    @SuppressWarnings("unchecked")
+    public void prefetch(Collection<T> acts, int maxDepth) {
+        Map<IMObjectReference, Act> loaded = new HashMap<IMObjectReference, Act>();
+        Collection<T> level = acts;
+        int depth = 1;
+        while (!level.isEmpty() && (maxDepth == -1 || depth < maxDepth)) {
+            Set<IMObjectReference> references = new LinkedHashSet<IMObjectReference>();
+            Set<IMObjectReference> related = new LinkedHashSet<IMObjectReference>();
+            for (T act : level) {
+                for (ActRelationship relationship : getRelationships(act)) {
+                    IMObjectReference target = relationship.getTarget();
+                    if (target != null && !loaded.containsKey(target)) {
+                        references.add(target);
+                    }
+                }
+                for (IMObjectReference reference : getRelatedReferences(act)) {
+                    if (!loaded.containsKey(reference)) {
+                        related.add(reference);
+                    }
+                }
+            }
+            List<T> next = new ArrayList<T>();
+            related.removeAll(references);
+            if (!references.isEmpty() || !related.isEmpty()) {
+                Set<IMObjectReference> all = new LinkedHashSet<IMObjectReference>(references);
+                all.addAll(related);
+                for (Act act : getActs(all)) {
+                    IMObjectReference reference = act.getObjectReference();
+                    loaded.put(reference, act);
+                    if (references.contains(reference)) {
+                        next.add((T) act);
+                    }
+                }
+            }
+            level = next;
+            ++depth;
+        }
+        prefetched = loaded;
+    }
+
+    /**
+     * Returns the references of acts that aren't part of the hierarchy, but that are required when filtering the
+     * children of an act.
+     * <p/>
+     * These are loaded by {@link #prefetch} along with the act's children, and are available via
+     * {@link #getPrefetchedActs}.
+     * <p/>
+     * This implementation returns an empty list.
+     *
+     * @param act the act
+     * @return the related act references
+     */
+    protected Collection<IMObjectReference> getRelatedReferences(T act) {
+        return Collections.emptyList();
+    }
+
     /**
      * Filters relationships.
      *
@@ -211,7 +289,7 @@ public class ActHierarchyFilter<T extends Act> extends ActFilter<T> {
     protected List<T> getIncludedTargets(T act, T root) {
         List<T> result = new ArrayList<T>();
         Collection<ActRelationship> relationships = getRelationships(act);
-        for (Act match : ActHelper.getTargetActs(relationships)) {
+        for (Act match : getTargetActs(relationships)) {
             T item = (T) match;
             if (include(item, act, root)) {
                 result.add(item);
@@ -220,6 +298,60 @@ public class ActHierarchyFilter<T extends Act> extends ActFilter<T> {
         return result;
     }
 
+    /**
+     * Returns the target acts in a set of relationships.
+     * <p/>
+     * Acts loaded by {@link #prefetch} are used where available.
+     *
+     * @param relationships the relationships
+     * @return the target acts
+     */
+    protected List<Act> getTargetActs(Collection<ActRelationship> relationships) {
+        List<IMObjectReference> references = new ArrayList<IMObjectReference>();
+        for (ActRelationship relationship : relationships) {
+            IMObjectReference target = relationship.getTarget();
+            if (target != null) {
+                references.add(target);
+            }
+        }
+        return getPrefetchedActs(references);
+    }
+
+    /**
+     * Returns acts given their references.
+     * <p/>
+     * Acts loaded by {@link #prefetch} are used where available; the remainder are queried.
+     *
+     * @param references the act references
+     * @return the corresponding acts
+     */
+    protected List<Act> getPrefetchedActs(Collection<IMObjectReference> references) {
+        List<Act> result = new ArrayList<Act>();
+        List<IMObjectReference> missing = new ArrayList<IMObjectReference>();
+        for (IMObjectReference reference : references) {
+            Act act = (prefetched != null) ? prefetched.get(reference) : null;
+            if (act != null) {
+                result.add(act);
+            } else {
+                missing.add(reference);
+            }
+        }
+        if (!missing.isEmpty()) {
+            result.addAll(getActs(missing));
+        }
+        return result;
+    }
+
+    /**
+     * Returns acts given their references.
+     *
+     * @param references the act references
+     * @return the corresponding acts
+     */
+    protected List<Act> getActs(Collection<IMObjectReference> references) {
+        return ActHelper.getActs(references);
+    }
+
     /**
      * Helper to return a predicate that includes/excludes acts based on their short name.
      *
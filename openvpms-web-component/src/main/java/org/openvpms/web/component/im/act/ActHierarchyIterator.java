@@ -20,6 +20,7 @@ import org.apache.commons.collections.Predicate;
 import org.openvpms.component.business.domain.im.act.Act;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -39,6 +40,9 @@ import java.util.NoSuchElementException;
  * {@code event1, note1, problem1, event2, note2, problem2}.
  * <br/>
  * Note that the child acts are ordered on increasing start time.
+ * <p/>
+ * If the top level acts are a {@link Collection}, the child acts of all of them are loaded up front, with one query
+ * per level of the hierarchy, rather than one query per act. This can be disabled via {@link #setBatch}.
  *
  * @author Tim Anderson
  */
@@ -59,6 +63,11 @@ public class ActHierarchyIterator<T extends Act> implements Iterable<T> {
      */
     private int maxDepth;
 
+    /**
+     * Determines if the child acts of collections of top level acts are loaded in batches.
+     */
+    private boolean batch = true;
+
 
     /**
      * Constructs an {@link ActHierarchyIterator}.
@@ -131,10 +140,25 @@ public class ActHierarchyIterator<T extends Act> implements Iterable<T> {
      *
      * @return a new iterator
      */
+    @SuppressWarnings("unchecked")
     public Iterator<T> iterator() {
+        if (batch && acts instanceof Collection && (maxDepth == -1 || maxDepth > 1)) {
+            filter.prefetch((Collection<T>) acts, maxDepth);
+        }
         return new ActIterator(maxDepth);
     }
 
+    /**
+     * Determines if child acts are loaded in batches, when the top level acts are a {@link Collection}.
+     * <p/>
+     * Defaults to {@code true}.
+     *
+     * @param batch if {@code true}, load the child acts of all top level acts with one query per level
+     */
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
     /**
      * Returns the filter.
      *
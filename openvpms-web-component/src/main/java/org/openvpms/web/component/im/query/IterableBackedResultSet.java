@@ -64,8 +64,7 @@ public class IterableBackedResultSet<T> extends AbstractCachingResultSet<T> {
     @Override
     public void reset() {
         super.reset();
-        lastIndex = 0;
-        iterator = iterable.iterator();
+        restart();
     }
 
     /**
@@ -130,7 +129,9 @@ public class IterableBackedResultSet<T> extends AbstractCachingResultSet<T> {
     @Override
     protected IPage<T> query(int firstResult, int maxResults) {
         if (firstResult < lastIndex) {
-            reset();
+            // only the iterator needs to be restarted. Resetting the result set would discard the cached pages and
+            // count
+            restart();
         }
         while (lastIndex < firstResult && iterator.hasNext()) {
             iterator.next();
@@ -139,6 +140,7 @@ public class IterableBackedResultSet<T> extends AbstractCachingResultSet<T> {
         List<T> matches = new ArrayList<T>();
         for (int i = 0; i < maxResults && iterator.hasNext(); ++i) {
             matches.add(iterator.next());
+            lastIndex++;
         }
         return new Page<T>(matches, firstResult, getPageSize(), -1);
     }
@@ -156,4 +158,12 @@ public class IterableBackedResultSet<T> extends AbstractCachingResultSet<T> {
         }
         return count;
     }
+
+    /**
+     * Restarts the iterator from the first result.
+     */
+    private void restart() {
+        lastIndex = 0;
+        iterator = iterable.iterator();
+    }
 }
@@ -21,20 +21,31 @@ import org.apache.commons.collections4.comparators.ComparatorChain;
 import org.openvpms.archetype.rules.util.DateRules;
 import org.openvpms.component.business.domain.im.common.IMObject;
 import org.openvpms.component.business.service.archetype.helper.IMObjectBean;
+import org.openvpms.component.system.common.query.AndConstraint;
 import org.openvpms.component.system.common.query.ArchetypeQuery;
 import org.openvpms.component.system.common.query.IPage;
+import org.openvpms.component.system.common.query.NodeConstraint;
 import org.openvpms.component.system.common.query.NodeSelectConstraint;
 import org.openvpms.component.system.common.query.NodeSortConstraint;
 import org.openvpms.component.system.common.query.ObjectSet;
+import org.openvpms.component.system.common.query.OrConstraint;
+import org.openvpms.component.system.common.query.RelationalOp;
+import org.openvpms.web.system.ServiceHelper;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Helper to locate a page that an object falls on for a given {@link ArchetypeQuery}.
  * <p/>
- * This performs a linear search, but only queries as much data as is required to locate the object.
+ * The query must be ordered by the keys added via {@link #addKey}, followed by id.
+ * <p/>
+ * Where the object has a value for each key, the page is determined by counting the rows that sort before the
+ * object, in a single query. Otherwise, this performs a linear search, but only queries as much data as is required
+ * to locate the object.
  *
  * @author Tim Anderson
  */
@@ -60,6 +71,11 @@ public class PageLocator {
      */
     private final ObjectSet keySet;
 
+    /**
+     * The keys, in sort order.
+     */
+    private final List<Key> keys = new ArrayList<Key>();
+
     /**
      * The key comparators.
      */
@@ -126,7 +142,9 @@ public class PageLocator {
             comparator = ComparatorUtils.reversedComparator(comparator);
         }
         comparators.addComparator(new NodeComparator<T>("a." + node, comparator));
-        keySet.set("a." + node, bean.getValue(node));
+        Object value = bean.getValue(node);
+        keySet.set("a." + node, value);
+        keys.add(new Key("a." + node, ascending, value));
     }
 
     /**
@@ -140,6 +158,86 @@ public class PageLocator {
             comparators.addComparator(ID);
             initialised = true;
         }
+        return canCount() ? countPage() : scanPage();
+    }
+
+    /**
+     * Determines if the page can be determined by counting the rows before the object.
+     * <p/>
+     * This requires a value for each key, as a {@code null} value cannot be compared in the query.
+     *
+     * @return {@code true} if the page can be counted
+     */
+    private boolean canCount() {
+        for (Key key : keys) {
+            if (key.value == null) {
+                return false;
+            }
+        }
+        return bean.getObject().getId() != -1;
+    }
+
+    /**
+     * Determines the page by counting the rows that sort before the object.
+     * <p/>
+     * For keys k1..kn, this counts the rows matching:
+     * <pre>
+     * (k1 &lt; v1) or (k1 = v1 and k2 &lt; v2) or ... or (k1 = v1 and ... kn = vn and id &lt; objectId)
+     * </pre>
+     * where &lt; is replaced by &gt; for descending keys.
+     *
+     * @return the page that the object would fall on
+     */
+    private int countPage() {
+        OrConstraint before = new OrConstraint();
+        List<NodeConstraint> equal = new ArrayList<NodeConstraint>();
+        for (Key key : keys) {
+            RelationalOp op = key.ascending ? RelationalOp.LT : RelationalOp.GT;
+            before.add(createAnd(equal, new NodeConstraint(key.name, op, key.value)));
+            equal.add(new NodeConstraint(key.name, RelationalOp.EQ, key.value));
+        }
+        before.add(createAnd(equal, new NodeConstraint("a.id", RelationalOp.LT, bean.getObject().getId())));
+        int firstResult = query.getFirstResult();
+        int maxResults = query.getMaxResults();
+        boolean count = query.countResults();
+        query.add(before);
+        try {
+            query.setFirstResult(0);
+            query.setMaxResults(1);
+            query.setCountResults(true);
+            IPage<ObjectSet> page = ServiceHelper.getArchetypeService().getObjects(query);
+            return page.getTotalResults() / pageSize;
+        } finally {
+            // restore the query so that it may be reused
+            query.remove(before);
+            query.setFirstResult(firstResult);
+            query.setMaxResults(maxResults);
+            query.setCountResults(count);
+        }
+    }
+
+    /**
+     * Creates a constraint that requires all of the supplied constraints to match.
+     *
+     * @param constraints the constraints
+     * @param constraint  an additional constraint
+     * @return a new constraint
+     */
+    private AndConstraint createAnd(List<NodeConstraint> constraints, NodeConstraint constraint) {
+        AndConstraint result = new AndConstraint();
+        for (NodeConstraint c : constraints) {
+            result.add(c);
+        }
+        result.add(constraint);
+        return result;
+    }
+
+    /**
+     * Determines the page by searching each page from the start.
+     *
+     * @return the page that the object would fall on
+     */
+    private int scanPage() {
         int result = 0;
         ArchetypeQueryResultSet<ObjectSet> set = new ArchetypeQueryResultSet<ObjectSet>(query, pageSize,
                                                                                         new ObjectSetQueryExecutor());
@@ -162,6 +260,40 @@ public class PageLocator {
     }
 
 
+    /**
+     * A sort key.
+     */
+    private static class Key {
+
+        /**
+         * The qualified node name.
+         */
+        private final String name;
+
+        /**
+         * Determines if the node is sorted in ascending order.
+         */
+        private final boolean ascending;
+
+        /**
+         * The object's value for the node.
+         */
+        private final Object value;
+
+        /**
+         * Constructs a {@link Key}.
+         *
+         * @param name      the qualified node name
+         * @param ascending determines if the node is sorted in ascending order
+         * @param value     the object's value for the node. May be {@code null}
+         */
+        public Key(String name, boolean ascending, Object value) {
+            this.name = name;
+            this.ascending = ascending;
+            this.value = value;
+        }
+    }
+
     private static class NodeComparator<T> implements Comparator<ObjectSet> {
 
         /**
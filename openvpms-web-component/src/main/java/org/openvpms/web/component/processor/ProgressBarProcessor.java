@@ -247,17 +247,26 @@ public abstract class ProgressBarProcessor<T>
         }
         if (!isSuspended() && (lastRefresh == 0 || ((time - lastRefresh) > REFRESH_INTERVAL))) {
             // enable a refresh of the progress bar
-            setSuspend(true);
-            final ApplicationInstance app = ApplicationInstance.getActive();
-            app.enqueueTask(getTaskQueue(), new Runnable() {
-                public void run() {
-                    process();
-                }
-            });
+            reschedule();
             lastRefresh = time;
         }
     }
 
+    /**
+     * Suspends processing, and schedules {@link #process()} to be invoked on the next task queue callback.
+     * <p/>
+     * This allows the progress bar to be refreshed.
+     */
+    protected void reschedule() {
+        setSuspend(true);
+        final ApplicationInstance app = ApplicationInstance.getActive();
+        app.enqueueTask(getTaskQueue(), new Runnable() {
+            public void run() {
+                process();
+            }
+        });
+    }
+
     /**
      * To be invoked when processing of an object fails.
      * Suspends processing.
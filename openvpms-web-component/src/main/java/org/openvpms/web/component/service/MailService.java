@@ -38,6 +38,9 @@ import java.util.Properties;
  * Note that instances of this must be per-session. It obtains the context from
  * {@code ContextApplicationInstance#getInstance().getContext()}. A user may have multiple application instances,
  * each with a different location selected, so mail sending is synchronized.
+ * <p/>
+ * Alternatively, an instance may be bound to a location via {@link #MailService(Party)}. This doesn't depend on the
+ * application instance, so may be used by threads other than the one servicing the UI.
  *
  * @author Tim Anderson
  */
@@ -54,11 +57,44 @@ public class MailService extends JavaMailSenderImpl {
     private static final String MAIL_SMTP_AUTH = "mail.smtp.auth";
 
     /**
-     * Constructs a {@link MailService}.
+     * Determines if the location is obtained from the current application instance.
+     */
+    private final boolean useInstance;
+
+    /**
+     * The location, if the service is bound to one. May be {@code null}
+     */
+    private final Party location;
+
+    /**
+     * Constructs a {@link MailService} that uses the location of the current application instance.
      * <p/>
      * This sets the default encoding to UTF-8.
      */
     public MailService() {
+        this(true, null);
+    }
+
+    /**
+     * Constructs a {@link MailService} bound to a location.
+     * <p/>
+     * This sets the default encoding to UTF-8.
+     *
+     * @param location the location. If {@code null}, the default mail server settings are used
+     */
+    public MailService(Party location) {
+        this(false, location);
+    }
+
+    /**
+     * Constructs a {@link MailService}.
+     *
+     * @param useInstance if {@code true}, use the location from the current application instance
+     * @param location    the location, if {@code useInstance} is {@code false}. May be {@code null}
+     */
+    private MailService(boolean useInstance, Party location) {
+        this.useInstance = useInstance;
+        this.location = location;
         setDefaultEncoding("UTF-8");
     }
 
@@ -149,19 +185,22 @@ public class MailService extends JavaMailSenderImpl {
     }
 
     /**
-     * Returns the <em>party.organisationLocation</em> wrapped in a bean, if one is present in the global context.
+     * Returns the <em>party.organisationLocation</em> wrapped in a bean, if one is present in the global context,
+     * or the service is bound to one.
      *
      * @return the location, or <tt>null</tt> if none is present.
      */
     private IMObjectBean getLocationBean() {
-        // need to use the context associated with the current instance. Be nice if the context could be injected
-        // by Spring, but the context is scoped to the application instance, not the session, as there may be
-        // multiple application instances per session.
-        Party location = null;
-        ContextApplicationInstance instance = ContextApplicationInstance.getInstance();
-        if (instance != null) {
-            Context context = instance.getContext();
-            location = context.getLocation();
+        Party location = this.location;
+        if (useInstance) {
+            // need to use the context associated with the current instance. Be nice if the context could be injected
+            // by Spring, but the context is scoped to the application instance, not the session, as there may be
+            // multiple application instances per session.
+            ContextApplicationInstance instance = ContextApplicationInstance.getInstance();
+            if (instance != null) {
+                Context context = instance.getContext();
+                location = context.getLocation();
+            }
         }
         return (location != null) ? new IMObjectBean(location) : null;
     }
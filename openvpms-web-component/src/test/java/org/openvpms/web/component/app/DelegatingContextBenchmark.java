@@ -0,0 +1,136 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.component.app;
+
+import org.apache.commons.beanutils.MethodUtils;
+import org.openvpms.component.business.domain.archetype.ArchetypeId;
+import org.openvpms.component.business.domain.im.party.Party;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link DelegatingContext} lookups through a three level context chain, where the value is only held by
+ * the root context.
+ * <p/>
+ * The {@link #reflective} benchmark performs the same lookups using {@code MethodUtils.invokeMethod}, as a baseline.
+ * <p/>
+ * This doesn't require a database. It is not run as part of the build; run it via {@link #main}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DelegatingContextBenchmark {
+
+    /**
+     * The root context.
+     */
+    private Context root;
+
+    /**
+     * The intermediate context.
+     */
+    private Context middle;
+
+    /**
+     * The context to perform lookups on.
+     */
+    private Context leaf;
+
+    /**
+     * An empty context, used by the reflective benchmark in place of the leaf and intermediate contexts.
+     */
+    private Context empty1;
+
+    /**
+     * Another empty context.
+     */
+    private Context empty2;
+
+    /**
+     * Sets up the benchmark.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Party customer = new Party();
+        customer.setArchetypeId(new ArchetypeId("party.customerperson.1.0"));
+        root = new LocalContext();
+        root.setCustomer(customer);
+        middle = new LocalContext(root);
+        leaf = new LocalContext(middle);
+        empty1 = new LocalContext();
+        empty2 = new LocalContext();
+    }
+
+    /**
+     * Looks up the customer via the context chain.
+     *
+     * @return the customer
+     */
+    @Benchmark
+    public Party direct() {
+        return leaf.getCustomer();
+    }
+
+    /**
+     * Looks up the customer via the context chain, using reflection at each level.
+     *
+     * @return the customer
+     * @throws Exception for any error
+     */
+    @Benchmark
+    public Party reflective() throws Exception {
+        Party result = (Party) MethodUtils.invokeMethod(empty1, "getCustomer", null);
+        if (result == null) {
+            result = (Party) MethodUtils.invokeMethod(empty2, "getCustomer", null);
+            if (result == null) {
+                result = (Party) MethodUtils.invokeMethod(root, "getCustomer", null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the command line arguments
+     * @throws RunnerException if the benchmark fails to run
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(DelegatingContextBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
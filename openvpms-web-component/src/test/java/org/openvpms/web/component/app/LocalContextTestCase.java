@@ -60,6 +60,7 @@ public class LocalContextTestCase extends ArchetypeServiceTest {
         checkContext("party.supplierperson", "getSupplier", context);
         checkContext("party.organisationTill", "getTill", context);
         checkContext("security.user", "getUser", context);
+        checkContext("entity.organisationWorkListView", "getWorkListView", context);
         checkContext("party.organisationWorkList", "getWorkList", context);
         checkContext(new Date(), new Date(), "getWorkListDate", context);
         checkContext("act.customerTask", "getTask", context);
@@ -0,0 +1,110 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.component.im.query;
+
+import org.junit.Test;
+import org.openvpms.component.system.common.query.IPage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the {@link IterableBackedResultSet} class.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class IterableBackedResultSetTestCase {
+
+    /**
+     * Verifies that each page contains the expected objects, when pages are retrieved beyond those prefetched.
+     */
+    @Test
+    public void testPaging() {
+        CountingIterable objects = new CountingIterable(250);
+        IterableBackedResultSet<Integer> set = new IterableBackedResultSet<Integer>(objects, 20);
+        for (int page = 0; page < 13; ++page) {
+            checkPage(set.getPage(page), page * 20, Math.min(20, 250 - page * 20));
+        }
+        assertNull(set.getPage(13));
+
+        // forward navigation shouldn't need to restart the iterator
+        assertEquals(1, objects.getIterators());
+    }
+
+    /**
+     * Verifies that querying before the current position restarts the iterator, without discarding the count.
+     */
+    @Test
+    public void testBackwardNavigation() {
+        CountingIterable objects = new CountingIterable(250);
+        IterableBackedResultSet<Integer> set = new IterableBackedResultSet<Integer>(objects, 20);
+        checkPage(set.getPage(5), 100, 20);
+        int estimated = set.getEstimatedResults();
+        assertEquals(180, estimated);
+
+        checkPage(set.query(20, 20), 20, 20);
+        assertEquals(2, objects.getIterators());
+        assertEquals(estimated, set.getEstimatedResults());
+
+        checkPage(set.query(40, 20), 40, 20);
+        assertEquals(2, objects.getIterators());
+    }
+
+    /**
+     * Verifies a page contains the expected objects.
+     *
+     * @param page  the page
+     * @param first the expected first object
+     * @param size  the expected page size
+     */
+    private void checkPage(IPage<Integer> page, int first, int size) {
+        List<Integer> results = page.getResults();
+        assertEquals(size, results.size());
+        for (int i = 0; i < size; ++i) {
+            assertEquals(first + i, results.get(i).intValue());
+        }
+    }
+
+    /**
+     * An iterable over a range of integers, that counts the no. of iterators created.
+     */
+    private static class CountingIterable implements Iterable<Integer> {
+
+        private final List<Integer> objects = new ArrayList<Integer>();
+
+        private int iterators;
+
+        public CountingIterable(int count) {
+            for (int i = 0; i < count; ++i) {
+                objects.add(i);
+            }
+        }
+
+        public Iterator<Integer> iterator() {
+            ++iterators;
+            return objects.iterator();
+        }
+
+        public int getIterators() {
+            return iterators;
+        }
+    }
+}
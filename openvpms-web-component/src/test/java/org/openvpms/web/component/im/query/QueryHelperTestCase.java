@@ -75,6 +75,39 @@ public class QueryHelperTestCase extends ArchetypeServiceTest {
         checkPage(2, query2, act1, false);
     }
 
+    /**
+     * Tests the {@link QueryHelper#getPage(IMObject, ArchetypeQuery, int, String, boolean, Comparator)} method when
+     * objects have the same sort key. These should be ordered on id.
+     */
+    @Test
+    public void testGetPageForDuplicateKeys() {
+        Party patient = TestHelper.createPatient();
+
+        Act act1 = createEvent(getDate("2014-07-01"), patient);
+        Act act2 = createEvent(getDate("2014-07-01"), patient);
+        Act act3 = createEvent(getDate("2014-07-01"), patient);
+        Act act4 = createEvent(getDate("2014-07-02"), patient);
+        Act act5 = createEvent(getDate("2014-07-02"), patient);
+
+        ArchetypeQuery query1 = new ArchetypeQuery(PatientArchetypes.CLINICAL_EVENT);
+        query1.add(new ParticipantConstraint("patient", PatientArchetypes.PATIENT_PARTICIPATION, patient));
+
+        checkPage(0, query1, act1, true);
+        checkPage(0, query1, act2, true);
+        checkPage(1, query1, act3, true);
+        checkPage(1, query1, act4, true);
+        checkPage(2, query1, act5, true);
+
+        ArchetypeQuery query2 = new ArchetypeQuery(PatientArchetypes.CLINICAL_EVENT);
+        query2.add(new ParticipantConstraint("patient", PatientArchetypes.PATIENT_PARTICIPATION, patient));
+
+        checkPage(0, query2, act4, false);
+        checkPage(0, query2, act5, false);
+        checkPage(1, query2, act1, false);
+        checkPage(1, query2, act2, false);
+        checkPage(2, query2, act3, false);
+    }
+
     /**
      * Verifies that an act appears on the expected page, when the page size is 2.
      *
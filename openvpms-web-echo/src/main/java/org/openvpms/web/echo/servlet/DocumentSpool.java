@@ -0,0 +1,364 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.echo.servlet;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openvpms.archetype.rules.doc.DocumentException;
+import org.openvpms.archetype.rules.doc.DocumentHandler;
+import org.openvpms.archetype.rules.doc.DocumentHandlers;
+import org.openvpms.component.business.domain.im.document.Document;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.openvpms.archetype.rules.doc.DocumentException.ErrorCode.ReadError;
+
+/**
+ * Spools temporary documents to disk, so that they may be served by the {@link DownloadServlet} without being saved
+ * to the database.
+ * <p/>
+ * Spooled documents are addressed by an opaque token. They are retained until they expire, or until they are evicted
+ * to keep the spool within its maximum size, so the same document may be downloaded several times, and concurrently.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class DocumentSpool implements DisposableBean {
+
+    /**
+     * The document handlers.
+     */
+    private final DocumentHandlers handlers;
+
+    /**
+     * The spooled documents, keyed on token, oldest first.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * The directory to spool documents to.
+     */
+    private File directory = new File(System.getProperty("java.io.tmpdir"));
+
+    /**
+     * The maximum size of the spool, in bytes.
+     */
+    private long maxSize = 100 * 1024 * 1024;
+
+    /**
+     * The time after which spooled documents expire, in milliseconds.
+     */
+    private long expiry = 30 * 60 * 1000;
+
+    /**
+     * The total size of the spooled documents, in bytes.
+     */
+    private long size;
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(DocumentSpool.class);
+
+
+    /**
+     * Constructs a {@link DocumentSpool}.
+     *
+     * @param handlers the document handlers
+     */
+    public DocumentSpool(DocumentHandlers handlers) {
+        this.handlers = handlers;
+    }
+
+    /**
+     * Sets the directory to spool documents to.
+     * <p/>
+     * Defaults to the {@code java.io.tmpdir} directory.
+     *
+     * @param directory the directory
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the maximum size of the spool.
+     * <p/>
+     * When this is exceeded, the oldest documents are evicted. Defaults to 100MB.
+     *
+     * @param maxSize the maximum size, in bytes
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sets the time after which spooled documents expire.
+     * <p/>
+     * Defaults to 30 minutes.
+     *
+     * @param expiry the expiry time, in seconds
+     */
+    public void setExpiry(int expiry) {
+        this.expiry = expiry * 1000L;
+    }
+
+    /**
+     * Spools a document.
+     * <p/>
+     * A document larger than the maximum spool size is still spooled, but will evict all other documents.
+     *
+     * @param document the document
+     * @return the token to retrieve the document with
+     * @throws DocumentException if the document cannot be spooled
+     */
+    public String spool(Document document) {
+        String token = UUID.randomUUID().toString();
+        File file = null;
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create spool directory " + directory);
+            }
+            file = File.createTempFile("download", ".tmp", directory);
+            DocumentHandler handler = handlers.get(document.getName(), document.getArchetypeId().getShortName(),
+                                                   document.getMimeType());
+            input = handler.getContent(document);
+            output = new FileOutputStream(file);
+            IOUtils.copyLarge(input, output);
+        } catch (IOException exception) {
+            delete(file);
+            throw new DocumentException(ReadError, exception, document.getName());
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+        Entry entry = new Entry(token, document.getName(), document.getMimeType(), file);
+        List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (entries) {
+            entries.put(token, entry);
+            size += entry.getSize();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry next = iterator.next();
+                if (next != entry && (size > maxSize || isExpired(next))) {
+                    iterator.remove();
+                    size -= next.getSize();
+                    evicted.add(next);
+                }
+            }
+        }
+        for (Entry next : evicted) {
+            delete(next.getFile());
+        }
+        return token;
+    }
+
+    /**
+     * Returns a spooled document.
+     *
+     * @param token the document token
+     * @return the spooled document, or {@code null} if it doesn't exist or has expired
+     */
+    public Entry get(String token) {
+        Entry result;
+        synchronized (entries) {
+            result = entries.get(token);
+            if (result != null && isExpired(result)) {
+                entries.remove(token);
+                size -= result.getSize();
+            } else {
+                return result;
+            }
+        }
+        delete(result.getFile());
+        return null;
+    }
+
+    /**
+     * Returns the total size of the spooled documents.
+     *
+     * @return the size, in bytes
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    /**
+     * Destroys the spool, deleting all spooled documents.
+     */
+    @Override
+    public void destroy() {
+        List<Entry> list;
+        synchronized (entries) {
+            list = new ArrayList<Entry>(entries.values());
+            entries.clear();
+            size = 0;
+        }
+        for (Entry entry : list) {
+            delete(entry.getFile());
+        }
+    }
+
+    /**
+     * Determines if an entry has expired.
+     *
+     * @param entry the entry
+     * @return {@code true} if the entry has expired
+     */
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.getCreated() > expiry;
+    }
+
+    /**
+     * Deletes a spool file.
+     * <p/>
+     * If the file cannot be deleted, e.g. because it is still being served on a platform that doesn't support
+     * deleting open files, it is deleted on exit.
+     *
+     * @param file the file. May be {@code null}
+     */
+    private void delete(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            log.warn("Failed to delete spooled document " + file + ". It will be deleted on exit");
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * A spooled document.
+     */
+    public static class Entry {
+
+        /**
+         * The document token.
+         */
+        private final String token;
+
+        /**
+         * The document name.
+         */
+        private final String name;
+
+        /**
+         * The document mime type.
+         */
+        private final String mimeType;
+
+        /**
+         * The spool file.
+         */
+        private final File file;
+
+        /**
+         * The document size.
+         */
+        private final long size;
+
+        /**
+         * The time the document was spooled.
+         */
+        private final long created;
+
+        /**
+         * Constructs an {@link Entry}.
+         *
+         * @param token    the document token
+         * @param name     the document name
+         * @param mimeType the document mime type
+         * @param file     the spool file
+         */
+        Entry(String token, String name, String mimeType, File file) {
+            this.token = token;
+            this.name = name;
+            this.mimeType = mimeType;
+            this.file = file;
+            size = file.length();
+            created = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the document name.
+         *
+         * @return the document name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the document mime type.
+         *
+         * @return the mime type
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Returns the spool file.
+         *
+         * @return the spool file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the document size.
+         *
+         * @return the document size, in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the entity tag of the document.
+         * <p/>
+         * Spooled documents are never modified, so the token uniquely identifies the content.
+         *
+         * @return the entity tag
+         */
+        public String getETag() {
+            return "\"" + token + "\"";
+        }
+
+        /**
+         * Returns the time the document was spooled.
+         *
+         * @return the time the document was spooled, in milliseconds
+         */
+        public long getCreated() {
+            return created;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.openvpms.component.business.service.archetype.ArchetypeServiceHelper;
 import org.openvpms.component.business.service.archetype.IArchetypeService;
 import org.openvpms.component.system.common.exception.OpenVPMSException;
 import org.openvpms.report.DocFormats;
+import org.openvpms.web.echo.spring.SpringApplicationInstance;
 import org.springframework.context.ApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
@@ -40,30 +41,33 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 
 /**
  * Download servlet. Downloads {@link Document}s to clients.
+ * <p/>
+ * Unsaved documents are spooled to disk by the {@link DocumentSpool}, and served by token. These support
+ * {@code ETag} and single byte {@code Range} requests.
  *
  * @author Tim Anderson
  */
 public class DownloadServlet extends HttpServlet {
 
     /**
-     * The set of temporary documents. These are deleted after being served.
+     * The document handlers.
      */
-    private static Set<IMObjectReference> tempDocs
-            = Collections.synchronizedSet(new HashSet<IMObjectReference>());
+    private DocumentHandlers handlers;
 
     /**
-     * The document handlers.
+     * The document spool.
      */
-    private DocumentHandlers handlers;
+    private DocumentSpool spool;
 
     /**
      * The logger.
@@ -76,21 +80,20 @@ public class DownloadServlet extends HttpServlet {
      * @param document the document to download
      */
     public static void startDownload(Document document) {
-        boolean isNew = document.isNew();
-        if (isNew) {
-            // need to save the document in order for it to be served.
-            IArchetypeService service
-                    = ArchetypeServiceHelper.getArchetypeService();
-            service.save(document);
-            tempDocs.add(document.getObjectReference());
-        }
-        String qname = document.getArchetypeId().getQualifiedName();
         StringBuilder uri = new StringBuilder();
         uri.append(ServletHelper.getRedirectURI("download"));
-        uri.append("?qname=");
-        uri.append(qname);
-        uri.append("&id=");
-        uri.append(document.getId());
+        if (document.isNew()) {
+            // spool the document to disk in order for it to be served.
+            String token = getSpool().spool(document);
+            uri.append("?token=");
+            uri.append(token);
+        } else {
+            String qname = document.getArchetypeId().getQualifiedName();
+            uri.append("?qname=");
+            uri.append(qname);
+            uri.append("&id=");
+            uri.append(document.getId());
+        }
         Command command = new BrowserOpenWindowCommand(
                 uri.toString(), null,
                 "width=800,height=600,menubar=yes,toolbar=yes,location=yes,resizable=yes,scrollbars=yes");
@@ -109,6 +112,7 @@ public class DownloadServlet extends HttpServlet {
                 = WebApplicationContextUtils.getRequiredWebApplicationContext(
                 getServletContext());
         handlers = (DocumentHandlers) context.getBean("documentHandlers");
+        spool = context.getBean(DocumentSpool.class);
     }
 
     /**
@@ -129,9 +133,17 @@ public class DownloadServlet extends HttpServlet {
             throws ServletException, IOException {
         IArchetypeService service
                 = ArchetypeServiceHelper.getArchetypeService();
+        String token = request.getParameter("token");
         String qname = request.getParameter("qname");
         String id = request.getParameter("id");
-        if (StringUtils.isEmpty(qname) || StringUtils.isEmpty(id)) {
+        if (!StringUtils.isEmpty(token)) {
+            DocumentSpool.Entry entry = spool.get(token);
+            if (entry == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            } else {
+                serveSpooled(entry, request, response);
+            }
+        } else if (StringUtils.isEmpty(qname) || StringUtils.isEmpty(id)) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST);
         } else {
             IMObjectReference ref = new IMObjectReference(
@@ -140,7 +152,123 @@ public class DownloadServlet extends HttpServlet {
             if (!(object instanceof Document)) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST);
             } else {
-                serveDocument((Document) object, response, service);
+                serveDocument((Document) object, response);
+            }
+        }
+    }
+
+    /**
+     * Returns the byte range requested by a {@code Range} header.
+     * <p/>
+     * Only single ranges are supported.
+     *
+     * @param header the {@code Range} header
+     * @param length the length of the content
+     * @return the first and last byte positions (inclusive), an empty array if the range cannot be satisfied, or
+     *         {@code null} if the header is invalid or unsupported, and should be ignored
+     */
+    static long[] getRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') != -1) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int index = spec.indexOf('-');
+        if (index == -1) {
+            return null;
+        }
+        String first = spec.substring(0, index).trim();
+        String last = spec.substring(index + 1).trim();
+        long start;
+        long end;
+        try {
+            if (first.isEmpty()) {
+                // suffix range i.e. the last n bytes
+                if (last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = (last.isEmpty()) ? length - 1 : Long.parseLong(last);
+                if (end < start) {
+                    return null;
+                }
+                end = Math.min(end, length - 1);
+            }
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+        if (start >= length) {
+            return new long[0];
+        }
+        return new long[]{start, end};
+    }
+
+    /**
+     * Serves a spooled document.
+     * <p/>
+     * This supports conditional requests via {@code If-None-Match}, and partial requests via {@code Range} and
+     * {@code If-Range}.
+     *
+     * @param entry    the spooled document
+     * @param request  the request
+     * @param response the response
+     * @throws IOException for any I/O error
+     */
+    private void serveSpooled(DocumentSpool.Entry entry, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String etag = entry.getETag();
+        long length = entry.getSize();
+        response.setHeader("ETag", etag);
+        response.setHeader("Accept-Ranges", "bytes");
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        long start = 0;
+        long end = length - 1;
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null || etag.equals(ifRange.trim())) {
+            long[] range = getRange(request.getHeader("Range"), length);
+            if (range != null) {
+                if (range.length == 0) {
+                    response.setHeader("Content-Range", "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                start = range[0];
+                end = range[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        setContentDisposition(entry.getName(), entry.getMimeType(), response);
+        response.setContentType(entry.getMimeType());
+        long count = (length == 0) ? 0 : end - start + 1;
+        response.setHeader("Content-Length", Long.toString(count));
+        if (!"HEAD".equals(request.getMethod())) {
+            FileInputStream stream = new FileInputStream(entry.getFile());
+            try {
+                FileChannel channel = stream.getChannel();
+                WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+                long position = start;
+                long remaining = count;
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            } finally {
+                IOUtils.closeQuietly(stream);
             }
         }
     }
@@ -150,20 +278,14 @@ public class DownloadServlet extends HttpServlet {
      *
      * @param doc      the document
      * @param response the response
-     * @param service  the archetype service
      * @throws IOException for any I/O error
      */
-    private void serveDocument(Document doc, HttpServletResponse response,
-                               IArchetypeService service) throws IOException {
+    private void serveDocument(Document doc, HttpServletResponse response) throws IOException {
         try {
             DocumentHandler handler = handlers.get(
                     doc.getName(), doc.getArchetypeId().getShortName(),
                     doc.getMimeType());
-            if (DocFormats.XML_TYPE.equals(doc.getMimeType())) {
-                response.setHeader("Content-Disposition", "attachment; filename=\"" + doc.getName() + "\"");
-            } else {
-                response.setHeader("Content-Disposition", "inline; filename=\"" + doc.getName() + "\"");
-            }
+            setContentDisposition(doc.getName(), doc.getMimeType(), response);
             response.setContentType(doc.getMimeType());
             response.setContentLength(doc.getDocSize());
             InputStream stream = null;
@@ -173,12 +295,6 @@ public class DownloadServlet extends HttpServlet {
             } finally {
                 IOUtils.closeQuietly(stream);
             }
-
-            // todo - need to support case where two users download the same
-            // document simultaneously
-            if (tempDocs.remove(doc.getObjectReference())) {
-                service.remove(doc);
-            }
         } catch (OpenVPMSException exception) {
             response.sendError(
                     HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -189,4 +305,35 @@ public class DownloadServlet extends HttpServlet {
                       exception);
         }
     }
+
+    /**
+     * Sets the {@code Content-Disposition} header.
+     * <p/>
+     * XML documents are downloaded as attachments; all others are displayed inline.
+     *
+     * @param name     the document name
+     * @param mimeType the document mime type
+     * @param response the response
+     */
+    private void setContentDisposition(String name, String mimeType, HttpServletResponse response) {
+        if (DocFormats.XML_TYPE.equals(mimeType)) {
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
+        } else {
+            response.setHeader("Content-Disposition", "inline; filename=\"" + name + "\"");
+        }
+    }
+
+    /**
+     * Returns the document spool for the active application.
+     *
+     * @return the document spool
+     * @throws IllegalStateException if there is no active Spring application
+     */
+    private static DocumentSpool getSpool() {
+        ApplicationInstance active = ApplicationInstance.getActive();
+        if (!(active instanceof SpringApplicationInstance)) {
+            throw new IllegalStateException("No active SpringApplicationInstance");
+        }
+        return ((SpringApplicationInstance) active).getApplicationContext().getBean(DocumentSpool.class);
+    }
 }
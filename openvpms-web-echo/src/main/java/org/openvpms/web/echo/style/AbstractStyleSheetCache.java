@@ -26,34 +26,70 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Implementation of {@link StyleSheets} that provides caching of style sheets.
+ * <p/>
+ * Style sheets are cached by bucket, rather than by exact screen size. A bucket is the closest configured resolution
+ * plus the screen size rounded down to a multiple of {@link #GRANULARITY} pixels. Screen sizes that exactly match
+ * a configured resolution are not rounded. The returned {@link Style} shares the bucket's style sheet and properties,
+ * but reports the requested size, so that callers don't mistake the bucket size for the screen resolution.
+ * <p/>
+ * The no. of cached buckets is bounded; the least recently used are evicted when the limit is reached.
+ * Lookups do not lock; the configured resolutions are replaced rather than modified when they change.
  *
  * @author Tim Anderson
  */
 public abstract class AbstractStyleSheetCache implements StyleSheets {
 
     /**
-     * A map of resolutions and their corresponding properties.
+     * The granularity, in pixels, that screen sizes are rounded down to.
      */
-    private Map<Dimension, Map<String, String>> resolutions = new HashMap<Dimension, Map<String, String>>();
+    public static final int GRANULARITY = 16;
 
     /**
-     * A map of resolutions and their corresponding evaluated properties.
+     * The default maximum no. of cached buckets.
      */
-    private Map<Dimension, Map<String, String>> evaluatedResolutions = new HashMap<Dimension, Map<String, String>>();
+    public static final int DEFAULT_MAX_CACHED = 64;
 
     /**
-     * Cached style sheets, keyed on resolution.
+     * A map of resolutions and their corresponding properties. This is replaced on update.
      */
-    private Map<Dimension, Style> stylesheets = new HashMap<Dimension, Style>();
+    private volatile Map<Dimension, Map<String, String>> resolutions = Collections.emptyMap();
+
+    /**
+     * The resolutions, ordered from smallest to largest. This is replaced on update.
+     */
+    private volatile Dimension[] sorted = new Dimension[0];
+
+    /**
+     * Incremented each time the cache is cleared, so that buckets evaluated against stale properties are discarded.
+     */
+    private volatile int generation;
+
+    /**
+     * The cached buckets.
+     */
+    private final ConcurrentMap<Key, Bucket> buckets = new ConcurrentHashMap<Key, Bucket>();
+
+    /**
+     * Used to order bucket accesses, for eviction.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * The maximum no. of cached buckets.
+     */
+    private volatile int maxCached = DEFAULT_MAX_CACHED;
 
     /**
      * The style property evaluator.
      */
-    private StylePropertyEvaluator evaluator;
+    private volatile StylePropertyEvaluator evaluator;
 
 
     /**
@@ -90,13 +126,14 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      */
     @Override
     public Style getStyle(Dimension size) {
-        Style result = getCachedStyleSheet(size);
+        Bucket bucket = getBucket(size);
+        Style result = bucket.style;
         if (result == null) {
-            Map<String, String> properties = getProperties(size, true);
-            result = new Style(getStyleSheet(properties), size, properties);
-            stylesheets.put(size, result);
+            // may be created concurrently by another thread; either result may be used
+            result = new Style(getStyleSheet(bucket.properties), bucket.key.size, bucket.properties);
+            bucket.style = result;
         }
-        return result;
+        return resize(result, size);
     }
 
     /**
@@ -105,7 +142,7 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param size the screen resolution
      * @return the style sheet for the specified resolution
      */
-    public synchronized StyleSheet getStyleSheet(Dimension size) {
+    public StyleSheet getStyleSheet(Dimension size) {
         return getStyle(size).getStylesheet();
     }
 
@@ -150,16 +187,10 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param evaluate determines if properties should be evaluated
      * @return the properties
      */
-    public synchronized Map<String, String> getProperties(Dimension size, boolean evaluate) {
+    public Map<String, String> getProperties(Dimension size, boolean evaluate) {
         Map<String, String> properties;
         if (evaluate) {
-            properties = evaluatedResolutions.get(size);
-            if (properties == null) {
-                Map<String, String> closest = getClosestResolution(size);
-                properties = evaluator.getProperties(size.width, size.height, closest);
-                properties = Collections.unmodifiableMap(properties);
-                evaluatedResolutions.put(size, properties);
-            }
+            properties = getBucket(size).properties;
         } else {
             Map<String, String> closest = getClosestResolution(size);
             properties = new HashMap<String, String>(getDefaultProperties());
@@ -178,7 +209,7 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param height     the screen height
      * @return the evaluated properties
      */
-    public synchronized Map<String, String> evaluate(Map<String, String> properties, int width, int height) {
+    public Map<String, String> evaluate(Map<String, String> properties, int width, int height) {
         return evaluator.getProperties(width, height, properties);
     }
 
@@ -189,8 +220,8 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      *
      * @return the screen resolutions
      */
-    public synchronized Dimension[] getResolutions() {
-        return sortResolutions(resolutions.keySet());
+    public Dimension[] getResolutions() {
+        return sorted.clone();
     }
 
     /**
@@ -199,7 +230,7 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param size the resolution
      * @return the unevaluated properties, or {@code null} if none are found
      */
-    public synchronized Map<String, String> getResolution(Dimension size) {
+    public Map<String, String> getResolution(Dimension size) {
         return resolutions.get(size);
     }
 
@@ -221,9 +252,11 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param properties the properties to add
      */
     protected synchronized void addResolution(Dimension size, Map<String, String> properties) {
-        resolutions.put(size, Collections.unmodifiableMap(properties));
-        evaluatedResolutions.remove(size);
-        stylesheets.remove(size);
+        Map<Dimension, Map<String, String>> map = new HashMap<Dimension, Map<String, String>>(resolutions);
+        map.put(size, Collections.unmodifiableMap(properties));
+        resolutions = Collections.unmodifiableMap(map);
+        sorted = sortResolutions(map.keySet());
+        clearCache();
     }
 
     /**
@@ -232,15 +265,17 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param size the
      */
     protected synchronized void removeResolution(Dimension size) {
-        resolutions.remove(size);
-        evaluatedResolutions.remove(size);
-        stylesheets.remove(size);
+        Map<Dimension, Map<String, String>> map = new HashMap<Dimension, Map<String, String>>(resolutions);
+        map.remove(size);
+        resolutions = Collections.unmodifiableMap(map);
+        sorted = sortResolutions(map.keySet());
+        clearCache();
     }
 
     /**
      * Returns all resolutions.
      *
-     * @return the resolutions
+     * @return the resolutions. This map is read-only
      */
     protected Map<Dimension, Map<String, String>> getAllResolutions() {
         return resolutions;
@@ -253,33 +288,62 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param size the resolution
      * @return the closest properties, or {@code null} if none are available
      */
-    protected synchronized Map<String, String> getClosestResolution(Dimension size) {
-        Map<String, String> result = getResolution(size);
-        if (result == null) {
-            Dimension best = null;
-            for (Dimension resolution : getResolutions()) {
-                if (resolution.width <= size.width || best == null) {
-                    if (best == null) {
-                        best = resolution;
-                    } else if (best.width != resolution.width
-                               || (best.width == resolution.width && resolution.height <= size.height)) {
-                        best = resolution;
-                    }
-                } else {
-                    break;
+    protected Map<String, String> getClosestResolution(Dimension size) {
+        Dimension closest = getClosestResolutionSize(size);
+        return (closest != null) ? getResolution(closest) : null;
+    }
+
+    /**
+     * Returns the resolution that has properties that the specified resolution or if none are available, for the
+     * nearest resolution.
+     *
+     * @param size the resolution
+     * @return the closest resolution, or {@code null} if none are available
+     */
+    protected Dimension getClosestResolutionSize(Dimension size) {
+        if (getResolution(size) != null) {
+            return size;
+        }
+        Dimension best = null;
+        for (Dimension resolution : getResolutions()) {
+            if (resolution.width <= size.width || best == null) {
+                if (best == null) {
+                    best = resolution;
+                } else if (best.width != resolution.width
+                           || (best.width == resolution.width && resolution.height <= size.height)) {
+                    best = resolution;
                 }
+            } else {
+                break;
             }
-            result = (best != null) ? getResolution(best) : null;
         }
-        return result;
+        return best;
+    }
+
+    /**
+     * Sets the maximum no. of cached style sheets.
+     *
+     * @param maxCached the maximum no. of cached style sheets
+     */
+    public void setMaxCached(int maxCached) {
+        this.maxCached = maxCached;
+    }
+
+    /**
+     * Returns the no. of cached style sheets.
+     *
+     * @return the no. of cached style sheets
+     */
+    public int getCached() {
+        return buckets.size();
     }
 
     /**
      * Clears the cached stylesheets and evaluated resolution properties.
      */
     protected synchronized void clearCache() {
-        stylesheets.clear();
-        evaluatedResolutions.clear();
+        ++generation;
+        buckets.clear();
     }
 
     /**
@@ -299,8 +363,24 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param size the screen resolution
      * @return the cached style sheet, or {@code null} if none is found
      */
-    protected synchronized Style getCachedStyleSheet(Dimension size) {
-        return stylesheets.get(size);
+    protected Style getCachedStyleSheet(Dimension size) {
+        Bucket bucket = buckets.get(getKey(size));
+        if (bucket != null) {
+            bucket.accessed = clock.incrementAndGet();
+            return (bucket.style != null) ? resize(bucket.style, size) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a style with the requested size.
+     *
+     * @param style the bucket style
+     * @param size  the requested size
+     * @return {@code style}, if it has the requested size, otherwise a copy of it with the requested size
+     */
+    private Style resize(Style style, Dimension size) {
+        return style.getSize().equals(size) ? style : new Style(style.getStylesheet(), size, style.getProperties());
     }
 
     /**
@@ -309,7 +389,7 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
      * @param size the screen resolution
      * @return {@code true} if properties exist for the resolution; otherwise {@code false}
      */
-    protected synchronized boolean hasResolution(Dimension size) {
+    protected boolean hasResolution(Dimension size) {
         return resolutions.containsKey(size);
     }
 
@@ -347,5 +427,169 @@ public abstract class AbstractStyleSheetCache implements StyleSheets {
         return result.toArray(new Dimension[result.size()]);
     }
 
-}
+    /**
+     * Returns the bucket for a screen size, creating it if required.
+     *
+     * @param size the screen size
+     * @return the bucket
+     * @throws StyleSheetException if the properties cannot be evaluated
+     */
+    private Bucket getBucket(Dimension size) {
+        Key key = getKey(size);
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            int current = generation;
+            Map<String, String> closest = (key.closest != null) ? getResolution(key.closest) : null;
+            Map<String, String> properties = evaluator.getProperties(key.size.width, key.size.height, closest);
+            bucket = new Bucket(key, Collections.unmodifiableMap(properties));
+            Bucket existing = buckets.putIfAbsent(key, bucket);
+            if (existing != null) {
+                bucket = existing;
+            } else if (current != generation) {
+                buckets.remove(key, bucket);
+            } else if (buckets.size() > maxCached) {
+                evict();
+            }
+        }
+        bucket.accessed = clock.incrementAndGet();
+        return bucket;
+    }
 
+    /**
+     * Returns the bucket key for a screen size.
+     *
+     * @param size the screen size
+     * @return the bucket key
+     */
+    private Key getKey(Dimension size) {
+        Dimension closest = getClosestResolutionSize(size);
+        Dimension rounded;
+        if (size.equals(closest)) {
+            rounded = size;
+        } else {
+            rounded = new Dimension(round(size.width), round(size.height));
+        }
+        return new Key(closest, rounded);
+    }
+
+    /**
+     * Rounds a length down to a multiple of {@link #GRANULARITY}.
+     *
+     * @param length the length
+     * @return the rounded length
+     */
+    private int round(int length) {
+        return (length < GRANULARITY) ? length : (length / GRANULARITY) * GRANULARITY;
+    }
+
+    /**
+     * Evicts the least recently used buckets until the cache is within its bounds.
+     */
+    private synchronized void evict() {
+        while (buckets.size() > maxCached) {
+            Bucket oldest = null;
+            for (Bucket bucket : buckets.values()) {
+                if (oldest == null || bucket.accessed < oldest.accessed) {
+                    oldest = bucket;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            buckets.remove(oldest.key, oldest);
+        }
+    }
+
+    /**
+     * Style sheet cache key.
+     */
+    private static final class Key {
+
+        /**
+         * The closest configured resolution. May be {@code null}.
+         */
+        private final Dimension closest;
+
+        /**
+         * The rounded screen size.
+         */
+        private final Dimension size;
+
+        /**
+         * Constructs a {@link Key}.
+         *
+         * @param closest the closest configured resolution. May be {@code null}
+         * @param size    the rounded screen size
+         */
+        public Key(Dimension closest, Dimension size) {
+            this.closest = closest;
+            this.size = size;
+        }
+
+        /**
+         * Indicates whether some other object is "equal to" this one.
+         *
+         * @param obj the reference object with which to compare.
+         * @return {@code true} if this object is the same as the obj argument; {@code false} otherwise.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return size.equals(other.size)
+                       && (closest == null ? other.closest == null : closest.equals(other.closest));
+            }
+            return false;
+        }
+
+        /**
+         * Returns a hash code value for the object.
+         *
+         * @return a hash code value for this object.
+         */
+        @Override
+        public int hashCode() {
+            return size.hashCode() * 31 + (closest != null ? closest.hashCode() : 0);
+        }
+    }
+
+    /**
+     * A cached bucket.
+     */
+    private static final class Bucket {
+
+        /**
+         * The bucket key.
+         */
+        private final Key key;
+
+        /**
+         * The evaluated properties.
+         */
+        private final Map<String, String> properties;
+
+        /**
+         * The style, or {@code null} if it hasn't been created.
+         */
+        private volatile Style style;
+
+        /**
+         * The logical time the bucket was last accessed.
+         */
+        private volatile long accessed;
+
+        /**
+         * Constructs a {@link Bucket}.
+         *
+         * @param key        the bucket key
+         * @param properties the evaluated properties
+         */
+        public Bucket(Key key, Map<String, String> properties) {
+            this.key = key;
+            this.properties = properties;
+        }
+    }
+
+}
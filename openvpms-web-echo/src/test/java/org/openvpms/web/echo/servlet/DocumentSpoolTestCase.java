@@ -0,0 +1,171 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.echo.servlet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openvpms.archetype.rules.doc.DocumentHandler;
+import org.openvpms.archetype.rules.doc.DocumentHandlers;
+import org.openvpms.component.business.domain.archetype.ArchetypeId;
+import org.openvpms.component.business.domain.im.document.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link DocumentSpool}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class DocumentSpoolTestCase {
+
+    /**
+     * The spool directory.
+     */
+    private File dir;
+
+    /**
+     * The spool.
+     */
+    private DocumentSpool spool;
+
+
+    /**
+     * Sets up the test case.
+     */
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "spool-" + System.nanoTime());
+        DocumentHandler handler = mock(DocumentHandler.class);
+        when(handler.getContent(any(Document.class))).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                Document document = (Document) invocation.getArguments()[0];
+                return new ByteArrayInputStream(document.getContents());
+            }
+        });
+        DocumentHandlers handlers = mock(DocumentHandlers.class);
+        when(handlers.get(anyString(), anyString(), anyString())).thenReturn(handler);
+        spool = new DocumentSpool(handlers);
+        spool.setDirectory(dir);
+    }
+
+    /**
+     * Cleans up after the test.
+     *
+     * @throws IOException for any I/O error
+     */
+    @After
+    public void tearDown() throws IOException {
+        spool.destroy();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Verifies a document can be spooled and retrieved more than once.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testSpool() throws IOException {
+        String token = spool.spool(createDocument("a.pdf", 10));
+        DocumentSpool.Entry entry = spool.get(token);
+        assertNotNull(entry);
+        assertEquals("a.pdf", entry.getName());
+        assertEquals("application/pdf", entry.getMimeType());
+        assertEquals(10, entry.getSize());
+        assertEquals("\"" + token + "\"", entry.getETag());
+        assertArrayEquals(createContent(10), FileUtils.readFileToByteArray(entry.getFile()));
+
+        assertNotNull(spool.get(token));
+        assertNull(spool.get("unknown"));
+    }
+
+    /**
+     * Verifies that the oldest documents are evicted when the spool exceeds its maximum size.
+     */
+    @Test
+    public void testEviction() {
+        spool.setMaxSize(25);
+        String token1 = spool.spool(createDocument("1.pdf", 10));
+        String token2 = spool.spool(createDocument("2.pdf", 10));
+        File file1 = spool.get(token1).getFile();
+        assertEquals(20, spool.getSize());
+
+        String token3 = spool.spool(createDocument("3.pdf", 10));
+        assertNull(spool.get(token1));
+        assertFalse(file1.exists());
+        assertNotNull(spool.get(token2));
+        assertNotNull(spool.get(token3));
+        assertEquals(20, spool.getSize());
+    }
+
+    /**
+     * Verifies that documents expire.
+     */
+    @Test
+    public void testExpiry() {
+        spool.setExpiry(-1);
+        String token = spool.spool(createDocument("a.pdf", 10));
+        assertNull(spool.get(token));
+        assertEquals(0, spool.getSize());
+    }
+
+    /**
+     * Creates a new document.
+     *
+     * @param name the document name
+     * @param size the document size
+     * @return a new document
+     */
+    private Document createDocument(String name, int size) {
+        Document document = new Document();
+        document.setArchetypeId(new ArchetypeId("document.other.1.0"));
+        document.setName(name);
+        document.setMimeType("application/pdf");
+        document.setContents(createContent(size));
+        return document;
+    }
+
+    /**
+     * Creates document content.
+     *
+     * @param size the content size
+     * @return the content
+     */
+    private byte[] createContent(int size) {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            result[i] = (byte) i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.echo.servlet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the {@link DownloadServlet}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class DownloadServletTestCase {
+
+    /**
+     * Tests the {@link DownloadServlet#getRange(String, long)} method.
+     */
+    @Test
+    public void testGetRange() {
+        assertArrayEquals(new long[]{0, 99}, DownloadServlet.getRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, DownloadServlet.getRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, DownloadServlet.getRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, DownloadServlet.getRange("bytes=-2000", 1000));
+        assertArrayEquals(new long[]{990, 999}, DownloadServlet.getRange("bytes=990-2000", 1000));
+
+        // unsatisfiable
+        assertArrayEquals(new long[0], DownloadServlet.getRange("bytes=1000-", 1000));
+        assertArrayEquals(new long[0], DownloadServlet.getRange("bytes=-0", 1000));
+
+        // invalid or unsupported, so ignored
+        assertNull(DownloadServlet.getRange(null, 1000));
+        assertNull(DownloadServlet.getRange("items=0-99", 1000));
+        assertNull(DownloadServlet.getRange("bytes=0-9,20-29", 1000));
+        assertNull(DownloadServlet.getRange("bytes=10-5", 1000));
+        assertNull(DownloadServlet.getRange("bytes=a-b", 1000));
+        assertNull(DownloadServlet.getRange("bytes=-", 1000));
+    }
+}
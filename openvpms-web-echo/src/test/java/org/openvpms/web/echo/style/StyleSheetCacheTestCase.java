@@ -16,8 +16,16 @@
 
 package org.openvpms.web.echo.style;
 
+import nextapp.echo2.app.StyleSheet;
+import org.junit.Test;
+
+import java.awt.Dimension;
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
 
 /**
  * Tests {@link StyleSheetCache}.
@@ -26,6 +34,44 @@ import java.io.IOException;
  */
 public class StyleSheetCacheTestCase extends AbstractStyleSheetsTest {
 
+    /**
+     * Verifies that screen sizes are rounded to buckets, that configured resolutions are not rounded, and that
+     * the returned styles report the requested size.
+     */
+    @Test
+    public void testBuckets() {
+        StyleSheetCache cache = (StyleSheetCache) getStyleSheets();
+        Style style1 = cache.getStyle(1000, 700);
+        Style style2 = cache.getStyle(1001, 701);
+        assertSame(style1.getStylesheet(), style2.getStylesheet());
+        assertEquals(new Dimension(1000, 700), style1.getSize());
+        assertEquals(new Dimension(1001, 701), style2.getSize());
+        assertEquals("496", style1.getProperty("dialog.width"));
+
+        Style style3 = cache.getStyle(1024, 768);
+        assertNotSame(style1.getStylesheet(), style3.getStylesheet());
+        assertEquals(new Dimension(1024, 768), style3.getSize());
+        assertEquals(2, cache.getCached());
+    }
+
+    /**
+     * Verifies that the least recently used style sheets are evicted when the cache is full.
+     */
+    @Test
+    public void testEviction() {
+        StyleSheetCache cache = (StyleSheetCache) getStyleSheets();
+        cache.setMaxCached(2);
+        StyleSheet style1 = cache.getStyleSheet(800, 600);
+        StyleSheet style2 = cache.getStyleSheet(900, 600);
+        assertSame(style1, cache.getStyleSheet(800, 600));
+
+        cache.getStyle(1000, 600); // evicts 900x600
+        assertEquals(2, cache.getCached());
+        assertSame(style1, cache.getStyleSheet(800, 600));
+        assertNotSame(style2, cache.getStyleSheet(900, 600));
+        assertEquals(2, cache.getCached());
+    }
+
     /**
      * Creates the style sheets.
      *
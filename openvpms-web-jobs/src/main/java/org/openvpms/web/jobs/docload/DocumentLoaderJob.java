@@ -55,6 +55,9 @@ import java.util.regex.Pattern;
 
 /**
  * A job for loading documents using the {@link IdLoader}.
+ * <p/>
+ * If the configuration specifies more than one thread, documents are loaded concurrently using a
+ * {@link ParallelDocumentLoader}.
  *
  * @author Tim Anderson
  */
@@ -95,6 +98,22 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
      */
     private volatile boolean stop;
 
+    /**
+     * The parallel loader, if documents are being loaded concurrently.
+     */
+    private volatile ParallelDocumentLoader parallel;
+
+    /**
+     * The maximum no. of files to report on for each of errors, missing acts and already loaded documents.
+     * The remainder are only counted.
+     */
+    private static final int MAX_DETAILS = 100;
+
+    /**
+     * The default no. of files each loader thread processes at a time.
+     */
+    private static final int DEFAULT_BATCH_SIZE = 20;
+
     /**
      * Constructs a {@link DocumentLoaderJob}.
      *
@@ -139,23 +158,37 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
             types = StringUtils.trimArrayElements(types);
             boolean logLoad = bean.getBoolean("log");
             boolean stopOnError = bean.getBoolean("stopOnError");
+            int threads = bean.hasNode("threads") ? bean.getInt("threads", 1) : 1;
+            int batchSize = bean.hasNode("batchSize") ? bean.getInt("batchSize", DEFAULT_BATCH_SIZE)
+                                                      : DEFAULT_BATCH_SIZE;
 
-            IdLoader loader = new IdLoader(source, types, service, transactionManager, recurse, overwrite,
-                                           Pattern.compile(idPattern));
             LoaderListener delegate = logLoad ? new LoggingLoaderListener(log, target)
                                               : new DefaultLoaderListener(target);
             listener = new Listener(delegate);
-            loader.setListener(listener);
 
-            while (!stop && loader.hasNext()) {
-                if (!loader.loadNext() && stopOnError) {
-                    break;
+            if (threads > 1) {
+                parallel = new ParallelDocumentLoader(source, types, service, transactionManager, recurse, overwrite,
+                                                      Pattern.compile(idPattern), listener, threads, batchSize);
+                if (!stop) {
+                    parallel.load(stopOnError);
+                }
+            } else {
+                IdLoader loader = new IdLoader(source, types, service, transactionManager, recurse, overwrite,
+                                               Pattern.compile(idPattern));
+                loader.setListener(listener);
+
+                while (!stop && loader.hasNext()) {
+                    if (!loader.loadNext() && stopOnError) {
+                        break;
+                    }
                 }
             }
             complete(listener, null);
         } catch (Throwable exception) {
             log.error(exception, exception);
             complete(listener, exception);
+        } finally {
+            parallel = null;
         }
     }
 
@@ -168,6 +201,10 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
     @Override
     public void interrupt() throws UnableToInterruptJobException {
         stop = true;
+        ParallelDocumentLoader loader = parallel;
+        if (loader != null) {
+            loader.stop();
+        }
     }
 
     /**
@@ -214,37 +251,25 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
         }
         if (listener != null) {
             if (!listener.errors.isEmpty()) {
-                if (text.length() != 0) {
-                    text.append("\n\n");
-                }
-                text.append(Messages.get("docload.error"));
-                text.append("\n");
+                append(text, Messages.get("docload.error"));
                 for (Map.Entry<File, String> entry : listener.errors.entrySet()) {
-                    text.append(Messages.format("docload.error.item", entry.getKey(), entry.getValue()));
-                    text.append("\n");
+                    appendItem(text, Messages.format("docload.error.item", entry.getKey(), entry.getValue()));
                 }
+                appendMore(text, listener.getErrors() - listener.errors.size());
             }
             if (!listener.missingAct.isEmpty()) {
-                if (text.length() != 0) {
-                    text.append("\n\n");
-                }
-                text.append(Messages.get("docload.missingAct"));
-                text.append("\n");
+                append(text, Messages.get("docload.missingAct"));
                 for (Map.Entry<File, Long> entry : listener.missingAct.entrySet()) {
-                    text.append(Messages.format("docload.missingAct.item", entry.getValue(), entry.getKey()));
-                    text.append("\n");
+                    appendItem(text, Messages.format("docload.missingAct.item", entry.getValue(), entry.getKey()));
                 }
+                appendMore(text, listener.getMissingAct() - listener.missingAct.size());
             }
             if (!listener.alreadyLoaded.isEmpty()) {
-                if (text.length() != 0) {
-                    text.append("\n\n");
-                }
-                text.append(Messages.get("docload.alreadyLoaded"));
-                text.append("\n");
+                append(text, Messages.get("docload.alreadyLoaded"));
                 for (Map.Entry<File, Long> entry : listener.alreadyLoaded.entrySet()) {
-                    text.append(Messages.format("docload.alreadyLoaded.item", entry.getValue(), entry.getKey()));
-                    text.append("\n");
+                    appendItem(text, Messages.format("docload.alreadyLoaded.item", entry.getValue(), entry.getKey()));
                 }
+                appendMore(text, listener.getAlreadyLoaded() - listener.alreadyLoaded.size());
             }
         }
         subject = truncate(subject, subjectLength);
@@ -254,6 +279,43 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
         }
     }
 
+    /**
+     * Appends a section heading to the message text.
+     *
+     * @param text    the message text
+     * @param heading the heading
+     */
+    private void append(StringBuilder text, String heading) {
+        if (text.length() != 0) {
+            text.append("\n\n");
+        }
+        text.append(heading);
+        text.append("\n");
+    }
+
+    /**
+     * Appends an item to the message text.
+     *
+     * @param text the message text
+     * @param item the item
+     */
+    private void appendItem(StringBuilder text, String item) {
+        text.append(item);
+        text.append("\n");
+    }
+
+    /**
+     * Appends a count of the items that weren't recorded to the message text.
+     *
+     * @param text    the message text
+     * @param omitted the number of items omitted
+     */
+    private void appendMore(StringBuilder text, int omitted) {
+        if (omitted > 0) {
+            appendItem(text, Messages.format("docload.more", omitted));
+        }
+    }
+
     /**
      * Sends a message to a user.
      *
@@ -312,12 +374,26 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
     }
 
 
+    /**
+     * Listener that records the files that weren't loaded.
+     * <p/>
+     * Notifications are synchronized, as they may be received from multiple loader threads.
+     */
     private class Listener extends DelegatingLoaderListener {
 
+        /**
+         * The files that had already been loaded. At most {@link #MAX_DETAILS} are recorded.
+         */
         private LinkedHashMap<File, Long> alreadyLoaded = new LinkedHashMap<File, Long>();
 
+        /**
+         * The files with no corresponding act. At most {@link #MAX_DETAILS} are recorded.
+         */
         private LinkedHashMap<File, Long> missingAct = new LinkedHashMap<File, Long>();
 
+        /**
+         * The files that failed to load. At most {@link #MAX_DETAILS} are recorded.
+         */
         private LinkedHashMap<File, String> errors = new LinkedHashMap<File, String>();
 
 
@@ -330,6 +406,17 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
             super(listener);
         }
 
+        /**
+         * Notifies when a file is loaded.
+         *
+         * @param file the file
+         * @param id   the corresponding act identifier
+         */
+        @Override
+        public synchronized void loaded(File file, long id) {
+            super.loaded(file, id);
+        }
+
         /**
          * Notifies that a file couldn't be loaded as it or another file had already been processed.
          *
@@ -337,9 +424,11 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
          * @param id   the corresponding act identifier
          */
         @Override
-        public void alreadyLoaded(File file, long id) {
+        public synchronized void alreadyLoaded(File file, long id) {
             super.alreadyLoaded(file, id);
-            alreadyLoaded.put(file, id);
+            if (alreadyLoaded.size() < MAX_DETAILS) {
+                alreadyLoaded.put(file, id);
+            }
         }
 
         /**
@@ -349,9 +438,11 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
          * @param id   the corresponding act identifier
          */
         @Override
-        public void missingAct(File file, long id) {
+        public synchronized void missingAct(File file, long id) {
             super.missingAct(file, id);
-            missingAct.put(file, id);
+            if (missingAct.size() < MAX_DETAILS) {
+                missingAct.put(file, id);
+            }
         }
 
         /**
@@ -361,9 +452,11 @@ public class DocumentLoaderJob implements InterruptableJob, StatefulJob {
          * @param exception the error
          */
         @Override
-        public void error(File file, Throwable exception) {
+        public synchronized void error(File file, Throwable exception) {
             super.error(file, exception);
-            errors.put(file, exception.getMessage());
+            if (errors.size() < MAX_DETAILS) {
+                errors.put(file, exception.getMessage());
+            }
         }
 
     }
@@ -0,0 +1,554 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.jobs.docload;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openvpms.component.business.service.archetype.IArchetypeService;
+import org.openvpms.etl.tools.doc.IdLoader;
+import org.openvpms.etl.tools.doc.Loader;
+import org.openvpms.etl.tools.doc.LoaderListener;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Loads documents using several {@link IdLoader}s concurrently.
+ * <p/>
+ * The source directory is scanned on the calling thread while the workers run, and the files are handed to the
+ * workers in batches via a bounded queue, so that no more than a few batches are held in memory. Each worker moves
+ * its batch into a private staging directory under the source directory, and loads it with its own {@link IdLoader}.
+ * Within the staging directory, each file is placed at {@code <index>/<path relative to the source directory>}, so
+ * that files with the same name don't collide, and so that files left behind by an interrupted run can be returned
+ * to their original sub-directory.
+ * <p/>
+ * Before the listener is notified, the file is moved back to its original location, so the listener only ever sees
+ * the original files. Files that the loader doesn't process are returned once the batch completes.
+ * <p/>
+ * The supplied listener is invoked concurrently, so must be thread safe.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class ParallelDocumentLoader {
+
+    /**
+     * The source directory.
+     */
+    private final File source;
+
+    /**
+     * The document act archetype short names.
+     */
+    private final String[] types;
+
+    /**
+     * The archetype service.
+     */
+    private final IArchetypeService service;
+
+    /**
+     * The transaction manager.
+     */
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Determines if the source directory should be recursively scanned.
+     */
+    private final boolean recurse;
+
+    /**
+     * Determines if existing documents should be overwritten.
+     */
+    private final boolean overwrite;
+
+    /**
+     * The pattern to extract act identifiers from file names.
+     */
+    private final Pattern pattern;
+
+    /**
+     * The listener to notify.
+     */
+    private final LoaderListener listener;
+
+    /**
+     * The number of workers.
+     */
+    private final int workers;
+
+    /**
+     * The number of files each worker claims at a time.
+     */
+    private final int batchSize;
+
+    /**
+     * The files waiting to be loaded.
+     */
+    private final BlockingQueue<File> queue;
+
+    /**
+     * Determines if loading should stop.
+     */
+    private volatile boolean stop;
+
+    /**
+     * The prefix of staging directories.
+     */
+    private static final String STAGING_PREFIX = ".docload-";
+
+    /**
+     * Placed on the queue once the source directory has been scanned.
+     */
+    private static final File END = new File("");
+
+    /**
+     * The time to wait when polling or offering to the queue, in milliseconds, before checking if loading has stopped.
+     */
+    private static final long WAIT = 100;
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(ParallelDocumentLoader.class);
+
+    /**
+     * Constructs a {@link ParallelDocumentLoader}.
+     *
+     * @param source             the source directory
+     * @param types              the document act archetype short names
+     * @param service            the archetype service
+     * @param transactionManager the transaction manager
+     * @param recurse            if {@code true}, recursively scan the source directory
+     * @param overwrite          if {@code true}, overwrite existing documents
+     * @param pattern            the pattern to extract act identifiers from file names
+     * @param listener           the listener to notify. Must be thread safe
+     * @param workers            the number of workers
+     * @param batchSize          the number of files each worker claims at a time
+     */
+    public ParallelDocumentLoader(File source, String[] types, IArchetypeService service,
+                                  PlatformTransactionManager transactionManager, boolean recurse, boolean overwrite,
+                                  Pattern pattern, LoaderListener listener, int workers, int batchSize) {
+        this.source = source;
+        this.types = types;
+        this.service = service;
+        this.transactionManager = transactionManager;
+        this.recurse = recurse;
+        this.overwrite = overwrite;
+        this.pattern = pattern;
+        this.listener = listener;
+        this.workers = workers > 0 ? workers : 1;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        queue = new ArrayBlockingQueue<File>(this.workers * this.batchSize * 2);
+    }
+
+    /**
+     * Loads the documents, blocking until all workers complete.
+     *
+     * @param stopOnError if {@code true}, stop loading on the first error
+     * @throws Exception if a worker fails
+     */
+    public void load(final boolean stopOnError) throws Exception {
+        recover();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < workers; ++i) {
+                final File staging = new File(source, STAGING_PREFIX + i);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            work(staging, stopOnError);
+                        } catch (RuntimeException exception) {
+                            stop = true;
+                            throw exception;
+                        }
+                    }
+                }));
+            }
+            if (collect(source)) {
+                put(END);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            stop = true;
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops loading. Workers complete the file they are currently loading.
+     */
+    public void stop() {
+        stop = true;
+    }
+
+    /**
+     * Loads batches of files until there are none left, or loading is stopped.
+     *
+     * @param staging     the worker's staging directory
+     * @param stopOnError if {@code true}, stop all workers on the first error
+     */
+    private void work(File staging, boolean stopOnError) {
+        List<File> batch;
+        while (!stop && !(batch = next()).isEmpty()) {
+            Map<File, File> staged = new LinkedHashMap<File, File>();
+            try {
+                if (!stage(batch, staging, staged) && stopOnError) {
+                    stop = true;
+                }
+                Loader loader = createLoader(staging);
+                loader.setListener(new StagedListener(staged, listener));
+                while (!stop && loader.hasNext()) {
+                    if (!loader.loadNext() && stopOnError) {
+                        stop = true;
+                    }
+                }
+            } finally {
+                restore(staged);
+                delete(staging);
+            }
+        }
+    }
+
+    /**
+     * Creates a loader for a staging directory.
+     *
+     * @param staging the staging directory
+     * @return a new loader
+     */
+    protected Loader createLoader(File staging) {
+        return new IdLoader(staging, types, service, transactionManager, true, overwrite, pattern);
+    }
+
+    /**
+     * Claims the next batch of files.
+     * <p/>
+     * This waits for the first file of the batch, but returns a partial batch rather than waiting for more.
+     *
+     * @return the files. An empty list indicates there are no more files, or loading has stopped
+     */
+    private List<File> next() {
+        List<File> result = new ArrayList<File>(batchSize);
+        try {
+            while (!stop && result.size() < batchSize) {
+                File file = result.isEmpty() ? queue.poll(WAIT, TimeUnit.MILLISECONDS) : queue.poll();
+                if (file == END) {
+                    queue.offer(END); // leave it for the other workers
+                    break;
+                } else if (file != null) {
+                    result.add(file);
+                } else if (!result.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            stop = true;
+        }
+        return result;
+    }
+
+    /**
+     * Adds a file to the queue, waiting for space to become available.
+     *
+     * @param file the file
+     * @return {@code true} if the file was added, {@code false} if loading has stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean put(File file) throws InterruptedException {
+        while (!stop) {
+            if (queue.offer(file, WAIT, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves a batch of files to a staging directory.
+     * <p/>
+     * Each file is placed under its own numbered sub-directory, at its path relative to the source directory.
+     * <p/>
+     * Files that can't be moved are reported to the listener as errors.
+     *
+     * @param batch   the files to stage
+     * @param staging the staging directory
+     * @param staged  collects the staged files, mapped to their original location
+     * @return {@code true} if all files were staged, {@code false} if any failed
+     */
+    private boolean stage(List<File> batch, File staging, Map<File, File> staged) {
+        boolean result = true;
+        for (int i = 0; i < batch.size(); ++i) {
+            File file = batch.get(i);
+            File target = new File(new File(staging, Integer.toString(i)), getRelativePath(file));
+            File dir = target.getParentFile();
+            if ((dir.isDirectory() || dir.mkdirs()) && file.renameTo(target)) {
+                staged.put(target, file);
+            } else {
+                listener.error(file, new IllegalStateException("Failed to move " + file + " to " + target));
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns any staged files that weren't loaded to their original location.
+     *
+     * @param staged the staged files, mapped to their original location
+     */
+    private void restore(Map<File, File> staged) {
+        for (Map.Entry<File, File> entry : staged.entrySet()) {
+            restore(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns a staged file to its original location, if it hasn't already been moved.
+     *
+     * @param file     the staged file
+     * @param original the original location
+     * @return {@code true} if the file is at its original location
+     */
+    private boolean restore(File file, File original) {
+        boolean result = true;
+        if (file.exists()) {
+            File dir = original.getParentFile();
+            if (original.exists() || !(dir.isDirectory() || dir.mkdirs()) || !file.renameTo(original)) {
+                log.error("Failed to move " + file + " back to " + original);
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves any files left in staging directories by a prior run back to their original location.
+     */
+    private void recover() {
+        File[] dirs = source.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return isStaging(file);
+            }
+        });
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] slots = dir.listFiles();
+                if (slots != null) {
+                    for (File slot : slots) {
+                        if (slot.isDirectory()) {
+                            recover(slot, source);
+                        } else {
+                            restore(slot, new File(source, slot.getName()));
+                        }
+                    }
+                }
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Moves files in a staging directory back to the corresponding directory under the source directory.
+     *
+     * @param dir    the staging directory
+     * @param target the directory to move the files to
+     */
+    private void recover(File dir, File target) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    recover(file, new File(target, file.getName()));
+                } else {
+                    restore(file, new File(target, file.getName()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the path of a file relative to the source directory.
+     *
+     * @param file the file
+     * @return the relative path
+     */
+    private String getRelativePath(File file) {
+        StringBuilder result = new StringBuilder(file.getName());
+        File parent = file.getParentFile();
+        while (parent != null && !parent.equals(source)) {
+            result.insert(0, File.separatorChar).insert(0, parent.getName());
+            parent = parent.getParentFile();
+        }
+        return result.toString();
+    }
+
+    /**
+     * Queues the files to load, waiting for the workers when the queue is full.
+     * <p/>
+     * Files restored to a directory after it has been listed aren't queued again.
+     *
+     * @param dir the directory to collect files from
+     * @return {@code true} if all files were queued, {@code false} if loading was stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean collect(File dir) throws InterruptedException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    if (!put(file)) {
+                        return false;
+                    }
+                } else if (recurse && file.isDirectory() && !isStaging(file)) {
+                    if (!collect(file)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if a file is a staging directory.
+     *
+     * @param file the file
+     * @return {@code true} if the file is a staging directory
+     */
+    private boolean isStaging(File file) {
+        return file.isDirectory() && file.getName().startsWith(STAGING_PREFIX)
+               && source.equals(file.getParentFile());
+    }
+
+    /**
+     * Deletes a staging directory, if it is empty of files.
+     *
+     * @param dir the directory
+     */
+    private void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    delete(file);
+                }
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            log.warn("Failed to delete " + dir);
+        }
+    }
+
+    /**
+     * A listener that moves staged files back to their original location before notifying the delegate, so that
+     * staging directories never appear in notifications.
+     */
+    private class StagedListener extends DelegatingLoaderListener {
+
+        /**
+         * The staged files, mapped to their original location.
+         */
+        private final Map<File, File> staged;
+
+        /**
+         * Constructs a {@link StagedListener}.
+         *
+         * @param staged   the staged files, mapped to their original location
+         * @param listener the listener to delegate to
+         */
+        public StagedListener(Map<File, File> staged, LoaderListener listener) {
+            super(listener);
+            this.staged = staged;
+        }
+
+        /**
+         * Notifies when a file is loaded.
+         *
+         * @param file the file
+         * @param id   the corresponding act identifier
+         */
+        @Override
+        public void loaded(File file, long id) {
+            super.loaded(unstage(file), id);
+        }
+
+        /**
+         * Notifies that a file couldn't be loaded as it or another file had already been processed.
+         *
+         * @param file the file
+         * @param id   the corresponding act identifier
+         */
+        @Override
+        public void alreadyLoaded(File file, long id) {
+            super.alreadyLoaded(unstage(file), id);
+        }
+
+        /**
+         * Notifies that a file couldn't be loaded as there was no corresponding act.
+         *
+         * @param file the file
+         * @param id   the corresponding act identifier
+         */
+        @Override
+        public void missingAct(File file, long id) {
+            super.missingAct(unstage(file), id);
+        }
+
+        /**
+         * Notifies that a file couldn't be loaded due to error.
+         *
+         * @param file      the file
+         * @param exception the error
+         */
+        @Override
+        public void error(File file, Throwable exception) {
+            super.error(unstage(file), exception);
+        }
+
+        /**
+         * Moves a staged file back to its original location.
+         *
+         * @param file the staged file
+         * @return the original file, or {@code file} if it isn't staged, or couldn't be moved
+         */
+        private File unstage(File file) {
+            File original = staged.get(file);
+            if (original != null && restore(file, original)) {
+                return original;
+            }
+            return file;
+        }
+    }
+
+}
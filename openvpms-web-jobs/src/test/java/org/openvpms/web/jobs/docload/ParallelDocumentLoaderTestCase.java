@@ -0,0 +1,342 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.jobs.docload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openvpms.etl.tools.doc.Loader;
+import org.openvpms.etl.tools.doc.LoaderListener;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link ParallelDocumentLoader}.
+ * <p/>
+ * The {@link ParallelDocumentLoader#createLoader(File) loader} is replaced by one that reports every file as having
+ * no corresponding act, so that staging, recovery and error reporting can be tested without a database.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ParallelDocumentLoaderTestCase {
+
+    /**
+     * The source directory.
+     */
+    private File source;
+
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException {
+        source = File.createTempFile("docload", "");
+        assertTrue(source.delete());
+        assertTrue(source.mkdir());
+    }
+
+    /**
+     * Cleans up after the test case.
+     */
+    @After
+    public void tearDown() {
+        delete(source);
+    }
+
+    /**
+     * Verifies that the listener is notified with the original files, not those in the staging directories, and that
+     * files that aren't moved by the listener are left in their original location.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testListenerReceivesOriginalFiles() throws Exception {
+        Set<File> expected = new HashSet<File>();
+        expected.add(createFile(source, "1.txt"));
+        expected.add(createFile(new File(source, "a"), "2.txt"));
+        expected.add(createFile(new File(source, "b"), "2.txt"));
+        expected.add(createFile(new File(source, "b/c"), "3.txt"));
+
+        Listener listener = new Listener();
+        load(listener, 2, 1, false);
+
+        assertEquals(expected, new HashSet<File>(listener.missing));
+        assertEquals(4, listener.existed);
+        for (File file : expected) {
+            assertTrue(file.exists());
+        }
+        assertNull(getStagingDirs());
+    }
+
+    /**
+     * Verifies that files left in staging directories by an interrupted run are returned to their original
+     * sub-directory.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRecover() throws Exception {
+        createFile(new File(source, ".docload-0/0/a/b"), "1.txt");
+        createFile(new File(source, ".docload-0/1"), "2.txt");
+        createFile(new File(source, ".docload-1/0/c"), "3.txt");
+
+        Listener listener = new Listener();
+        load(listener, 2, 5, false);
+
+        Set<File> expected = new HashSet<File>();
+        expected.add(new File(source, "a/b/1.txt"));
+        expected.add(new File(source, "2.txt"));
+        expected.add(new File(source, "c/3.txt"));
+        for (File file : expected) {
+            assertTrue(file.exists());
+        }
+        assertEquals(expected, new HashSet<File>(listener.missing));
+        assertNull(getStagingDirs());
+    }
+
+    /**
+     * Verifies that files that can't be staged are reported as errors, and stop the load if {@code stopOnError} is
+     * {@code true}.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testStageErrorStopsOnError() throws Exception {
+        createFile(source, "1.txt");
+        createFile(source, "2.txt");
+        createFile(source, "3.txt");
+
+        Listener listener = new DeletingListener();
+        load(listener, 1, 1, true);
+        assertEquals(1, listener.getMissingAct());
+        assertEquals(1, listener.getErrors());
+        assertEquals(2, listener.getProcessed());
+    }
+
+    /**
+     * Verifies that files that can't be staged are reported as errors, and that loading continues if
+     * {@code stopOnError} is {@code false}.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testStageErrorContinues() throws Exception {
+        createFile(source, "1.txt");
+        createFile(source, "2.txt");
+        createFile(source, "3.txt");
+
+        Listener listener = new DeletingListener();
+        load(listener, 1, 1, false);
+        assertEquals(1, listener.getMissingAct());
+        assertEquals(2, listener.getErrors());
+        assertEquals(3, listener.getProcessed());
+    }
+
+    /**
+     * Loads the source directory.
+     *
+     * @param listener    the listener
+     * @param workers     the no. of workers
+     * @param batchSize   the batch size
+     * @param stopOnError if {@code true}, stop on the first error
+     * @throws Exception for any error
+     */
+    private void load(Listener listener, int workers, int batchSize, boolean stopOnError) throws Exception {
+        ParallelDocumentLoader loader = new ParallelDocumentLoader(source, new String[0], null, null, true, false,
+                                                                   null, listener, workers, batchSize) {
+            @Override
+            protected Loader createLoader(File staging) {
+                return new MissingActLoader(staging);
+            }
+        };
+        loader.load(stopOnError);
+    }
+
+    /**
+     * Returns the staging directories.
+     *
+     * @return the staging directories, or {@code null} if there are none
+     */
+    private File[] getStagingDirs() {
+        File[] dirs = source.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().startsWith(".docload-");
+            }
+        });
+        return dirs != null && dirs.length != 0 ? dirs : null;
+    }
+
+    /**
+     * Creates a file.
+     *
+     * @param dir  the parent directory
+     * @param name the file name
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(File dir, String name) throws IOException {
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        File file = new File(dir, name);
+        assertTrue(file.createNewFile());
+        return file;
+    }
+
+    /**
+     * Recursively deletes a file.
+     *
+     * @param file the file
+     */
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Loader that reports each file under a directory as having no corresponding act.
+     */
+    private static class MissingActLoader implements Loader {
+
+        private final List<File> files = new ArrayList<File>();
+
+        private LoaderListener listener;
+
+        public MissingActLoader(File dir) {
+            collect(dir);
+        }
+
+        public void setListener(LoaderListener listener) {
+            this.listener = listener;
+        }
+
+        public LoaderListener getListener() {
+            return listener;
+        }
+
+        public boolean hasNext() {
+            return !files.isEmpty();
+        }
+
+        public boolean loadNext() {
+            listener.missingAct(files.remove(0), -1);
+            return false;
+        }
+
+        private void collect(File dir) {
+            File[] list = dir.listFiles();
+            if (list != null) {
+                for (File file : list) {
+                    if (file.isDirectory()) {
+                        collect(file);
+                    } else {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Listener that records the files with no corresponding act.
+     */
+    private class Listener implements LoaderListener {
+
+        protected final List<File> missing = new ArrayList<File>();
+
+        protected int existed;
+
+        private int errors;
+
+        public synchronized void loaded(File file, long id) {
+        }
+
+        public int getLoaded() {
+            return 0;
+        }
+
+        public void alreadyLoaded(File file, long id) {
+        }
+
+        public int getAlreadyLoaded() {
+            return 0;
+        }
+
+        public synchronized void missingAct(File file, long id) {
+            assertFalse(file.getPath().contains(".docload-"));
+            if (file.exists()) {
+                ++existed;
+            }
+            missing.add(file);
+        }
+
+        public synchronized int getMissingAct() {
+            return missing.size();
+        }
+
+        public synchronized void error(File file, Throwable exception) {
+            assertFalse(file.getPath().contains(".docload-"));
+            ++errors;
+        }
+
+        public synchronized int getErrors() {
+            return errors;
+        }
+
+        public synchronized int getProcessed() {
+            return missing.size() + errors;
+        }
+    }
+
+    /**
+     * Listener that deletes all other files in the source directory when the first file is reported, so that they
+     * fail to be staged.
+     */
+    private class DeletingListener extends Listener {
+
+        @Override
+        public synchronized void missingAct(File file, long id) {
+            super.missingAct(file, id);
+            File[] files = source.listFiles();
+            if (files != null) {
+                for (File other : files) {
+                    if (other.isFile() && !other.equals(file)) {
+                        assertTrue(other.delete());
+                    }
+                }
+            }
+        }
+    }
+}
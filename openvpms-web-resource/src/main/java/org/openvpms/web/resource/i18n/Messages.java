@@ -17,14 +17,22 @@
 package org.openvpms.web.resource.i18n;
 
 import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
  * A utility class that provides resources for obtaining localized messages.
+ * <p/>
+ * Messages are read from a per-locale catalogue, built on first use by merging the site {@link #MESSAGES} bundle
+ * over the default bundle. Parsed {@code MessageFormat} patterns are cached in the catalogue.
  *
  * @author Tim Anderson
  */
@@ -45,6 +53,11 @@ public final class Messages {
      */
     private static final String DEFAULT_BUNDLE_NAME = "org.openvpms.web.resource.localisation.messages";
 
+    /**
+     * The message catalogues, keyed on locale.
+     */
+    private static final ConcurrentMap<Locale, Catalogue> catalogues = new ConcurrentHashMap<Locale, Catalogue>();
+
 
     /**
      * Returns a localised, formatted message.
@@ -54,12 +67,9 @@ public final class Messages {
      * @return the appropriate formatted localized text (if the key is not defined, the string "!key!" is returned)
      */
     public static String format(String key, Object... arguments) {
-        String result = null;
-        String pattern = get(key, false);
-        if (pattern != null) {
-            result = formatPattern(pattern, arguments);
-        }
-        return result;
+        Catalogue catalogue = getCatalogue();
+        MessageFormat format = catalogue.getFormat(key);
+        return (format != null) ? format(format, arguments) : formatPattern('!' + key + '!', arguments);
     }
 
     /**
@@ -70,12 +80,8 @@ public final class Messages {
      * @return the appropriate formatted localized text, or {@code null} if the key doesn't exist
      */
     public static String formatNull(String key, Object... arguments) {
-        String result = null;
-        String pattern = get(key, true);
-        if (pattern != null) {
-            result = formatPattern(pattern, arguments);
-        }
-        return result;
+        MessageFormat format = getCatalogue().getFormat(key);
+        return (format != null) ? format(format, arguments) : null;
     }
 
     /**
@@ -106,13 +112,9 @@ public final class Messages {
      *         is {@code true}; or the string "!key!" if the key doesn't exist and {@code allowNull} is {@code false}
      */
     public static String get(String key, boolean allowNull) {
-        String result = null;
-        try {
-            result = getString(key, getLocale(), MESSAGES, DEFAULT_BUNDLE_NAME);
-        } catch (MissingResourceException exception) {
-            if (!allowNull) {
-                result = '!' + key + '!';
-            }
+        String result = getCatalogue().get(key);
+        if (result == null && !allowNull) {
+            result = '!' + key + '!';
         }
         return result;
     }
@@ -152,28 +154,49 @@ public final class Messages {
     /**
      * Returns localised text.
      *
-     * @param key         the key of the text to be returned.
-     * @param locale      the locale
-     * @param bundleNames the resource bundles to look for the text
+     * @param key        the key of the text to be returned.
+     * @param locale     the locale
+     * @param bundleName the resource bundle to look for the text
      * @return the text
      * @throws MissingResourceException if the resource cannot be found
      */
-    private static String getString(String key, Locale locale, String... bundleNames) {
-        String result = null;
-        for (int i = 0; i < bundleNames.length; ++i) {
-            try {
-                ResourceBundle bundle = ResourceBundle.getBundle(bundleNames[i], locale);
-                result = bundle.getString(key);
-                break;
-            } catch (MissingResourceException exception) {
-                if (i == bundleNames.length - 1) {
-                    throw exception;
-                }
+    private static String getString(String key, Locale locale, String bundleName) {
+        return ResourceBundle.getBundle(bundleName, locale).getString(key);
+    }
+
+    /**
+     * Returns the message catalogue for the current locale, creating it if required.
+     *
+     * @return the catalogue
+     */
+    private static Catalogue getCatalogue() {
+        Locale locale = getLocale();
+        Catalogue result = catalogues.get(locale);
+        if (result == null) {
+            result = new Catalogue(locale);
+            Catalogue existing = catalogues.putIfAbsent(locale, result);
+            if (existing != null) {
+                result = existing;
             }
         }
         return result;
     }
 
+    /**
+     * Formats a message.
+     * <p/>
+     * {@code MessageFormat} isn't thread safe, so access to the shared instance is synchronized.
+     *
+     * @param format    the format
+     * @param arguments the arguments
+     * @return the formatted string
+     */
+    private static String format(MessageFormat format, Object[] arguments) {
+        synchronized (format) {
+            return format.format(arguments);
+        }
+    }
+
     /**
      * Helper to format a string.
      *
@@ -189,4 +212,89 @@ public final class Messages {
         return result;
     }
 
+    /**
+     * The messages for a locale, with the site messages merged over the defaults.
+     */
+    private static class Catalogue {
+
+        /**
+         * The locale.
+         */
+        private final Locale locale;
+
+        /**
+         * The messages, keyed on message key.
+         */
+        private final Map<String, String> messages;
+
+        /**
+         * The parsed formats, keyed on message key.
+         */
+        private final ConcurrentMap<String, MessageFormat> formats = new ConcurrentHashMap<String, MessageFormat>();
+
+        /**
+         * Constructs a {@link Catalogue}.
+         *
+         * @param locale the locale
+         */
+        public Catalogue(Locale locale) {
+            this.locale = locale;
+            Map<String, String> map = new HashMap<String, String>();
+            addAll(map, DEFAULT_BUNDLE_NAME);
+            addAll(map, MESSAGES);
+            messages = Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * Returns a message.
+         *
+         * @param key the message key
+         * @return the message, or {@code null} if none is found
+         */
+        public String get(String key) {
+            return messages.get(key);
+        }
+
+        /**
+         * Returns the parsed format of a message.
+         *
+         * @param key the message key
+         * @return the format, or {@code null} if the message is not found
+         */
+        public MessageFormat getFormat(String key) {
+            MessageFormat result = formats.get(key);
+            if (result == null) {
+                String pattern = messages.get(key);
+                if (pattern != null) {
+                    result = new MessageFormat(pattern, locale);
+                    MessageFormat existing = formats.putIfAbsent(key, result);
+                    if (existing != null) {
+                        result = existing;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds the messages from a bundle, replacing any existing messages with the same key.
+         *
+         * @param map        the map to add to
+         * @param bundleName the bundle name. If the bundle doesn't exist, it is ignored
+         */
+        private void addAll(Map<String, String> map, String bundleName) {
+            ResourceBundle bundle;
+            try {
+                bundle = ResourceBundle.getBundle(bundleName, locale);
+            } catch (MissingResourceException ignore) {
+                return;
+            }
+            Enumeration<String> keys = bundle.getKeys();
+            while (keys.hasMoreElements()) {
+                String key = keys.nextElement();
+                map.put(key, bundle.getString(key));
+            }
+        }
+    }
+
 }
@@ -37,16 +37,20 @@ import org.openvpms.hl7.patient.PatientContext;
 import org.openvpms.hl7.patient.PatientContextFactory;
 import org.openvpms.hl7.patient.PatientInformationService;
 import org.openvpms.hl7.pharmacy.Pharmacies;
+import org.openvpms.hl7.pharmacy.PharmacyOrder;
 import org.openvpms.hl7.pharmacy.PharmacyOrderService;
 import org.openvpms.hl7.util.HL7Archetypes;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -163,6 +167,12 @@ public class PharmacyOrderPlacer {
      * Places any orders required by charge items.
      * <p/>
      * If items have been removed since initialisation, those items will be cancelled.
+     * <p/>
+     * The patient information sent with each order is retrieved once per patient, and shared by all of the orders
+     * and notifications for that patient.
+     * <p/>
+     * Orders for the same pharmacy, patient and visit are submitted together, so that they may be sent in a single
+     * message if the pharmacy supports it.
      *
      * @param items   the charge items
      * @param changes patient history changes, used to obtain patient events
@@ -172,6 +182,8 @@ public class PharmacyOrderPlacer {
         List<IMObjectReference> ids = new ArrayList<IMObjectReference>(orders.keySet());
         List<Act> updated = new ArrayList<Act>();
         Set<Party> patients = new HashSet<Party>();
+        PatientContextFactory contexts = factory.snapshot();
+        Map<List<IMObjectReference>, Batch> batches = new LinkedHashMap<List<IMObjectReference>, Batch>();
         for (Act act : items) {
             IMObjectReference id = act.getObjectReference();
             ids.remove(id);
@@ -181,28 +193,25 @@ public class PharmacyOrderPlacer {
                 if (existing != null) {
                     if (needsCancel(existing, order)) {
                         // TODO - need to prevent this, as PlacerOrderNumbers should not be reused.
-                        cancelOrder(existing, changes, patients);
-                        if (createOrder(act, order, changes, patients)) {
-                            updated.add(act);
-                        }
+                        cancelOrder(existing, changes, patients, contexts, batches);
+                        createOrder(act, order, changes, patients, contexts, batches);
                     } else if (needsUpdate(existing, order)) {
-                        updateOrder(changes, order, patients);
+                        updateOrder(changes, order, patients, contexts, batches);
                     }
                 } else {
-                    if (createOrder(act, order, changes, patients)) {
-                        updated.add(act);
-                    }
+                    createOrder(act, order, changes, patients, contexts, batches);
                 }
                 orders.put(id, order);
             } else if (existing != null) {
                 // new product is not dispensed via a pharmacy.
-                cancelOrder(existing, changes, patients);
+                cancelOrder(existing, changes, patients, contexts, batches);
             }
         }
         for (IMObjectReference id : ids) {
             Order existing = orders.remove(id);
-            cancelOrder(existing, changes, patients);
+            cancelOrder(existing, changes, patients, contexts, batches);
         }
+        updated.addAll(send(batches.values()));
         return updated;
     }
 
@@ -211,13 +220,15 @@ public class PharmacyOrderPlacer {
      */
     public void cancel() {
         Map<IMObjectReference, Act> events = new HashMap<IMObjectReference, Act>();
+        PatientContextFactory contexts = factory.snapshot();
+        Map<List<IMObjectReference>, Batch> batches = new LinkedHashMap<List<IMObjectReference>, Batch>();
         for (Order order : orders.values()) {
-            PatientContext context = getPatientContext(order, events);
+            PatientContext context = getPatientContext(order, events, contexts);
             if (context != null) {
-                service.cancelOrder(context, order.getProduct(), order.getQuantity(),
-                                    order.getId(), order.getStartTime(), order.getPharmacy(), user);
+                addOrder(PharmacyOrder.Type.CANCEL, order, context, null, batches);
             }
         }
+        send(batches.values());
     }
 
     /**
@@ -225,13 +236,15 @@ public class PharmacyOrderPlacer {
      */
     public void discontinue() {
         Map<IMObjectReference, Act> events = new HashMap<IMObjectReference, Act>();
+        PatientContextFactory contexts = factory.snapshot();
+        Map<List<IMObjectReference>, Batch> batches = new LinkedHashMap<List<IMObjectReference>, Batch>();
         for (Order order : orders.values()) {
-            PatientContext context = getPatientContext(order, events);
+            PatientContext context = getPatientContext(order, events, contexts);
             if (context != null) {
-                service.discontinueOrder(context, order.getProduct(), order.getQuantity(),
-                                         order.getId(), order.getStartTime(), order.getPharmacy(), user);
+                addOrder(PharmacyOrder.Type.DISCONTINUE, order, context, null, batches);
             }
         }
+        send(batches.values());
     }
 
 
@@ -258,7 +271,8 @@ public class PharmacyOrderPlacer {
         return result;
     }
 
-    private PatientContext getPatientContext(Order order, PatientHistoryChanges changes) {
+    private PatientContext getPatientContext(Order order, PatientHistoryChanges changes,
+                                             PatientContextFactory contexts) {
         PatientContext result = null;
         List<Act> events = changes.getEvents(order.getPatient().getObjectReference());
         Act event;
@@ -273,12 +287,13 @@ public class PharmacyOrderPlacer {
             });
         }
         if (event != null) {
-            result = factory.createContext(order.getPatient(), customer, event, location, order.getClinician());
+            result = contexts.createContext(order.getPatient(), customer, event, location, order.getClinician());
         }
         return result;
     }
 
-    private PatientContext getPatientContext(Order order, Map<IMObjectReference, Act> events) {
+    private PatientContext getPatientContext(Order order, Map<IMObjectReference, Act> events,
+                                             PatientContextFactory contexts) {
         PatientContext result = null;
         Act event = events.get(order.getEvent());
         if (event == null) {
@@ -291,7 +306,7 @@ public class PharmacyOrderPlacer {
             events.put(order.getEvent(), event);
         }
         if (event != null) {
-            result = factory.createContext(order.getPatient(), customer, event, location, order.getClinician());
+            result = contexts.createContext(order.getPatient(), customer, event, location, order.getClinician());
         }
         return result;
     }
@@ -303,21 +318,16 @@ public class PharmacyOrderPlacer {
      * @param order    the order
      * @param changes  the changes
      * @param patients tracks patients that have had notifications sent
-     * @return {@code true} if an order was created (and invoice updated)
+     * @param contexts the patient context factory
+     * @param batches  the orders to submit, keyed on pharmacy, patient and visit
      */
-    private boolean createOrder(Act act, Order order, PatientHistoryChanges changes, Set<Party> patients) {
-        boolean result = false;
-        PatientContext context = getPatientContext(order, changes);
+    private void createOrder(Act act, Order order, PatientHistoryChanges changes, Set<Party> patients,
+                             PatientContextFactory contexts, Map<List<IMObjectReference>, Batch> batches) {
+        PatientContext context = getPatientContext(order, changes, contexts);
         if (context != null) {
             notifyPatientInformation(context, changes, patients);
-            if (service.createOrder(context, order.getProduct(), order.getQuantity(), order.getId(),
-                                    order.getStartTime(), order.getPharmacy(), user)) {
-                ActBean bean = new ActBean(act);
-                bean.setValue("ordered", true);
-                result = true;
-            }
+            addOrder(PharmacyOrder.Type.CREATE, order, context, act, batches);
         }
-        return result;
     }
 
     /**
@@ -326,13 +336,15 @@ public class PharmacyOrderPlacer {
      * @param order    the order
      * @param changes  the changes
      * @param patients tracks patients that have had notifications sent
+     * @param contexts the patient context factory
+     * @param batches  the orders to submit, keyed on pharmacy, patient and visit
      */
-    private void updateOrder(PatientHistoryChanges changes, Order order, Set<Party> patients) {
-        PatientContext context = getPatientContext(order, changes);
+    private void updateOrder(PatientHistoryChanges changes, Order order, Set<Party> patients,
+                             PatientContextFactory contexts, Map<List<IMObjectReference>, Batch> batches) {
+        PatientContext context = getPatientContext(order, changes, contexts);
         if (context != null) {
             notifyPatientInformation(context, changes, patients);
-            service.updateOrder(context, order.getProduct(), order.getQuantity(), order.getId(), order.getStartTime(),
-                                order.getPharmacy(), user);
+            addOrder(PharmacyOrder.Type.UPDATE, order, context, null, batches);
         }
     }
 
@@ -342,14 +354,59 @@ public class PharmacyOrderPlacer {
      * @param order    the order
      * @param changes  the changes
      * @param patients the patients, used to prevent duplicate patient update notifications being sent
+     * @param contexts the patient context factory
+     * @param batches  the orders to submit, keyed on pharmacy, patient and visit
      */
-    private void cancelOrder(Order order, PatientHistoryChanges changes, Set<Party> patients) {
-        PatientContext context = getPatientContext(order, changes);
+    private void cancelOrder(Order order, PatientHistoryChanges changes, Set<Party> patients,
+                             PatientContextFactory contexts, Map<List<IMObjectReference>, Batch> batches) {
+        PatientContext context = getPatientContext(order, changes, contexts);
         if (context != null) {
             notifyPatientInformation(context, changes, patients);
-            service.cancelOrder(context, order.getProduct(), order.getQuantity(), order.getId(), order.getStartTime(),
-                                order.getPharmacy(), user);
+            addOrder(PharmacyOrder.Type.CANCEL, order, context, null, batches);
+        }
+    }
+
+    /**
+     * Adds an order to the batch for its pharmacy, patient and visit.
+     *
+     * @param type    the order type
+     * @param order   the order
+     * @param context the patient context
+     * @param act     the invoice item to flag as ordered if the order is placed. May be {@code null}
+     * @param batches the orders to submit, keyed on pharmacy, patient and visit
+     */
+    private void addOrder(PharmacyOrder.Type type, Order order, PatientContext context, Act act,
+                          Map<List<IMObjectReference>, Batch> batches) {
+        List<IMObjectReference> key = Arrays.asList(order.getPharmacy().getObjectReference(),
+                                                    order.getPatient().getObjectReference(),
+                                                    context.getVisit().getObjectReference());
+        Batch batch = batches.get(key);
+        if (batch == null) {
+            batch = new Batch(order.getPharmacy());
+            batches.put(key, batch);
         }
+        batch.add(new PharmacyOrder(type, context, order.getProduct(), order.getQuantity(), order.getId(),
+                                    order.getStartTime()), act);
+    }
+
+    /**
+     * Submits batches of orders to the pharmacy order service.
+     *
+     * @param batches the batches to submit
+     * @return the invoice items that were flagged as ordered
+     */
+    private List<Act> send(Collection<Batch> batches) {
+        List<Act> result = new ArrayList<Act>();
+        for (Batch batch : batches) {
+            if (service.order(batch.getOrders(), batch.getPharmacy(), user)) {
+                for (Act act : batch.getActs()) {
+                    ActBean bean = new ActBean(act);
+                    bean.setValue("ordered", true);
+                    result.add(act);
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -435,6 +492,50 @@ public class PharmacyOrderPlacer {
         return (reference != null) ? cache.get(reference) : null;
     }
 
+    /**
+     * Orders for a single pharmacy, patient and visit.
+     */
+    private static class Batch {
+
+        /**
+         * The pharmacy.
+         */
+        private final Entity pharmacy;
+
+        /**
+         * The orders.
+         */
+        private final List<PharmacyOrder> orders = new ArrayList<PharmacyOrder>();
+
+        /**
+         * The invoice items to flag as ordered, if the orders are placed.
+         */
+        private final List<Act> acts = new ArrayList<Act>();
+
+        public Batch(Entity pharmacy) {
+            this.pharmacy = pharmacy;
+        }
+
+        public void add(PharmacyOrder order, Act act) {
+            orders.add(order);
+            if (act != null) {
+                acts.add(act);
+            }
+        }
+
+        public Entity getPharmacy() {
+            return pharmacy;
+        }
+
+        public List<PharmacyOrder> getOrders() {
+            return orders;
+        }
+
+        public List<Act> getActs() {
+            return acts;
+        }
+    }
+
     private static class Order {
 
         private final long id;
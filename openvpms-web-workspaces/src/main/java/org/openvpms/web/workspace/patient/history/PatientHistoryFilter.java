@@ -23,13 +23,12 @@ import org.openvpms.component.business.domain.im.act.ActRelationship;
 import org.openvpms.component.business.domain.im.common.IMObjectReference;
 import org.openvpms.component.business.service.archetype.helper.ActBean;
 import org.openvpms.component.business.service.archetype.helper.TypeHelper;
-import org.openvpms.web.component.im.act.ActHelper;
 import org.openvpms.web.component.im.act.ActHierarchyFilter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -123,6 +122,24 @@ public class PatientHistoryFilter extends ActHierarchyFilter<Act> {
         return true;
     }
 
+    /**
+     * Returns the references of acts that aren't part of the hierarchy, but that are required when filtering the
+     * children of an act.
+     * <p/>
+     * If invoice items are included, this returns the charge items of <em>act.patientClinicalEvent</em> acts, so that
+     * they are loaded with the other items of the page.
+     *
+     * @param act the act
+     * @return the related act references
+     */
+    @Override
+    protected Collection<IMObjectReference> getRelatedReferences(Act act) {
+        if (invoice && TypeHelper.isA(act, PatientArchetypes.CLINICAL_EVENT)) {
+            return getChargeItemReferences(act);
+        }
+        return super.getRelatedReferences(act);
+    }
+
     /**
      * Filters relationships.
      *
@@ -145,14 +162,7 @@ public class PatientHistoryFilter extends ActHierarchyFilter<Act> {
     private List<Act> filterInvoiceItems(Act event, List<Act> children) {
         List<Act> result;
         result = new ArrayList<Act>(children);
-        Set<IMObjectReference> chargeItemRefs = new HashSet<IMObjectReference>();
-        ActBean bean = new ActBean(event);
-        for (ActRelationship relationship : bean.getRelationships(PatientArchetypes.CLINICAL_EVENT_CHARGE_ITEM)) {
-            IMObjectReference target = relationship.getTarget();
-            if (target != null) {
-                chargeItemRefs.add(target);
-            }
-        }
+        Set<IMObjectReference> chargeItemRefs = getChargeItemReferences(event);
         if (!chargeItemRefs.isEmpty()) {
             for (int i = 0; i < children.size() && !chargeItemRefs.isEmpty(); ++i) {
                 Act act = children.get(i);
@@ -164,10 +174,28 @@ public class PatientHistoryFilter extends ActHierarchyFilter<Act> {
                     }
                 }
             }
-            List<Act> chargeItems = ActHelper.getActs(chargeItemRefs);
+            List<Act> chargeItems = getPrefetchedActs(chargeItemRefs);
             result.addAll(chargeItems);
         }
         return result;
     }
 
+    /**
+     * Returns the references of the charge items linked to an event.
+     *
+     * @param event the <em>act.patientClinicalEvent</em>
+     * @return the charge item references
+     */
+    private Set<IMObjectReference> getChargeItemReferences(Act event) {
+        Set<IMObjectReference> result = new LinkedHashSet<IMObjectReference>();
+        ActBean bean = new ActBean(event);
+        for (ActRelationship relationship : bean.getRelationships(PatientArchetypes.CLINICAL_EVENT_CHARGE_ITEM)) {
+            IMObjectReference target = relationship.getTarget();
+            if (target != null) {
+                result.add(target);
+            }
+        }
+        return result;
+    }
+
 }
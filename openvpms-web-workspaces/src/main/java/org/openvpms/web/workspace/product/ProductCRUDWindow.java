@@ -31,7 +31,6 @@ import org.openvpms.archetype.rules.product.io.ProductCSVReader;
 import org.openvpms.archetype.rules.product.io.ProductData;
 import org.openvpms.archetype.rules.product.io.ProductDataFilter;
 import org.openvpms.archetype.rules.product.io.ProductDataSet;
-import org.openvpms.archetype.rules.product.io.ProductImporter;
 import org.openvpms.component.business.domain.im.document.Document;
 import org.openvpms.component.business.domain.im.product.Product;
 import org.openvpms.component.system.common.exception.OpenVPMSException;
@@ -63,6 +62,9 @@ import org.openvpms.web.system.ServiceHelper;
 import org.openvpms.web.workspace.product.io.ProductExportDialog;
 import org.openvpms.web.workspace.product.io.ProductImportDialog;
 import org.openvpms.web.workspace.product.io.ProductImportErrorDialog;
+import org.openvpms.web.workspace.product.io.ProductImportJob;
+import org.openvpms.web.workspace.product.io.ProductImportProgressDialog;
+import org.openvpms.web.workspace.product.io.ProductImportService;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -274,7 +276,7 @@ public class ProductCRUDWindow extends ResultSetCRUDWindow<Product> {
      * @param reader   the document reader
      * @param help     the help context
      */
-    private void importDocument(Document document, ProductCSVReader reader, HelpContext help) {
+    private void importDocument(Document document, ProductCSVReader reader, final HelpContext help) {
         ProductDataSet data = reader.read(document);
         if (data.getErrors().isEmpty()) {
             ProductDataFilter filter = new ProductDataFilter(ServiceHelper.getBean(ProductPriceRules.class),
@@ -289,7 +291,7 @@ public class ProductCRUDWindow extends ResultSetCRUDWindow<Product> {
                 dialog.addWindowPaneListener(new PopupDialogListener() {
                     @Override
                     public void onOK() {
-                        onImport(output);
+                        onImport(output, help);
                     }
                 });
             } else {
@@ -350,14 +352,17 @@ public class ProductCRUDWindow extends ResultSetCRUDWindow<Product> {
 
     /**
      * Imports prices.
+     * <p/>
+     * The prices are imported in the background, and a dialog displayed to report progress.
      *
      * @param data the data to import
+     * @param help the help context
      */
-    private void onImport(List<ProductData> data) {
-        ProductImporter importer = new ProductImporter(ServiceHelper.getBean(ProductPriceRules.class),
-                                                       ServiceHelper.getArchetypeService());
-        importer.run(data, getContext().getPractice());
-        InformationDialog.show(Messages.get("product.import.title"), Messages.get("product.import.imported"));
+    private void onImport(List<ProductData> data, HelpContext help) {
+        ProductImportService service = ServiceHelper.getBean(ProductImportService.class);
+        ProductImportJob job = service.submit(data, getContext().getPractice());
+        ProductImportProgressDialog dialog = new ProductImportProgressDialog(job, help.subtopic("progress"));
+        dialog.show();
     }
 
     static class DateFormatDialog extends MessageDialog {
@@ -0,0 +1,289 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.product.io;
+
+import org.openvpms.archetype.rules.product.io.ProductData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A product price import queued for execution by the {@link ProductImportService}.
+ * <p/>
+ * Products are imported in chunks, each in its own transaction. Cancelling a job stops it at the next chunk
+ * boundary; chunks that have already been committed are retained.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ProductImportJob {
+
+    /**
+     * Job state.
+     */
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    /**
+     * Listener for job progress.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked when the job state or progress changes.
+         * <p/>
+         * This is invoked on the thread running the job.
+         *
+         * @param job the job
+         */
+        void changed(ProductImportJob job);
+    }
+
+    /**
+     * A product that couldn't be imported.
+     */
+    public static class ImportError {
+
+        /**
+         * The product data.
+         */
+        private final ProductData data;
+
+        /**
+         * The error message.
+         */
+        private final String message;
+
+        /**
+         * Constructs an {@link ImportError}.
+         *
+         * @param data    the product data
+         * @param message the error message
+         */
+        public ImportError(ProductData data, String message) {
+            this.data = data;
+            this.message = message;
+        }
+
+        /**
+         * Returns the product data.
+         *
+         * @return the product data
+         */
+        public ProductData getData() {
+            return data;
+        }
+
+        /**
+         * Returns the error message.
+         *
+         * @return the error message
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * The no. of products to import.
+     */
+    private final int total;
+
+    /**
+     * The products that couldn't be imported.
+     */
+    private final List<ImportError> errors = new ArrayList<ImportError>();
+
+    /**
+     * The job state.
+     */
+    private volatile State state = State.QUEUED;
+
+    /**
+     * The no. of products processed.
+     */
+    private volatile int processed;
+
+    /**
+     * Determines if the job has been cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * The failure cause.
+     */
+    private volatile Throwable error;
+
+    /**
+     * The listener. May be {@code null}
+     */
+    private volatile Listener listener;
+
+    /**
+     * Constructs a {@link ProductImportJob}.
+     *
+     * @param total the no. of products to import
+     */
+    public ProductImportJob(int total) {
+        this.total = total;
+    }
+
+    /**
+     * Returns the no. of products to import.
+     *
+     * @return the no. of products to import
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the no. of products processed so far, successfully or not.
+     *
+     * @return the no. of products processed
+     */
+    public int getProcessed() {
+        return processed;
+    }
+
+    /**
+     * Returns the no. of products imported so far.
+     *
+     * @return the no. of products imported
+     */
+    public int getImported() {
+        synchronized (errors) {
+            return processed - errors.size();
+        }
+    }
+
+    /**
+     * Returns the products that couldn't be imported.
+     *
+     * @return the import errors
+     */
+    public List<ImportError> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<ImportError>(errors);
+        }
+    }
+
+    /**
+     * Returns the job state.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Determines if the job has finished.
+     *
+     * @return {@code true} if the job has finished
+     */
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.CANCELLED || state == State.FAILED;
+    }
+
+    /**
+     * Returns the failure cause.
+     *
+     * @return the failure cause, or {@code null} if the job hasn't failed
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Cancels the job.
+     * <p/>
+     * The job stops before importing the next chunk of products.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Determines if the job has been cancelled.
+     *
+     * @return {@code true} if the job has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Registers a listener to be notified of progress.
+     *
+     * @param listener the listener. May be {@code null}
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Marks the job as running.
+     */
+    void running() {
+        state = State.RUNNING;
+        notifyListener();
+    }
+
+    /**
+     * Invoked when a chunk of products has been processed.
+     *
+     * @param count  the no. of products in the chunk
+     * @param failed the products in the chunk that couldn't be imported
+     */
+    void processed(int count, List<ImportError> failed) {
+        synchronized (errors) {
+            errors.addAll(failed);
+            processed += count;
+        }
+        notifyListener();
+    }
+
+    /**
+     * Marks the job as completed.
+     */
+    void completed() {
+        state = cancelled ? State.CANCELLED : State.COMPLETED;
+        notifyListener();
+    }
+
+    /**
+     * Marks the job as failed.
+     *
+     * @param error the failure cause
+     */
+    void failed(Throwable error) {
+        this.error = error;
+        state = State.FAILED;
+        notifyListener();
+    }
+
+    /**
+     * Notifies the listener, if any, of a change.
+     */
+    private void notifyListener() {
+        Listener l = listener;
+        if (l != null) {
+            l.changed(this);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.product.io;
+
+import echopointng.ProgressBar;
+import nextapp.echo2.app.ApplicationInstance;
+import nextapp.echo2.app.Color;
+import nextapp.echo2.app.Column;
+import nextapp.echo2.app.Label;
+import nextapp.echo2.app.TaskQueueHandle;
+import nextapp.echo2.app.table.DefaultTableColumnModel;
+import nextapp.echo2.app.table.TableColumn;
+import nextapp.echo2.webcontainer.ContainerContext;
+import org.openvpms.component.system.common.query.SortConstraint;
+import org.openvpms.web.component.im.query.ListResultSet;
+import org.openvpms.web.component.im.table.AbstractIMTableModel;
+import org.openvpms.web.component.im.table.PagedIMTable;
+import org.openvpms.web.component.im.table.PagedIMTableModel;
+import org.openvpms.web.echo.dialog.PopupDialog;
+import org.openvpms.web.echo.factory.ColumnFactory;
+import org.openvpms.web.echo.factory.LabelFactory;
+import org.openvpms.web.echo.help.HelpContext;
+import org.openvpms.web.echo.style.Styles;
+import org.openvpms.web.resource.i18n.Messages;
+
+import java.util.List;
+
+/**
+ * Displays the progress of a {@link ProductImportJob}, and any products that couldn't be imported.
+ * <p/>
+ * The import may be cancelled; products already imported are retained. Closing the dialog doesn't stop the import.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ProductImportProgressDialog extends PopupDialog {
+
+    /**
+     * The job.
+     */
+    private final ProductImportJob job;
+
+    /**
+     * The progress bar.
+     */
+    private final ProgressBar bar;
+
+    /**
+     * The status message.
+     */
+    private final Label status;
+
+    /**
+     * The container for the errors.
+     */
+    private final Column errors;
+
+    /**
+     * The application instance.
+     */
+    private final ApplicationInstance app;
+
+    /**
+     * The task queue, used to refresh the display from the import thread.
+     */
+    private TaskQueueHandle taskQueue;
+
+    /**
+     * The no. of errors currently displayed.
+     */
+    private int errorCount;
+
+
+    /**
+     * Constructs a {@link ProductImportProgressDialog}.
+     *
+     * @param job  the job
+     * @param help the help context
+     */
+    public ProductImportProgressDialog(ProductImportJob job, HelpContext help) {
+        super(Messages.get("product.import.title"), "BrowserDialog", new String[]{CANCEL_ID, CLOSE_ID}, help);
+        this.job = job;
+        setModal(true);
+        bar = new ProgressBar();
+        bar.setCompletedColor(Color.GREEN);
+        bar.setNumberOfBlocks(20);
+        bar.setMaximum(Math.max(job.getTotal(), 1));
+        status = LabelFactory.create();
+        errors = ColumnFactory.create(Styles.WIDE_CELL_SPACING);
+        getLayout().add(ColumnFactory.create("Inset.Large",
+                                             ColumnFactory.create(Styles.WIDE_CELL_SPACING, status, bar, errors)));
+
+        app = ApplicationInstance.getActive();
+        taskQueue = app.createTaskQueue();
+        ContainerContext context = (ContainerContext) app.getContextProperty(ContainerContext.CONTEXT_PROPERTY_NAME);
+        if (context != null) {
+            context.setTaskQueueCallbackInterval(taskQueue, 1000);
+        }
+        job.setListener(new ProductImportJob.Listener() {
+            public void changed(ProductImportJob job) {
+                onChanged();
+            }
+        });
+        refresh();
+    }
+
+    /**
+     * Invoked when the 'cancel' button is pressed. This cancels the import, but leaves the dialog open to display
+     * the outcome.
+     */
+    @Override
+    protected void onCancel() {
+        job.cancel();
+        getButtons().setEnabled(CANCEL_ID, false);
+        refresh();
+    }
+
+    /**
+     * Invoked just prior to the dialog closing.
+     */
+    @Override
+    protected void onClosing() {
+        job.setListener(null);
+        removeTaskQueue();
+    }
+
+    /**
+     * Invoked by the import thread when the job changes. Schedules a refresh on the next task queue callback.
+     */
+    private synchronized void onChanged() {
+        if (taskQueue != null) {
+            app.enqueueTask(taskQueue, new Runnable() {
+                public void run() {
+                    refresh();
+                }
+            });
+        }
+    }
+
+    /**
+     * Refreshes the display.
+     */
+    private void refresh() {
+        bar.setValue(job.getProcessed());
+        String message;
+        switch (job.getState()) {
+            case QUEUED:
+                message = Messages.get("product.import.queued");
+                break;
+            case RUNNING:
+                message = job.isCancelled() ? Messages.get("product.import.cancelling")
+                                            : Messages.format("product.import.progress", job.getProcessed(),
+                                                              job.getTotal());
+                break;
+            case COMPLETED:
+                message = (job.getErrors().isEmpty()) ? Messages.get("product.import.imported")
+                                                      : Messages.format("product.import.partial", job.getImported(),
+                                                                        job.getTotal());
+                break;
+            case CANCELLED:
+                message = Messages.format("product.import.cancelled", job.getImported(), job.getTotal());
+                break;
+            default:
+                String cause = (job.getError() != null) ? job.getError().getMessage() : null;
+                message = Messages.format("product.import.failed", job.getImported(), job.getTotal(), cause);
+        }
+        status.setText(message);
+        if (job.isFinished()) {
+            getButtons().setEnabled(CANCEL_ID, false);
+            removeTaskQueue();
+        }
+        List<ProductImportJob.ImportError> list = job.getErrors();
+        if (list.size() != errorCount) {
+            errorCount = list.size();
+            errors.removeAll();
+            ListResultSet<ProductImportJob.ImportError> resultSet
+                    = new ListResultSet<ProductImportJob.ImportError>(list, 20);
+            PagedIMTableModel<ProductImportJob.ImportError, ProductImportJob.ImportError> model
+                    = new PagedIMTableModel<ProductImportJob.ImportError, ProductImportJob.ImportError>(
+                    new ErrorTableModel());
+            errors.add(LabelFactory.create("product.import.failures"));
+            errors.add(new PagedIMTable<ProductImportJob.ImportError>(model, resultSet));
+        }
+    }
+
+    /**
+     * Cleans up the task queue.
+     */
+    private synchronized void removeTaskQueue() {
+        if (taskQueue != null) {
+            app.removeTaskQueue(taskQueue);
+            taskQueue = null;
+        }
+    }
+
+    private static class ErrorTableModel extends AbstractIMTableModel<ProductImportJob.ImportError> {
+
+        private static final int ID = 0;
+        private static final int NAME = 1;
+        private static final int ERROR = 2;
+
+        public ErrorTableModel() {
+            DefaultTableColumnModel model = new DefaultTableColumnModel();
+            model.addColumn(createTableColumn(ID, "product.import.id"));
+            model.addColumn(createTableColumn(NAME, "product.import.name"));
+            model.addColumn(createTableColumn(ERROR, "product.import.error"));
+            setTableColumnModel(model);
+        }
+
+        /**
+         * Returns the value found at the given coordinate within the table.
+         *
+         * @param object the object
+         * @param column the column
+         * @param row    the row
+         * @return the value at the given coordinate.
+         */
+        @Override
+        protected Object getValue(ProductImportJob.ImportError object, TableColumn column, int row) {
+            Object result;
+            switch (column.getModelIndex()) {
+                case ID:
+                    result = object.getData().getId();
+                    break;
+                case NAME:
+                    result = object.getData().getName();
+                    break;
+                case ERROR:
+                    result = object.getMessage();
+                    break;
+                default:
+                    result = null;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the sort criteria.
+         *
+         * @param column    the primary sort column
+         * @param ascending if {@code true} sort in ascending order; otherwise sort in {@code descending} order
+         * @return the sort criteria, or {@code null} if the column isn't sortable
+         */
+        @Override
+        public SortConstraint[] getSortConstraints(int column, boolean ascending) {
+            return null;
+        }
+    }
+
+}
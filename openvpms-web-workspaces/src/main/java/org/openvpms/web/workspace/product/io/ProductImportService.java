@@ -0,0 +1,209 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.product.io;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openvpms.archetype.rules.product.ProductPriceRules;
+import org.openvpms.archetype.rules.product.io.ProductData;
+import org.openvpms.archetype.rules.product.io.ProductImporter;
+import org.openvpms.component.business.domain.im.party.Party;
+import org.openvpms.component.business.service.archetype.IArchetypeService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports product prices in the background.
+ * <p/>
+ * Products are imported in chunks of {@link #setChunkSize chunkSize}, each in its own transaction, so that large
+ * imports don't hold a single long-running transaction, and so that progress can be reported as each chunk is
+ * committed.
+ * <p/>
+ * If a chunk fails, its products are re-imported one at a time, so that a single bad product doesn't prevent the
+ * rest of the chunk from being imported.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ProductImportService implements DisposableBean {
+
+    /**
+     * The product price rules.
+     */
+    private final ProductPriceRules rules;
+
+    /**
+     * The archetype service.
+     */
+    private final IArchetypeService service;
+
+    /**
+     * The transaction template.
+     */
+    private final TransactionTemplate template;
+
+    /**
+     * The executor.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The no. of products to import per transaction.
+     */
+    private int chunkSize = 100;
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(ProductImportService.class);
+
+
+    /**
+     * Constructs a {@link ProductImportService}.
+     *
+     * @param rules              the product price rules
+     * @param service            the archetype service
+     * @param transactionManager the transaction manager
+     * @param workers            the maximum no. of imports to run concurrently
+     */
+    public ProductImportService(ProductPriceRules rules, IArchetypeService service,
+                                PlatformTransactionManager transactionManager, int workers) {
+        this.rules = rules;
+        this.service = service;
+        template = new TransactionTemplate(transactionManager);
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets the no. of products to import per transaction.
+     *
+     * @param chunkSize the no. of products
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Queues products for import.
+     * <p/>
+     * The import is run using the security context of the caller.
+     *
+     * @param data     the products to import
+     * @param practice the practice
+     * @return the job
+     */
+    public ProductImportJob submit(List<ProductData> data, final Party practice) {
+        final List<ProductData> products = new ArrayList<ProductData>(data);
+        final ProductImportJob job = new ProductImportJob(products.size());
+        final SecurityContext context = SecurityContextHolder.getContext();
+        executor.execute(new Runnable() {
+            public void run() {
+                SecurityContextHolder.setContext(context);
+                try {
+                    run(job, products, practice);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }
+        });
+        return job;
+    }
+
+    /**
+     * Destroys this service, stopping any running imports.
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs an import.
+     *
+     * @param job      the job
+     * @param products the products to import
+     * @param practice the practice
+     */
+    protected void run(ProductImportJob job, List<ProductData> products, Party practice) {
+        try {
+            job.running();
+            for (int i = 0; i < products.size() && !job.isCancelled(); i += chunkSize) {
+                List<ProductData> chunk = products.subList(i, Math.min(i + chunkSize, products.size()));
+                job.processed(chunk.size(), importChunk(chunk, practice));
+            }
+            job.completed();
+        } catch (Throwable exception) {
+            log.error("Failed to import products", exception);
+            job.failed(exception);
+        }
+    }
+
+    /**
+     * Imports a chunk of products in a single transaction.
+     * <p/>
+     * If the chunk fails, each product is imported in its own transaction.
+     *
+     * @param chunk    the products to import
+     * @param practice the practice
+     * @return the products that couldn't be imported
+     */
+    private List<ProductImportJob.ImportError> importChunk(List<ProductData> chunk, Party practice) {
+        List<ProductImportJob.ImportError> result = new ArrayList<ProductImportJob.ImportError>();
+        try {
+            importProducts(chunk, practice);
+        } catch (Throwable exception) {
+            if (chunk.size() == 1) {
+                log.warn("Failed to import product " + chunk.get(0).getId(), exception);
+                result.add(new ProductImportJob.ImportError(chunk.get(0), exception.getMessage()));
+            } else {
+                for (ProductData product : chunk) {
+                    result.addAll(importChunk(Collections.singletonList(product), practice));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Imports products in a transaction.
+     *
+     * @param products the products to import
+     * @param practice the practice
+     */
+    protected void importProducts(final List<ProductData> products, final Party practice) {
+        template.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                ProductImporter importer = new ProductImporter(rules, service);
+                importer.run(products, practice);
+            }
+        });
+    }
+}
@@ -27,9 +27,11 @@ import org.openvpms.web.component.mail.MailDialog;
 import org.openvpms.web.component.mail.MailEditor;
 import org.openvpms.web.component.print.InteractivePrinter;
 import org.openvpms.web.component.print.PrintDialog;
+import org.openvpms.web.echo.dialog.InformationDialog;
 import org.openvpms.web.echo.help.HelpContext;
 import org.openvpms.web.echo.servlet.DownloadServlet;
 import org.openvpms.web.resource.i18n.Messages;
+import org.openvpms.web.system.ServiceHelper;
 
 
 /**
@@ -113,6 +115,18 @@ public class InteractiveSQLReportPrinter extends InteractivePrinter {
                     failed(exception);
                 }
             }
+
+            @Override
+            protected void doBackground() {
+                printer.setParameters(getValues());
+                try {
+                    SQLReportService service = ServiceHelper.getBean(SQLReportService.class);
+                    service.submit(printer, DocFormats.PDF_TYPE, getContext().getUser());
+                    InformationDialog.show(Messages.format("reporting.jobs.queued", getDisplayName()));
+                } catch (OpenVPMSException exception) {
+                    failed(exception);
+                }
+            }
         };
     }
 
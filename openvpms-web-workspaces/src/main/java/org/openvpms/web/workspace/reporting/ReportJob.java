@@ -0,0 +1,200 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting;
+
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
+import org.openvpms.component.business.domain.im.document.Document;
+
+import java.util.Date;
+
+/**
+ * A report queued for execution by the {@link SQLReportService}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ReportJob {
+
+    /**
+     * Job state.
+     */
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * The report name.
+     */
+    private final String name;
+
+    /**
+     * The user that submitted the report.
+     */
+    private final IMObjectReference user;
+
+    /**
+     * The time the report was submitted.
+     */
+    private final Date submitted;
+
+    /**
+     * The job state.
+     */
+    private volatile State state = State.QUEUED;
+
+    /**
+     * The time the report started running.
+     */
+    private volatile Date started;
+
+    /**
+     * The time the report completed or failed.
+     */
+    private volatile Date completed;
+
+    /**
+     * The generated document.
+     */
+    private volatile Document document;
+
+    /**
+     * The failure cause.
+     */
+    private volatile Throwable error;
+
+    /**
+     * Constructs a {@link ReportJob}.
+     *
+     * @param name the report name
+     * @param user the user that submitted the report
+     */
+    public ReportJob(String name, IMObjectReference user) {
+        this.name = name;
+        this.user = user;
+        submitted = new Date();
+    }
+
+    /**
+     * Returns the report name.
+     *
+     * @return the report name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the user that submitted the report.
+     *
+     * @return the user reference
+     */
+    public IMObjectReference getUser() {
+        return user;
+    }
+
+    /**
+     * Returns the time the report was submitted.
+     *
+     * @return the submission time
+     */
+    public Date getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Returns the time the report started running.
+     *
+     * @return the start time, or {@code null} if the report hasn't started
+     */
+    public Date getStarted() {
+        return started;
+    }
+
+    /**
+     * Returns the time the report completed or failed.
+     *
+     * @return the completion time, or {@code null} if the report hasn't finished
+     */
+    public Date getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Returns the job state.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Determines if the job has finished, successfully or not.
+     *
+     * @return {@code true} if the job has finished
+     */
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    /**
+     * Returns the generated document.
+     *
+     * @return the document, or {@code null} if the report hasn't completed
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the failure cause.
+     *
+     * @return the failure cause, or {@code null} if the report hasn't failed
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Marks the job as running.
+     */
+    void running() {
+        started = new Date();
+        state = State.RUNNING;
+    }
+
+    /**
+     * Marks the job as completed.
+     *
+     * @param document the generated document
+     */
+    void completed(Document document) {
+        this.document = document;
+        completed = new Date();
+        state = State.COMPLETED;
+    }
+
+    /**
+     * Marks the job as failed.
+     *
+     * @param error the failure cause
+     */
+    void failed(Throwable error) {
+        this.error = error;
+        completed = new Date();
+        state = State.FAILED;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting;
+
+import nextapp.echo2.app.Button;
+import nextapp.echo2.app.Column;
+import nextapp.echo2.app.Grid;
+import nextapp.echo2.app.Label;
+import nextapp.echo2.app.event.ActionEvent;
+import org.openvpms.component.business.domain.im.security.User;
+import org.openvpms.web.echo.dialog.PopupDialog;
+import org.openvpms.web.echo.event.ActionListener;
+import org.openvpms.web.echo.factory.ButtonFactory;
+import org.openvpms.web.echo.factory.ColumnFactory;
+import org.openvpms.web.echo.factory.GridFactory;
+import org.openvpms.web.echo.factory.LabelFactory;
+import org.openvpms.web.echo.help.HelpContext;
+import org.openvpms.web.echo.servlet.DownloadServlet;
+import org.openvpms.web.echo.style.Styles;
+import org.openvpms.web.resource.i18n.Messages;
+import org.openvpms.web.resource.i18n.format.DateFormatter;
+
+import java.util.List;
+
+/**
+ * Displays the reports a user has queued with the {@link SQLReportService}, and allows completed reports to be
+ * downloaded.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ReportJobsDialog extends PopupDialog {
+
+    /**
+     * The report service.
+     */
+    private final SQLReportService service;
+
+    /**
+     * The user.
+     */
+    private final User user;
+
+    /**
+     * The container for the jobs.
+     */
+    private final Column container;
+
+    /**
+     * Refresh button identifier.
+     */
+    private static final String REFRESH_ID = "refresh";
+
+
+    /**
+     * Constructs a {@link ReportJobsDialog}.
+     *
+     * @param service the report service
+     * @param user    the user
+     * @param help    the help context
+     */
+    public ReportJobsDialog(SQLReportService service, User user, HelpContext help) {
+        super(Messages.get("reporting.jobs.title"), new String[]{REFRESH_ID, CLOSE_ID}, help);
+        this.service = service;
+        this.user = user;
+        setModal(true);
+        container = ColumnFactory.create(Styles.INSET);
+        getLayout().add(container);
+        refresh();
+    }
+
+    /**
+     * Invoked when a button is pressed.
+     *
+     * @param button the button identifier
+     */
+    @Override
+    protected void onButton(String button) {
+        if (REFRESH_ID.equals(button)) {
+            refresh();
+        } else {
+            super.onButton(button);
+        }
+    }
+
+    /**
+     * Refreshes the display of the jobs.
+     */
+    private void refresh() {
+        container.removeAll();
+        List<ReportJob> jobs = service.getJobs(user);
+        if (jobs.isEmpty()) {
+            container.add(LabelFactory.create("reporting.jobs.none"));
+        } else {
+            Grid grid = GridFactory.create(5);
+            grid.add(LabelFactory.create("reporting.jobs.name", Styles.BOLD));
+            grid.add(LabelFactory.create("reporting.jobs.submitted", Styles.BOLD));
+            grid.add(LabelFactory.create("reporting.jobs.status", Styles.BOLD));
+            grid.add(LabelFactory.create());
+            grid.add(LabelFactory.create());
+            for (ReportJob job : jobs) {
+                add(grid, job);
+            }
+            container.add(grid);
+        }
+    }
+
+    /**
+     * Adds a job to the grid.
+     *
+     * @param grid the grid
+     * @param job  the job
+     */
+    private void add(Grid grid, final ReportJob job) {
+        grid.add(createLabel(job.getName()));
+        grid.add(createLabel(DateFormatter.formatDateTime(job.getSubmitted(), false)));
+        String status = Messages.get("reporting.jobs.state." + job.getState());
+        if (job.getState() == ReportJob.State.FAILED && job.getError() != null) {
+            status = Messages.format("reporting.jobs.failed", job.getError().getMessage());
+        }
+        grid.add(createLabel(status));
+        if (job.getState() == ReportJob.State.COMPLETED) {
+            grid.add(ButtonFactory.create("download", new ActionListener() {
+                public void onAction(ActionEvent event) {
+                    DownloadServlet.startDownload(job.getDocument());
+                }
+            }));
+        } else {
+            grid.add(LabelFactory.create());
+        }
+        Button remove = ButtonFactory.create("clear", new ActionListener() {
+            public void onAction(ActionEvent event) {
+                service.remove(job);
+                refresh();
+            }
+        });
+        remove.setEnabled(job.getState() != ReportJob.State.RUNNING);
+        grid.add(remove);
+    }
+
+    /**
+     * Helper to create a label with the specified text.
+     *
+     * @param text the label text
+     * @return a new label
+     */
+    private Label createLabel(String text) {
+        Label label = LabelFactory.create();
+        label.setText(text);
+        return label;
+    }
+}
@@ -70,6 +70,11 @@ public class ReportingWorkspace extends AbstractReportingWorkspace<Entity> {
      */
     private static final String RUN_ID = "run";
 
+    /**
+     * Background reports button identifier.
+     */
+    private static final String JOBS_ID = "reportJobs";
+
 
     /**
      * Constructs a {@code ReportingWorkspace}.
@@ -150,6 +155,11 @@ public class ReportingWorkspace extends AbstractReportingWorkspace<Entity> {
             }
         });
         buttons.add(run);
+        buttons.add(ButtonFactory.create(JOBS_ID, new ActionListener() {
+            public void onAction(ActionEvent event) {
+                onJobs();
+            }
+        }));
     }
 
     /**
@@ -187,6 +197,18 @@ public class ReportingWorkspace extends AbstractReportingWorkspace<Entity> {
         }
     }
 
+    /**
+     * Invoked when the background reports button is pressed. Displays the reports the user has run in the
+     * background.
+     */
+    protected void onJobs() {
+        if (user != null) {
+            SQLReportService service = ServiceHelper.getBean(SQLReportService.class);
+            ReportJobsDialog dialog = new ReportJobsDialog(service, user, getHelpContext().subtopic("jobs"));
+            dialog.show();
+        }
+    }
+
     /**
      * Creates the report browser.
      *
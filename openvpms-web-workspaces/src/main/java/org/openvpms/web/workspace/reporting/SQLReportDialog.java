@@ -52,6 +52,11 @@ public class SQLReportDialog extends PrintDialog {
      */
     private static final String EXPORT_MAIL_ID = "exportMail";
 
+    /**
+     * Run in background button identifier.
+     */
+    private static final String BACKGROUND_ID = "runInBackground";
+
 
     /**
      * Constructs an {@code SQLReportDialog}.
@@ -164,6 +169,23 @@ public class SQLReportDialog extends PrintDialog {
     protected void doExportMail() {
     }
 
+    /**
+     * Invoked when the run in background button is pressed. If the parameters are valid, invokes
+     * {@link #doBackground()}.
+     */
+    protected void onBackground() {
+        if (parameters.validate()) {
+            doBackground();
+        }
+    }
+
+    /**
+     * Invoked when the report should be run in the background.
+     * This implementation does nothing.
+     */
+    protected void doBackground() {
+    }
+
     /**
      * Lays out the dialog.
      *
@@ -184,6 +206,12 @@ public class SQLReportDialog extends PrintDialog {
             }
         });
 
+        addButton(BACKGROUND_ID, new ActionListener() {
+            public void onAction(ActionEvent event) {
+                onBackground();
+            }
+        });
+
         Component component = GroupBoxFactory.create("reporting.run.parameters",
                                                      parameters.getComponent());
         container.add(component);
@@ -33,7 +33,8 @@ public class SQLReportException extends OpenVPMSException {
      */
     public enum ErrorCode {
         NoQuery,
-        ConnectionError
+        ConnectionError,
+        TooManyReports
     }
 
     /**
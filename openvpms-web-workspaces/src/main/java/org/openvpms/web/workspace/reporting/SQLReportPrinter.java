@@ -26,6 +26,7 @@ import org.openvpms.report.ParameterType;
 import org.openvpms.report.Report;
 import org.openvpms.report.ReportFactory;
 import org.openvpms.web.component.app.Context;
+import org.openvpms.web.component.app.LocalContext;
 import org.openvpms.web.component.im.report.ReportContextFactory;
 import org.openvpms.web.component.im.report.Reporter;
 import org.openvpms.web.component.print.AbstractPrinter;
@@ -76,6 +77,11 @@ public class SQLReportPrinter extends AbstractPrinter {
      */
     private final String connectionName;
 
+    /**
+     * The data source to run the report against. If {@code null}, the default data source is used.
+     */
+    private DataSource dataSource;
+
 
     /**
      * Constructs an {@link SQLReportPrinter} to print a report.
@@ -117,6 +123,36 @@ public class SQLReportPrinter extends AbstractPrinter {
         setInteractive(getInteractive(template, getDefaultPrinter(), context));
     }
 
+    /**
+     * Constructs an {@link SQLReportPrinter} from another.
+     * <p/>
+     * The parameters and context are copied, and the data source is resolved, so that the new instance is unaffected
+     * by subsequent changes to {@code printer}, and may be run outside of the UI thread.
+     *
+     * @param printer the printer to copy
+     */
+    protected SQLReportPrinter(SQLReportPrinter printer) {
+        template = printer.template;
+        report = printer.report;
+        context = LocalContext.copy(printer.context);
+        parameters = Collections.unmodifiableMap(new HashMap<String, Object>(printer.parameters));
+        connectionName = printer.connectionName;
+        dataSource = (printer.dataSource != null) ? printer.dataSource : ServiceHelper.getDataSource();
+        setInteractive(printer.getInteractive());
+        setCopies(printer.getCopies());
+    }
+
+    /**
+     * Returns a copy of this printer, with its current parameters frozen.
+     * <p/>
+     * This must be invoked from the UI thread.
+     *
+     * @return a copy of this printer
+     */
+    public SQLReportPrinter copy() {
+        return new SQLReportPrinter(this);
+    }
+
     /**
      * Returns the report parameter types.
      *
@@ -138,6 +174,17 @@ public class SQLReportPrinter extends AbstractPrinter {
         this.parameters = parameters;
     }
 
+    /**
+     * Sets the data source to run the report against.
+     * <p/>
+     * This may be used to direct reports to a read-only replica, rather than the primary database.
+     *
+     * @param dataSource the data source. If {@code null}, the default data source will be used
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
     /**
      * Prints the object.
      *
@@ -229,7 +276,7 @@ public class SQLReportPrinter extends AbstractPrinter {
      */
     private Connection getConnection() {
         try {
-            DataSource ds = ServiceHelper.getDataSource();
+            DataSource ds = (dataSource != null) ? dataSource : ServiceHelper.getDataSource();
             return ds.getConnection();
         } catch (SQLException exception) {
             throw new SQLReportException(ConnectionError, exception);
@@ -0,0 +1,265 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
+import org.openvpms.component.business.domain.im.security.User;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.openvpms.web.workspace.reporting.SQLReportException.ErrorCode.TooManyReports;
+
+/**
+ * Runs {@link SQLReportPrinter} reports in the background, on a bounded pool of workers.
+ * <p/>
+ * Reports may optionally be run against a separate data source, such as a read-only replica, so that long-running
+ * reports don't compete with the primary database connection pool.
+ * <p/>
+ * Finished jobs are retained so the generated documents can be downloaded, up to {@link #setMaxFinishedJobs} per
+ * user. Finished jobs older than {@link #setExpiry expiry} minutes are discarded.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class SQLReportService implements DisposableBean {
+
+    /**
+     * The executor.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The jobs, in order of submission.
+     */
+    private final List<ReportJob> jobs = new LinkedList<ReportJob>();
+
+    /**
+     * The data source to run reports against. May be {@code null}
+     */
+    private DataSource dataSource;
+
+    /**
+     * The maximum no. of finished jobs to retain per user.
+     */
+    private int maxFinishedJobs = 10;
+
+    /**
+     * The time, in minutes, to retain finished jobs for.
+     */
+    private volatile int expiry = 60;
+
+    /**
+     * Periodically discards expired jobs.
+     */
+    private final ScheduledExecutorService expirer;
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(SQLReportService.class);
+
+
+    /**
+     * Constructs a {@link SQLReportService}.
+     *
+     * @param workers  the maximum no. of reports to run concurrently
+     * @param capacity the maximum no. of reports waiting to run
+     */
+    public SQLReportService(int workers, int capacity) {
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<Runnable>(capacity));
+        executor.allowCoreThreadTimeOut(true);
+        expirer = Executors.newSingleThreadScheduledExecutor();
+        expirer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                expire();
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Sets the data source to run reports against.
+     *
+     * @param dataSource the data source. If {@code null}, the default data source is used
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Sets the maximum no. of finished jobs to retain per user.
+     *
+     * @param maxFinishedJobs the maximum no. of finished jobs
+     */
+    public void setMaxFinishedJobs(int maxFinishedJobs) {
+        this.maxFinishedJobs = maxFinishedJobs;
+    }
+
+    /**
+     * Sets the time to retain finished jobs for.
+     *
+     * @param expiry the time, in minutes
+     */
+    public void setExpiry(int expiry) {
+        this.expiry = expiry;
+    }
+
+    /**
+     * Queues a report for execution.
+     * <p/>
+     * The report is run using the security context of the caller, on a copy of {@code printer}, so subsequent
+     * changes to the printer's parameters don't affect the queued report, and the printer itself is left unchanged.
+     *
+     * @param printer  the report printer. Its parameters must already be set
+     * @param mimeType the mime type of the document to generate
+     * @param user     the user submitting the report
+     * @return the job
+     * @throws SQLReportException if too many reports are waiting to run
+     */
+    public ReportJob submit(final SQLReportPrinter printer, final String mimeType, User user) {
+        final ReportJob job = new ReportJob(printer.getDisplayName(), user.getObjectReference());
+        final SecurityContext context = SecurityContextHolder.getContext();
+        final SQLReportPrinter report = printer.copy();
+        if (dataSource != null) {
+            report.setDataSource(dataSource);
+        }
+        synchronized (jobs) {
+            prune(job.getUser());
+            jobs.add(job);
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    synchronized (jobs) {
+                        if (!jobs.contains(job)) {
+                            return; // removed before it started
+                        }
+                    }
+                    SecurityContextHolder.setContext(context);
+                    try {
+                        job.running();
+                        job.completed(report.getDocument(mimeType, false));
+                    } catch (Throwable exception) {
+                        log.error("Failed to run report " + job.getName(), exception);
+                        job.failed(exception);
+                    } finally {
+                        SecurityContextHolder.clearContext();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            remove(job);
+            throw new SQLReportException(TooManyReports);
+        }
+        return job;
+    }
+
+    /**
+     * Returns the jobs submitted by a user.
+     *
+     * @param user the user
+     * @return the user's jobs, in order of submission
+     */
+    public List<ReportJob> getJobs(User user) {
+        List<ReportJob> result = new ArrayList<ReportJob>();
+        synchronized (jobs) {
+            for (ReportJob job : jobs) {
+                if (job.getUser().equals(user.getObjectReference())) {
+                    result.add(job);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes a job.
+     * <p/>
+     * If the job hasn't started, it won't be run.
+     *
+     * @param job the job to remove
+     */
+    public void remove(ReportJob job) {
+        synchronized (jobs) {
+            jobs.remove(job);
+        }
+    }
+
+    /**
+     * Destroys this service, stopping any running reports.
+     */
+    @Override
+    public void destroy() {
+        expirer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Removes finished jobs that completed more than {@code expiry} minutes ago.
+     */
+    protected void expire() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(expiry);
+        synchronized (jobs) {
+            Iterator<ReportJob> iterator = jobs.iterator();
+            while (iterator.hasNext()) {
+                ReportJob job = iterator.next();
+                Date completed = job.getCompleted();
+                if (job.isFinished() && completed != null && completed.getTime() < cutoff) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest finished jobs for a user, so that no more than {@code maxFinishedJobs - 1} remain.
+     *
+     * @param user the user reference
+     */
+    private void prune(IMObjectReference user) {
+        int finished = 0;
+        for (ReportJob job : jobs) {
+            if (job.isFinished() && job.getUser().equals(user)) {
+                ++finished;
+            }
+        }
+        Iterator<ReportJob> iterator = jobs.iterator();
+        while (finished >= maxFinishedJobs && iterator.hasNext()) {
+            ReportJob job = iterator.next();
+            if (job.isFinished() && job.getUser().equals(user)) {
+                iterator.remove();
+                --finished;
+            }
+        }
+    }
+}
@@ -149,7 +149,7 @@ public class ReminderEmailProcessor extends AbstractReminderProcessor {
                     return handler.getContent(reminder);
                 }
             });
-            sender.send(message);
+            send(message);
         } catch (ArchetypeServiceException exception) {
             throw exception;
         } catch (ReminderProcessorException exception) {
@@ -161,6 +161,17 @@ public class ReminderEmailProcessor extends AbstractReminderProcessor {
         }
     }
 
+    /**
+     * Sends a reminder email.
+     * <p/>
+     * This implementation sends the message immediately.
+     *
+     * @param message the message to send
+     */
+    protected void send(MimeMessage message) {
+        sender.send(message);
+    }
+
     /**
      * Creates a new report.
      *
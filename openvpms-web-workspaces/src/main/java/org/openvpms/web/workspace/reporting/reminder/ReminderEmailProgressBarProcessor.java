@@ -16,18 +16,54 @@
 
 package org.openvpms.web.workspace.reporting.reminder;
 
+import nextapp.echo2.app.ApplicationInstance;
 import org.openvpms.archetype.rules.doc.DocumentTemplate;
 import org.openvpms.archetype.rules.patient.reminder.ReminderEvent;
 import org.openvpms.component.business.domain.im.party.Party;
 import org.openvpms.web.component.app.Context;
 import org.openvpms.web.resource.i18n.Messages;
+import org.openvpms.web.workspace.reporting.ReportingException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 
+import javax.mail.internet.MimeMessage;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.openvpms.web.workspace.reporting.ReportingException.ErrorCode.FailedToProcessReminder;
 
 
 /**
  * Sends reminder emails, updating a progress bar as it goes.
+ * <p/>
+ * Reminder emails are rendered by a pool of {@link #WORKERS} threads, and sent by a separate thread in batches of up
+ * to {@link #BATCH_SIZE} messages, so that a single mail server connection is used per batch, rather than one per
+ * reminder.
+ * <p/>
+ * The UI thread only submits reminders, and polls for rendered and sent messages via the task queue in order to
+ * update the reminders, statistics and progress bar. Reminders are only updated once their message has been sent.
+ * <p/>
+ * The mail sender must not depend on the UI thread to determine its mail server settings, and the context should
+ * not change during processing.
+ * <p/>
+ * The rendering and sending threads are daemon threads that exit when idle. They are stopped when processing
+ * completes or is cancelled, or when the processor is {@link #dispose disposed}.
  *
  * @author Tim Anderson
  */
@@ -38,12 +74,68 @@ class ReminderEmailProgressBarProcessor extends ReminderProgressBarProcessor {
      */
     private final ReminderEmailProcessor processor;
 
+    /**
+     * The mail sender.
+     */
+    private final JavaMailSender sender;
+
+    /**
+     * The application instance. This is made active on the rendering threads, so that services and messages can be
+     * located.
+     */
+    private final ApplicationInstance app;
+
+    /**
+     * The message created by the email processor, for the current rendering thread.
+     */
+    private final ThreadLocal<MimeMessage> message = new ThreadLocal<MimeMessage>();
+
+    /**
+     * The reminders being rendered, in the order they were submitted.
+     */
+    private final LinkedList<Render> rendering = new LinkedList<Render>();
+
+    /**
+     * The messages waiting to be sent, and their corresponding reminder events.
+     */
+    private final Map<MimeMessage, List<ReminderEvent>> pending = new LinkedHashMap<MimeMessage, List<ReminderEvent>>();
+
+    /**
+     * The batch being sent, or {@code null} if no batch is being sent.
+     */
+    private Batch sending;
+
+    /**
+     * The executor used to render messages. Created on demand.
+     */
+    private ExecutorService renderers;
+
+    /**
+     * The executor used to send messages. Created on demand.
+     */
+    private ExecutorService mailer;
+
+    /**
+     * The maximum no. of messages to send per mail server connection.
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * The no. of threads used to render messages.
+     */
+    private static final int WORKERS = 4;
+
+    /**
+     * The maximum no. of reminders to submit for rendering before waiting for them to complete.
+     */
+    private static final int MAX_RENDERING = WORKERS * 2;
+
 
     /**
      * Constructs a new <tt>ReminderEmailProgressBarProcessor</tt>.
      *
      * @param reminders     the reminders
-     * @param sender        the mail sender
+     * @param sender        the mail sender. This must not depend on the UI thread for its mail server settings
      * @param practice      the practice
      * @param groupTemplate the grouped reminder document template
      * @param statistics    the statistics
@@ -53,34 +145,368 @@ class ReminderEmailProgressBarProcessor extends ReminderProgressBarProcessor {
                                              Party practice, DocumentTemplate groupTemplate,
                                              Statistics statistics, Context context) {
         super(reminders, statistics, Messages.get("reporting.reminder.run.email"));
-        processor = new ReminderEmailProcessor(sender, practice, groupTemplate, context);
+        this.sender = sender;
+        app = ApplicationInstance.getActive();
+        processor = new ReminderEmailProcessor(sender, practice, groupTemplate, context) {
+            @Override
+            protected void send(MimeMessage message) {
+                ReminderEmailProgressBarProcessor.this.message.set(message);
+            }
+        };
+    }
+
+    /**
+     * Processes the batch.
+     * <p/>
+     * If too many reminders are being rendered, or all reminders have been submitted but not yet sent, this waits
+     * for the next task queue callback before continuing.
+     */
+    @Override
+    public void process() {
+        collect(false);
+        if (isBusy()) {
+            reschedule();
+        } else {
+            super.process();
+        }
+    }
+
+    /**
+     * Restarts processing.
+     * <p/>
+     * Reminders waiting to be rendered or sent are discarded. A batch that is already being sent is allowed to
+     * complete, so that its reminders are updated.
+     */
+    @Override
+    public void restart() {
+        for (Render render : rendering) {
+            render.future.cancel(false);
+        }
+        rendering.clear();
+        pending.clear();
+        if (sending != null) {
+            sent(sending);
+            sending = null;
+        }
+        super.restart();
     }
 
     /**
      * Processes an object.
+     * <p/>
+     * The reminder email is submitted for rendering, and only sent when the batch is full, or there are no more
+     * reminders to process.
      *
      * @param events the reminder events to process
      */
     protected void process(List<ReminderEvent> events) {
         super.process(events);
+        final List<ReminderEvent> list = events;
+        final SecurityContext security = SecurityContextHolder.getContext();
+        Future<MimeMessage> future = getRenderers().submit(new Callable<MimeMessage>() {
+            public MimeMessage call() throws Exception {
+                ApplicationInstance.setActive(app);
+                SecurityContextHolder.setContext(security);
+                try {
+                    processor.process(list);
+                    return message.get();
+                } finally {
+                    message.remove();
+                    SecurityContextHolder.clearContext();
+                    ApplicationInstance.setActive(null);
+                }
+            }
+        });
+        rendering.add(new Render(events, future));
+        collect(false);
+        if (isBusy() && !isSuspended()) {
+            reschedule();
+        }
+    }
+
+    /**
+     * Invoked when batch processing has completed, or has been cancelled.
+     * <p/>
+     * Reminders already being rendered are waited on, and all rendered messages sent, before completing. Reminders
+     * that haven't started rendering are discarded.
+     */
+    @Override
+    protected void processingCompleted() {
+        flush();
+        super.processingCompleted();
+    }
+
+    /**
+     * Invoked when batch processing has terminated due to error.
+     * <p/>
+     * Messages that have already been rendered are sent first.
+     *
+     * @param exception the cause
+     */
+    @Override
+    protected void processingError(Throwable exception) {
+        flush();
+        super.processingError(exception);
+    }
+
+    /**
+     * Disposes of the processor, if it is abandoned before processing completes.
+     * <p/>
+     * Reminders waiting to be rendered or sent are discarded, and the rendering and sending threads stopped. A batch
+     * that is already being sent is allowed to complete, but its reminders aren't updated.
+     */
+    public void dispose() {
+        for (Render render : rendering) {
+            render.future.cancel(true);
+        }
+        rendering.clear();
+        pending.clear();
+        sending = null;
+        if (renderers != null) {
+            renderers.shutdownNow();
+            renderers = null;
+        }
+        if (mailer != null) {
+            mailer.shutdown();
+            mailer = null;
+        }
+    }
+
+    /**
+     * Determines if processing must wait for rendering or sending to complete.
+     *
+     * @return {@code true} if processing must wait
+     */
+    private boolean isBusy() {
+        boolean outstanding = !rendering.isEmpty() || !pending.isEmpty() || sending != null;
+        return rendering.size() >= MAX_RENDERING || (outstanding && !getIterator().hasNext());
+    }
+
+    /**
+     * Collects rendered and sent messages, and starts sending the next batch if required.
+     *
+     * @param wait if {@code true}, wait for all rendering and sending to complete
+     */
+    private void collect(boolean wait) {
+        while (!rendering.isEmpty() && (wait || rendering.getFirst().future.isDone())) {
+            rendered(rendering.removeFirst());
+        }
+        if (sending != null && (wait || sending.future.isDone())) {
+            sent(sending);
+            sending = null;
+        }
+        boolean flush = wait || (rendering.isEmpty() && !getIterator().hasNext());
+        while (sending == null && (pending.size() >= BATCH_SIZE || (flush && !pending.isEmpty()))) {
+            sending = send();
+            if (wait) {
+                sent(sending);
+                sending = null;
+            }
+        }
+    }
+
+    /**
+     * Discards reminders that haven't started rendering, sends any rendered messages, and stops the rendering and
+     * sending threads.
+     */
+    private void flush() {
+        for (Render render : rendering) {
+            render.future.cancel(false);
+        }
+        collect(true);
+        if (renderers != null) {
+            renderers.shutdown();
+            renderers = null;
+        }
+        if (mailer != null) {
+            mailer.shutdown();
+            mailer = null;
+        }
+    }
+
+    /**
+     * Invoked when a reminder has been rendered, or has failed to render.
+     * <p/>
+     * Rendered messages are queued for sending.
+     *
+     * @param render the render
+     */
+    private void rendered(Render render) {
         try {
-            processor.process(events);
-            processCompleted(events);
-        } catch (Throwable exception) {
-/*            if (exception.getCause() instanceof AddressException) {
-                ReminderEvent event = events.get(0);
-                Contact contact = event.getContact();
-                String to = null;
-
-                Party party = contact.getParty();
-                String customer = null;
-                if (party != null) {
-                    customer = "id=" + party.getId() + ", name=" + party.getName();
+            MimeMessage message = render.future.get();
+            if (message != null) {
+                pending.put(message, render.events);
+            } else {
+                skip(render.events);
+            }
+        } catch (CancellationException ignore) {
+            // reminder discarded before it was rendered
+        } catch (ExecutionException exception) {
+            processError(exception.getCause(), render.events);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            processError(exception, render.events);
+        }
+    }
+
+    /**
+     * Sends up to {@link #BATCH_SIZE} pending messages in the background, using a single mail server connection.
+     *
+     * @return the batch being sent
+     */
+    private Batch send() {
+        final Map<MimeMessage, List<ReminderEvent>> batch = new LinkedHashMap<MimeMessage, List<ReminderEvent>>();
+        Iterator<Map.Entry<MimeMessage, List<ReminderEvent>>> iterator = pending.entrySet().iterator();
+        while (batch.size() < BATCH_SIZE && iterator.hasNext()) {
+            Map.Entry<MimeMessage, List<ReminderEvent>> entry = iterator.next();
+            batch.put(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+        Future<Map<Object, Exception>> future = getMailer().submit(new Callable<Map<Object, Exception>>() {
+            public Map<Object, Exception> call() throws Exception {
+                try {
+                    sender.send(batch.keySet().toArray(new MimeMessage[batch.size()]));
+                    return Collections.emptyMap();
+                } catch (MailSendException exception) {
+                    Map<Object, Exception> failed = exception.getFailedMessages();
+                    if (failed.isEmpty()) {
+                        throw exception;
+                    }
+                    return failed;
                 }
+            }
+        });
+        return new Batch(batch, future);
+    }
+
+    /**
+     * Invoked when a batch has been sent, or has failed to send. Waits for the batch if it hasn't completed.
+     * <p/>
+     * Reminders are only updated if their message was sent successfully.
+     *
+     * @param batch the batch
+     */
+    private void sent(Batch batch) {
+        Map<Object, Exception> failed = Collections.emptyMap();
+        Throwable error = null;
+        try {
+            failed = batch.future.get();
+        } catch (ExecutionException exception) {
+            error = exception.getCause();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            error = exception;
+        }
+        for (Map.Entry<MimeMessage, List<ReminderEvent>> entry : batch.messages.entrySet()) {
+            Throwable cause = (error != null) ? error : failed.get(entry.getKey());
+            if (cause == null) {
+                processCompleted(entry.getValue());
+            } else {
+                processError(new ReportingException(FailedToProcessReminder, cause, cause.getMessage()),
+                             entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the executor used to render messages, creating it if required.
+     *
+     * @return the executor
+     */
+    private ExecutorService getRenderers() {
+        if (renderers == null) {
+            renderers = createExecutor(WORKERS, "ReminderEmailRenderer");
+        }
+        return renderers;
+    }
+
+    /**
+     * Returns the executor used to send messages, creating it if required.
+     *
+     * @return the executor
+     */
+    private ExecutorService getMailer() {
+        if (mailer == null) {
+            mailer = createExecutor(1, "ReminderEmailSender");
+        }
+        return mailer;
+    }
+
+    /**
+     * Creates an executor whose threads are daemon threads, and exit when idle.
+     * <p/>
+     * This ensures the threads don't outlive the session if processing is abandoned.
+     *
+     * @param threads the no. of threads
+     * @param name    the thread name prefix
+     * @return a new executor
+     */
+    private ExecutorService createExecutor(int threads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * A set of reminder events being rendered.
+     */
+    private static class Render {
+
+        /**
+         * The reminder events.
+         */
+        private final List<ReminderEvent> events;
+
+        /**
+         * The rendered message.
+         */
+        private final Future<MimeMessage> future;
+
+        /**
+         * Constructs a {@link Render}.
+         *
+         * @param events the reminder events
+         * @param future the rendered message
+         */
+        public Render(List<ReminderEvent> events, Future<MimeMessage> future) {
+            this.events = events;
+            this.future = future;
+        }
+    }
+
+    /**
+     * A batch of messages being sent.
+     */
+    private static class Batch {
+
+        /**
+         * The messages, and their corresponding reminder events.
+         */
+        private final Map<MimeMessage, List<ReminderEvent>> messages;
+
+        /**
+         * The messages that failed to send.
+         */
+        private final Future<Map<Object, Exception>> future;
 
-                log.warn("Invalid email address for customer " + customer + ": " + to, exception.getCause());
-            }*/
-            processError(exception, events);
+        /**
+         * Constructs a {@link Batch}.
+         *
+         * @param messages the messages, and their corresponding reminder events
+         * @param future   the messages that failed to send
+         */
+        public Batch(Map<MimeMessage, List<ReminderEvent>> messages, Future<Map<Object, Exception>> future) {
+            this.messages = messages;
+            this.future = future;
         }
     }
 
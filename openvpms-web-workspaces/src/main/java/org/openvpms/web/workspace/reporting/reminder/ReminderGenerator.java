@@ -33,15 +33,19 @@ import org.openvpms.archetype.rules.patient.reminder.ReminderEvent;
 import org.openvpms.archetype.rules.patient.reminder.ReminderProcessor;
 import org.openvpms.archetype.rules.patient.reminder.ReminderProcessorException;
 import org.openvpms.component.business.domain.im.act.Act;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
 import org.openvpms.component.business.domain.im.party.Party;
 import org.openvpms.component.business.service.archetype.ArchetypeServiceException;
 import org.openvpms.sms.Connection;
 import org.openvpms.sms.ConnectionFactory;
 import org.openvpms.web.component.app.Context;
+import org.openvpms.web.component.app.LocalContext;
+import org.openvpms.web.component.im.act.ActHelper;
 import org.openvpms.web.component.im.sms.SMSHelper;
 import org.openvpms.web.component.mail.MailContext;
 import org.openvpms.web.component.processor.BatchProcessorTask;
 import org.openvpms.web.component.processor.ProgressBarProcessor;
+import org.openvpms.web.component.service.MailService;
 import org.openvpms.web.component.workflow.DefaultTaskListener;
 import org.openvpms.web.component.workflow.TaskEvent;
 import org.openvpms.web.component.workflow.WorkflowImpl;
@@ -62,9 +66,12 @@ import org.openvpms.web.system.ServiceHelper;
 import org.openvpms.web.workspace.reporting.ReportingException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 
 /**
@@ -114,6 +121,11 @@ public class ReminderGenerator extends AbstractBatchProcessor {
      */
     private final boolean sms;
 
+    /**
+     * The no. of reminders to load at a time, when processing reminders returned by a query.
+     */
+    private static final int PAGE_SIZE = 100;
+
     /**
      * Constructs a {@link ReminderGenerator} to process a single reminder.
      *
@@ -169,10 +181,6 @@ public class ReminderGenerator extends AbstractBatchProcessor {
     public ReminderGenerator(DueReminderQuery query, Context context, MailContext mailContext,
                              HelpContext help) {
         this(getReminders(query), query.getFrom(), query.getTo(), context, mailContext, help);
-        // TODO: all of the reminders are cached in memory, as the reminder
-        // processing affects the paging of the reminder query. A better
-        // approach to reduce memory requirements would be
-        // to cache the reminder IMObjectReferences
     }
 
     /**
@@ -363,13 +371,17 @@ public class ReminderGenerator extends AbstractBatchProcessor {
 
     /**
      * Creates a new email processor.
+     * <p/>
+     * Emails are rendered and sent in the background, so the processor is given a copy of the context, and a mail
+     * sender bound to the current location, rather than one that reads the location from the UI thread.
      *
      * @param reminders the email reminders
      * @return a new processor
      */
     private ReminderBatchProcessor createEmailProcessor(List<List<ReminderEvent>> reminders) {
-        return new ReminderEmailProgressBarProcessor(reminders, ServiceHelper.getMailSender(),
-                                                     practice, groupTemplate, statistics, context);
+        return new ReminderEmailProgressBarProcessor(reminders, new MailService(context.getLocation()),
+                                                     practice, groupTemplate, statistics,
+                                                     LocalContext.copy(context));
     }
 
     /**
@@ -434,16 +446,112 @@ public class ReminderGenerator extends AbstractBatchProcessor {
 
     /**
      * Helper to return an iterator over the reminders.
+     * <p/>
+     * The reminder processing affects the paging of the reminder query, so the query must be completed before
+     * processing starts. Only the reminder references are retained; the reminders are re-loaded a page at a time
+     * as they are iterated.
      *
      * @param query the query
      * @return an iterator over the reminders
      */
     private static Iterator<Act> getReminders(DueReminderQuery query) {
-        List<Act> reminders = new ArrayList<Act>();
+        List<IMObjectReference> reminders = new ArrayList<IMObjectReference>();
         for (Act reminder : query.query()) {
-            reminders.add(reminder);
+            reminders.add(reminder.getObjectReference());
+        }
+        return new ReminderIterator(reminders, PAGE_SIZE);
+    }
+
+    /**
+     * Iterates over reminders given their references, loading them a page at a time.
+     */
+    private static class ReminderIterator implements Iterator<Act> {
+
+        /**
+         * The reminder references.
+         */
+        private final Iterator<IMObjectReference> references;
+
+        /**
+         * The page size.
+         */
+        private final int pageSize;
+
+        /**
+         * The current page of reminders.
+         */
+        private Iterator<Act> page = Collections.<Act>emptyList().iterator();
+
+        /**
+         * Constructs a {@link ReminderIterator}.
+         *
+         * @param references the reminder references
+         * @param pageSize   the no. of reminders to load at a time
+         */
+        public ReminderIterator(List<IMObjectReference> references, int pageSize) {
+            this.references = references.iterator();
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * Returns {@code true} if the iteration has more elements.
+         *
+         * @return {@code true} if the iterator has more elements
+         */
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && references.hasNext()) {
+                page = nextPage();
+            }
+            return page.hasNext();
+        }
+
+        /**
+         * Returns the next element in the iteration.
+         *
+         * @return the next element in the iteration
+         * @throws NoSuchElementException if the iteration has no more elements
+         */
+        @Override
+        public Act next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+
+        /**
+         * Not supported.
+         *
+         * @throws UnsupportedOperationException if invoked
+         */
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Loads the next page of reminders, in the order they were returned by the query.
+         * <p/>
+         * Reminders that have since been removed are skipped.
+         *
+         * @return the next page of reminders
+         */
+        private Iterator<Act> nextPage() {
+            List<IMObjectReference> refs = new ArrayList<IMObjectReference>();
+            while (refs.size() < pageSize && references.hasNext()) {
+                refs.add(references.next());
+            }
+            Map<IMObjectReference, Act> acts = ActHelper.getActMap(refs);
+            List<Act> result = new ArrayList<Act>();
+            for (IMObjectReference ref : refs) {
+                Act act = acts.get(ref);
+                if (act != null) {
+                    result.add(act);
+                }
+            }
+            return result.iterator();
         }
-        return reminders.iterator();
     }
 
     private class GenerationDialog extends PopupDialog {
@@ -519,6 +627,21 @@ public class ReminderGenerator extends AbstractBatchProcessor {
             workflow.start();
         }
 
+        /**
+         * Life-cycle method invoked when the dialog is removed from a registered hierarchy.
+         * <p/>
+         * This stops the background email threads, in case generation was abandoned.
+         */
+        @Override
+        public void dispose() {
+            super.dispose();
+            for (ReminderBatchProcessor processor : processors) {
+                if (processor instanceof ReminderEmailProgressBarProcessor) {
+                    ((ReminderEmailProgressBarProcessor) processor).dispose();
+                }
+            }
+        }
+
         /**
          * Invoked when the 'OK' button is pressed. Closes the dialog and invokes
          * {@link ReminderGenerator#onCompletion()}.
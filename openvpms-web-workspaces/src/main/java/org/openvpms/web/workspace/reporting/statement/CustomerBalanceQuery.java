@@ -42,7 +42,6 @@ import org.openvpms.web.component.im.lookup.ArchetypeLookupQuery;
 import org.openvpms.web.component.im.lookup.LookupField;
 import org.openvpms.web.component.im.lookup.LookupFieldFactory;
 import org.openvpms.web.component.im.query.AbstractArchetypeQuery;
-import org.openvpms.web.component.im.query.ListResultSet;
 import org.openvpms.web.component.im.query.ResultSet;
 import org.openvpms.web.component.util.ComponentHelper;
 import org.openvpms.web.component.util.ErrorHelper;
@@ -64,6 +63,7 @@ import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 
@@ -134,6 +134,11 @@ public class CustomerBalanceQuery extends AbstractArchetypeQuery<ObjectSet> {
      */
     private LocationSelectField locationSelector;
 
+    /**
+     * The last result set returned by {@link #createResultSet}, or {@code null} if none has been created.
+     */
+    private CustomerBalanceResultSet resultSet;
+
     /**
      * Index of the all balances balance type.
      */
@@ -317,22 +322,8 @@ public class CustomerBalanceQuery extends AbstractArchetypeQuery<ObjectSet> {
     public List<ObjectSet> getObjects() {
         List<ObjectSet> sets = new ArrayList<ObjectSet>();
         try {
-            CustomerBalanceSummaryQuery query;
-            int selected = balanceType.getSelectedIndex();
-            boolean nonOverdue = selected != OVERDUE_INDEX;
-            boolean overdue = selected != NON_OVERDUE_INDEX;
-            int from = overdue ? getNumber(periodFrom) : -1;
-            int to = overdue ? getNumber(periodTo) : -1;
-            boolean credit = excludeCredit.isSelected();
-            Location location = locationSelector.getSelected();
-            CustomerAccountRules rules = ServiceHelper.getBean(CustomerAccountRules.class);
-            IArchetypeService service = ServiceHelper.getArchetypeService();
-            ILookupService lookups = ServiceHelper.getLookupService();
-            query = new CustomerBalanceSummaryQuery(getDate(), nonOverdue, from, to, credit, getAccountType(),
-                                                    getWildcardedText(customerFrom),
-                                                    getWildcardedText(customerTo), location, service, lookups, rules);
-            while (query.hasNext()) {
-                sets.add(query.next());
+            for (ObjectSet set : getBalances()) {
+                sets.add(set);
             }
         } catch (OpenVPMSException exception) {
             ErrorHelper.show(exception);
@@ -364,6 +355,17 @@ public class CustomerBalanceQuery extends AbstractArchetypeQuery<ObjectSet> {
         return date.getSelectedDate().getTime();
     }
 
+    /**
+     * Cancels the background count of the current result set, if any.
+     * <p/>
+     * This should be invoked when the results are no longer being displayed.
+     */
+    public void cancel() {
+        if (resultSet != null) {
+            resultSet.cancel();
+        }
+    }
+
     /**
      * Creates the result set.
      *
@@ -371,7 +373,40 @@ public class CustomerBalanceQuery extends AbstractArchetypeQuery<ObjectSet> {
      * @return a new result set
      */
     protected ResultSet<ObjectSet> createResultSet(SortConstraint[] sort) {
-        return new ListResultSet<ObjectSet>(getObjects(), getMaxResults());
+        cancel(); // stop the previous search from counting in the background
+        resultSet = new CustomerBalanceResultSet(getBalances(), getMaxResults());
+        return resultSet;
+    }
+
+    /**
+     * Returns the balances matching the current criteria.
+     * <p/>
+     * The criteria are captured when this is invoked; each iteration creates a new query, and calculates balances as
+     * they are iterated.
+     *
+     * @return the balances
+     */
+    private Iterable<ObjectSet> getBalances() {
+        int selected = balanceType.getSelectedIndex();
+        final boolean nonOverdue = selected != OVERDUE_INDEX;
+        boolean overdue = selected != NON_OVERDUE_INDEX;
+        final int from = overdue ? getNumber(periodFrom) : -1;
+        final int to = overdue ? getNumber(periodTo) : -1;
+        final boolean credit = excludeCredit.isSelected();
+        final Location location = locationSelector.getSelected();
+        final Date date = getDate();
+        final Lookup accountType = getAccountType();
+        final String customerFrom = getWildcardedText(this.customerFrom);
+        final String customerTo = getWildcardedText(this.customerTo);
+        final CustomerAccountRules rules = ServiceHelper.getBean(CustomerAccountRules.class);
+        final IArchetypeService service = ServiceHelper.getArchetypeService();
+        final ILookupService lookups = ServiceHelper.getLookupService();
+        return new Iterable<ObjectSet>() {
+            public Iterator<ObjectSet> iterator() {
+                return new CustomerBalanceSummaryQuery(date, nonOverdue, from, to, credit, accountType, customerFrom,
+                                                       customerTo, location, service, lookups, rules);
+            }
+        };
     }
 
     /**
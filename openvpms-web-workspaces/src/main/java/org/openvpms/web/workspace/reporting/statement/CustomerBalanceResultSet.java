@@ -0,0 +1,175 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting.statement;
+
+import org.openvpms.component.system.common.query.IPage;
+import org.openvpms.component.system.common.query.ObjectSet;
+import org.openvpms.web.component.im.query.IterableBackedResultSet;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A result set of customer balances.
+ * <p/>
+ * Balances are only calculated for the pages being viewed, plus those prefetched. The total no. of balances is
+ * counted in the background, as it requires the balance of every customer to be calculated.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class CustomerBalanceResultSet extends IterableBackedResultSet<ObjectSet> {
+
+    /**
+     * The balances.
+     */
+    private final Iterable<ObjectSet> balances;
+
+    /**
+     * The background count, or {@code null} if it hasn't been started.
+     */
+    private Future<Integer> count;
+
+
+    /**
+     * Constructs a {@link CustomerBalanceResultSet}.
+     *
+     * @param balances the balances. Each call to {@code iterator()} must return a new query
+     * @param pageSize the maximum no. of results per page
+     */
+    public CustomerBalanceResultSet(Iterable<ObjectSet> balances, int pageSize) {
+        super(balances, pageSize);
+        this.balances = balances;
+    }
+
+    /**
+     * Cancels the background count, if it is running.
+     * <p/>
+     * This should be invoked when the result set is no longer required. If the result set is subsequently queried,
+     * the count will be restarted.
+     * <p/>
+     * Note that {@link #reset()} doesn't cancel the count, as the criteria are fixed when the result set is
+     * constructed, so the count remains valid.
+     */
+    public void cancel() {
+        if (count != null) {
+            count.cancel(true);
+            count = null;
+        }
+    }
+
+    /**
+     * Returns an estimation of the total no. of results matching the criteria.
+     *
+     * @return an estimation of the total no. of results
+     */
+    @Override
+    public int getEstimatedResults() {
+        if (count != null && count.isDone() && !count.isCancelled()) {
+            try {
+                return count.get();
+            } catch (Throwable ignore) {
+                // fall through to the estimate
+            }
+        }
+        return super.getEstimatedResults();
+    }
+
+    /**
+     * Determines if the estimated no. of results is the same as the total no. of results.
+     *
+     * @return {@code true} if the estimated results equals the actual no. of results
+     */
+    @Override
+    public boolean isEstimatedActual() {
+        return super.isEstimatedActual() || (count != null && count.isDone() && !count.isCancelled());
+    }
+
+    /**
+     * Performs a query, starting the background count if it hasn't already been started.
+     *
+     * @param firstResult the first result of the page to retrieve
+     * @param maxResults  the maximum no. of results in the page
+     * @return the page, or {@code null}
+     */
+    @Override
+    protected IPage<ObjectSet> query(int firstResult, int maxResults) {
+        startCount();
+        return super.query(firstResult, maxResults);
+    }
+
+    /**
+     * Counts the no. of results matching the query criteria.
+     * <p/>
+     * This waits for the background count to complete.
+     *
+     * @return the total number of results
+     */
+    @Override
+    protected int countResults() {
+        try {
+            return startCount().get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted counting customer balances", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Starts counting the balances in the background, if the count hasn't been started.
+     * <p/>
+     * The count is performed using the security context of the current thread.
+     *
+     * @return the count
+     */
+    private Future<Integer> startCount() {
+        if (count == null) {
+            final SecurityContext context = SecurityContextHolder.getContext();
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            count = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    SecurityContextHolder.setContext(context);
+                    try {
+                        int result = 0;
+                        for (ObjectSet ignore : balances) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                throw new InterruptedException();
+                            }
+                            ++result;
+                        }
+                        return result;
+                    } finally {
+                        SecurityContextHolder.clearContext();
+                    }
+                }
+            });
+            executor.shutdown();
+        }
+        return count;
+    }
+}
@@ -16,17 +16,10 @@
 
 package org.openvpms.web.workspace.reporting.statement;
 
-import org.openvpms.archetype.component.processor.Processor;
 import org.openvpms.archetype.rules.finance.account.CustomerAccountRules;
-import org.openvpms.archetype.rules.finance.statement.EndOfPeriodProcessor;
 import org.openvpms.archetype.rules.finance.statement.StatementProcessorException;
-import org.openvpms.component.business.domain.im.common.IMObject;
 import org.openvpms.component.business.domain.im.party.Party;
-import org.openvpms.component.business.service.archetype.ArchetypeServiceHelper;
-import org.openvpms.component.business.service.archetype.IArchetypeService;
-import org.openvpms.component.system.common.query.ArchetypeQuery;
-import org.openvpms.component.system.common.query.IPage;
-import org.openvpms.component.system.common.query.IterableIMObjectQuery;
+import org.openvpms.component.business.service.archetype.helper.IMObjectBean;
 import org.openvpms.web.component.app.Context;
 import org.openvpms.web.echo.help.HelpContext;
 import org.openvpms.web.resource.i18n.Messages;
@@ -37,6 +30,9 @@ import java.util.Date;
 
 /**
  * End-of-period generator.
+ * <p/>
+ * Customers are processed in partitions by a {@link ParallelEndOfPeriodProcessor}. The number of workers may be
+ * configured via the optional <em>endOfPeriodWorkers</em> node of the practice.
  *
  * @author Tim Anderson
  */
@@ -47,6 +43,16 @@ class EndOfPeriodGenerator extends AbstractStatementGenerator {
      */
     private StatementProgressBarProcessor progressBarProcessor;
 
+    /**
+     * The maximum default number of workers.
+     */
+    private static final int MAX_DEFAULT_WORKERS = 4;
+
+    /**
+     * The maximum number of customers processed in a single transaction.
+     */
+    private static final int PARTITION_SIZE = 100;
+
 
     /**
      * Constructs an {@link EndOfPeriodGenerator}.
@@ -67,16 +73,12 @@ class EndOfPeriodGenerator extends AbstractStatementGenerator {
                                                   "Context has no practice");
         }
 
-        ArchetypeQuery query = new ArchetypeQuery("party.customer*", false, false);
-        int size = countCustomers(query);
-        query.setMaxResults(1000);
-
-        IterableIMObjectQuery<Party> customers = new IterableIMObjectQuery<Party>(query);
-        Processor<Party> processor = new EndOfPeriodProcessor(date, postCompletedCharges, practice,
-                                                              ServiceHelper.getArchetypeService(),
-                                                              ServiceHelper.getLookupService(),
-                                                              ServiceHelper.getBean(CustomerAccountRules.class));
-        progressBarProcessor = new StatementProgressBarProcessor(processor, customers, size);
+        ParallelEndOfPeriodProcessor processor = new ParallelEndOfPeriodProcessor(
+                date, postCompletedCharges, practice, ServiceHelper.getArchetypeService(),
+                ServiceHelper.getLookupService(), ServiceHelper.getBean(CustomerAccountRules.class),
+                ServiceHelper.getTransactionManager(), getWorkers(practice), PARTITION_SIZE);
+        processor.partition();
+        progressBarProcessor = new EndOfPeriodProgressBarProcessor(processor);
     }
 
     /**
@@ -89,19 +91,18 @@ class EndOfPeriodGenerator extends AbstractStatementGenerator {
     }
 
     /**
-     * Counts the available customers matching a query.
+     * Returns the number of end-of-period workers.
      *
-     * @param query the query
-     * @return the no. of customers
+     * @param practice the practice
+     * @return the number of workers
      */
-    private int countCustomers(ArchetypeQuery query) {
-        query.setMaxResults(0);
-        IArchetypeService service
-                = ArchetypeServiceHelper.getArchetypeService();
-        query.setCountResults(true);
-        IPage<IMObject> page = service.get(query);
-        query.setCountResults(false);
-        return page.getTotalResults();
+    private int getWorkers(Party practice) {
+        IMObjectBean bean = new IMObjectBean(practice);
+        int workers = bean.hasNode("endOfPeriodWorkers") ? bean.getInt("endOfPeriodWorkers") : 0;
+        if (workers <= 0) {
+            workers = Math.min(MAX_DEFAULT_WORKERS, Runtime.getRuntime().availableProcessors());
+        }
+        return workers;
     }
 
 }
@@ -0,0 +1,138 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting.statement;
+
+import org.openvpms.component.business.domain.im.party.Party;
+import org.openvpms.web.echo.servlet.SessionMonitor;
+import org.openvpms.web.resource.i18n.Messages;
+import org.openvpms.web.system.ServiceHelper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Displays the progress of a {@link ParallelEndOfPeriodProcessor}.
+ * <p/>
+ * The end-of-period run occurs on worker threads; this just polls the processor for its progress, throughput and
+ * estimated time remaining, on each task queue callback.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class EndOfPeriodProgressBarProcessor extends StatementProgressBarProcessor {
+
+    /**
+     * The end-of-period processor.
+     */
+    private final ParallelEndOfPeriodProcessor processor;
+
+    /**
+     * Determines if the end-of-period run has been started.
+     */
+    private boolean started;
+
+
+    /**
+     * Constructs an {@link EndOfPeriodProgressBarProcessor}.
+     *
+     * @param processor the end-of-period processor. This must have been partitioned
+     */
+    public EndOfPeriodProgressBarProcessor(ParallelEndOfPeriodProcessor processor) {
+        super(processor.getTotal());
+        this.processor = processor;
+    }
+
+    /**
+     * Starts the end-of-period run if it hasn't been started, and updates the progress.
+     * <p/>
+     * If the run has finished, and partitions failed, the {@link #processFailed} is invoked, to allow them to be
+     * retried.
+     */
+    @Override
+    public void process() {
+        ServiceHelper.getBean(SessionMonitor.class).active();  // keep the session alive
+        setSuspend(false);
+        if (!started) {
+            started = true;
+            processor.start();
+        }
+        update();
+        if (processor.isRunning()) {
+            reschedule();
+        } else {
+            List<ParallelEndOfPeriodProcessor.Partition> failed = processor.getFailed();
+            if (failed.isEmpty()) {
+                processingCompleted();
+            } else {
+                Map<Party, Throwable> customers = processor.getFailedCustomers();
+                Throwable cause;
+                String message;
+                if (!customers.isEmpty()) {
+                    Map.Entry<Party, Throwable> first = customers.entrySet().iterator().next();
+                    Party customer = first.getKey();
+                    cause = first.getValue();
+                    message = Messages.format("reporting.statements.eop.customerFailed", customers.size(),
+                                              customer.getName(), customer.getId(), cause.getMessage());
+                } else {
+                    cause = failed.get(0).getCause();
+                    message = Messages.format("reporting.statements.eop.failed", failed.size(), cause.getMessage());
+                }
+                processFailed(null, message, cause);
+            }
+        }
+    }
+
+    /**
+     * Cancels processing.
+     * <p/>
+     * Partitions in progress are rolled back.
+     */
+    @Override
+    public void cancel() {
+        processor.stop();
+        super.cancel();
+    }
+
+    /**
+     * Re-runs the failed partitions. Only the customers that failed are re-processed.
+     *
+     * @param customer ignored
+     */
+    @Override
+    protected void process(Party customer) {
+        processor.start();
+        started = true;
+    }
+
+    /**
+     * Updates the progress bar and status from the processor.
+     */
+    private void update() {
+        int processed = processor.getProcessed();
+        int total = processor.getTotal();
+        setProcessed(processed);
+        getProgressBar().setMaximum(total);
+        getProgressBar().setValue(processed);
+        int remaining = processor.getMinutesRemaining();
+        if (remaining >= 0) {
+            setStatus(Messages.format("reporting.statements.eop.progress", processed, total, processor.getRate(),
+                                      remaining));
+        } else {
+            setStatus(Messages.format("reporting.statements.eop.processed", processed, total));
+        }
+    }
+
+}
@@ -0,0 +1,637 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting.statement;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openvpms.archetype.rules.finance.account.CustomerAccountRules;
+import org.openvpms.archetype.rules.finance.statement.EndOfPeriodProcessor;
+import org.openvpms.component.business.domain.im.party.Party;
+import org.openvpms.component.business.service.archetype.IArchetypeService;
+import org.openvpms.component.business.service.lookup.ILookupService;
+import org.openvpms.component.system.common.query.ArchetypeQuery;
+import org.openvpms.component.system.common.query.IterableIMObjectQuery;
+import org.openvpms.component.system.common.query.ObjectRefSelectConstraint;
+import org.openvpms.component.system.common.query.ObjectSetQueryIterator;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.openvpms.component.system.common.query.Constraints.gte;
+import static org.openvpms.component.system.common.query.Constraints.lte;
+import static org.openvpms.component.system.common.query.Constraints.shortName;
+import static org.openvpms.component.system.common.query.Constraints.sort;
+
+/**
+ * Runs end-of-period for all customers, using a pool of workers.
+ * <p/>
+ * Customers are split into partitions of contiguous ids. Each partition is processed by a single worker, in its own
+ * transaction. If the partition fails, it is rolled back, and its customers are then processed one per transaction,
+ * so that a single failing customer doesn't prevent the others from being processed. The customers that fail are
+ * recorded against the partition. Failed partitions may be re-run by invoking {@link #start()} again, once the run
+ * has finished; only the customers that failed are re-processed.
+ * <p/>
+ * Processing occurs on the worker threads, using the security context of the thread that constructed the processor.
+ * The progress methods may be invoked from any thread.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+class ParallelEndOfPeriodProcessor {
+
+    /**
+     * Partition state.
+     */
+    enum State {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * The statement date.
+     */
+    private final Date date;
+
+    /**
+     * Determines if completed charges should be posted.
+     */
+    private final boolean postCompletedCharges;
+
+    /**
+     * The practice.
+     */
+    private final Party practice;
+
+    /**
+     * The archetype service.
+     */
+    private final IArchetypeService service;
+
+    /**
+     * The lookup service.
+     */
+    private final ILookupService lookups;
+
+    /**
+     * The customer account rules.
+     */
+    private final CustomerAccountRules rules;
+
+    /**
+     * The transaction template.
+     */
+    private final TransactionTemplate template;
+
+    /**
+     * The number of workers.
+     */
+    private final int workers;
+
+    /**
+     * The maximum number of customers in a partition.
+     */
+    private final int partitionSize;
+
+    /**
+     * The security context to run workers under.
+     */
+    private final SecurityContext security;
+
+    /**
+     * The partitions.
+     */
+    private final List<Partition> partitions = new ArrayList<Partition>();
+
+    /**
+     * The total number of customers.
+     */
+    private int total;
+
+    /**
+     * The number of customers processed, including those in partitions that are still running.
+     */
+    private final AtomicInteger processed = new AtomicInteger();
+
+    /**
+     * The number of partitions still running.
+     */
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * The time the current run started.
+     */
+    private volatile long started;
+
+    /**
+     * The number of customers processed when the current run started.
+     */
+    private volatile int startProcessed;
+
+    /**
+     * Determines if processing should stop.
+     */
+    private volatile boolean stop;
+
+    /**
+     * The page size used when querying customers.
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * The logger.
+     */
+    private static final Log log = LogFactory.getLog(ParallelEndOfPeriodProcessor.class);
+
+    /**
+     * Constructs a {@link ParallelEndOfPeriodProcessor}.
+     *
+     * @param date                 the statement date
+     * @param postCompletedCharges if {@code true}, post completed charges
+     * @param practice             the practice
+     * @param service              the archetype service
+     * @param lookups              the lookup service
+     * @param rules                the customer account rules
+     * @param transactionManager   the transaction manager
+     * @param workers              the number of workers
+     * @param partitionSize        the maximum number of customers in a partition
+     */
+    public ParallelEndOfPeriodProcessor(Date date, boolean postCompletedCharges, Party practice,
+                                        IArchetypeService service, ILookupService lookups,
+                                        CustomerAccountRules rules, PlatformTransactionManager transactionManager,
+                                        int workers, int partitionSize) {
+        this.date = date;
+        this.postCompletedCharges = postCompletedCharges;
+        this.practice = practice;
+        this.service = service;
+        this.lookups = lookups;
+        this.rules = rules;
+        this.template = new TransactionTemplate(transactionManager);
+        this.workers = workers > 0 ? workers : 1;
+        this.partitionSize = partitionSize > 0 ? partitionSize : 1;
+        security = SecurityContextHolder.getContext();
+    }
+
+    /**
+     * Splits the customers into partitions.
+     * <p/>
+     * This only retrieves customer references, so it is cheap relative to processing.
+     *
+     * @return the number of customers
+     */
+    public synchronized int partition() {
+        partitions.clear();
+        total = 0;
+        ArchetypeQuery query = new ArchetypeQuery(shortName("customer", "party.customer*", false));
+        query.add(new ObjectRefSelectConstraint("customer"));
+        query.add(sort("customer", "id"));
+        query.setMaxResults(PAGE_SIZE);
+        ObjectSetQueryIterator iterator = new ObjectSetQueryIterator(query);
+        long first = -1;
+        long last = -1;
+        int count = 0;
+        while (iterator.hasNext()) {
+            long id = iterator.next().getReference("customer.reference").getId();
+            if (count == 0) {
+                first = id;
+            }
+            last = id;
+            ++total;
+            if (++count == partitionSize) {
+                partitions.add(new Partition(first, last));
+                count = 0;
+            }
+        }
+        if (count != 0) {
+            partitions.add(new Partition(first, last));
+        }
+        return total;
+    }
+
+    /**
+     * Starts processing all partitions that are pending or have failed.
+     * <p/>
+     * This returns immediately. Use {@link #isRunning()} to determine when processing is complete.
+     *
+     * @throws IllegalStateException if processing is already running
+     */
+    public synchronized void start() {
+        if (isRunning()) {
+            throw new IllegalStateException("End period is already running");
+        }
+        stop = false;
+        started = System.currentTimeMillis();
+        startProcessed = processed.get();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        for (final Partition partition : partitions) {
+            if (partition.getState() == State.PENDING || partition.getState() == State.FAILED) {
+                partition.setState(State.RUNNING, null);
+                running.incrementAndGet();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SecurityContextHolder.setContext(security);
+                        try {
+                            process(partition);
+                        } finally {
+                            running.decrementAndGet();
+                            SecurityContextHolder.clearContext();
+                        }
+                    }
+                });
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Stops processing.
+     * <p/>
+     * Partitions that haven't started are left pending. Those in progress are rolled back, unless their customers
+     * are being processed individually, in which case the customers processed so far are retained.
+     */
+    public void stop() {
+        stop = true;
+    }
+
+    /**
+     * Determines if processing is running.
+     *
+     * @return {@code true} if processing is running
+     */
+    public boolean isRunning() {
+        return running.get() != 0;
+    }
+
+    /**
+     * Returns the total number of customers.
+     *
+     * @return the total number of customers
+     */
+    public synchronized int getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of customers processed.
+     * <p/>
+     * This includes customers in partitions that are still running, so it may go backwards if a partition fails.
+     *
+     * @return the number of customers processed
+     */
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Returns the processing rate of the current run.
+     *
+     * @return the number of customers processed per minute
+     */
+    public int getRate() {
+        long elapsed = System.currentTimeMillis() - started;
+        return (elapsed > 0) ? (int) ((processed.get() - startProcessed) * 60000L / elapsed) : 0;
+    }
+
+    /**
+     * Returns the estimated time remaining in the current run.
+     *
+     * @return the estimated time remaining, in minutes, or {@code -1} if it cannot be determined
+     */
+    public int getMinutesRemaining() {
+        int rate = getRate();
+        return (rate > 0) ? (getTotal() - processed.get() + rate - 1) / rate : -1;
+    }
+
+    /**
+     * Returns the partitions that failed.
+     *
+     * @return the failed partitions
+     */
+    public synchronized List<Partition> getFailed() {
+        List<Partition> result = new ArrayList<Partition>();
+        for (Partition partition : partitions) {
+            if (partition.getState() == State.FAILED) {
+                result.add(partition);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the partitions.
+     *
+     * @return the partitions
+     */
+    public synchronized List<Partition> getPartitions() {
+        return Collections.unmodifiableList(new ArrayList<Partition>(partitions));
+    }
+
+    /**
+     * Returns the customers that failed, and the cause of their failure.
+     *
+     * @return the failed customers, in partition order
+     */
+    public synchronized Map<Party, Throwable> getFailedCustomers() {
+        Map<Party, Throwable> result = new LinkedHashMap<Party, Throwable>();
+        for (Partition partition : partitions) {
+            result.putAll(partition.getFailedCustomers());
+        }
+        return result;
+    }
+
+    /**
+     * Creates a processor to run end-of-period.
+     *
+     * @return a new processor
+     */
+    protected EndOfPeriodProcessor createProcessor() {
+        return new EndOfPeriodProcessor(date, postCompletedCharges, practice, service, lookups, rules);
+    }
+
+    /**
+     * Runs end-of-period for a customer.
+     *
+     * @param processor the processor
+     * @param customer  the customer
+     */
+    protected void process(EndOfPeriodProcessor processor, Party customer) {
+        processor.process(customer);
+    }
+
+    /**
+     * Processes a partition.
+     * <p/>
+     * If the partition hasn't previously failed, it is processed in a single transaction. If that fails, or the
+     * partition has previously failed, its customers are processed individually.
+     *
+     * @param partition the partition to process
+     */
+    private void process(final Partition partition) {
+        if (partition.getRemaining() == null) {
+            final EndOfPeriodProcessor processor = createProcessor();
+            final int[] count = {0};
+            try {
+                template.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        for (Party customer : getCustomers(partition)) {
+                            if (stop) {
+                                throw new IllegalStateException("End period stopped");
+                            }
+                            process(processor, customer);
+                            ++count[0];
+                            processed.incrementAndGet();
+                        }
+                    }
+                });
+                partition.setState(State.COMPLETED, null);
+                return;
+            } catch (Throwable exception) {
+                processed.addAndGet(-count[0]);
+                if (stop) {
+                    partition.setState(State.PENDING, null);
+                    return;
+                }
+                log.warn("Failed to run end period for customers with ids " + partition.getFirst() + " to "
+                         + partition.getLast() + ". Processing them individually", exception);
+            }
+        }
+        processCustomers(partition);
+    }
+
+    /**
+     * Processes the customers in a partition, one per transaction.
+     * <p/>
+     * If the partition has previously been processed this way, only the customers that didn't complete are
+     * processed. Customers that fail are recorded against the partition.
+     *
+     * @param partition the partition to process
+     */
+    private void processCustomers(Partition partition) {
+        Set<Long> retry = partition.getRemaining();
+        Set<Long> remaining = new HashSet<Long>();
+        Map<Party, Throwable> failed = new LinkedHashMap<Party, Throwable>();
+        boolean stopped = false;
+        Throwable cause = null;
+        try {
+            EndOfPeriodProcessor processor = createProcessor();
+            for (Party customer : getCustomers(partition)) {
+                if (retry != null && !retry.contains(customer.getId())) {
+                    continue;
+                }
+                if (stop) {
+                    stopped = true;
+                    remaining.add(customer.getId());
+                } else {
+                    try {
+                        processCustomer(processor, customer);
+                        processed.incrementAndGet();
+                    } catch (Throwable exception) {
+                        log.error("Failed to run end period for customer " + customer.getName() + " ("
+                                  + customer.getId() + ")", exception);
+                        remaining.add(customer.getId());
+                        failed.put(customer, exception);
+                        if (cause == null) {
+                            cause = exception;
+                        }
+                    }
+                }
+            }
+        } catch (Throwable exception) {
+            // failed to query the customers. Retry the partition as a whole
+            log.error("Failed to run end period for customers with ids " + partition.getFirst() + " to "
+                      + partition.getLast(), exception);
+            partition.setState(State.FAILED, exception);
+            return;
+        }
+        partition.setRemaining(remaining, failed);
+        if (stopped) {
+            partition.setState(State.PENDING, null);
+        } else if (!failed.isEmpty()) {
+            partition.setState(State.FAILED, cause);
+        } else {
+            partition.setState(State.COMPLETED, null);
+        }
+    }
+
+    /**
+     * Runs end-of-period for a customer in its own transaction.
+     *
+     * @param processor the processor
+     * @param customer  the customer
+     */
+    private void processCustomer(final EndOfPeriodProcessor processor, final Party customer) {
+        template.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                process(processor, customer);
+            }
+        });
+    }
+
+    /**
+     * Returns the customers in a partition, in order of id.
+     *
+     * @param partition the partition
+     * @return the customers
+     */
+    private Iterable<Party> getCustomers(Partition partition) {
+        ArchetypeQuery query = new ArchetypeQuery("party.customer*", false, false);
+        query.add(gte("id", partition.getFirst()));
+        query.add(lte("id", partition.getLast()));
+        query.add(sort("id"));
+        query.setMaxResults(PAGE_SIZE);
+        return new IterableIMObjectQuery<Party>(service, query);
+    }
+
+    /**
+     * A range of customers, identified by their first and last ids.
+     */
+    static class Partition {
+
+        /**
+         * The first customer id.
+         */
+        private final long first;
+
+        /**
+         * The last customer id.
+         */
+        private final long last;
+
+        /**
+         * The state.
+         */
+        private volatile State state = State.PENDING;
+
+        /**
+         * The failure cause, if the partition failed.
+         */
+        private volatile Throwable cause;
+
+        /**
+         * The ids of the customers that remain to be processed individually, or {@code null} if the partition should
+         * be processed in a single transaction.
+         */
+        private volatile Set<Long> remaining;
+
+        /**
+         * The customers that failed when processed individually, and the cause of their failure.
+         */
+        private volatile Map<Party, Throwable> failed = Collections.emptyMap();
+
+        /**
+         * Constructs a {@link Partition}.
+         *
+         * @param first the first customer id
+         * @param last  the last customer id
+         */
+        public Partition(long first, long last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * Returns the first customer id.
+         *
+         * @return the first customer id
+         */
+        public long getFirst() {
+            return first;
+        }
+
+        /**
+         * Returns the last customer id.
+         *
+         * @return the last customer id
+         */
+        public long getLast() {
+            return last;
+        }
+
+        /**
+         * Returns the partition state.
+         *
+         * @return the state
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * Returns the failure cause.
+         *
+         * @return the failure cause, or {@code null} if the partition hasn't failed
+         */
+        public Throwable getCause() {
+            return cause;
+        }
+
+        /**
+         * Returns the customers that failed when processed individually.
+         *
+         * @return the failed customers, and the cause of their failure
+         */
+        public Map<Party, Throwable> getFailedCustomers() {
+            return failed;
+        }
+
+        /**
+         * Returns the ids of the customers that remain to be processed individually.
+         *
+         * @return the customer ids, or {@code null} if the partition should be processed in a single transaction
+         */
+        private Set<Long> getRemaining() {
+            return remaining;
+        }
+
+        /**
+         * Sets the customers that remain to be processed individually.
+         *
+         * @param remaining the ids of the customers that remain to be processed
+         * @param failed    the customers that failed, and the cause of their failure
+         */
+        private void setRemaining(Set<Long> remaining, Map<Party, Throwable> failed) {
+            this.remaining = remaining;
+            this.failed = Collections.unmodifiableMap(failed);
+        }
+
+        /**
+         * Sets the partition state.
+         *
+         * @param state the state
+         * @param cause the failure cause. May be {@code null}
+         */
+        private void setState(State state, Throwable cause) {
+            this.cause = cause;
+            this.state = state;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.openvpms.web.echo.factory.ColumnFactory;
 import org.openvpms.web.echo.factory.LabelFactory;
 import org.openvpms.web.resource.i18n.Messages;
 
+import java.util.Collections;
 import java.util.List;
 
 
@@ -88,6 +89,17 @@ class StatementProgressBarProcessor extends ProgressBarProcessor<Party> {
                                          status);
     }
 
+    /**
+     * Constructs a {@link StatementProgressBarProcessor} for subclasses that process customers themselves.
+     * <p/>
+     * Subclasses must override {@link #process()}.
+     *
+     * @param size the expected no. of items. This need not be exact
+     */
+    protected StatementProgressBarProcessor(int size) {
+        this(null, Collections.<Party>emptyList(), size);
+    }
+
     /**
      * Returns the component.
      *
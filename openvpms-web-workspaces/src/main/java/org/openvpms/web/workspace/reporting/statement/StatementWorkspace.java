@@ -101,6 +101,19 @@ public class StatementWorkspace extends AbstractReportingWorkspace<Act> {
         return component;
     }
 
+    /**
+     * Invoked when the workspace is hidden.
+     * <p/>
+     * This stops the customer balances being counted in the background.
+     */
+    @Override
+    public void hide() {
+        super.hide();
+        if (query != null) {
+            query.cancel();
+        }
+    }
+
     /**
      * Lays out the components.
      *
@@ -24,6 +24,8 @@ import nextapp.echo2.app.Label;
 import nextapp.echo2.app.table.AbstractTableModel;
 import nextapp.echo2.app.table.DefaultTableColumnModel;
 import nextapp.echo2.app.table.TableColumnModel;
+import org.apache.commons.jxpath.CompiledExpression;
+import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.openvpms.archetype.rules.workflow.ScheduleEvent;
 import org.openvpms.component.business.domain.im.archetype.descriptor.ArchetypeDescriptor;
@@ -42,7 +44,9 @@ import org.openvpms.web.echo.style.Styles;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -57,6 +61,11 @@ public abstract class ScheduleTableModel extends AbstractTableModel {
         EVENT_TYPE, CLINICIAN, STATUS
     }
 
+    /**
+     * The maximum no. of display expression results to cache.
+     */
+    private static final int MAX_EVALUATIONS = 1000;
+
     /**
      * Schedule event grid.
      */
@@ -113,6 +122,23 @@ public abstract class ScheduleTableModel extends AbstractTableModel {
      */
     private final String expression;
 
+    /**
+     * The compiled display expression. May be {@code null}
+     */
+    private final CompiledExpression compiled;
+
+    /**
+     * The results of evaluating the display expression, keyed on event act reference, in least recently used order.
+     * These are discarded when the table data changes.
+     */
+    private final Map<IMObjectReference, Evaluation> evaluations
+            = new LinkedHashMap<IMObjectReference, Evaluation>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IMObjectReference, Evaluation> eldest) {
+            return size() > MAX_EVALUATIONS;
+        }
+    };
+
     /**
      * Determines if the notes popup should be displayed.
      */
@@ -130,10 +156,22 @@ public abstract class ScheduleTableModel extends AbstractTableModel {
         this.context = context;
         IMObjectBean bean = new IMObjectBean(grid.getScheduleView());
         expression = bean.getString("displayExpression");
+        compiled = compile(expression);
         displayNotes = bean.getBoolean("displayNotes");
         model = createColumnModel(grid);
     }
 
+    /**
+     * Notifies listeners that the table data has changed.
+     * <p/>
+     * This discards any cached display expression results.
+     */
+    @Override
+    public void fireTableDataChanged() {
+        evaluations.clear();
+        super.fireTableDataChanged();
+    }
+
     /**
      * Returns the schedules.
      *
@@ -548,10 +586,45 @@ public abstract class ScheduleTableModel extends AbstractTableModel {
      * @return the evaluate result. May be {@code null}
      */
     protected String evaluate(PropertySet event) {
+        String result = null;
+        if (!StringUtils.isEmpty(expression)) {
+            if (compiled == null) {
+                result = SchedulingHelper.EXPRESSION_ERROR;
+            } else {
+                // the result is reused if the event and its waiting time are unchanged
+                IMObjectReference reference = event.getReference(ScheduleEvent.ACT_REFERENCE);
+                String waiting = SchedulingHelper.getWaitingTime(event);
+                Evaluation evaluation = (reference != null) ? evaluations.get(reference) : null;
+                if (evaluation != null && evaluation.event == event
+                    && ObjectUtils.equals(evaluation.waiting, waiting)) {
+                    result = evaluation.text;
+                } else {
+                    result = SchedulingHelper.evaluate(compiled, event);
+                    if (reference != null) {
+                        evaluations.put(reference, new Evaluation(event, waiting, result));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles the display expression.
+     *
+     * @param expression the expression. May be {@code null}
+     * @return the compiled expression, or {@code null} if there is no expression or it is invalid
+     */
+    private CompiledExpression compile(String expression) {
+        CompiledExpression result = null;
         if (!StringUtils.isEmpty(expression)) {
-            return SchedulingHelper.evaluate(expression, event);
+            try {
+                result = SchedulingHelper.compile(expression);
+            } catch (Throwable exception) {
+                // will be reported as an error when evaluated
+            }
         }
-        return null;
+        return result;
     }
 
     /**
@@ -654,4 +727,38 @@ public abstract class ScheduleTableModel extends AbstractTableModel {
 
     }
 
+    /**
+     * The result of evaluating the display expression against an event.
+     */
+    private static class Evaluation {
+
+        /**
+         * The event the expression was evaluated against.
+         */
+        private final PropertySet event;
+
+        /**
+         * The event waiting time at evaluation. May be {@code null}
+         */
+        private final String waiting;
+
+        /**
+         * The evaluation result. May be {@code null}
+         */
+        private final String text;
+
+        /**
+         * Constructs an {@link Evaluation}.
+         *
+         * @param event   the event
+         * @param waiting the event waiting time. May be {@code null}
+         * @param text    the evaluation result. May be {@code null}
+         */
+        public Evaluation(PropertySet event, String waiting, String text) {
+            this.event = event;
+            this.waiting = waiting;
+            this.text = text;
+        }
+    }
+
 }
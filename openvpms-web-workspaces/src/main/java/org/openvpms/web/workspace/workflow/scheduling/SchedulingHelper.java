@@ -16,6 +16,7 @@
 
 package org.openvpms.web.workspace.workflow.scheduling;
 
+import org.apache.commons.jxpath.CompiledExpression;
 import org.apache.commons.jxpath.JXPathContext;
 import org.openvpms.archetype.rules.workflow.AppointmentStatus;
 import org.openvpms.archetype.rules.workflow.ScheduleArchetypes;
@@ -39,6 +40,11 @@ import java.util.GregorianCalendar;
  */
 public class SchedulingHelper {
 
+    /**
+     * The text returned when an expression fails to evaluate.
+     */
+    public static final String EXPRESSION_ERROR = "Expression Error";
+
     /**
      * Returns the minutes from midnight for the specified time.
      *
@@ -113,6 +119,25 @@ public class SchedulingHelper {
      * @return the evaluate result. May be {@code null}
      */
     public static String evaluate(String expression, PropertySet event) {
+        CompiledExpression compiled;
+        try {
+            compiled = compile(expression);
+        } catch (Throwable exception) {
+            return EXPRESSION_ERROR;
+        }
+        return evaluate(compiled, event);
+    }
+
+    /**
+     * Evaluates a compiled xpath expression against the supplied event.
+     * <p/>
+     * This adds a "waiting" time attribute to the event prior to evaluation as determined by {@link #getWaitingTime}.
+     *
+     * @param expression the expression, as returned by {@link #compile}
+     * @param event      the event
+     * @return the evaluate result. May be {@code null}
+     */
+    public static String evaluate(CompiledExpression expression, PropertySet event) {
         String text;
         String waiting = getWaitingTime(event);
         if (waiting != null) {
@@ -123,20 +148,32 @@ public class SchedulingHelper {
         event.set("waiting", waiting);
 
         JXPathContext context = JXPathHelper.newContext(event);
-
-        // hack to replace all instances of '\\n' with new lines to
-        // enable new lines to be included in the text
-        // Can't use <br> as all xml is escaped
-        expression = expression.replace("\'\\n\'", "\'\n\'");
         try {
-            Object value = context.getValue(expression);
+            Object value = expression.getValue(context);
             text = (value != null) ? value.toString() : null;
         } catch (Throwable exception) {
-            text = "Expression Error";
+            text = EXPRESSION_ERROR;
         }
         return text;
     }
 
+    /**
+     * Compiles an xpath expression for evaluation via {@link #evaluate(CompiledExpression, PropertySet)}.
+     * <p/>
+     * NOTE: any string sequence containing the characters '\\n' will be treated as new lines.
+     *
+     * @param expression the expression
+     * @return the compiled expression
+     * @throws org.apache.commons.jxpath.JXPathException if the expression is invalid
+     */
+    public static CompiledExpression compile(String expression) {
+        // hack to replace all instances of '\\n' with new lines to
+        // enable new lines to be included in the text
+        // Can't use <br> as all xml is escaped
+        expression = expression.replace("\'\\n\'", "\'\n\'");
+        return JXPathContext.compile(expression);
+    }
+
     /**
      * Calculates a waiting time for an event.
      * <p/>
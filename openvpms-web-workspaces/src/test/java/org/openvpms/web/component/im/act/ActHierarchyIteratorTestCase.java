@@ -20,13 +20,18 @@ import org.junit.Test;
 import org.openvpms.archetype.rules.patient.PatientTestHelper;
 import org.openvpms.archetype.test.TestHelper;
 import org.openvpms.component.business.domain.im.act.Act;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
 import org.openvpms.component.business.domain.im.party.Party;
 import org.openvpms.component.business.domain.im.security.User;
 import org.openvpms.component.business.service.archetype.helper.TypeHelper;
 import org.openvpms.web.test.AbstractAppTest;
 import org.openvpms.web.workspace.patient.history.PatientHistoryQuery;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -118,6 +123,53 @@ public class ActHierarchyIteratorTestCase extends AbstractAppTest {
         // problemNote moves as its a child of problem
     }
 
+    /**
+     * Verifies that when iterating over a collection of acts, the no. of queries depends on the depth of the
+     * hierarchy, not the no. of acts.
+     */
+    @Test
+    public void testBatch() {
+        Party patient = TestHelper.createPatient(true);
+        List<Act> events = new ArrayList<Act>();
+        for (int i = 0; i < 20; ++i) {
+            events.add(createEvent(patient, getDatetime("2007-02-01 10:30:00")));
+        }
+
+        // there are 2 levels below the events, so 2 queries are expected
+        CountingFilter filter1 = new CountingFilter();
+        List<Act> batched = getActs(events, filter1, 3, true);
+        assertEquals(20 * 5, batched.size());
+        assertEquals(2, filter1.queries);
+
+        CountingFilter filter2 = new CountingFilter();
+        assertEquals(new HashSet<Act>(batched), new HashSet<Act>(getActs(events, filter2, -1, true)));
+        assertEquals(2, filter2.queries);
+
+        // without batching, there is a query per event, and per problem
+        CountingFilter filter3 = new CountingFilter();
+        assertEquals(new HashSet<Act>(batched), new HashSet<Act>(getActs(events, filter3, 3, false)));
+        assertEquals(40, filter3.queries);
+    }
+
+    /**
+     * Iterates over an act hierarchy.
+     *
+     * @param acts     the top level acts
+     * @param filter   the filter
+     * @param maxDepth the maximum depth to iterate to, or {@code -1} to not limit depth
+     * @param batch    if {@code true}, load child acts in batches
+     * @return the acts
+     */
+    private List<Act> getActs(List<Act> acts, ActHierarchyFilter<Act> filter, int maxDepth, boolean batch) {
+        ActHierarchyIterator<Act> iterator = new ActHierarchyIterator<Act>(acts, filter, maxDepth);
+        iterator.setBatch(batch);
+        List<Act> result = new ArrayList<Act>();
+        for (Act act : iterator) {
+            result.add(act);
+        }
+        return result;
+    }
+
     /**
      * Verifies that {@link ActHierarchyIterator} returns the expected acts, in the correct order.
      *
@@ -179,4 +231,34 @@ public class ActHierarchyIteratorTestCase extends AbstractAppTest {
         return PatientTestHelper.createEvent(startTime, patient, eventNote, problem, weight);
     }
 
+    /**
+     * A filter that counts the queries it performs.
+     */
+    private static class CountingFilter extends ActHierarchyFilter<Act> {
+
+        /**
+         * The no. of queries.
+         */
+        private int queries;
+
+        /**
+         * Constructs a {@link CountingFilter}.
+         */
+        public CountingFilter() {
+            super(SHORT_NAMES, true);
+        }
+
+        /**
+         * Returns acts given their references.
+         *
+         * @param references the act references
+         * @return the corresponding acts
+         */
+        @Override
+        protected List<Act> getActs(Collection<IMObjectReference> references) {
+            ++queries;
+            return super.getActs(references);
+        }
+    }
+
 }
@@ -21,6 +21,7 @@ import org.openvpms.component.business.domain.im.party.Party;
 import org.openvpms.component.business.domain.im.product.Product;
 import org.openvpms.component.business.domain.im.security.User;
 import org.openvpms.hl7.patient.PatientContext;
+import org.openvpms.hl7.pharmacy.PharmacyOrder;
 import org.openvpms.hl7.pharmacy.PharmacyOrderService;
 
 import java.math.BigDecimal;
@@ -183,6 +184,25 @@ class TestPharmacyOrderService implements PharmacyOrderService {
                              context.getClinician(), pharmacy));
     }
 
+    /**
+     * Places several orders for the same patient and visit with a pharmacy.
+     *
+     * @param orders   the orders, in the order they should be processed
+     * @param pharmacy the pharmacy. An <em>entity.HL7ServicePharmacy</em>
+     * @param user     the user that generated the orders
+     * @return {@code true} if the orders were placed
+     */
+    @Override
+    public boolean order(List<PharmacyOrder> orders, Entity pharmacy, User user) {
+        for (PharmacyOrder order : orders) {
+            PatientContext context = order.getContext();
+            this.orders.add(new Order(Order.Type.valueOf(order.getType().name()), context.getPatient(),
+                                      order.getProduct(), order.getQuantity(), order.getPlacerOrderNumber(),
+                                      order.getDate(), context.getClinician(), pharmacy));
+        }
+        return true;
+    }
+
     /**
      * Returns the orders.
      *
@@ -24,6 +24,7 @@ import org.openvpms.archetype.test.ArchetypeServiceTest;
 import org.openvpms.archetype.test.TestHelper;
 import org.openvpms.component.business.domain.im.act.Act;
 import org.openvpms.component.business.domain.im.act.FinancialAct;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
 import org.openvpms.component.business.domain.im.party.Party;
 import org.openvpms.component.business.domain.im.product.Product;
 import org.openvpms.component.business.domain.im.security.User;
@@ -32,6 +33,7 @@ import org.openvpms.component.business.service.archetype.helper.ActBean;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -151,6 +153,44 @@ public class PatientHistoryIteratorTestCase extends ArchetypeServiceTest {
         check(acts, noCharge, false, event, problem, problemNote, medication1, weight);
     }
 
+    /**
+     * Verifies that when iterating over a page of events, invoice items are loaded in the same query as the other
+     * child acts, rather than with a query per event.
+     */
+    @Test
+    public void testInvoiceItemsBatched() {
+        Party patient = TestHelper.createPatient(true);
+        Product product = TestHelper.createProduct();
+        User clinician = TestHelper.createClinician();
+
+        List<Act> events = new ArrayList<Act>();
+        for (int i = 0; i < 10; ++i) {
+            FinancialAct charge1 = createChargeItem(getDatetime("2014-05-09 10:01:00"), patient, product);
+            Act medication = createMedication(getDatetime("2014-05-09 10:01:00"), patient, charge1);
+            FinancialAct charge2 = createChargeItem(getDatetime("2014-05-09 10:02:00"), patient, product);
+            Act problemNote = createNote(getDatetime("2014-05-09 10:04:00"), patient, clinician);
+            Act problem = createProblem(getDatetime("2014-05-09 10:05:00"), patient, clinician, problemNote);
+            Act event = PatientTestHelper.createEvent(getDatetime("2014-05-09 10:00:00"), patient, clinician,
+                                                      medication, problem);
+            ActBean eventBean = new ActBean(event);
+            eventBean.addNodeRelationship("chargeItems", charge1);
+            eventBean.addNodeRelationship("chargeItems", charge2);
+            save(event, charge1, charge2);
+            events.add(event);
+        }
+
+        String[] withCharge = {CLINICAL_PROBLEM, PATIENT_MEDICATION, INVOICE_ITEM, CLINICAL_NOTE};
+        CountingFilter filter = new CountingFilter(withCharge);
+        List<Act> acts = new ArrayList<Act>();
+        CollectionUtils.addAll(acts, new PatientHistoryIterator(events, filter));
+
+        // each event has a medication, an unlinked charge item, and a problem with a note
+        assertEquals(10 * 5, acts.size());
+
+        // one query for the event items and charge items, and one for the problem items
+        assertEquals(2, filter.queries);
+    }
+
     /**
      * Verifies that when a problem is linked to 2 visits, only the items linked to the event will appear listed
      * under the problem for that event.
@@ -242,4 +282,36 @@ public class PatientHistoryIteratorTestCase extends ArchetypeServiceTest {
         CollectionUtils.addAll(result, iterator);
         return result;
     }
+
+    /**
+     * A filter that counts the queries it performs.
+     */
+    private static class CountingFilter extends PatientHistoryFilter {
+
+        /**
+         * The no. of queries.
+         */
+        private int queries;
+
+        /**
+         * Constructs a {@link CountingFilter}.
+         *
+         * @param shortNames the history item short names to include
+         */
+        public CountingFilter(String[] shortNames) {
+            super(shortNames);
+        }
+
+        /**
+         * Returns acts given their references.
+         *
+         * @param references the act references
+         * @return the corresponding acts
+         */
+        @Override
+        protected List<Act> getActs(Collection<IMObjectReference> references) {
+            ++queries;
+            return super.getActs(references);
+        }
+    }
 }
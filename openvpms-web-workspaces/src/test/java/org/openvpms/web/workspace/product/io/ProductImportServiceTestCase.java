@@ -0,0 +1,180 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.product.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openvpms.archetype.rules.product.ProductPriceRules;
+import org.openvpms.archetype.rules.product.io.ProductData;
+import org.openvpms.component.business.domain.im.party.Party;
+import org.openvpms.component.business.service.archetype.IArchetypeService;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the {@link ProductImportService}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ProductImportServiceTestCase {
+
+    /**
+     * The products to import.
+     */
+    private List<ProductData> products;
+
+    /**
+     * The product that fails to import.
+     */
+    private ProductData bad;
+
+    /**
+     * The service under test.
+     */
+    private TestProductImportService service;
+
+    /**
+     * Sets up the test case.
+     */
+    @Before
+    public void setUp() {
+        products = new ArrayList<ProductData>();
+        for (int i = 0; i < 5; ++i) {
+            products.add(mock(ProductData.class));
+        }
+        bad = products.get(3);
+        service = new TestProductImportService();
+        service.setChunkSize(2);
+    }
+
+    /**
+     * Cleans up after the test case.
+     */
+    @After
+    public void tearDown() {
+        service.destroy();
+    }
+
+    /**
+     * Verifies that when a chunk fails, its products are imported individually, products from other chunks
+     * remain imported, and the failing product is reported.
+     */
+    @Test
+    public void testFailingProductIsImportedIndividually() {
+        ProductImportJob job = new ProductImportJob(products.size());
+        service.run(job, products, null);
+
+        assertEquals(ProductImportJob.State.COMPLETED, job.getState());
+        assertEquals(5, job.getProcessed());
+        assertEquals(4, job.getImported());
+        assertEquals(1, job.getErrors().size());
+        assertSame(bad, job.getErrors().get(0).getData());
+        assertEquals("bad product", job.getErrors().get(0).getMessage());
+
+        // chunk [3, 4] fails and is retried one product at a time. The other products are only committed once
+        assertEquals(Arrays.asList(products.get(0), products.get(1), products.get(2), products.get(4)),
+                     service.committed);
+        assertEquals(5, service.attempts);
+    }
+
+    /**
+     * Verifies that cancelling a job stops it at the next chunk boundary, retaining the products already committed.
+     */
+    @Test
+    public void testCancelAtChunkBoundary() {
+        final ProductImportJob job = new ProductImportJob(products.size());
+        service.cancelOnAttempt(job, 2);
+        service.run(job, products, null);
+
+        assertEquals(ProductImportJob.State.CANCELLED, job.getState());
+        assertEquals(4, job.getProcessed());
+        assertEquals(3, job.getImported());
+        assertEquals(Arrays.asList(products.get(0), products.get(1), products.get(2)), service.committed);
+    }
+
+    /**
+     * A {@link ProductImportService} that records the products it imports, rather than saving them, and fails
+     * any transaction that includes the bad product.
+     */
+    private class TestProductImportService extends ProductImportService {
+
+        /**
+         * The products committed, in order.
+         */
+        private final List<ProductData> committed = new ArrayList<ProductData>();
+
+        /**
+         * The no. of transactions attempted.
+         */
+        private int attempts;
+
+        /**
+         * The job to cancel.
+         */
+        private ProductImportJob job;
+
+        /**
+         * The attempt to cancel the job on.
+         */
+        private int cancelOn;
+
+        /**
+         * Constructs a {@link TestProductImportService}.
+         */
+        public TestProductImportService() {
+            super(mock(ProductPriceRules.class), mock(IArchetypeService.class), mock(PlatformTransactionManager.class),
+                  1);
+        }
+
+        /**
+         * Cancels a job when the specified transaction is attempted.
+         *
+         * @param job     the job
+         * @param attempt the attempt, starting at {@code 1}
+         */
+        public void cancelOnAttempt(ProductImportJob job, int attempt) {
+            this.job = job;
+            this.cancelOn = attempt;
+        }
+
+        /**
+         * Imports products in a transaction.
+         *
+         * @param products the products to import
+         * @param practice the practice
+         */
+        @Override
+        protected void importProducts(List<ProductData> products, Party practice) {
+            ++attempts;
+            if (job != null && attempts == cancelOn) {
+                job.cancel();
+            }
+            if (products.contains(bad)) {
+                throw new IllegalStateException("bad product");
+            }
+            committed.addAll(products);
+        }
+    }
+}
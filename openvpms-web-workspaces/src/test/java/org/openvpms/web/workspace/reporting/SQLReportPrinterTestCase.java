@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests the {@link SQLReportPrinter}.
@@ -78,5 +79,31 @@ public class SQLReportPrinterTestCase extends AbstractAppTest {
                      + "Main Deposit,Main Till,Vet,User,Visit,Invoice,Appointment,Task", result);
     }
 
+    /**
+     * Verifies that changes to a printer's parameters after it has been copied don't affect the copy.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCopy() throws Exception {
+        Context context = DocumentTestHelper.createReportContext();
+        Document document = DocumentTestHelper.createDocument("/sqlreport.jrxml");
+        DocumentTemplate template = new DocumentTemplate((Entity) create("entity.documentTemplate"),
+                                                         getArchetypeService());
+        SQLReportPrinter printer = new SQLReportPrinter(template, document, context);
+
+        Party customer1 = TestHelper.createCustomer("Foo", "Bar", true);
+        Party customer2 = TestHelper.createCustomer("Baz", "Qux", true);
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("customerId", customer1.getId());
+        printer.setParameters(parameters);
+
+        SQLReportPrinter copy = printer.copy();
+        parameters.put("customerId", customer2.getId());
+
+        String result = DocumentTestHelper.toString(copy.getDocument(DocFormats.CSV_TYPE, false), handlers).trim();
+        assertTrue(result.startsWith("Foo,Bar,"));
+    }
+
 
 }
@@ -0,0 +1,143 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting.statement;
+
+import org.junit.Test;
+import org.openvpms.component.system.common.query.IPage;
+import org.openvpms.component.system.common.query.ObjectSet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link CustomerBalanceResultSet}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class CustomerBalanceResultSetTestCase {
+
+    /**
+     * Verifies that every page contains the expected balances, including those after the prefetched pages.
+     */
+    @Test
+    public void testPaging() {
+        Balances balances = new Balances(250, false);
+        CustomerBalanceResultSet set = new CustomerBalanceResultSet(balances, 20);
+        for (int page = 0; page < 13; ++page) {
+            List<ObjectSet> results = set.getPage(page).getResults();
+            assertEquals(Math.min(20, 250 - page * 20), results.size());
+            for (int i = 0; i < results.size(); ++i) {
+                assertSame(balances.get(page * 20 + i), results.get(i));
+            }
+        }
+        assertEquals(250, set.getResults());
+    }
+
+    /**
+     * Verifies that navigating backwards, or resetting the result set, doesn't restart the background count.
+     */
+    @Test
+    public void testBackwardNavigationDoesNotRestartCount() {
+        Balances balances = new Balances(250, false);
+        CustomerBalanceResultSet set = new CustomerBalanceResultSet(balances, 20);
+        set.getPage(5);
+        assertEquals(250, set.getResults());
+        assertEquals(2, balances.getIterators());      // the page iterator, and the count
+
+        IPage<ObjectSet> page = set.query(20, 20);
+        assertSame(balances.get(20), page.getResults().get(0));
+        assertEquals(3, balances.getIterators());      // restarts the page iterator only
+        assertTrue(set.isEstimatedActual());
+        assertEquals(250, set.getEstimatedResults());
+
+        set.reset();
+        set.getPage(0);
+        assertEquals(250, set.getEstimatedResults());
+        assertEquals(4, balances.getIterators());
+    }
+
+    /**
+     * Verifies that {@link CustomerBalanceResultSet#cancel()} stops the background count.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCancel() throws Exception {
+        Balances balances = new Balances(250, true);
+        CustomerBalanceResultSet set = new CustomerBalanceResultSet(balances, 20);
+        set.getPage(0);
+        assertTrue(balances.started.await(10, TimeUnit.SECONDS));
+
+        set.cancel();
+        assertTrue(balances.interrupted.await(10, TimeUnit.SECONDS));
+        assertFalse(set.isEstimatedActual());
+    }
+
+    /**
+     * Balances for testing purposes. Counts the no. of iterators created, and optionally blocks all but the first
+     * until interrupted.
+     */
+    private static class Balances implements Iterable<ObjectSet> {
+
+        private final List<ObjectSet> sets = new ArrayList<ObjectSet>();
+
+        private final boolean block;
+
+        private final AtomicInteger iterators = new AtomicInteger();
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        public Balances(int count, boolean block) {
+            this.block = block;
+            for (int i = 0; i < count; ++i) {
+                sets.add(new ObjectSet());
+            }
+        }
+
+        public ObjectSet get(int index) {
+            return sets.get(index);
+        }
+
+        public int getIterators() {
+            return iterators.get();
+        }
+
+        public Iterator<ObjectSet> iterator() {
+            if (iterators.incrementAndGet() > 1 && block) {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException exception) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return sets.iterator();
+        }
+    }
+}
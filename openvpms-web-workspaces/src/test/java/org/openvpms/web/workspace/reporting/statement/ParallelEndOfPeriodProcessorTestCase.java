@@ -0,0 +1,167 @@
+/*
+ * Version: 1.0
+ *
+ * The contents of this file are subject to the OpenVPMS License Version
+ * 1.0 (the 'License'); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.openvpms.org/license/
+ *
+ * Software distributed under the License is distributed on an 'AS IS' basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Copyright 2015 (C) OpenVPMS Ltd. All Rights Reserved.
+ */
+
+package org.openvpms.web.workspace.reporting.statement;
+
+import org.junit.Test;
+import org.openvpms.archetype.rules.finance.statement.EndOfPeriodProcessor;
+import org.openvpms.archetype.test.ArchetypeServiceTest;
+import org.openvpms.archetype.test.TestHelper;
+import org.openvpms.component.business.domain.im.party.Party;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link ParallelEndOfPeriodProcessor}.
+ *
+ * @author <a href="mailto:support@openvpms.org">OpenVPMS Team</a>
+ */
+public class ParallelEndOfPeriodProcessorTestCase extends ArchetypeServiceTest {
+
+    /**
+     * Verifies that {@link ParallelEndOfPeriodProcessor#partition()} splits customers into ordered, non-overlapping
+     * id ranges that cover every customer.
+     */
+    @Test
+    public void testPartition() {
+        Party customer1 = TestHelper.createCustomer();
+        Party customer2 = TestHelper.createCustomer();
+        Party customer3 = TestHelper.createCustomer();
+
+        PlatformTransactionManager transactionManager = applicationContext.getBean(PlatformTransactionManager.class);
+        ParallelEndOfPeriodProcessor processor = new ParallelEndOfPeriodProcessor(
+                new Date(), false, TestHelper.getPractice(), getArchetypeService(), null, null, transactionManager,
+                2, 2);
+        int total = processor.partition();
+        assertTrue(total >= 3);
+        assertEquals(total, processor.getTotal());
+
+        List<ParallelEndOfPeriodProcessor.Partition> partitions = processor.getPartitions();
+        assertEquals((total + 1) / 2, partitions.size());
+        long previous = -1;
+        for (ParallelEndOfPeriodProcessor.Partition partition : partitions) {
+            assertTrue(partition.getFirst() > previous);
+            assertTrue(partition.getLast() >= partition.getFirst());
+            assertEquals(ParallelEndOfPeriodProcessor.State.PENDING, partition.getState());
+            previous = partition.getLast();
+        }
+
+        checkPartitioned(customer1, partitions);
+        checkPartitioned(customer2, partitions);
+        checkPartitioned(customer3, partitions);
+        assertEquals(0, processor.getProcessed());
+        assertTrue(processor.getFailed().isEmpty());
+    }
+
+    /**
+     * Verifies that when a customer fails, the other customers in its partition are processed individually, that the
+     * failing customer is reported, and that a retry only re-processes the failing customer.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testFailingCustomerIsProcessedIndividually() throws Exception {
+        Party customer1 = TestHelper.createCustomer();
+        final Party customer2 = TestHelper.createCustomer();
+        Party customer3 = TestHelper.createCustomer();
+
+        final Map<Long, Integer> counts = Collections.synchronizedMap(new HashMap<Long, Integer>());
+        final boolean[] fail = {true};
+        PlatformTransactionManager transactionManager = applicationContext.getBean(PlatformTransactionManager.class);
+        ParallelEndOfPeriodProcessor processor = new ParallelEndOfPeriodProcessor(
+                new Date(), false, TestHelper.getPractice(), getArchetypeService(), null, null, transactionManager,
+                1, Integer.MAX_VALUE) {
+            @Override
+            protected EndOfPeriodProcessor createProcessor() {
+                return null;
+            }
+
+            @Override
+            protected void process(EndOfPeriodProcessor processor, Party customer) {
+                if (fail[0] && customer.getId() == customer2.getId()) {
+                    throw new IllegalStateException("Failed " + customer.getId());
+                }
+                Integer count = counts.get(customer.getId());
+                counts.put(customer.getId(), count == null ? 1 : count + 1);
+            }
+        };
+        int total = processor.partition();
+        assertEquals(1, processor.getPartitions().size());
+
+        run(processor);
+        assertEquals(1, processor.getFailed().size());
+        Map<Party, Throwable> failed = processor.getFailedCustomers();
+        assertEquals(1, failed.size());
+        Party customer = failed.keySet().iterator().next();
+        assertEquals(customer2.getId(), customer.getId());
+        assertEquals("Failed " + customer2.getId(), failed.get(customer).getMessage());
+        assertEquals(total - 1, processor.getProcessed());
+
+        // customers before customer2 were processed in the rolled back partition, and again individually
+        assertEquals(2, counts.get(customer1.getId()).intValue());
+        assertEquals(1, counts.get(customer3.getId()).intValue());
+        assertFalse(counts.containsKey(customer2.getId()));
+
+        // retry. Only customer2 should be processed
+        fail[0] = false;
+        run(processor);
+        assertTrue(processor.getFailed().isEmpty());
+        assertTrue(processor.getFailedCustomers().isEmpty());
+        assertEquals(total, processor.getProcessed());
+        assertEquals(2, counts.get(customer1.getId()).intValue());
+        assertEquals(1, counts.get(customer2.getId()).intValue());
+        assertEquals(1, counts.get(customer3.getId()).intValue());
+    }
+
+    /**
+     * Runs the processor, waiting for it to complete.
+     *
+     * @param processor the processor
+     * @throws InterruptedException if interrupted
+     */
+    private void run(ParallelEndOfPeriodProcessor processor) throws InterruptedException {
+        processor.start();
+        while (processor.isRunning()) {
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Verifies a customer falls within one of the partitions.
+     *
+     * @param customer   the customer
+     * @param partitions the partitions
+     */
+    private void checkPartitioned(Party customer, List<ParallelEndOfPeriodProcessor.Partition> partitions) {
+        int matches = 0;
+        for (ParallelEndOfPeriodProcessor.Partition partition : partitions) {
+            if (customer.getId() >= partition.getFirst() && customer.getId() <= partition.getLast()) {
+                ++matches;
+            }
+        }
+        assertEquals(1, matches);
+    }
+
+}
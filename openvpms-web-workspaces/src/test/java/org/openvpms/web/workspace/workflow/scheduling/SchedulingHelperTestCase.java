@@ -16,7 +16,14 @@
 
 package org.openvpms.web.workspace.workflow.scheduling;
 
+import org.apache.commons.jxpath.CompiledExpression;
 import org.junit.Test;
+import org.openvpms.archetype.rules.workflow.AppointmentStatus;
+import org.openvpms.archetype.rules.workflow.ScheduleArchetypes;
+import org.openvpms.archetype.rules.workflow.ScheduleEvent;
+import org.openvpms.component.business.domain.im.common.IMObjectReference;
+import org.openvpms.component.system.common.query.ObjectSet;
+import org.openvpms.component.system.common.util.PropertySet;
 
 import java.util.Date;
 
@@ -47,4 +54,24 @@ public class SchedulingHelperTestCase {
         assertEquals(getDatetime("2015-03-05 12:00:00"), SchedulingHelper.getSlotTime(date3, 30, false));
         assertEquals(getDatetime("2015-03-05 12:30:00"), SchedulingHelper.getSlotTime(date3, 30, true));
     }
+
+    /**
+     * Tests the {@link SchedulingHelper#compile} and {@link SchedulingHelper#evaluate(CompiledExpression, PropertySet)}
+     * methods.
+     */
+    @Test
+    public void testEvaluateCompiled() {
+        ObjectSet event = new ObjectSet();
+        event.set(ScheduleEvent.ACT_REFERENCE, new IMObjectReference(ScheduleArchetypes.APPOINTMENT, 1));
+        event.set(ScheduleEvent.ACT_STATUS, AppointmentStatus.PENDING);
+
+        CompiledExpression expression = SchedulingHelper.compile("concat('a', '\\n', 'b')");
+        assertEquals("a\nb", SchedulingHelper.evaluate(expression, event));
+        assertEquals("a\nb", SchedulingHelper.evaluate("concat('a', '\\n', 'b')", event));
+
+        // invalid expressions
+        assertEquals(SchedulingHelper.EXPRESSION_ERROR, SchedulingHelper.evaluate("concat('a'", event));
+        assertEquals(SchedulingHelper.EXPRESSION_ERROR,
+                     SchedulingHelper.evaluate(SchedulingHelper.compile("foo:bar()"), event));
+    }
 }